@@ -0,0 +1,78 @@
+package agents;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.adk.artifacts.InMemoryArtifactService;
+import com.google.adk.events.Event;
+import com.google.adk.runner.Runner;
+import com.google.adk.sessions.InMemorySessionService;
+import com.google.adk.sessions.Session;
+import com.google.genai.types.Content;
+import com.google.genai.types.Part;
+
+/**
+ * Full agent turns against the scripted demo model with no simulated latency, so the score is the cost of
+ * the agent runtime itself: building the prompt, the model and tool calls, event handling and the session.
+ * Each turn runs in a new session, which is deleted afterwards.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AgentTurnBenchmarks {
+
+    private static final String USER_ID = "bench";
+
+    private AgentRuntime team;
+    private AgentRuntime technical;
+    private AgentRuntime billing;
+
+    @Setup
+    public void setUp() {
+        BenchmarkFixtures.configure();
+        ScriptedLlm model = DemoScript.create(Duration.ZERO, Duration.ZERO);
+        team = AgentTeam.newTeamRunner(model);
+        technical = AgentRuntime.of(new Runner(TechnicalSpecialist.initAgent(model), "technical agent",
+            new InMemoryArtifactService(), new InMemorySessionService()));
+        billing = AgentRuntime.of(new Runner(BillingSpecialist.initAgent(model), "billing agent",
+            new InMemoryArtifactService(), new InMemorySessionService()));
+    }
+
+    @Benchmark
+    public Event teamTurn() {
+        return turn(team, "Why are my files corrupted?");
+    }
+
+    @Benchmark
+    public Event technicalTurn() {
+        return turn(technical, "How is encryption handled?");
+    }
+
+    @Benchmark
+    public Event billingTurn() {
+        return turn(billing, "My ID is 1001-A, show my billing history");
+    }
+
+    private static Event turn(AgentRuntime runtime, String message) {
+        Session session = runtime.sessionService().createSession(runtime.appName(), USER_ID).blockingGet();
+        try {
+            return runtime.runAsync(USER_ID, session.id(), Content.fromParts(Part.fromText(message))).blockingLast();
+        } finally {
+            runtime.closeSession(USER_ID, session.id());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package agents;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares two JMH JSON result files, e.g. one saved from the main branch and one from a change, and prints
+ * the score and allocation per operation of every benchmark in both. Exits with status 1 if any score got
+ * worse by more than --threshold percent (default 10), so it can fail a CI job.
+ *
+ * Run with: java -cp benchmarks/target/benchmarks.jar agents.BenchmarkCompare baseline.json target/jmh-result.json
+ */
+public class BenchmarkCompare {
+
+    private static final String ALLOCATION = "gc.alloc.rate.norm";
+
+    private record Result(String mode, double score, String unit, double allocated) {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BenchmarkCompare <baseline.json> <current.json> [--threshold percent]");
+            System.exit(2);
+        }
+        double threshold = 10;
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--threshold" -> threshold = Double.parseDouble(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        Map<String, Result> baseline = read(new File(args[0]));
+        Map<String, Result> current = read(new File(args[1]));
+
+        System.out.printf("%-60s %14s %14s %9s %12s %12s%n", "benchmark", "baseline", "current", "change", "B/op before", "B/op after");
+        int regressions = 0;
+        for (Map.Entry<String, Result> entry : current.entrySet()) {
+            Result now = entry.getValue();
+            Result before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-60s %14s %14.3f %9s %12s %12.0f%n", entry.getKey(), "-", now.score(), "new", "-", now.allocated());
+                continue;
+            }
+            double change = (now.score() - before.score()) / before.score() * 100;
+            // Throughput is better when higher, the time modes when lower
+            double worse = "thrpt".equals(now.mode()) ? -change : change;
+            boolean regressed = worse > threshold;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf("%-60s %14.3f %14.3f %+8.1f%% %12.0f %12.0f %s%s%n", entry.getKey(), before.score(), now.score(),
+                change, before.allocated(), now.allocated(), now.unit(), regressed ? "  REGRESSION" : "");
+        }
+
+        System.out.printf("%n%d of %d benchmarks got worse by more than %.0f%%%n", regressions, current.size(), threshold);
+        if (regressions > 0) {
+            System.exit(1);
+        }
+    }
+
+    // Keyed by benchmark name plus its parameters, since a parameterized benchmark has one result per value
+    private static Map<String, Result> read(File file) throws IOException {
+        Map<String, Result> results = new LinkedHashMap<>();
+        for (JsonNode node : new ObjectMapper().readTree(file)) {
+            StringBuilder key = new StringBuilder(node.path("benchmark").asText().replaceFirst("^agents\\.", ""));
+            node.path("params").fields().forEachRemaining(param ->
+                key.append(' ').append(param.getKey()).append('=').append(param.getValue().asText()));
+            JsonNode primary = node.path("primaryMetric");
+            JsonNode allocated = node.path("secondaryMetrics").path(ALLOCATION).path("score");
+            results.put(key.toString(), new Result(node.path("mode").asText(), primary.path("score").asDouble(),
+                primary.path("scoreUnit").asText(), allocated.isMissingNode() ? Double.NaN : allocated.asDouble()));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,45 @@
+package agents;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Settings shared by every benchmark. JMH runs each benchmark in a forked JVM, so these are applied
+ * from the {@code @Setup} methods rather than from the launcher, and before any agent class is loaded.
+ */
+final class BenchmarkFixtures {
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Runs against the scripted model, with sessions in memory and tickets and payment updates in temporary directories.
+     * Properties passed on the command line (e.g. with -jvmArgsAppend) are left as they are.
+     */
+    static synchronized void configure() {
+        setIfAbsent("agents.model", "stub");
+        setIfAbsent("agents.sessions.dir", "memory");
+        setIfAbsent("agents.knowledge.watch", "false");
+        setIfAbsent("agents.knowledge.dir", Files.isDirectory(Path.of("knowledge")) ? "knowledge" : "../knowledge");
+        setTempDirIfAbsent("agents.tickets.dir", "bench-tickets");
+        setTempDirIfAbsent("agents.payments.dir", "bench-payments");
+    }
+
+    private static void setTempDirIfAbsent(String key, String prefix) {
+        if (System.getProperty(key) == null) {
+            try {
+                System.setProperty(key, Files.createTempDirectory(prefix).toString());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot create directory for " + key, e);
+            }
+        }
+    }
+
+    private static void setIfAbsent(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+}
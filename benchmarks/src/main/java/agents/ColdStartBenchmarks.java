@@ -0,0 +1,69 @@
+package agents;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.adk.events.Event;
+import com.google.adk.sessions.Session;
+import com.google.genai.types.Content;
+import com.google.genai.types.Part;
+
+/**
+ * Cold start to the first answer: each fork is a fresh JVM that sets up the server's apps, opens a session and
+ * answers one message on the scripted model with no simulated latency, once. The score is class loading, building
+ * the agents and the first turn; JVM startup itself is not included.
+ *
+ * "eager" builds every agent tree before answering, as the static initializers and the server did before
+ * {@link AgentRegistry}; "lazy" builds only the tree that answers. To compare with an AppCDS archive, record one
+ * with a single fork and map it in the measured run:
+ *
+ *   java -jar benchmarks/target/benchmarks.jar ColdStartBenchmarks -f 1 -jvmArgsAppend -XX:ArchiveClassesAtExit=target/coldstart.jsa
+ *   java -jar benchmarks/target/benchmarks.jar ColdStartBenchmarks -jvmArgsAppend -XX:SharedArchiveFile=target/coldstart.jsa
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class ColdStartBenchmarks {
+
+    private static final String USER_ID = "bench";
+
+    @Param({"eager", "lazy"})
+    public String build;
+
+    @Param({"team"})
+    public String app;
+
+    @Setup
+    public void setUp() {
+        // Only properties here: no agent class may be loaded before the measured call
+        BenchmarkFixtures.configure();
+        System.setProperty("agents.stub.firstTokenMs", "0");
+        System.setProperty("agents.stub.tokenMs", "0");
+    }
+
+    @Benchmark
+    public Event firstAnswer() {
+        Map<String, AgentRuntime> apps = AgentServer.defaultApps();
+        AgentRuntime runtime = apps.get(app);
+        if ("eager".equals(build)) {
+            apps.values().forEach(AgentRuntime::appName);
+        }
+        Session session = runtime.sessionService().createSession(runtime.appName(), USER_ID).blockingGet();
+        return runtime.runAsync(USER_ID, session.id(), Content.fromParts(Part.fromText("I want a refund"))).blockingLast();
+    }
+}
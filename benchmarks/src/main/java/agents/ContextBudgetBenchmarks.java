@@ -0,0 +1,134 @@
+package agents;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.adk.agents.BaseAgent;
+import com.google.adk.artifacts.InMemoryArtifactService;
+import com.google.adk.models.BaseLlm;
+import com.google.adk.models.BaseLlmConnection;
+import com.google.adk.models.LlmRequest;
+import com.google.adk.models.LlmResponse;
+import com.google.adk.sessions.InMemorySessionService;
+import com.google.adk.sessions.Session;
+import com.google.genai.types.Content;
+import com.google.genai.types.Part;
+
+import io.reactivex.rxjava3.core.Flowable;
+
+/**
+ * Whole conversations of 10 and 40 turns with the agent team on the scripted model, which takes 20 ms for every
+ * thousand prompt tokens before it answers, the way a real model's time to first token grows with the prompt.
+ * "plain" sends the whole conversation every time; "budgeted" fits requests under an 8,000 token ceiling with the
+ * {@link ContextBudget}. The score is the time of one conversation in a new session; the average prompt size the
+ * model received is printed after each run. The answer cache is off so that every turn reaches the model.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ContextBudgetBenchmarks {
+
+    private static final List<String> QUESTIONS = List.of(
+        "Why are my files corrupted?",
+        "My ID is 1001-A, why was I charged this month?",
+        "How is encryption handled?",
+        "nebula sync will not start, port already in use",
+        "My ID is 2002-B, can you show my billing history?",
+        "How do I change the port?",
+        "What does the proxy setting do?"
+    );
+    private static final double PREFILL_MS_PER_1K = 20;
+
+    @Param({"plain", "budgeted"})
+    public String mode;
+
+    @Param({"10", "40"})
+    public int turns;
+
+    private PromptMeter model;
+    private TeamRunner team;
+    private int conversations;
+
+    /** Records the size of every request the model receives and holds it for the prefill time. */
+    private static final class PromptMeter extends BaseLlm {
+        private final BaseLlm delegate;
+        final LongAdder calls = new LongAdder();
+        final LongAdder tokens = new LongAdder();
+
+        PromptMeter(BaseLlm delegate) {
+            super(delegate.model());
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Flowable<LlmResponse> generateContent(LlmRequest llmRequest, boolean stream) {
+            int size = ContextBudget.estimate(llmRequest);
+            calls.increment();
+            tokens.add(size);
+            return Flowable.timer((long) (size * PREFILL_MS_PER_1K), TimeUnit.MICROSECONDS)
+                .concatMap(tick -> delegate.generateContent(llmRequest, stream));
+        }
+
+        @Override
+        public BaseLlmConnection connect(LlmRequest llmRequest) {
+            return delegate.connect(llmRequest);
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        BenchmarkFixtures.configure();
+        // Read when the agents are built
+        System.setProperty("agents.context", String.valueOf("budgeted".equals(mode)));
+        System.setProperty("agents.context.maxTokens", "8000");
+        System.setProperty("agents.context.log", "false");
+
+        model = new PromptMeter(DemoScript.create(Duration.ofMillis(50), Duration.ofMillis(1)));
+        BaseAgent technical = TechnicalSpecialist.initAgent(model);
+        BaseAgent billing = BillingSpecialist.initAgent(model);
+        AnswerCache noCache = new AnswerCache(0, Duration.ofHours(1), 0.8, TechnicalSpecialist::docsVersion);
+        team = new TeamRunner(AgentTeam.APP_NAME, AgentTeam.buildRootAgent(model, technical, billing),
+            technical, billing, new InMemoryArtifactService(), new InMemorySessionService(),
+            FastPathRouter.withDefaultExamples(), noCache);
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.printf("%n%s, %d turns: %.0f prompt tokens per model call%n",
+            mode, turns, (double) model.tokens.sum() / Math.max(1, model.calls.sum()));
+    }
+
+    @Benchmark
+    public int conversation() {
+        int conversation = conversations++;
+        String user = "user-" + conversation;
+        Session session = team.sessionService().createSession(team.appName(), user).blockingGet();
+        try {
+            for (int t = 0; t < turns; t++) {
+                Content message = Content.fromParts(Part.fromText(QUESTIONS.get((conversation + t) % QUESTIONS.size())));
+                team.runAsync(user, session.id(), message).blockingForEach(event -> { });
+            }
+            return turns;
+        } finally {
+            team.closeSession(user, session.id());
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package agents;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.adk.tools.FunctionTool;
+
+/**
+ * Overhead of calling a tool through {@link FunctionTool}, which binds the model's arguments to the method
+ * parameters by reflection and converts the result, compared with calling the same method directly.
+ * {@code PaymentMethod.paymentMethodStatus} looks the update up in memory, so the difference is the binding cost.
+ * Also measures {@code FunctionTool.create}, which builds the declaration from the annotations when an agent is built.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FunctionToolBenchmarks {
+
+    private FunctionTool paymentTool;
+    private FunctionTool billingTool;
+    private Map<String, Object> paymentArgs;
+    private Map<String, Object> billingArgs;
+
+    @Setup
+    public void setUp() {
+        BenchmarkFixtures.configure();
+        paymentTool = FunctionTool.create(PaymentMethod.class, "paymentMethodStatus");
+        billingTool = FunctionTool.create(BillingHistory.class, "billingHistory");
+        paymentArgs = Map.of("userId", "1001-A");
+        billingArgs = Map.of("userId", "1001-A", "fromDate", "", "toDate", "", "status", "", "cursor", "");
+        PaymentMethod.paymentMethod("1001-A", "Visa", "4242");
+    }
+
+    @Benchmark
+    public Map<String, Object> paymentMethodStatusDirect() {
+        return PaymentMethod.paymentMethodStatus("1001-A");
+    }
+
+    @Benchmark
+    public Map<String, Object> paymentMethodStatusFunctionTool() {
+        return paymentTool.runAsync(paymentArgs, null).blockingGet();
+    }
+
+    @Benchmark
+    public Map<String, Object> billingHistoryDirect() {
+        return BillingHistory.billingHistory("1001-A", "", "", "", "");
+    }
+
+    @Benchmark
+    public Map<String, Object> billingHistoryFunctionTool() {
+        return billingTool.runAsync(billingArgs, null).blockingGet();
+    }
+
+    @Benchmark
+    public FunctionTool createFunctionTool() {
+        return FunctionTool.create(BillingHistory.class, "billingHistory");
+    }
+}
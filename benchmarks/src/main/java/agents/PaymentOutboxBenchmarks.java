@@ -0,0 +1,162 @@
+package agents;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Payment method updates applied inline, where every caller waits for its own processor call as the tool used
+ * to, against updates accepted by the {@link PaymentOutbox} (fsync on) and sent to the processor in the
+ * background. 1, 16 and 256 callers update random users out of 1,000 on a {@link LocalPaymentProcessor} that
+ * takes 200 ms per call and 1 ms per update and fails 5% of calls. The scores are updates accepted per second
+ * and the caller's latency. For the outbox, the time from acceptance to the processor's answer, the share of
+ * updates superseded by a newer one for the same user and the batch size are printed after each run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 3)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class PaymentOutboxBenchmarks {
+
+    private static final int USERS = 1000;
+
+    @Param({"inline", "outbox"})
+    public String mode;
+
+    private Path directory;
+    private LocalPaymentProcessor processor;
+    private PaymentOutbox outbox;
+    private final AtomicInteger callers = new AtomicInteger();
+    private final ConcurrentLinkedQueue<CompletableFuture<?>> outcomes = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Long> deliveryNanos = new ConcurrentLinkedQueue<>();
+
+    /** One caller: the users it picks and the ids of its updates. */
+    @State(Scope.Thread)
+    public static class Caller {
+        SplittableRandom random;
+        long id;
+
+        @Setup
+        public void setUp(PaymentOutboxBenchmarks benchmark) {
+            int caller = benchmark.callers.getAndIncrement();
+            random = new SplittableRandom(caller);
+            id = (long) caller << 32;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        processor = new LocalPaymentProcessor(200, 1, 0.05);
+        if ("outbox".equals(mode)) {
+            directory = Files.createTempDirectory("payments-bench");
+            PaymentOutbox.Settings d = PaymentOutbox.Settings.DEFAULT;
+            outbox = new PaymentOutbox(new PaymentOutbox.Settings(directory, true, d.batchSize(), d.linger(),
+                d.senders(), d.maxAttempts(), Duration.ofMillis(50), Duration.ofSeconds(2), d.compactBytes()), processor);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (outbox == null) {
+            return;
+        }
+        // Let the senders deliver what is still queued
+        CompletableFuture.allOf(outcomes.toArray(CompletableFuture[]::new)).get(2, TimeUnit.MINUTES);
+        Map<String, Object> stats = outbox.stats();
+        outbox.close();
+        long accepted = ((Number) stats.get("accepted")).longValue();
+        System.out.printf("%ndelivered p50 %s, p99 %s, superseded %.1f%%, average batch %.1f, resent %s%n",
+            millis(deliveryNanos, 0.50), millis(deliveryNanos, 0.99),
+            100.0 * ((Number) stats.get("superseded")).longValue() / Math.max(1, accepted), stats.get("averageBatch"), stats.get("resent"));
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean oneCaller(Caller caller) throws IOException {
+        return update(caller);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public boolean sixteenCallers(Caller caller) throws IOException {
+        return update(caller);
+    }
+
+    @Benchmark
+    @Threads(256)
+    public boolean manyCallers(Caller caller) throws IOException {
+        return update(caller);
+    }
+
+    private boolean update(Caller caller) throws IOException {
+        String userId = Integer.toString(1000 + caller.random.nextInt(USERS));
+        long id = caller.id++;
+        if (outbox == null) {
+            return applyInline(userId, id);
+        }
+        PaymentOutbox.Accepted accepted = outbox.submit(userId, "Visa", Long.toString(4000 + id % 6000));
+        long acceptedAt = System.nanoTime();
+        outcomes.add(accepted.outcome().thenAccept(status -> {
+            if (status.state() != PaymentOutbox.State.SUPERSEDED) {
+                deliveryNanos.add(System.nanoTime() - acceptedAt);
+            }
+        }));
+        return true;
+    }
+
+    // Retries failures like the outbox does, but at once, since the caller is waiting
+    private boolean applyInline(String userId, long id) {
+        List<PaymentOutbox.Update> update = List.of(new PaymentOutbox.Update(id, userId, "Visa", "4242", System.currentTimeMillis()));
+        for (int attempt = 1; attempt <= PaymentOutbox.Settings.DEFAULT.maxAttempts(); attempt++) {
+            try {
+                processor.apply(update);
+                return true;
+            } catch (IOException e) {
+                // Sent again
+            }
+        }
+        return false;
+    }
+
+    private static String millis(ConcurrentLinkedQueue<Long> nanos, double quantile) {
+        List<Long> sorted = new ArrayList<>(nanos);
+        if (sorted.isEmpty()) {
+            return "-";
+        }
+        sorted.sort(null);
+        int index = Math.max(0, (int) Math.ceil(sorted.size() * quantile) - 1);
+        return String.format("%.1f ms", sorted.get(index) / 1e6);
+    }
+}
@@ -0,0 +1,124 @@
+package agents;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.adk.agents.BaseAgent;
+import com.google.adk.artifacts.InMemoryArtifactService;
+import com.google.adk.sessions.InMemorySessionService;
+import com.google.adk.sessions.Session;
+import com.google.genai.types.Content;
+import com.google.genai.types.Part;
+
+/**
+ * Turn latency of the agent team with 20 callers on the scripted model (300 ms to the first token, 10 ms per
+ * token) behind a {@link FaultyLlm} that stalls 5% of model calls for 8 s and fails 1% of them. "plain" calls
+ * the faulty model directly; "resilient" hedges model calls, times them out after 3 s, puts them behind a
+ * circuit breaker and gives each turn a 10 s deadline. Failed turns count at the time they failed. The answer
+ * cache is off so that every turn reaches the model. Failed and degraded turns are printed after each run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Threads(20)
+@Fork(1)
+public class ResilienceBenchmarks {
+
+    private static final List<String> QUESTIONS = List.of(
+        "Why are my files corrupted?",
+        "How is encryption handled?",
+        "nebula sync will not start, port already in use",
+        "How do I change the port?",
+        "I was charged twice this month"
+    );
+
+    @Param({"plain", "resilient"})
+    public String mode;
+
+    private FaultyLlm model;
+    private AgentRuntime runtime;
+    private final AtomicInteger callers = new AtomicInteger();
+    private final LongAdder turns = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder degraded = new LongAdder();
+
+    /** One caller: its user id and the question it asks next. */
+    @State(Scope.Thread)
+    public static class Caller {
+        String user;
+        int next;
+
+        @Setup
+        public void setUp(ResilienceBenchmarks benchmark) {
+            next = benchmark.callers.getAndIncrement();
+            user = "user-" + next;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        BenchmarkFixtures.configure();
+        // Read when the agents are built; shorter than the defaults so the run shows them working
+        System.setProperty("agents.resilience", String.valueOf("resilient".equals(mode)));
+        System.setProperty("agents.resilience.callTimeoutMs", "3000");
+        System.setProperty("agents.resilience.turnBudgetMs", "10000");
+
+        model = new FaultyLlm(DemoScript.create(Duration.ofMillis(300), Duration.ofMillis(10)), 0.05, 8000, 0.01);
+        BaseAgent technical = TechnicalSpecialist.initAgent(model);
+        BaseAgent billing = BillingSpecialist.initAgent(model);
+        AnswerCache noCache = new AnswerCache(0, Duration.ofHours(1), 0.8, TechnicalSpecialist::docsVersion);
+        TeamRunner team = new TeamRunner(AgentTeam.APP_NAME, AgentTeam.buildRootAgent(model, technical, billing),
+            technical, billing, new InMemoryArtifactService(), new InMemorySessionService(),
+            FastPathRouter.withDefaultExamples(), noCache);
+        runtime = Resilience.shared().runtime(team, null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.printf("%n%s: turns %d, failed %d, degraded %d, model calls stalled %d, failed %d%n",
+            mode, turns.sum(), failed.sum(), degraded.sum(), model.slowed(), model.failed());
+    }
+
+    @Benchmark
+    public boolean turn(Caller caller) {
+        Session session = runtime.sessionService().createSession(runtime.appName(), caller.user).blockingGet();
+        Content message = Content.fromParts(Part.fromText(QUESTIONS.get(caller.next++ % QUESTIONS.size())));
+        boolean[] fallback = {false};
+        turns.increment();
+        try {
+            runtime.runAsync(caller.user, session.id(), message).blockingForEach(event -> {
+                if (ResilientRuntime.AUTHOR.equals(event.author())) {
+                    fallback[0] = true;
+                }
+            });
+            if (fallback[0]) {
+                degraded.increment();
+            }
+            return fallback[0];
+        } catch (RuntimeException e) {
+            failed.increment();
+            return false;
+        } finally {
+            runtime.closeSession(caller.user, session.id());
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package agents;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The source index on a generated tree of Python modules (3 classes of 12 methods each): a cold start that
+ * parses every file, a warm start from the saved index, a refresh after 10 files changed, each timed once per
+ * invocation, and the average time of a symbol lookup.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SourceIndexBenchmarks {
+
+    private static final int CLASSES = 3;
+    private static final int METHODS = 12;
+    private static final int CHANGED = 10;
+
+    @Param({"3000"})
+    public int files;
+
+    private Path root;
+    private Path indexDir;
+    private List<Path> modules;
+    private SourceIndex index;
+    private List<String> names;
+    private int next;
+    private final SplittableRandom random = new SplittableRandom(7);
+
+    @Setup
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("source-bench");
+        indexDir = Files.createTempDirectory("source-bench-index");
+        System.setProperty("agents.source.indexDir", indexDir.toString());
+        modules = generate(root, files, 42);
+        index = SourceIndex.open(root);
+        names = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            names.add("Service" + random.nextInt(files) + "_" + random.nextInt(CLASSES) + ".method_" + random.nextInt(METHODS));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        deleteRecursively(root);
+        deleteRecursively(indexDir);
+    }
+
+    /** Forgets the saved index before each cold start. */
+    @State(Scope.Thread)
+    public static class NoSavedIndex {
+
+        @Setup(Level.Invocation)
+        public void setUp(SourceIndexBenchmarks benchmark) throws IOException {
+            try (Stream<Path> saved = Files.list(benchmark.indexDir)) {
+                for (Path file : saved.toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    /** Changes a few files before each refresh. */
+    @State(Scope.Thread)
+    public static class ChangedFiles {
+
+        @Setup(Level.Invocation)
+        public void setUp(SourceIndexBenchmarks benchmark) throws IOException {
+            for (int i = 0; i < CHANGED; i++) {
+                Path file = benchmark.modules.get(benchmark.random.nextInt(benchmark.modules.size()));
+                Files.writeString(file, "\n# NOTE: touched by the benchmark\n", StandardOpenOption.APPEND);
+                Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 1000));
+            }
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public SourceIndex coldStart(NoSavedIndex noSavedIndex) {
+        return SourceIndex.open(root);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public SourceIndex warmStart() {
+        return SourceIndex.open(root);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public SourceIndex refresh(ChangedFiles changedFiles) {
+        index.refresh();
+        return index;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public List<SourceIndex.Definition> lookup() {
+        return index.snapshot().definitions(names.get(next++ % names.size()));
+    }
+
+    private static List<Path> generate(Path root, int fileCount, long seed) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Path> files = new ArrayList<>();
+        for (int f = 0; f < fileCount; f++) {
+            StringBuilder source = new StringBuilder();
+            source.append("import os\nimport requests\n\n");
+            source.append("TIMEOUT_").append(f).append(" = ").append(random.nextInt(1, 120)).append("\n\n");
+            for (int c = 0; c < CLASSES; c++) {
+                source.append("class Service").append(f).append('_').append(c).append(":\n");
+                source.append("    \"\"\"Client for service ").append(f).append('.').append(c).append(".\"\"\"\n\n");
+                for (int m = 0; m < METHODS; m++) {
+                    source.append("    def method_").append(m).append("(self, item_id, retries=3):\n");
+                    if (random.nextInt(10) == 0) {
+                        source.append("        # TODO: retries should back off\n");
+                    }
+                    source.append("        for attempt in range(retries):\n");
+                    source.append("            r = requests.get(f\"{self.base_url}/items/{item_id}\", timeout=TIMEOUT_")
+                        .append(f).append(")\n");
+                    source.append("            if r.status_code == 200:\n");
+                    source.append("                return r.json()\n");
+                    source.append("        return None\n\n");
+                }
+            }
+            Path file = root.resolve("pkg" + f % 50).resolve("module_" + f + ".py");
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, source);
+            files.add(file);
+        }
+        return files;
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
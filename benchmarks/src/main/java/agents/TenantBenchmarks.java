@@ -0,0 +1,133 @@
+package agents;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.adk.artifacts.InMemoryArtifactService;
+import com.google.adk.events.Event;
+import com.google.adk.runner.Runner;
+import com.google.adk.sessions.InMemorySessionService;
+import com.google.adk.sessions.Session;
+import com.google.genai.types.Content;
+import com.google.genai.types.Part;
+
+/**
+ * Many tenants with skewed traffic on one shared runner: the technical specialist on the scripted model (200 ms
+ * to the first token, 5 ms per token), 24 callers for the busiest tenant and 8 spread over the other 99, with at
+ * most 8 turns running at once. "fifo" admits turns in arrival order with no per tenant limits; "fair" queues
+ * fairly across tenants and holds each tenant to 4 turns at once. The scores are the turn latency of the busiest
+ * tenant and of the others; sample counts over the measurement time give their throughput.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class TenantBenchmarks {
+
+    private static final int TENANTS = 100;
+    private static final Duration FIRST_TOKEN = Duration.ofMillis(200);
+    private static final Duration PER_TOKEN = Duration.ofMillis(5);
+
+    private static final List<String> QUESTIONS = List.of(
+        "Why are my files corrupted?",
+        "How is encryption handled?",
+        "nebula sync will not start, port already in use",
+        "How do I change the port?",
+        "My dashboard shows high CPU usage"
+    );
+
+    @Param({"fifo", "fair"})
+    public String queuing;
+
+    private AgentRuntime runtime;
+
+    /** One caller thread: its user id, and the tenant and question it asks next. */
+    @State(Scope.Thread)
+    public static class Caller {
+
+        private static int callers;
+
+        String user;
+        int next;
+
+        @Setup
+        public void setUp() {
+            synchronized (Caller.class) {
+                next = callers++;
+            }
+            user = "user-" + next;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        BenchmarkFixtures.configure();
+        // The tools look the session's tenant up in the process's tenants, so they have to know every tenant
+        Path file = Files.createTempFile("tenants", ".tsv");
+        List<String> lines = new ArrayList<>();
+        for (int t = 0; t < TENANTS; t++) {
+            lines.add(tenantId(t) + "\t-\t-\t0\t0\t1");
+        }
+        Files.write(file, lines);
+        System.setProperty("agents.tenants", file.toString());
+
+        boolean fair = "fair".equals(queuing);
+        List<Tenants.Tenant> tenants = new ArrayList<>();
+        for (int t = 0; t < TENANTS; t++) {
+            tenants.add(fair ? new Tenants.Tenant(tenantId(t), null, null, 4, 0, 1) : Tenants.Tenant.unlimited(tenantId(t)));
+        }
+        Runner runner = new Runner(TechnicalSpecialist.initAgent(DemoScript.create(FIRST_TOKEN, PER_TOKEN), false), "tenant benchmark",
+            new InMemoryArtifactService(), new InMemorySessionService());
+        runtime = new TenantRuntime(AgentRuntime.of(runner), new Tenants(tenants),
+            new TenantScheduler(new TenantScheduler.Limits(8, 1000, Duration.ofMinutes(1), fair)));
+    }
+
+    @Benchmark
+    @Group("tenants")
+    @GroupThreads(24)
+    public Event busiest(Caller caller) {
+        return turn(tenantId(0), caller);
+    }
+
+    @Benchmark
+    @Group("tenants")
+    @GroupThreads(8)
+    public Event others(Caller caller) {
+        return turn(tenantId(1 + caller.next % (TENANTS - 1)), caller);
+    }
+
+    private Event turn(String tenant, Caller caller) {
+        Session session = TenantRuntime.createSession(runtime, tenant, caller.user);
+        Content message = Content.fromParts(Part.fromText(QUESTIONS.get(caller.next++ % QUESTIONS.size())));
+        try {
+            return runtime.runAsync(caller.user, session.id(), message).blockingLast();
+        } finally {
+            runtime.closeSession(caller.user, session.id());
+        }
+    }
+
+    private static String tenantId(int t) {
+        return String.format("tenant-%03d", t);
+    }
+}
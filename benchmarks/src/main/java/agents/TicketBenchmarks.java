@@ -0,0 +1,66 @@
+package agents;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of {@link TicketOpener#submitTicket} for each journal fsync policy, with one submitter and with
+ * sixteen, where the journal writes the tickets queued by all of them in one batch. Every call submits a
+ * new ticket, except in submitDuplicate, which repeats one ticket and so measures the dedupe path.
+ * Each run appends to a fresh journal in a temporary directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TicketBenchmarks {
+
+    @Param({"none", "batch"})
+    public String fsync;
+
+    private final AtomicLong orders = new AtomicLong();
+
+    @Setup
+    public void setUp() {
+        // The journal reads its settings when TicketOpener first uses it, which is after this
+        System.setProperty("agents.tickets.fsync", fsync);
+        BenchmarkFixtures.configure();
+    }
+
+    @Benchmark
+    public Map<String, Object> submitTicket() {
+        return TicketOpener.submitTicket("1234", nextMessage(), 2);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Map<String, Object> submitTicketConcurrent() {
+        return TicketOpener.submitTicket("1234", nextMessage(), 2);
+    }
+
+    @Benchmark
+    public Map<String, Object> submitDuplicate() {
+        return TicketOpener.submitTicket("1234", "User 1234 is requesting a refund because they are not satisfied with the product.", 2);
+    }
+
+    // Distinct messages, so repeats are not dropped as duplicates
+    private String nextMessage() {
+        return "User 1234 is requesting a refund for order " + orders.incrementAndGet() + " because they are not satisfied with the product.";
+    }
+}
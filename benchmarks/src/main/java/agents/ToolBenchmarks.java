@@ -0,0 +1,67 @@
+package agents;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-call latency of the tool functions, called directly as the agent runtime would after binding
+ * the arguments. Run with -prof gc (the default in {@link BenchmarkMain}) for bytes allocated per call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ToolBenchmarks {
+
+    private static final String[] QUERIES = {
+        "files corrupted block verification failed",
+        "how is encryption handled",
+        "sync is slow on large folders",
+        "configure proxy for the client",
+        "cache directory on ssd"
+    };
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        BenchmarkFixtures.configure();
+        // Load the billing store and the document index outside the measurement
+        BillingHistory.billingHistory("1001-A", "", "", "", "");
+        TechnicalSpecialist.searchDocs(QUERIES[0], 3);
+    }
+
+    @Benchmark
+    public Map<String, Object> billingHistory() {
+        return BillingHistory.billingHistory("1001-A", "", "", "", "");
+    }
+
+    @Benchmark
+    public Map<String, Object> billingHistoryFiltered() {
+        return BillingHistory.billingHistory("2002-B", "2025-09-01", "2025-12-31", "Pending", "");
+    }
+
+    @Benchmark
+    public Map<String, Object> paymentMethod() {
+        return PaymentMethod.paymentMethod("1001-A", "Visa", "4242");
+    }
+
+    @Benchmark
+    public Map<String, Object> searchDocs() {
+        next = (next + 1) % QUERIES.length;
+        return TechnicalSpecialist.searchDocs(QUERIES[next], 3);
+    }
+}
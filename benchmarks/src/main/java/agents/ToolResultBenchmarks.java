@@ -0,0 +1,117 @@
+package agents;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Tool results as they are built now ({@link ToolResult}) and as they were built before (a hash map per result
+ * and per row, amounts and dates as strings, messages from String.format, and the JSON size taken from a string
+ * and its UTF-8 bytes). Each call includes measuring the result as JSON the way {@link InstrumentedTool} does;
+ * gc.alloc.rate.norm is the number to compare.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ToolResultBenchmarks {
+
+    private BillingStore.Page page;
+    private long outstanding;
+
+    @Setup
+    public void setUp() {
+        // One user with a full page of transactions
+        List<BillingStore.Transaction> history = new ArrayList<>();
+        LocalDate date = LocalDate.of(2025, 11, 1);
+        for (int i = 0; i < 60; i++) {
+            history.add(new BillingStore.Transaction(date.minusWeeks(i), "Subscription Renewal (week " + (60 - i) + ")",
+                4999 + i * 137L, i == 0 ? BillingStore.Status.PENDING : BillingStore.Status.PAID));
+        }
+        page = BillingStore.of(Map.of("5005-E", history))
+            .query("5005-E", null, null, null, null, BillingHistory.PAGE_SIZE).orElseThrow();
+        outstanding = page.summary().outstandingCents();
+    }
+
+    @Benchmark
+    public long billingHistoryPage() {
+        return Json.utf8Length(BillingHistory.pageResult("5005-E", page, outstanding));
+    }
+
+    @Benchmark
+    public long billingHistoryPageHashMaps() {
+        return Json.write(legacyPage("5005-E", page, outstanding)).getBytes(UTF_8).length;
+    }
+
+    // The response only; the update itself goes to the payment outbox
+    @Benchmark
+    public long paymentMethod() {
+        return Json.utf8Length(PaymentMethod.acceptedResult(42, "1001-A", "Visa", "4242"));
+    }
+
+    @Benchmark
+    public long paymentMethodHashMap() {
+        return Json.write(legacyPaymentMethod("1001-A", "Visa", "4242")).getBytes(UTF_8).length;
+    }
+
+    // BillingHistory's page encoding before ToolResult
+    private static Map<String, Object> legacyPage(String userId, BillingStore.Page page, long outstanding) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("userId", userId);
+        List<Map<String, Object>> transactionMaps = new ArrayList<>();
+        for (BillingStore.Transaction transaction : page.transactions()) {
+            Map<String, Object> map = new HashMap<>();
+            map.put("date", transaction.date().toString());
+            map.put("description", transaction.description());
+            map.put("amount", legacyCents(transaction.amountCents()));
+            map.put("status", transaction.status().label());
+            transactionMaps.add(map);
+        }
+        response.put("transactions", transactionMaps);
+        Map<String, Object> summaryMap = new LinkedHashMap<>();
+        summaryMap.put("matchingTransactions", page.summary().transactionCount());
+        summaryMap.put("totalPaid", legacyCents(page.summary().totalPaidCents()));
+        summaryMap.put("outstandingBalance", legacyCents(page.summary().outstandingCents()));
+        response.put("summary", summaryMap);
+        response.put("accountStatus", outstanding > 0 ? "Balance Due: $" + legacyCents(outstanding) : "Current");
+        if (page.nextCursor() != null) {
+            response.put("nextCursor", page.nextCursor());
+        }
+        return response;
+    }
+
+    private static String legacyCents(long cents) {
+        long abs = Math.abs(cents);
+        long fraction = abs % 100;
+        return (cents < 0 ? "-" : "") + abs / 100 + (fraction < 10 ? ".0" : ".") + fraction;
+    }
+
+    // The PaymentMethod.paymentMethod response before ToolResult
+    private static Map<String, String> legacyPaymentMethod(String userId, String methodType, String paymentToken) {
+        Map<String, String> response = new HashMap<>();
+        String maskedToken = paymentToken.substring(paymentToken.length() - 4);
+        response.put("status", "SUCCESS");
+        response.put("message", String.format(
+            "Successfully updated payment method for user %s to %s ending in %s.", userId, methodType, maskedToken));
+        return response;
+    }
+}
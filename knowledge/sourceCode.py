@@ -0,0 +1,80 @@
+import requests
+import time
+
+# TODO: This token is currently hard-coded.
+# It should probably be loaded from a secure place,
+# but right now it's just sitting here in plaintext.
+API_TOKEN = "SUPER_SECRET_TOKEN_123"
+
+class NebulaSyncClient:
+    def __init__(self, base_url):
+        self.base_url = base_url.rstrip("/")
+        self.headers = {"Authorization": f"Bearer {API_TOKEN}"}
+
+    def _encrypt(self, data: bytes) -> bytes:
+        # WARNING: This is not real encryption.
+        # It just reverses the bytes.
+        # It's only here as a placeholder until real crypto is added.
+        return data[::-1]
+
+    def upload_file(self, local_path):
+        try:
+            with open(local_path, "rb") as f:
+                raw = f.read()
+
+            encrypted = self._encrypt(raw)
+
+            r = requests.post(
+                f"{self.base_url}/files",
+                headers=self.headers,
+                files={"file": (local_path, encrypted)}
+            )
+            if r.status_code == 200:
+                print("File uploaded")
+                return r.json().get("file_id")
+            else:
+                print("Upload failed:", r.text)
+                return None
+        except Exception as e:
+            print("Upload error:", e)
+            return None
+
+    def wait_for_replication(self, file_id):
+        for _ in range(30):
+            r = requests.get(
+                f"{self.base_url}/replication-status/{file_id}",
+                headers=self.headers,
+            )
+            if r.status_code == 200:
+                status = r.json()
+                if status.get("complete"):
+                    print("Replication complete")
+                    return True
+            time.sleep(2)
+        print("Timed out waiting for replication")
+        return False
+
+    def download_file(self, file_id, out_path):
+        r = requests.get(
+            f"{self.base_url}/files/{file_id}",
+            headers=self.headers,
+        )
+        if r.status_code == 200:
+            encrypted = r.content
+            # This assumes the server returns “encrypted” data,
+            # but what if it doesn’t?
+            decrypted = self._encrypt(encrypted)
+            with open(out_path, "wb") as f:
+                f.write(decrypted)
+            print("Saved:", out_path)
+        else:
+            print("Download failed:", r.text)
+
+
+if __name__ == "__main__":
+    client = NebulaSyncClient("http://localhost:4799")
+
+    fid = client.upload_file("example.txt")
+    if fid:
+        client.wait_for_replication(fid)
+        client.download_file(fid, "example_synced.txt")
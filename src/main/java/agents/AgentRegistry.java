@@ -0,0 +1,96 @@
+package agents;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import com.google.adk.agents.BaseAgent;
+import com.google.adk.tools.FunctionTool;
+
+/**
+ * The agent trees of this project by app name, each built with the configured model on first use and
+ * shared after that. A process that only runs the billing specialist never builds the technical one
+ * or the coordinator, and building a tree for another model (e.g. {@code initAgent(BaseLlm)} with a
+ * scripted model) does not build the configured trees as a side effect.
+ *
+ * Function tools are shared in the same way: {@link FunctionTool#create} reads the method's annotations
+ * to build the declaration sent to the model, which is the same for every tree, so it is done once per
+ * tool and process.
+ */
+public final class AgentRegistry {
+
+    public static final String TEAM = "team";
+    public static final String TECHNICAL = "technical";
+    public static final String BILLING = "billing";
+    public static final String SIMPLE = "simple";
+
+    private static final Map<String, Lazy> AGENTS = new LinkedHashMap<>();
+
+    static {
+        AGENTS.put(TEAM, new Lazy(AgentTeam::buildRootAgent));
+        AGENTS.put(TECHNICAL, new Lazy(TechnicalSpecialist::initAgent));
+        AGENTS.put(BILLING, new Lazy(BillingSpecialist::initAgent));
+        AGENTS.put(SIMPLE, new Lazy(SimpleAgent::initAgent));
+    }
+
+    private static final Map<String, FunctionTool> TOOLS = new ConcurrentHashMap<>();
+
+    private AgentRegistry() {
+    }
+
+    public static List<String> names() {
+        return List.copyOf(AGENTS.keySet());
+    }
+
+    /**
+     * The agent tree registered under the name, built on the first call.
+     */
+    public static BaseAgent agent(String name) {
+        Lazy agent = AGENTS.get(name);
+        if (agent == null) {
+            throw new IllegalArgumentException("Unknown agent: " + name + ", expected one of " + names());
+        }
+        return agent.get();
+    }
+
+    /**
+     * Whether the tree has been built yet.
+     */
+    public static boolean built(String name) {
+        Lazy agent = AGENTS.get(name);
+        return agent != null && agent.value != null;
+    }
+
+    /**
+     * The function tool for a static method, created on the first call for that method.
+     */
+    public static FunctionTool functionTool(Class<?> owner, String methodName) {
+        return TOOLS.computeIfAbsent(owner.getName() + "#" + methodName, key -> FunctionTool.create(owner, methodName));
+    }
+
+    // Not a ConcurrentHashMap.computeIfAbsent: building the team builds the specialists from inside the call
+    private static final class Lazy {
+        private final Supplier<BaseAgent> factory;
+        private volatile BaseAgent value;
+
+        Lazy(Supplier<BaseAgent> factory) {
+            this.factory = factory;
+        }
+
+        BaseAgent get() {
+            BaseAgent built = value;
+            if (built == null) {
+                synchronized (this) {
+                    built = value;
+                    if (built == null) {
+                        built = factory.get();
+                        value = built;
+                    }
+                }
+            }
+            return built;
+        }
+    }
+}
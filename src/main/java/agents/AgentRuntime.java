@@ -0,0 +1,77 @@
+package agents;
+
+import java.util.Map;
+
+import com.google.adk.agents.RunConfig;
+import com.google.adk.events.Event;
+import com.google.adk.runner.Runner;
+import com.google.adk.sessions.BaseSessionService;
+import com.google.genai.types.Content;
+
+import io.reactivex.rxjava3.core.Flowable;
+
+/**
+ * The part of a runner that front ends (REPL, server, load tests) need: where sessions live
+ * and how to run one user message. Implementations are shared by all sessions of an agent tree.
+ */
+public interface AgentRuntime {
+
+    /** Only complete events: each model response arrives as one event. */
+    RunConfig WHOLE_EVENTS = RunConfig.builder().build();
+
+    /** Partial text events as the model produces tokens, followed by the complete event. */
+    RunConfig STREAMING = RunConfig.builder().setStreamingMode(RunConfig.StreamingMode.SSE).build();
+
+    /**
+     * STREAMING unless -Dagents.streaming=false.
+     */
+    static RunConfig defaultRunConfig() {
+        return Boolean.parseBoolean(System.getProperty("agents.streaming", "true")) ? STREAMING : WHOLE_EVENTS;
+    }
+
+    String appName();
+
+    BaseSessionService sessionService();
+
+    Flowable<Event> runAsync(String userId, String sessionId, Content newMessage, RunConfig runConfig);
+
+    default Flowable<Event> runAsync(String userId, String sessionId, Content newMessage) {
+        return runAsync(userId, sessionId, newMessage, WHOLE_EVENTS);
+    }
+
+    /**
+     * Deletes the session and forgets anything the runtime kept about it.
+     */
+    default void closeSession(String userId, String sessionId) {
+        sessionService().deleteSession(appName(), userId, sessionId).blockingAwait();
+    }
+
+    /**
+     * Counters exposed by the runtime, e.g. routing and cache statistics.
+     */
+    default Map<String, Object> stats() {
+        return Map.of();
+    }
+
+    /**
+     * Adapts a plain ADK runner.
+     */
+    static AgentRuntime of(Runner runner) {
+        return new AgentRuntime() {
+            @Override
+            public String appName() {
+                return runner.appName();
+            }
+
+            @Override
+            public BaseSessionService sessionService() {
+                return runner.sessionService();
+            }
+
+            @Override
+            public Flowable<Event> runAsync(String userId, String sessionId, Content newMessage, RunConfig runConfig) {
+                return runner.runAsync(userId, sessionId, newMessage, runConfig);
+            }
+        };
+    }
+}
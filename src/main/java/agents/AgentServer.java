@@ -0,0 +1,361 @@
+package agents;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import com.google.adk.agents.RunConfig;
+import com.google.adk.artifacts.InMemoryArtifactService;
+import com.google.adk.events.Event;
+import com.google.adk.runner.InMemoryRunner;
+import com.google.adk.runner.Runner;
+import com.google.adk.sessions.Session;
+import com.google.genai.types.Content;
+import com.google.genai.types.FunctionCall;
+import com.google.genai.types.FunctionResponse;
+import com.google.genai.types.Part;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+/**
+ * HTTP front end that serves many concurrent sessions from one JVM.
+ * Each agent tree has a single shared runtime, which all tenants share; with -Dagents.tenants set, turns are
+ * admitted per tenant by the {@link TenantScheduler}. Replies are streamed as server-sent events:
+ * the handler subscribes to the event Flowable on the I/O scheduler and returns immediately, and events are written
+ * to the client as the runner emits them, so an open stream does not hold a server thread, even when the model
+ * blocks the thread that starts it.
+ * The model is asked to stream, so the reply text arrives as partial events a few tokens at a time
+ * (add ?stream=false to a message, or start with -Dagents.streaming=false, for complete events only).
+ * Each event is flushed on its own and Nagle's algorithm is off, so nothing waits in a buffer.
+ * A session that gets no message for -Dagents.server.sessionIdleMinutes (default a day) is ended as if the client
+ * had deleted it, so the sessions of clients that go away without deleting them do not accumulate.
+ *
+ * Endpoints, where {app} is team, technical, billing or simple:
+ *   POST   /{app}/sessions?user=ID&tenant=T  creates a session of the tenant (default "default", see {@link Tenants}),
+ *                                            returns {"sessionId": "..."};
+ *                                            ID is up to 64 letters, digits and _ @ . - and starts with no dot
+ *   POST   /{app}/sessions/{id}/messages     body is the user message, reply is text/event-stream;
+ *                                            ?stream=false sends only complete events
+ *   DELETE /{app}/sessions/{id}              ends the session
+ *   GET    /{app}/stats                      routing, cache and other runtime counters
+ *
+ * Run with: mvn exec:java -Dexec.mainClass="agents.AgentServer" -Dexec.args="--port 8080"
+ */
+public class AgentServer {
+
+    // User ids may end up in file paths and log lines, so they may not contain separators or be . or ..
+    private static final Pattern USER_ID = Pattern.compile("[A-Za-z0-9_@-][A-Za-z0-9_@.-]{0,63}");
+
+    static {
+        // Small SSE writes would otherwise wait for the client's delayed ACK
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, AgentRuntime> apps;
+
+    private record ServerSession(AgentRuntime app, String userId, String sessionId, long lastUsedMillis) {
+
+        ServerSession usedAt(long now) {
+            return new ServerSession(app, userId, sessionId, now);
+        }
+    }
+
+    // App and session id -> its owner, and the sessions that currently have a message in flight
+    private final Map<String, ServerSession> sessions = new ConcurrentHashMap<>();
+    private final Set<String> busySessions = ConcurrentHashMap.newKeySet();
+    private final long idleMillis;
+    private final long sweepMillis;
+    private final AtomicLong nextSweep;
+
+    public AgentServer(int port, int threads, Map<String, AgentRuntime> apps) throws IOException {
+        this(port, threads, apps, Duration.ofMinutes(Long.getLong("agents.server.sessionIdleMinutes", 24 * 60)));
+    }
+
+    public AgentServer(int port, int threads, Map<String, AgentRuntime> apps, Duration idleTimeout) throws IOException {
+        this.apps = Map.copyOf(apps);
+        this.idleMillis = idleTimeout.toMillis();
+        this.sweepMillis = Math.max(1, Math.min(idleMillis / 2, 60_000));
+        this.nextSweep = new AtomicLong(System.currentTimeMillis() + sweepMillis);
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.server = HttpServer.create(new InetSocketAddress(port), 1024);
+        this.server.createContext("/", this::handle);
+        this.server.setExecutor(executor);
+    }
+
+    /**
+     * One runtime per agent tree of {@link AgentRegistry}, each built when its app gets its first request.
+     */
+    public static Map<String, AgentRuntime> defaultApps() {
+        Map<String, AgentRuntime> apps = new LinkedHashMap<>();
+        apps.put(AgentRegistry.TEAM, new LazyRuntime(AgentTeam::newTeamRunner));
+        apps.put(AgentRegistry.TECHNICAL, new LazyRuntime(() -> new CachingRuntime(
+            AgentRuntime.of(new Runner(
+                TechnicalSpecialist.rootAgent(), "technical agent", new InMemoryArtifactService(), PersistentSessionService.fromSystemProperties())),
+            AnswerCache.forTechnicalDocs(),
+            TechnicalSpecialist.AGENT_NAME)));
+        apps.put(AgentRegistry.BILLING, new LazyRuntime(() -> AgentRuntime.of(new Runner(
+            BillingSpecialist.rootAgent(), "Billing specialist", new InMemoryArtifactService(), PersistentSessionService.fromSystemProperties()))));
+        apps.put(AgentRegistry.SIMPLE, new LazyRuntime(() -> AgentRuntime.of(new InMemoryRunner(SimpleAgent.rootAgent()))));
+        apps.replaceAll((name, runtime) -> Telemetry.runtime(Resilience.shared().runtime(TenantRuntime.wrap(runtime), null)));
+        return apps;
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            sweepIfDue(System.currentTimeMillis());
+            // "/team/sessions/abc/messages" -> ["", "team", "sessions", "abc", "messages"]
+            String[] path = exchange.getRequestURI().getPath().split("/");
+            AgentRuntime app = path.length > 2 ? apps.get(path[1]) : null;
+            if (app != null && path.length == 3 && "stats".equals(path[2]) && "GET".equals(exchange.getRequestMethod())) {
+                respond(exchange, 200, Json.write(app.stats()));
+                return;
+            }
+            if (app == null || !"sessions".equals(path[2])) {
+                respond(exchange, 404, "{\"error\": \"Unknown path\"}");
+                return;
+            }
+
+            String method = exchange.getRequestMethod();
+            if (path.length == 3 && "POST".equals(method)) {
+                createSession(exchange, app);
+            } else if (path.length == 5 && "messages".equals(path[4]) && "POST".equals(method)) {
+                sendMessage(exchange, app, path[3]);
+            } else if (path.length == 4 && "DELETE".equals(method)) {
+                closeSession(exchange, app, path[3]);
+            } else {
+                respond(exchange, 405, "{\"error\": \"Method not allowed\"}");
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Request failed: " + e.getMessage());
+            respond(exchange, 500, "{\"error\": " + Json.quote(String.valueOf(e.getMessage())) + "}");
+        }
+    }
+
+    private void createSession(HttpExchange exchange, AgentRuntime app) throws IOException {
+        String userId = queryParameter(exchange, "user", "user");
+        if (!USER_ID.matcher(userId).matches()) {
+            respond(exchange, 400, "{\"error\": \"Invalid user id\"}");
+            return;
+        }
+        String tenant = queryParameter(exchange, "tenant", Tenants.DEFAULT);
+        if (!Tenants.shared().contains(tenant)) {
+            respond(exchange, 404, "{\"error\": \"Unknown tenant\"}");
+            return;
+        }
+        Session session = TenantRuntime.createSession(app, tenant, userId);
+        sessions.put(key(app, session.id()), new ServerSession(app, userId, session.id(), System.currentTimeMillis()));
+        respond(exchange, 201, "{\"sessionId\": " + Json.quote(session.id()) + "}");
+    }
+
+    private void closeSession(HttpExchange exchange, AgentRuntime app, String sessionId) throws IOException {
+        ServerSession session = sessions.remove(key(app, sessionId));
+        if (session == null) {
+            respond(exchange, 404, "{\"error\": \"Unknown session\"}");
+            return;
+        }
+        app.closeSession(session.userId(), sessionId);
+        respond(exchange, 204, null);
+    }
+
+    private void sendMessage(HttpExchange exchange, AgentRuntime app, String sessionId) throws IOException {
+        String key = key(app, sessionId);
+        ServerSession session = sessions.get(key);
+        if (session == null) {
+            respond(exchange, 404, "{\"error\": \"Unknown session\"}");
+            return;
+        }
+        if (!busySessions.add(key)) {
+            respond(exchange, 409, "{\"error\": \"A message is already being processed for this session\"}");
+            return;
+        }
+        String userId = session.userId();
+        // Marks it used, unless the idle sweep ended it after the lookup above
+        if (!sessions.replace(key, session, session.usedAt(System.currentTimeMillis()))) {
+            busySessions.remove(key);
+            respond(exchange, 404, "{\"error\": \"Unknown session\"}");
+            return;
+        }
+
+        // Once the run is subscribed, finish() frees the session; a client that goes away before that must not leave it busy
+        boolean running = false;
+        try {
+            String text = new String(exchange.getRequestBody().readAllBytes(), UTF_8);
+            String stream = queryParameter(exchange, "stream", "");
+            RunConfig runConfig = stream.isEmpty() ? AgentRuntime.defaultRunConfig()
+                : Boolean.parseBoolean(stream) ? AgentRuntime.STREAMING : AgentRuntime.WHOLE_EVENTS;
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+
+            Content userMsg = Content.fromParts(Part.fromText(text));
+            running = true;
+            try {
+                // Admitted model calls start on the subscribing thread, and the Gemini client blocks it until it answers
+                app.runAsync(userId, sessionId, userMsg, runConfig).subscribeOn(Schedulers.io()).subscribe(
+                    event -> writeEvent(out, "message", toJson(event)),
+                    error -> finish(exchange, key, out, "error",
+                        "{\"error\": " + Json.quote(String.valueOf(error.getMessage())) + "}"),
+                    () -> finish(exchange, key, out, "done", "{}")
+                );
+            } catch (RuntimeException e) {
+                finish(exchange, key, out, "error", "{\"error\": " + Json.quote(String.valueOf(e.getMessage())) + "}");
+            }
+        } finally {
+            if (!running) {
+                busySessions.remove(key);
+            }
+        }
+    }
+
+    private void finish(HttpExchange exchange, String key, OutputStream out, String type, String json) {
+        try {
+            writeEvent(out, type, json);
+        } catch (UncheckedIOException ignored) {
+            // The client has already gone away
+        } finally {
+            // The idle time counts from the end of the turn, so a long turn does not bring the session closer to it
+            sessions.computeIfPresent(key, (k, session) -> session.usedAt(System.currentTimeMillis()));
+            busySessions.remove(key);
+            exchange.close();
+        }
+    }
+
+    // Ends idle sessions at most once per sweep interval, on whichever request comes first
+    private void sweepIfDue(long now) {
+        long due = nextSweep.get();
+        if (now < due || !nextSweep.compareAndSet(due, now + sweepMillis)) {
+            return;
+        }
+        long cutoff = now - idleMillis;
+        sessions.forEach((key, session) -> {
+            if (session.lastUsedMillis() < cutoff && !busySessions.contains(key) && sessions.remove(key, session)) {
+                try {
+                    session.app().closeSession(session.userId(), session.sessionId());
+                } catch (RuntimeException e) {
+                    System.err.println("Could not end idle session " + key + ": " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    // A failed write cancels the subscription, which stops the run for a disconnected client
+    private static void writeEvent(OutputStream out, String type, String json) {
+        try {
+            out.write(("event: " + type + "\ndata: " + json + "\n\n").getBytes(UTF_8));
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static String toJson(Event event) {
+        StringBuilder json = new StringBuilder("{\"author\": ");
+        Json.appendQuoted(json, event.author());
+        json.append(", \"partial\": ").append(event.partial().orElse(false));
+
+        json.append(", \"functionCalls\": [");
+        String separator = "";
+        for (FunctionCall call : event.functionCalls()) {
+            json.append(separator);
+            Json.appendQuoted(json, call.name().orElse(""));
+            separator = ", ";
+        }
+        json.append("], \"functionResponses\": [");
+        separator = "";
+        for (FunctionResponse response : event.functionResponses()) {
+            json.append(separator);
+            Json.appendQuoted(json, response.name().orElse(""));
+            separator = ", ";
+        }
+        json.append("]");
+
+        if (event.functionCalls().isEmpty() && event.functionResponses().isEmpty()) {
+            json.append(", \"text\": ");
+            Json.appendQuoted(json, event.partial().orElse(false) ? EventPrinter.rawText(event) : event.stringifyContent());
+        }
+        return json.append("}").toString();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        if (json == null) {
+            // Without a response body the request is not read to its end, and the server would close the connection
+            exchange.getRequestBody().close();
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        byte[] body = json.getBytes(UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String queryParameter(HttpExchange exchange, String name, String defaultValue) {
+        String query = exchange.getRequestURI().getQuery();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                String[] parts = pair.split("=", 2);
+                if (parts.length == 2 && URLDecoder.decode(parts[0], UTF_8).equals(name) && !parts[1].isEmpty()) {
+                    return URLDecoder.decode(parts[1], UTF_8);
+                }
+            }
+        }
+        return defaultValue;
+    }
+
+    private static String key(AgentRuntime app, String sessionId) {
+        return app.appName() + "/" + sessionId;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = 8080;
+        int threads = Runtime.getRuntime().availableProcessors() * 2;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--port" -> port = Integer.parseInt(args[i + 1]);
+                case "--threads" -> threads = Integer.parseInt(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        AgentServer server = new AgentServer(port, threads, defaultApps());
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        server.start();
+        System.out.println("Agent server listening on port " + server.port() + ", apps: " + server.apps.keySet());
+    }
+}
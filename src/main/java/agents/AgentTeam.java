@@ -2,28 +2,47 @@ package agents;
 
 import com.google.adk.agents.BaseAgent;
 import com.google.adk.agents.LlmAgent;
+import com.google.adk.models.BaseLlm;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import java.util.Scanner;
 import io.reactivex.rxjava3.core.Flowable;
 
 import com.google.adk.events.Event;
-import com.google.adk.runner.Runner;
 import com.google.adk.sessions.Session;
 import com.google.genai.types.Content;
 import com.google.genai.types.Part;
-import com.google.adk.tools.FunctionTool;
 import com.google.adk.artifacts.InMemoryArtifactService;
-import com.google.adk.sessions.InMemorySessionService;
 
 public class AgentTeam {
 
-    static BaseAgent technicalAgent = new TechnicalSpecialist().ROOT_AGENT;
-    static BaseAgent billingAgent = new BillingSpecialist().ROOT_AGENT;
+    static final String APP_NAME = "agent team";
 
-    public static final BaseAgent ROOT_AGENT = buildRootAgent();
+    public static final String AGENT_NAME = "agent team";
+
+    /**
+     * The shared coordinator built with the configured model, see {@link AgentRegistry}.
+     */
+    public static BaseAgent rootAgent() {
+        return AgentRegistry.agent(AgentRegistry.TEAM);
+    }
+
+    /**
+     * ROOT_AGENT for the ADK dev UI, which reads that field from every compiled class. Kept in a holder so that
+     * only reading it builds the coordinator (and with it both specialists), not loading AgentTeam.
+     */
+    public static final class Root {
+        public static final BaseAgent ROOT_AGENT = rootAgent();
+
+        private Root() {
+        }
+    }
 
     public static BaseAgent buildRootAgent() {
+        return buildRootAgent(Models.configured(), TechnicalSpecialist.rootAgent(), BillingSpecialist.rootAgent());
+    }
+
+    public static BaseAgent buildRootAgent(BaseLlm model, BaseAgent technicalAgent, BaseAgent billingAgent) {
 
         if (technicalAgent == null || billingAgent == null) {
             System.err.println("❌ Cannot create root agent because one or more sub-agents failed to initialize.");
@@ -31,8 +50,10 @@ public class AgentTeam {
         }
 
         return LlmAgent.builder()
-            .name("agent team")
-            .model("gemini-2.5-flash")
+            .name(AGENT_NAME)
+            .model(Resilience.shared().model(
+                ModelScheduler.shared().schedule(
+                    ContextBudget.shared().model(Telemetry.model(model, AGENT_NAME), "team"), ModelScheduler.Lane.ROUTING)))
             .description("The main coordinator agent. Delegates requests to specialists.")
             .instruction(
                   "You are an agent coordinating two specialists. Your primary responsibility is to delegate requests to specialists. "
@@ -47,19 +68,43 @@ public class AgentTeam {
             .build();
     }
 
-    public static void main(String[] args) {
-        Runner runner = new Runner(
-            ROOT_AGENT,
-            "agent team",
+    public static TeamRunner newTeamRunner() {
+        return newTeamRunner(rootAgent(), TechnicalSpecialist.rootAgent(), BillingSpecialist.rootAgent());
+    }
+
+    /**
+     * Builds a separate agent tree that uses the given model, e.g. a scripted model for load tests.
+     */
+    public static TeamRunner newTeamRunner(BaseLlm model) {
+        BaseAgent technical = TechnicalSpecialist.initAgent(model);
+        BaseAgent billing = BillingSpecialist.initAgent(model);
+        return newTeamRunner(buildRootAgent(model, technical, billing), technical, billing);
+    }
+
+    private static TeamRunner newTeamRunner(BaseAgent coordinator, BaseAgent technicalAgent, BaseAgent billingAgent) {
+        return new TeamRunner(
+            APP_NAME,
+            coordinator,
+            technicalAgent,
+            billingAgent,
             new InMemoryArtifactService(),
-            new InMemorySessionService()
+            PersistentSessionService.fromSystemProperties(),
+            FastPathRouter.withDefaultExamples(),
+            AnswerCache.forTechnicalDocs()
         );
+    }
+
+    public static void main(String[] args) {
+        TeamRunner team = newTeamRunner();
+        // A turn that hangs on the model ends with a degraded answer instead of blocking the prompt
+        AgentRuntime runner = Telemetry.runtime(Resilience.shared().runtime(team, team.answerCache()));
 
         Session session = runner
                 .sessionService()
                 .createSession(runner.appName(), "user")
                 .blockingGet();
 
+        EventPrinter printer = new EventPrinter(System.out);
         try (Scanner scanner = new Scanner(System.in, UTF_8)) {
             while (true) {
                 System.out.print("\nYou > ");
@@ -70,15 +115,25 @@ public class AgentTeam {
 
                 Content userMsg = Content.fromParts(Part.fromText(userInput));
                 Flowable<Event> events =
-                    runner.runAsync(session.userId(), session.id(), userMsg);
+                    runner.runAsync(session.userId(), session.id(), userMsg, AgentRuntime.defaultRunConfig());
 
                 System.out.print("\nAgent > ");
-                events.blockingForEach(event -> {
-                    if (event.functionCalls().isEmpty() && event.functionResponses().isEmpty()) {
-                        System.out.println(event.stringifyContent());
-                    }
-                });
+                printer.printTurn(events);
             }
         }
+
+        System.out.println(printer.summary());
+        System.out.println("Routing stats: " + team.router().stats());
+        System.out.println("Answer cache stats: " + team.answerCache().stats());
+        System.out.println("Ticket stats: " + TicketOpener.stats());
+        System.out.println("Payment method update stats: " + PaymentMethod.stats());
+        if (ContextBudget.shared().enabled()) {
+            System.out.println("Context budget stats: " + ContextBudget.shared().stats());
+        }
+        System.out.println("Resilience stats: " + Resilience.shared().stats());
+        PrefixCache.shared().ifPresent(cache -> System.out.println("Prompt prefix cache stats: " + cache.stats()));
+        if (Telemetry.enabled()) {
+            Telemetry.metrics().snapshot().forEach((key, stat) -> System.out.println(key + " " + stat));
+        }
     }
 }
@@ -0,0 +1,210 @@
+package agents;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Cache of final technical answers, keyed on the normalized question.
+ *
+ * A question is normalized to its sorted set of index terms, so "Why are my files corrupted?"
+ * and "why are files corrupted" share an entry. When there is no exact match, cached questions
+ * whose term sets are similar enough (Jaccard) are used instead.
+ *
+ * Entries expire after a TTL, the least recently used entry is evicted when the cache is full,
+ * and every entry remembers the version of the documents it was answered from: when the
+ * document content hash changes, old entries are dropped on lookup.
+ */
+public class AnswerCache {
+
+    /** A cached answer together with the documentation sections it was based on. */
+    public record Answer(String text, List<Object> supportingChunks) {}
+
+    private record Entry(Set<String> terms, Answer answer, String docsVersion, long storedAt, long latencyNanos) {}
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final double minSimilarity;
+    private final Supplier<String> docsVersion;
+    private final LongSupplier clock;
+
+    // Access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Set<String>> keysByTerm = new HashMap<>();
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+    private long invalidations;
+    private long savedNanos;
+
+    public AnswerCache(int maxEntries, Duration ttl, double minSimilarity, Supplier<String> docsVersion) {
+        this(maxEntries, ttl, minSimilarity, docsVersion, System::nanoTime);
+    }
+
+    AnswerCache(int maxEntries, Duration ttl, double minSimilarity, Supplier<String> docsVersion, LongSupplier clock) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+        this.minSimilarity = minSimilarity;
+        this.docsVersion = docsVersion;
+        this.clock = clock;
+    }
+
+    /**
+     * Cache for the technical specialist, invalidated whenever the Nebula documents change.
+     * Answers are not tenant specific, so the cache keeps nothing when tenants are configured.
+     */
+    public static AnswerCache forTechnicalDocs() {
+        int maxEntries = Tenants.shared().configured() ? 0 : 10_000;
+        return new AnswerCache(maxEntries, Duration.ofHours(1), 0.8, TechnicalSpecialist::docsVersion);
+    }
+
+    public synchronized Answer get(String question) {
+        Set<String> terms = normalize(question);
+        if (terms.isEmpty()) {
+            misses++;
+            return null;
+        }
+
+        String key = String.join(" ", terms);
+        Entry entry = live(key);
+        if (entry == null) {
+            entry = mostSimilar(terms);
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        savedNanos += entry.latencyNanos();
+        return entry.answer();
+    }
+
+    /**
+     * Stores the answer to a question. latencyNanos is how long producing the answer took,
+     * and is counted as saved on every later hit.
+     */
+    public synchronized void put(String question, Answer answer, long latencyNanos) {
+        Set<String> terms = normalize(question);
+        if (terms.isEmpty()) {
+            return;
+        }
+        String key = String.join(" ", terms);
+        remove(key);
+        entries.put(key, new Entry(terms, answer, docsVersion.get(), clock.getAsLong(), latencyNanos));
+        for (String term : terms) {
+            keysByTerm.computeIfAbsent(term, t -> new HashSet<>()).add(key);
+        }
+
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && eldest.hasNext()) {
+            String evicted = eldest.next().getKey();
+            eldest.remove();
+            unindex(evicted);
+            evictions++;
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long lookups = hits + misses;
+        stats.put("entries", entries.size());
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("hitRatio", lookups == 0 ? 0.0 : (double) hits / lookups);
+        stats.put("evictions", evictions);
+        stats.put("expirations", expirations);
+        stats.put("invalidations", invalidations);
+        stats.put("latencySavedMs", savedNanos / 1_000_000);
+        return stats;
+    }
+
+    // Returns the entry for a key, dropping it if it has expired or the documents changed
+    private Entry live(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (clock.getAsLong() - entry.storedAt() > ttlNanos) {
+            remove(key);
+            expirations++;
+            return null;
+        }
+        if (!entry.docsVersion().equals(docsVersion.get())) {
+            remove(key);
+            invalidations++;
+            return null;
+        }
+        return entry;
+    }
+
+    // Tries the matches above the threshold from the most similar down, skipping expired or stale ones
+    private Entry mostSimilar(Set<String> terms) {
+        Set<String> candidates = new HashSet<>();
+        for (String term : terms) {
+            candidates.addAll(keysByTerm.getOrDefault(term, Set.of()));
+        }
+
+        List<Map.Entry<String, Double>> matches = new ArrayList<>();
+        for (String candidate : candidates) {
+            double similarity = jaccard(terms, entries.get(candidate).terms());
+            if (similarity >= minSimilarity) {
+                matches.add(Map.entry(candidate, similarity));
+            }
+        }
+        matches.sort(Map.Entry.<String, Double>comparingByValue().reversed());
+        for (Map.Entry<String, Double> match : matches) {
+            Entry entry = live(match.getKey());
+            if (entry != null) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private void remove(String key) {
+        if (entries.remove(key) != null) {
+            unindex(key);
+        }
+    }
+
+    private void unindex(String key) {
+        for (String term : key.split(" ")) {
+            Set<String> keys = keysByTerm.get(term);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    keysByTerm.remove(term);
+                }
+            }
+        }
+    }
+
+    static Set<String> normalize(String question) {
+        return new TreeSet<>(DocIndex.tokenize(question));
+    }
+
+    private static double jaccard(Set<String> a, Set<String> b) {
+        int common = 0;
+        for (String term : a) {
+            if (b.contains(term)) {
+                common++;
+            }
+        }
+        return (double) common / (a.size() + b.size() - common);
+    }
+}
@@ -0,0 +1,441 @@
+package agents;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.adk.events.Event;
+import com.google.adk.sessions.Session;
+import com.google.genai.types.Content;
+import com.google.genai.types.FunctionCall;
+import com.google.genai.types.FunctionResponse;
+import com.google.genai.types.Part;
+
+/**
+ * Replays a JSONL corpus of scripted conversations through the agent team, several conversations at once,
+ * each in its own session, and writes one JSONL transcript line per conversation.
+ *
+ * An input line is {"id": "refund-1", "user": "1234", "turns": ["I want to get a refund", "My ID is 1234, ..."]};
+ * "user" is optional. A transcript line holds, per turn, the reply, the agent that took the turn and the agents
+ * it passed through, the tool calls with their status, the latency, the number of model responses and their
+ * estimated tokens (the history sent with each model response and the response itself, at four characters per
+ * token; instructions and tool declarations are not counted). A conversation stops at its first failed turn.
+ *
+ * The corpus is read as it is replayed and transcripts are written as conversations finish, so memory holds
+ * only the conversations in flight, the ids already written and fixed size latency histograms. Transcripts are
+ * in completion order. Running again with the same output resumes: conversations already in the output are
+ * skipped, and a line cut off by an interruption is removed first. A summary is written next to the output.
+ *
+ * Run with: mvn exec:java -Dexec.mainClass="agents.BatchEvaluation"
+ *           -Dexec.args="--input conversations.jsonl --output target/evaluation/transcripts.jsonl --concurrency 16"
+ * Without --input the sample corpus in src/main/resources/evaluation/conversations.jsonl is replayed.
+ */
+public class BatchEvaluation {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final TypeReference<LinkedHashMap<String, Object>> MAP = new TypeReference<>() {};
+    private static final long PROGRESS_MILLIS = 10_000;
+
+    private final AgentRuntime runtime;
+    private final BufferedWriter transcripts;
+    private final Metrics metrics = new Metrics();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder turns = new LongAdder();
+
+    BatchEvaluation(AgentRuntime runtime, BufferedWriter transcripts) {
+        this.runtime = runtime;
+        this.transcripts = transcripts;
+    }
+
+    record Conversation(String id, String user, List<String> turns) {}
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path input = null;
+        Path output = Path.of("target/evaluation/transcripts.jsonl");
+        int concurrency = 8;
+        boolean fresh = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--input" -> input = Path.of(args[++i]);
+                case "--output" -> output = Path.of(args[++i]);
+                case "--concurrency" -> concurrency = Integer.parseInt(args[++i]);
+                case "--fresh" -> fresh = true;
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+        if (fresh) {
+            Files.deleteIfExists(output);
+        }
+        Set<String> done = resume(output);
+        if (!done.isEmpty()) {
+            System.out.println("Resuming: " + done.size() + " conversations already in " + output);
+        }
+
+        TeamRunner team = AgentTeam.newTeamRunner();
+        AgentRuntime runtime = Telemetry.runtime(Resilience.shared().runtime(team, team.answerCache()));
+        try (BufferedReader reader = open(input);
+             BufferedWriter writer = Files.newBufferedWriter(output, UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            Map<String, Object> summary = new BatchEvaluation(runtime, writer).run(reader, done, concurrency);
+            Path summaryFile = output.resolveSibling(output.getFileName() + ".summary.json");
+            Files.writeString(summaryFile, Json.write(summary), UTF_8);
+            System.out.println(Json.write(summary));
+            System.out.println("Transcripts: " + output + ", summary: " + summaryFile);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Replays the conversations of the corpus whose ids are not in done, concurrency at a time, and returns the
+     * summary once every transcript is written.
+     */
+    Map<String, Object> run(BufferedReader corpus, Set<String> done, int concurrency) throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "evaluation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Conversations read ahead of the pool; the reader waits for a permit before reading the next line
+        Semaphore inFlight = new Semaphore(concurrency * 2);
+
+        long start = System.nanoTime();
+        long skipped = 0;
+        long invalid = 0;
+        try {
+            long lineNumber = 0;
+            long lastProgress = System.nanoTime();
+            for (String line = corpus.readLine(); line != null; line = corpus.readLine()) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                Conversation conversation = parse(line, lineNumber);
+                if (conversation == null) {
+                    invalid++;
+                    continue;
+                }
+                if (done.contains(conversation.id())) {
+                    skipped++;
+                    continue;
+                }
+                inFlight.acquire();
+                pool.execute(() -> {
+                    try {
+                        replay(conversation);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+                if (System.nanoTime() - lastProgress > TimeUnit.MILLISECONDS.toNanos(PROGRESS_MILLIS)) {
+                    progress(start);
+                    lastProgress = System.nanoTime();
+                }
+            }
+            pool.shutdown();
+            while (!pool.awaitTermination(PROGRESS_MILLIS, TimeUnit.MILLISECONDS)) {
+                progress(start);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return summary(start, skipped, invalid);
+    }
+
+    /**
+     * Runs every turn of the conversation in a new session and writes its transcript.
+     */
+    void replay(Conversation conversation) {
+        long start = System.nanoTime();
+        long startMillis = System.currentTimeMillis();
+        Map<String, Object> transcript = new LinkedHashMap<>();
+        transcript.put("id", conversation.id());
+        List<Map<String, Object>> turnRecords = new ArrayList<>();
+        long promptTokens = 0;
+        long responseTokens = 0;
+        String error = null;
+
+        Session session = null;
+        try {
+            session = runtime.sessionService().createSession(runtime.appName(), conversation.user()).blockingGet();
+            long[] historyChars = {0};
+            for (String text : conversation.turns()) {
+                Turn turn = new Turn(text, historyChars);
+                turnRecords.add(turn.record);
+                try {
+                    runtime.runAsync(conversation.user(), session.id(), Content.fromParts(Part.fromText(text)))
+                        .blockingForEach(turn::onEvent);
+                } catch (RuntimeException e) {
+                    turn.record.put("error", String.valueOf(e.getMessage()));
+                    error = "Turn " + turnRecords.size() + " failed: " + e.getMessage();
+                }
+                turn.finish();
+                promptTokens += turn.promptTokens();
+                responseTokens += turn.responseTokens();
+                turns.increment();
+                metrics.record(new Span(Span.Kind.TURN, "turn", turn.startMillis, turn.durationNanos, turn.firstText,
+                    turn.promptTokens(), turn.responseTokens(), -1, error != null));
+                if (error != null) {
+                    break;
+                }
+            }
+        } catch (RuntimeException e) {
+            error = String.valueOf(e.getMessage());
+        } finally {
+            if (session != null) {
+                try {
+                    runtime.closeSession(conversation.user(), session.id());
+                } catch (RuntimeException e) {
+                    System.err.println("Cannot close session of " + conversation.id() + ": " + e.getMessage());
+                }
+            }
+        }
+
+        long duration = System.nanoTime() - start;
+        transcript.put("status", error == null ? "ok" : "error");
+        if (error != null) {
+            transcript.put("error", error);
+            failed.increment();
+        }
+        transcript.put("latencyMs", duration / 1_000_000);
+        transcript.put("promptTokens", promptTokens);
+        transcript.put("responseTokens", responseTokens);
+        transcript.put("turns", turnRecords);
+        metrics.record(new Span(Span.Kind.TURN, "conversation", startMillis, duration, -1, promptTokens, responseTokens,
+            -1, error != null));
+        write(Json.write(transcript));
+        completed.increment();
+    }
+
+    // One user turn: collects the events of the turn into its transcript record
+    private static final class Turn {
+        final Map<String, Object> record = new LinkedHashMap<>();
+        final long startMillis = System.currentTimeMillis();
+        final long start = System.nanoTime();
+        final long[] historyChars;
+        final List<String> agents = new ArrayList<>();
+        final List<Map<String, Object>> toolCalls = new ArrayList<>();
+        String reply = "";
+        long firstText = -1;
+        long durationNanos;
+        long modelResponses;
+        long promptChars;
+        long responseChars;
+
+        Turn(String text, long[] historyChars) {
+            this.historyChars = historyChars;
+            record.put("user", text);
+            historyChars[0] += text.length();
+        }
+
+        void onEvent(Event event) {
+            if (firstText < 0 && EventPrinter.hasText(event)) {
+                firstText = System.nanoTime() - start;
+            }
+            // A streamed reply ends with a complete event that repeats its partial events
+            if (event.partial().orElse(false)) {
+                return;
+            }
+            String author = event.author();
+            if (!"user".equals(author) && (agents.isEmpty() || !agents.get(agents.size() - 1).equals(author))) {
+                agents.add(author);
+            }
+            long chars = event.content().map(InstrumentedLlm::chars).orElse(0L);
+            if (!event.functionResponses().isEmpty()) {
+                for (FunctionResponse response : event.functionResponses()) {
+                    matchResponse(response);
+                }
+            } else if (!"user".equals(author) && !ResilientRuntime.AUTHOR.equals(author) && event.content().isPresent()) {
+                // Each complete agent event is one model response, sent the history so far
+                modelResponses++;
+                promptChars += historyChars[0];
+                responseChars += chars;
+            }
+            historyChars[0] += chars;
+            for (FunctionCall call : event.functionCalls()) {
+                Map<String, Object> toolCall = new LinkedHashMap<>();
+                toolCall.put("name", call.name().orElse(""));
+                toolCall.put("args", call.args().orElse(Map.of()));
+                toolCalls.add(toolCall);
+            }
+            if (EventPrinter.hasText(event)) {
+                reply = EventPrinter.rawText(event);
+            }
+        }
+
+        // The status of the earliest call of that tool that has no result yet
+        private void matchResponse(FunctionResponse response) {
+            String name = response.name().orElse("");
+            for (Map<String, Object> toolCall : toolCalls) {
+                if (name.equals(toolCall.get("name")) && !toolCall.containsKey("status")) {
+                    Object status = response.response().orElse(Map.of()).get("status");
+                    toolCall.put("status", status == null ? "ok" : String.valueOf(status));
+                    return;
+                }
+            }
+        }
+
+        long promptTokens() {
+            return Telemetry.estimateTokens(promptChars);
+        }
+
+        long responseTokens() {
+            return Telemetry.estimateTokens(responseChars);
+        }
+
+        void finish() {
+            durationNanos = System.nanoTime() - start;
+            record.put("reply", reply);
+            record.put("route", agents.isEmpty() ? "" : agents.get(0));
+            record.put("agents", agents);
+            record.put("toolCalls", toolCalls);
+            record.put("latencyMs", durationNanos / 1_000_000);
+            record.put("firstTextMs", firstText < 0 ? -1 : firstText / 1_000_000);
+            record.put("modelResponses", modelResponses);
+            record.put("promptTokens", promptTokens());
+            record.put("responseTokens", responseTokens());
+            record.put("degraded", agents.contains(ResilientRuntime.AUTHOR));
+        }
+    }
+
+    private void write(String line) {
+        synchronized (transcripts) {
+            try {
+                transcripts.write(line);
+                transcripts.newLine();
+                // Whole lines reach the file as they are written, so an interrupted run loses at most the last one
+                transcripts.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void progress(long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%,d conversations (%,d failed), %,d turns, %.1f conversations/s%n",
+            completed.sum(), failed.sum(), turns.sum(), completed.sum() / seconds);
+    }
+
+    private Map<String, Object> summary(long start, long skipped, long invalid) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("conversations", completed.sum());
+        summary.put("failed", failed.sum());
+        summary.put("skipped", skipped);
+        summary.put("invalid", invalid);
+        summary.put("turns", turns.sum());
+        summary.put("seconds", Math.round(seconds));
+        summary.put("conversationsPerSecond", seconds == 0 ? 0 : completed.sum() / seconds);
+        summary.put("latency", metrics.snapshot());
+        summary.put("runtime", runtime.stats());
+        return summary;
+    }
+
+    static Conversation parse(String line, long lineNumber) {
+        try {
+            Map<String, Object> fields = MAPPER.readValue(line, MAP);
+            Object id = fields.getOrDefault("id", "line-" + lineNumber);
+            Object user = fields.getOrDefault("user", "evaluation");
+            List<String> turns = new ArrayList<>();
+            if (fields.get("turns") instanceof List<?> list) {
+                for (Object turn : list) {
+                    Object text = turn instanceof Map<?, ?> map ? map.get("text") : turn;
+                    if (text != null) {
+                        turns.add(String.valueOf(text));
+                    }
+                }
+            }
+            if (turns.isEmpty()) {
+                System.err.println("Line " + lineNumber + " has no turns, skipped");
+                return null;
+            }
+            return new Conversation(String.valueOf(id), String.valueOf(user), turns);
+        } catch (JsonProcessingException e) {
+            System.err.println("Line " + lineNumber + " is not valid JSON, skipped: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Ids of the conversations already in the output. A last line without its newline was cut off by an
+     * interruption and is removed, so its conversation runs again.
+     */
+    static Set<String> resume(Path output) throws IOException {
+        Set<String> done = new HashSet<>();
+        if (!Files.exists(output)) {
+            return done;
+        }
+        long complete = 0;
+        try (InputStream in = Files.newInputStream(output)) {
+            byte[] buffer = new byte[64 * 1024];
+            long position = 0;
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                for (int i = 0; i < n; i++) {
+                    if (buffer[i] == '\n') {
+                        complete = position + i + 1;
+                    }
+                }
+                position += n;
+            }
+            if (complete < position) {
+                System.err.println("Removing an incomplete last transcript from " + output);
+                try (FileChannel channel = FileChannel.open(output, StandardOpenOption.WRITE)) {
+                    channel.truncate(complete);
+                }
+            }
+        }
+        try (BufferedReader reader = Files.newBufferedReader(output, UTF_8)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (!line.isBlank()) {
+                    try {
+                        Object id = MAPPER.readValue(line, MAP).get("id");
+                        if (id != null) {
+                            done.add(String.valueOf(id));
+                        }
+                    } catch (JsonProcessingException e) {
+                        System.err.println("Unreadable transcript line in " + output + ", its conversation runs again");
+                    }
+                }
+            }
+        }
+        return done;
+    }
+
+    private static BufferedReader open(Path input) throws IOException {
+        if (input != null) {
+            return Files.newBufferedReader(input, UTF_8);
+        }
+        InputStream in = BatchEvaluation.class.getResourceAsStream("/evaluation/conversations.jsonl");
+        if (in == null) {
+            throw new IOException("No --input given and the sample corpus is missing");
+        }
+        return new BufferedReader(new InputStreamReader(in, UTF_8));
+    }
+}
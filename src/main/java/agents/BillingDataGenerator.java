@@ -0,0 +1,101 @@
+package agents;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Writes a synthetic {@link BillingStore} file, e.g. 10 million transactions for 1 million users.
+ * User ids look like "U0000042-C". The data is deterministic for a given seed.
+ *
+ * Run with: mvn exec:java -Dexec.mainClass="agents.BillingDataGenerator"
+ *           -Dexec.args="--out billing.bin --users 1000000 --transactions 10000000"
+ */
+public class BillingDataGenerator {
+
+    static final List<String> DESCRIPTIONS = List.of(
+        "Subscription Renewal",
+        "Subscription Renewal (Overdue)",
+        "One-time service fee",
+        "Storage add-on",
+        "Priority support",
+        "Plan upgrade (prorated)",
+        "Refund"
+    );
+
+    private static final LocalDate LAST_DAY = LocalDate.of(2025, 11, 1);
+
+    public static void main(String[] args) throws IOException {
+        Path out = Path.of("billing.bin");
+        int users = 1_000_000;
+        int transactions = 10_000_000;
+        long seed = 42;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--out" -> out = Path.of(args[i + 1]);
+                case "--users" -> users = Integer.parseInt(args[i + 1]);
+                case "--transactions" -> transactions = Integer.parseInt(args[i + 1]);
+                case "--seed" -> seed = Long.parseLong(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        long start = System.nanoTime();
+        int written = generate(out, users, transactions, seed);
+        System.out.printf("Wrote %,d transactions for %,d users to %s in %.1f s%n",
+            written, users, out, (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Writes the store and returns the number of transactions. Each user gets a random number of
+     * transactions averaging transactions / users, so the total is close to the requested count.
+     */
+    public static int generate(Path out, int users, int transactions, long seed) throws IOException {
+        // First pass: decide how many transactions each user has, so the column sizes are known
+        int average = Math.max(1, transactions / users);
+        int[] counts = new int[users];
+        SplittableRandom random = new SplittableRandom(seed);
+        long total = 0;
+        for (int u = 0; u < users; u++) {
+            counts[u] = 1 + random.nextInt(2 * average - 1);
+            total += counts[u];
+        }
+
+        BillingStore.Layout layout = new BillingStore.Layout(users, Math.toIntExact(total));
+        long size = layout.size(DESCRIPTIONS);
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The store would be larger than 2 GB, generate fewer transactions.");
+        }
+
+        try (FileChannel channel = FileChannel.open(out,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            BillingStore.Writer writer = new BillingStore.Writer(buffer, layout, DESCRIPTIONS);
+
+            // Second pass: ids are zero padded so numeric order is also byte order
+            int next = 0;
+            for (int u = 0; u < users; u++) {
+                writer.user(u, String.format("U%07d-%c", u, (char) ('A' + u % 26)), next, counts[u]);
+                LocalDate date = LAST_DAY.minusDays(random.nextInt(30));
+                for (int t = 0; t < counts[u]; t++) {
+                    int description = random.nextInt(DESCRIPTIONS.size());
+                    long cents = 500 + random.nextInt(20_000);
+                    BillingStore.Status status = t == 0 && random.nextInt(10) == 0
+                        ? BillingStore.Status.PENDING
+                        : description == DESCRIPTIONS.size() - 1 ? BillingStore.Status.REFUNDED : BillingStore.Status.PAID;
+                    writer.transaction(next++, date, cents, status, description);
+                    date = date.minusDays(1 + random.nextInt(45));
+                }
+            }
+            writer.finish();
+            buffer.force();
+        }
+        return layout.transactionCount();
+    }
+}
@@ -1,96 +1,160 @@
 package agents;
 
 import com.google.adk.tools.Annotations.Schema;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.HashMap;
-import java.util.Arrays;
+import java.util.Optional;
 
 /**
  * Provides access to a user's billing and payment history.
  * This class is designed to be registered as a tool for an ADK agent.
+ *
+ * Transactions come from a {@link BillingStore}. By default that is the small mock data set below;
+ * start the JVM with -Dagents.billing.store=path/to/store.bin to use a store file written by
+ * {@link BillingDataGenerator} instead.
  */
 public class BillingHistory {
 
-    // Helper class to represent a single billing transaction
-    private static class Transaction {
-        String date;
-        String description;
-        double amount;
-        String status;
-
-        public Transaction(String date, String description, double amount, String status) {
-            this.date = date;
-            this.description = description;
-            this.amount = amount;
-            this.status = status;
+    static final int PAGE_SIZE = 20;
+
+    private static final ToolResult.Shape RESPONSE = ToolResult.Shape.builder()
+        .value("userId").value("transactions").value("summary").value("accountStatus").value("message").value("nextCursor")
+        .build();
+    private static final ToolResult.Shape TRANSACTION = ToolResult.Shape.builder()
+        .date("date").value("description").money("amount").value("status")
+        .build();
+    private static final ToolResult.Shape SUMMARY = ToolResult.Shape.builder()
+        .value("matchingTransactions").money("totalPaid").money("outstandingBalance")
+        .build();
+
+    // Loaded on first use, so agents that never look at billing data don't pay for it
+    private static class Store {
+        static final BillingStore INSTANCE = load();
+
+        private static BillingStore load() {
+            String file = System.getProperty("agents.billing.store");
+            return file == null || file.isBlank() ? mockData() : open(Path.of(file));
         }
+    }
+
+    /**
+     * The store the billing tools read: the current tenant's, see {@link Tenants#current()}, or the deployment's.
+     */
+    static BillingStore store() {
+        return Tenants.current().map(Tenants.shared()::billingStore).orElseGet(BillingHistory::defaultStore);
+    }
 
-        // Convert the object to a map, which is safer for LLM consumption
-        public Map<String, Object> toMap() {
-            Map<String, Object> map = new HashMap<>();
-            map.put("date", date);
-            map.put("description", description);
-            map.put("amount", String.format("%.2f", amount)); // Format as string for currency display
-            map.put("status", status);
-            return map;
+    // -Dagents.billing.store, or the mock data
+    static BillingStore defaultStore() {
+        return Store.INSTANCE;
+    }
+
+    static BillingStore open(Path file) {
+        try {
+            return BillingStore.open(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open billing store " + file, e);
         }
     }
 
+    static BillingStore mockData() {
+        Map<String, List<BillingStore.Transaction>> users = new HashMap<>();
+        // Mock data for a user with clean history
+        users.put("1001-A", List.of(
+            transaction("2025-10-27", "Subscription Renewal (27.10-02.11)", 4999, BillingStore.Status.PAID),
+            transaction("2025-10-20", "Subscription Renewal (20.10-26.10)", 4999, BillingStore.Status.PAID),
+            transaction("2025-08-15", "One-time service fee", 1500, BillingStore.Status.PAID)
+        ));
+        // Mock data for a user with an outstanding balance
+        users.put("2002-B", List.of(
+            transaction("2025-11-01", "Subscription Renewal (Overdue)", 4999, BillingStore.Status.PENDING),
+            transaction("2025-10-01", "Subscription Renewal", 4999, BillingStore.Status.PAID)
+        ));
+        return BillingStore.of(users);
+    }
+
+    private static BillingStore.Transaction transaction(String date, String description, long cents, BillingStore.Status status) {
+        return new BillingStore.Transaction(LocalDate.parse(date), description, cents, status);
+    }
+
     /**
-     * Retrieves the complete billing history, including transactions and payment status, for a given user.
-     * * The agent MUST use this tool whenever the user asks about their 'bills', 
+     * Retrieves a page of the billing history, including transactions and payment status, for a given user.
+     * * The agent MUST use this tool whenever the user asks about their 'bills',
      * 'payments', 'account balance', or 'transaction history'.
      * * @param userId The unique identifier for the user whose history is being requested.
-     * @return A map containing the user's ID and a list of transactions, or an error message.
+     * @return A map containing the user's ID, a page of transactions, a summary and the cursor of the next page,
+     *         or an error message.
      */
-    @Schema(description = "Retrieves the complete billing history, including transactions and payment status, for a given user.")
+    @Schema(description = "Retrieves the billing history of a user, newest first, with a summary of the total paid and the outstanding balance. "
+                          + "Returns at most " + PAGE_SIZE + " transactions; if nextCursor is present, call again with it to get more.")
     public static Map<String, Object> billingHistory(
         @Schema(name = "userId", description = "The unique identifier of the user (e.g., email or account number).")
-        String userId) {
-
-        // --- Start Simulation/Mock Data Retrieval ---
-        Map<String, Object> response = new HashMap<>();
-        response.put("userId", userId);
-
-        if (userId.equalsIgnoreCase("1001-A")) {
-            // Mock data for a user with clean history
-            List<Transaction> transactions = Arrays.asList(
-                new Transaction("2025-27-10", "Subscription Renewal (27.10-02.11)", 49.99, "Paid"),
-                new Transaction("2025-20-10", "Subscription Renewal (20.10-26.10)", 49.99, "Paid"),
-                new Transaction("2025-08-15", "One-time service fee", 15.00, "Paid")
-            );
-            
-            // Convert list of objects to list of maps for easy JSON serialization
-            List<Map<String, Object>> transactionMaps = transactions.stream()
-                .map(Transaction::toMap)
-                .collect(java.util.stream.Collectors.toList());
-
-            response.put("transactions", transactionMaps);
-            response.put("accountStatus", "Current");
-
-        } else if (userId.equalsIgnoreCase("2002-B")) {
-             // Mock data for a user with an outstanding balance
-            List<Transaction> transactions = Arrays.asList(
-                new Transaction("2025-11-01", "Subscription Renewal (Overdue)", 49.99, "Pending"),
-                new Transaction("2025-10-01", "Subscription Renewal", 49.99, "Paid")
-            );
-            
-            List<Map<String, Object>> transactionMaps = transactions.stream()
-                .map(Transaction::toMap)
-                .collect(java.util.stream.Collectors.toList());
-
-            response.put("transactions", transactionMaps);
-            response.put("accountStatus", "Balance Due: $49.99");
-            
-        } else {
+        String userId,
+
+        @Schema(name = "fromDate", description = "Earliest transaction date to include, as YYYY-MM-DD. Empty string for no limit.")
+        String fromDate,
+
+        @Schema(name = "toDate", description = "Latest transaction date to include, as YYYY-MM-DD. Empty string for no limit.")
+        String toDate,
+
+        @Schema(name = "status", description = "Only include transactions with this status: Paid, Pending or Refunded. Empty string for all.")
+        String status,
+
+        @Schema(name = "cursor", description = "The nextCursor value of the previous response, or an empty string for the first page.")
+        String cursor) {
+
+        Optional<BillingStore.Page> page;
+        Optional<BillingStore.Page> account;
+        try {
+            LocalDate from = parseDate(fromDate);
+            LocalDate to = parseDate(toDate);
+            BillingStore.Status statusFilter = BillingStore.Status.parse(status);
+            BillingStore store = store();
+            page = store.query(userId, from, to, statusFilter, cursor, PAGE_SIZE);
+
+            // The account status always reflects the whole history, not just the filtered part
+            boolean filtered = from != null || to != null || statusFilter != null;
+            account = filtered ? store.query(userId, null, null, null, null, 0) : page;
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return RESPONSE.of(userId, List.of(), null, "Error", e.getMessage(), null);
+        }
+
+        if (page.isEmpty()) {
             // Handle unknown user
-            response.put("transactions", List.of());
-            response.put("accountStatus", "Error");
-            response.put("message", "User ID not found in the billing system.");
+            return RESPONSE.of(userId, List.of(), null, "Error", "User ID not found in the billing system.", null);
         }
-        
-        // --- End Simulation/Mock Data Retrieval ---
-        return response;
+
+        return pageResult(userId, page.get(), account.get().summary().outstandingCents());
+    }
+
+    // The response for one page; the account's outstanding balance may come from a wider query than the page
+    static ToolResult pageResult(String userId, BillingStore.Page page, long outstanding) {
+        List<BillingStore.Transaction> transactions = page.transactions();
+        ToolResult[] rows = new ToolResult[transactions.size()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = toResult(transactions.get(i));
+        }
+
+        BillingStore.Summary summary = page.summary();
+        ToolResult summaryResult = SUMMARY.of(summary.transactionCount(), summary.totalPaidCents(), summary.outstandingCents());
+
+        return RESPONSE.of(userId, List.of(rows), summaryResult,
+            outstanding > 0 ? "Balance Due: $" + ToolResult.formatCents(outstanding) : "Current", null, page.nextCursor());
+    }
+
+    // Amounts stay in cents and are formatted as currency strings when the result is written
+    private static ToolResult toResult(BillingStore.Transaction transaction) {
+        return TRANSACTION.of(transaction.date(), transaction.description(), transaction.amountCents(), transaction.status().label());
+    }
+
+    private static LocalDate parseDate(String value) {
+        return value == null || value.isBlank() ? null : LocalDate.parse(value.trim());
     }
-}
\ No newline at end of file
+}
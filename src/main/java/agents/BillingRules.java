@@ -0,0 +1,317 @@
+package agents;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+import com.google.adk.tools.Annotations.Schema;
+
+/**
+ * Deterministic billing verdicts: refund eligibility and account status (current, balance due or overdue),
+ * each with an explanation the agent can pass on to the user.
+ *
+ * The rules are read from the classpath resource /billing/rules.tsv and compiled once into predicates over
+ * a user's {@link Facts}, so evaluating them is a few comparisons. The facts come from the billing store.
+ * Registered as the billingVerdict tool, this replaces several turns in which the model asked for the purchase
+ * date and read the raw transaction list to work out the same answer.
+ */
+public class BillingRules {
+
+    public enum AccountStatus {
+        CURRENT("Current"),
+        BALANCE_DUE("Balance due"),
+        OVERDUE("Overdue");
+
+        private final String label;
+
+        AccountStatus(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+    }
+
+    /** What the rules know about a user; days and counts are -1 when there is nothing to count from. */
+    public record Facts(int daysSincePurchase, int pendingCount, long pendingCents, int oldestPendingDays,
+                        int paidCount, long lastPaymentCents, LocalDate lastPaymentDate) {
+
+        static Facts purchase(int daysSincePurchase) {
+            return new Facts(daysSincePurchase, 0, 0, -1, 0, 0, null);
+        }
+    }
+
+    /** The verdict of the first matching rule of a group, and its explanation with the facts filled in. */
+    public record Verdict(String verdict, String explanation) {}
+
+    private enum FactKind { NUMBER, MONEY, DATE }
+
+    private record Fact(FactKind kind, ToLongFunction<Facts> value) {}
+
+    private static final Map<String, Fact> FACTS = Map.of(
+        "daysSincePurchase", new Fact(FactKind.NUMBER, Facts::daysSincePurchase),
+        "pendingCount", new Fact(FactKind.NUMBER, Facts::pendingCount),
+        "pendingCents", new Fact(FactKind.MONEY, Facts::pendingCents),
+        "oldestPendingDays", new Fact(FactKind.NUMBER, Facts::oldestPendingDays),
+        "paidCount", new Fact(FactKind.NUMBER, Facts::paidCount),
+        "lastPaymentCents", new Fact(FactKind.MONEY, Facts::lastPaymentCents),
+        "lastPaymentDate", new Fact(FactKind.DATE, facts -> facts.lastPaymentDate() == null ? Long.MIN_VALUE : facts.lastPaymentDate().toEpochDay())
+    );
+
+    // An explanation template: literal text and facts, alternating as parsed
+    private record Template(List<Object> parts) {
+        String render(Facts facts) {
+            StringBuilder out = new StringBuilder();
+            for (Object part : parts) {
+                if (part instanceof Fact fact) {
+                    long value = fact.value().applyAsLong(facts);
+                    switch (fact.kind()) {
+                        case MONEY -> out.append(ToolResult.formatCents(value));
+                        case DATE -> out.append(value == Long.MIN_VALUE ? "-" : LocalDate.ofEpochDay(value).toString());
+                        default -> out.append(value);
+                    }
+                } else {
+                    out.append((String) part);
+                }
+            }
+            return out.toString();
+        }
+    }
+
+    private record Rule(String verdict, Predicate<Facts> condition, Template explanation) {}
+
+    private static final int PENDING_SCAN_LIMIT = 1000;
+
+    private static final ToolResult.Shape RESPONSE = ToolResult.Shape.builder()
+        .value("status").value("userId").value("refund").value("refundExplanation").value("daysSincePurchase")
+        .value("accountStatus").value("accountExplanation").money("outstandingBalance").date("lastPaymentDate")
+        .value("message")
+        .build();
+
+    private final Map<String, List<Rule>> groups;
+
+    private BillingRules(Map<String, List<Rule>> groups) {
+        this.groups = groups;
+    }
+
+    private static class Standard {
+        static final BillingRules INSTANCE = load("/billing/rules.tsv");
+    }
+
+    /**
+     * The rules from /billing/rules.tsv, compiled on first use.
+     */
+    public static BillingRules standard() {
+        return Standard.INSTANCE;
+    }
+
+    /**
+     * Reads and compiles a rule file from the classpath. Unknown facts, verdicts or malformed conditions fail
+     * here, with the line number, rather than when a rule is evaluated.
+     */
+    public static BillingRules load(String resource) {
+        InputStream in = BillingRules.class.getResourceAsStream(resource);
+        if (in == null) {
+            throw new IllegalArgumentException("Missing classpath resource: " + resource);
+        }
+        Map<String, List<Rule>> groups = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, UTF_8))) {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                if (fields.length != 4) {
+                    throw new IllegalArgumentException(resource + ":" + number + ": expected 4 tab-separated fields");
+                }
+                String group = fields[0].trim();
+                String verdict = fields[1].trim();
+                checkVerdict(group, verdict, resource, number);
+                try {
+                    groups.computeIfAbsent(group, g -> new ArrayList<>())
+                        .add(new Rule(verdict, compileCondition(fields[2].trim()), compileTemplate(fields[3].trim())));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException(resource + ":" + number + ": " + e.getMessage(), e);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        groups.replaceAll((group, rules) -> List.copyOf(rules));
+        return new BillingRules(Map.copyOf(groups));
+    }
+
+    /**
+     * Applies the rules of a group to the facts; the last rule of each group should match anything.
+     */
+    public Verdict evaluate(String group, Facts facts) {
+        for (Rule rule : groups.getOrDefault(group, List.of())) {
+            if (rule.condition().test(facts)) {
+                return new Verdict(rule.verdict(), rule.explanation().render(facts));
+            }
+        }
+        throw new IllegalStateException("No " + group + " rule matches " + facts);
+    }
+
+    public Verdict refund(int daysSincePurchase) {
+        return evaluate("refund", Facts.purchase(daysSincePurchase));
+    }
+
+    @Schema(description = "Works out in one call whether the user is eligible for a full, partial or no refund and whether their "
+                          + "account is current, has a balance due or is overdue, each with an explanation to give the user. "
+                          + "Use it before opening a refund ticket and for questions about balances or overdue payments.")
+    public static Map<String, Object> billingVerdict(
+        @Schema(name = "userId", description = "The unique identifier of the user (e.g., email or account number).")
+        String userId,
+
+        @Schema(name = "daysSincePurchase", description = "How many days ago the purchase in question was made, e.g. 2 for 'two days ago'. "
+                                                       + "Use -1 to go by the user's latest paid charge.")
+        int daysSincePurchase) {
+
+        Optional<Facts> facts = facts(BillingHistory.store(), userId, daysSincePurchase, today());
+        if (facts.isEmpty()) {
+            return RESPONSE.of("ERROR", userId, null, null, null, null, null, null, null, "User ID not found in the billing system.");
+        }
+
+        BillingRules rules = standard();
+        Verdict refund = rules.evaluate("refund", facts.get());
+        Verdict account = rules.evaluate("account", facts.get());
+        return RESPONSE.of("SUCCESS", userId,
+            RefundPolicy.Eligibility.valueOf(refund.verdict()).label(), refund.explanation(), facts.get().daysSincePurchase(),
+            AccountStatus.valueOf(account.verdict()).label(), account.explanation(),
+            facts.get().pendingCents(), facts.get().lastPaymentDate(), null);
+    }
+
+    /**
+     * Collects the facts for a user from the store, or empty if the user is unknown. Without a purchase date
+     * the purchase is taken to be the latest paid charge.
+     */
+    static Optional<Facts> facts(BillingStore store, String userId, int daysSincePurchase, LocalDate today) {
+        Optional<BillingStore.Page> paid = store.query(userId, null, null, BillingStore.Status.PAID, null, 1);
+        if (paid.isEmpty()) {
+            return Optional.empty();
+        }
+        List<BillingStore.Transaction> lastPaid = paid.get().transactions();
+        LocalDate lastPaymentDate = lastPaid.isEmpty() ? null : lastPaid.get(0).date();
+        long lastPaymentCents = lastPaid.isEmpty() ? 0 : lastPaid.get(0).amountCents();
+        if (daysSincePurchase < 0 && lastPaymentDate != null) {
+            daysSincePurchase = (int) ChronoUnit.DAYS.between(lastPaymentDate, today);
+        }
+
+        // Pending charges come newest first, so the oldest is the last one on the last page
+        BillingStore.Page pending = store.query(userId, null, null, BillingStore.Status.PENDING, null, PENDING_SCAN_LIMIT).get();
+        while (pending.nextCursor() != null) {
+            pending = store.query(userId, null, null, BillingStore.Status.PENDING, pending.nextCursor(), PENDING_SCAN_LIMIT).get();
+        }
+        List<BillingStore.Transaction> lastPending = pending.transactions();
+        int oldestPendingDays = lastPending.isEmpty()
+            ? -1
+            : (int) ChronoUnit.DAYS.between(lastPending.get(lastPending.size() - 1).date(), today);
+
+        return Optional.of(new Facts(daysSincePurchase, pending.summary().transactionCount(), pending.summary().outstandingCents(),
+            oldestPendingDays, paid.get().summary().transactionCount(), lastPaymentCents, lastPaymentDate));
+    }
+
+    /**
+     * The date verdicts are computed for: -Dagents.billing.today (YYYY-MM-DD) if set, e.g. to replay the
+     * mock data, otherwise the current date.
+     */
+    static LocalDate today() {
+        String today = System.getProperty("agents.billing.today");
+        return today == null || today.isBlank() ? LocalDate.now() : LocalDate.parse(today.trim());
+    }
+
+    private static void checkVerdict(String group, String verdict, String resource, int line) {
+        try {
+            switch (group) {
+                case "refund" -> RefundPolicy.Eligibility.valueOf(verdict);
+                case "account" -> AccountStatus.valueOf(verdict);
+                default -> throw new IllegalArgumentException(resource + ":" + line + ": unknown group " + group);
+            }
+        } catch (IllegalArgumentException e) {
+            if (e.getMessage().startsWith(resource)) {
+                throw e;
+            }
+            throw new IllegalArgumentException(resource + ":" + line + ": unknown " + group + " verdict " + verdict);
+        }
+    }
+
+    // "fact op number [and fact op number ...]" or "*"
+    private static Predicate<Facts> compileCondition(String condition) {
+        if (condition.equals("*")) {
+            return facts -> true;
+        }
+        Predicate<Facts> compiled = null;
+        for (String clause : condition.split("\\s+and\\s+")) {
+            String[] tokens = clause.trim().split("\\s+");
+            if (tokens.length != 3) {
+                throw new IllegalArgumentException("expected 'fact operator number' in condition: " + clause);
+            }
+            ToLongFunction<Facts> fact = fact(tokens[0]).value();
+            long bound;
+            try {
+                bound = Long.parseLong(tokens[2]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("not a number: " + tokens[2]);
+            }
+            Predicate<Facts> comparison = switch (tokens[1]) {
+                case "<" -> facts -> fact.applyAsLong(facts) < bound;
+                case "<=" -> facts -> fact.applyAsLong(facts) <= bound;
+                case ">" -> facts -> fact.applyAsLong(facts) > bound;
+                case ">=" -> facts -> fact.applyAsLong(facts) >= bound;
+                case "==" -> facts -> fact.applyAsLong(facts) == bound;
+                case "!=" -> facts -> fact.applyAsLong(facts) != bound;
+                default -> throw new IllegalArgumentException("unknown operator: " + tokens[1]);
+            };
+            compiled = compiled == null ? comparison : compiled.and(comparison);
+        }
+        return compiled;
+    }
+
+    private static Template compileTemplate(String text) {
+        List<Object> parts = new ArrayList<>();
+        int position = 0;
+        while (position < text.length()) {
+            int open = text.indexOf('{', position);
+            if (open < 0) {
+                parts.add(text.substring(position));
+                break;
+            }
+            int close = text.indexOf('}', open);
+            if (close < 0) {
+                throw new IllegalArgumentException("unclosed { in explanation");
+            }
+            if (open > position) {
+                parts.add(text.substring(position, open));
+            }
+            parts.add(fact(text.substring(open + 1, close)));
+            position = close + 1;
+        }
+        return new Template(List.copyOf(parts));
+    }
+
+    private static Fact fact(String name) {
+        Fact fact = FACTS.get(name);
+        if (fact == null) {
+            throw new IllegalArgumentException("unknown fact: " + name);
+        }
+        return fact;
+    }
+}
@@ -5,28 +5,49 @@ import java.util.Scanner;
 
 import com.google.adk.agents.BaseAgent;
 import com.google.adk.agents.LlmAgent;
+import com.google.adk.models.BaseLlm;
 import com.google.adk.events.Event;
 import com.google.adk.runner.Runner;
 import com.google.adk.sessions.Session;
 import com.google.genai.types.Content;
 import com.google.genai.types.Part;
-import com.google.adk.tools.FunctionTool;
 import com.google.adk.artifacts.InMemoryArtifactService;
-import com.google.adk.sessions.InMemorySessionService;
 
 import io.reactivex.rxjava3.core.Flowable;
 
+import java.util.List;
 import java.util.Map;
 
 public class BillingSpecialist {
 
-    public static final BaseAgent ROOT_AGENT = initAgent();
+    public static final String AGENT_NAME = "Billing specialist";
+
+    /**
+     * The shared agent built with the configured model, see {@link AgentRegistry}.
+     */
+    public static BaseAgent rootAgent() {
+        return AgentRegistry.agent(AgentRegistry.BILLING);
+    }
+
+    /** ROOT_AGENT for the ADK dev UI, see {@link AgentTeam.Root}. */
+    public static final class Root {
+        public static final BaseAgent ROOT_AGENT = rootAgent();
+
+        private Root() {
+        }
+    }
 
     public static BaseAgent initAgent() {
+        return initAgent(Models.configured());
+    }
+
+    public static BaseAgent initAgent(BaseLlm model) {
         return LlmAgent.builder()
-            .name("Billing specialist")
+            .name(AGENT_NAME)
             .description("Billing specialist")
-            .model("gemini-2.5-flash")
+            .model(Resilience.shared().model(ModelScheduler.shared().schedule(
+                ContextBudget.shared().model(PrefixCachingLlm.wrap(Telemetry.model(model, AGENT_NAME), List::of), "billing"),
+                ModelScheduler.Lane.BILLING)))
             .instruction(
                 "You are a billing specialist that opens support cases for customers that want a refund and explains why they were billed. "
               + "Ask the user for their id and details regarding their problem. "
@@ -34,34 +55,46 @@ public class BillingSpecialist {
               + "submit a ticket using a tool. Describe the problem in the ticket message."
               + "You must ask the user why they want the refund "
               + "You must ask the user when they made their purchase, you do not need to tell them that it is needed to determine if they are eligible. "
-              + "If the user said when they made their purchase, you must inform them if they are eligible for a full/partial/no refund. "
+              + "Pass how many days ago the purchase was made to the ticket tool, and tell the user the refund eligibility it returns. "
               + "Ask for at most two pieces of information in one message, if you need more information from the user, ask for the rest in the next message. "
+              + "For a refund or a question about the balance or overdue payments, call the billing verdict tool first: it returns the refund "
+              + "eligibility and the account status with explanations, so you do not need to work them out from the billing history. "
               + "If the user has questions about their bills, check their billing history. "
-              + "If the user wants to update their payment methond, use the designated tool."
+              + "If the user wants to update their payment methond, use the designated tool. "
+              + "Payment method updates are applied by the payment processor shortly after they are accepted; if the user asks "
+              + "whether an update went through, check it with the payment method status tool."
             )
             .tools(
-                FunctionTool.create(
+                Telemetry.tool(AgentRegistry.functionTool(
                     TicketOpener.class,
                     "submitTicket"
-                ),
-                FunctionTool.create(
+                )),
+                Telemetry.tool(new TenantScopedTool(AgentRegistry.functionTool(
+                    BillingRules.class,
+                    "billingVerdict"
+                ))),
+                Telemetry.tool(new TenantScopedTool(AgentRegistry.functionTool(
                     BillingHistory.class,
                     "billingHistory"
-                ),
-                FunctionTool.create(
+                ))),
+                Telemetry.tool(AgentRegistry.functionTool(
                     PaymentMethod.class,
                     "paymentMethod"
-                )
+                )),
+                Telemetry.tool(AgentRegistry.functionTool(
+                    PaymentMethod.class,
+                    "paymentMethodStatus"
+                ))
             )
             .build();
     }
 
     public static void main(String[] args) {
         Runner runner = new Runner(
-            ROOT_AGENT,
+            rootAgent(),
             "Billing specialist",
             new InMemoryArtifactService(),
-            new InMemorySessionService()
+            PersistentSessionService.fromSystemProperties()
         );
 
         Session session = runner
@@ -69,6 +102,7 @@ public class BillingSpecialist {
                 .createSession(runner.appName(), "user")
                 .blockingGet();
 
+        EventPrinter printer = new EventPrinter(System.out);
         try (Scanner scanner = new Scanner(System.in, UTF_8)) {
             while (true) {
                 System.out.print("\nYou > ");
@@ -79,15 +113,13 @@ public class BillingSpecialist {
 
                 Content userMsg = Content.fromParts(Part.fromText(userInput));
                 Flowable<Event> events =
-                    runner.runAsync(session.userId(), session.id(), userMsg);
+                    runner.runAsync(session.userId(), session.id(), userMsg, AgentRuntime.defaultRunConfig());
 
                 System.out.print("\nAgent > ");
-                events.blockingForEach(event -> {
-                    if (event.functionCalls().isEmpty() && event.functionResponses().isEmpty()) {
-                        System.out.println(event.stringifyContent());
-                    }
-                });
+                printer.printTurn(events);
             }
         }
+
+        System.out.println(printer.summary());
     }
 }
@@ -0,0 +1,367 @@
+package agents;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Columnar, read-only transaction store indexed by user id.
+ *
+ * Transactions are grouped by user and sorted newest first. Each field lives in its own column
+ * (dates as epoch days, amounts as cents, status codes and dictionary-encoded descriptions),
+ * and a sorted user directory maps each user id to its slice of the columns. The whole store is
+ * one buffer, either memory-mapped from a file or on the heap for small data sets, so millions
+ * of transactions cost almost no heap and lookups are a binary search plus a short scan.
+ *
+ * File layout (big endian):
+ *   header       magic, version, user count, transaction count, description count (32 bytes)
+ *   users        per user: 16 byte ASCII id (upper case, zero padded), first transaction, transaction count
+ *   dates        int epoch day per transaction
+ *   amounts      long cents per transaction
+ *   statuses     byte status code per transaction
+ *   descriptions int dictionary index per transaction
+ *   dictionary   per description: unsigned short length, UTF-8 bytes
+ */
+public class BillingStore {
+
+    static final int MAGIC = 0x42494C4C; // "BILL"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+    static final int USER_ID_BYTES = 16;
+    static final int USER_ENTRY_BYTES = USER_ID_BYTES + 8;
+
+    public enum Status {
+        PAID("Paid"),
+        PENDING("Pending"),
+        REFUNDED("Refunded");
+
+        private final String label;
+
+        Status(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+
+        /**
+         * Parses a status name case-insensitively. Blank means "any status" and returns null.
+         */
+        public static Status parse(String value) {
+            if (value == null || value.isBlank()) {
+                return null;
+            }
+            for (Status status : values()) {
+                if (status.label.equalsIgnoreCase(value.trim())) {
+                    return status;
+                }
+            }
+            throw new IllegalArgumentException("Unknown status: " + value);
+        }
+    }
+
+    public record Transaction(LocalDate date, String description, long amountCents, Status status) {}
+
+    /** Totals over every transaction that matches the filters, not just the returned page. */
+    public record Summary(int transactionCount, long totalPaidCents, long outstandingCents) {}
+
+    public record Page(List<Transaction> transactions, Summary summary, String nextCursor) {}
+
+    // Section offsets for a store with the given number of users and transactions
+    record Layout(int userCount, int transactionCount) {
+        int users() {
+            return HEADER_BYTES;
+        }
+
+        int dates() {
+            return users() + userCount * USER_ENTRY_BYTES;
+        }
+
+        int amounts() {
+            return dates() + transactionCount * 4;
+        }
+
+        int statuses() {
+            return amounts() + transactionCount * 8;
+        }
+
+        int descriptions() {
+            return statuses() + transactionCount;
+        }
+
+        int dictionary() {
+            return descriptions() + transactionCount * 4;
+        }
+
+        long size(List<String> dictionary) {
+            long size = dictionary();
+            for (String description : dictionary) {
+                size += 2 + description.getBytes(UTF_8).length;
+            }
+            return size;
+        }
+    }
+
+    private static final Status[] STATUSES = Status.values();
+
+    private final ByteBuffer buffer;
+    private final Layout layout;
+    private final String[] descriptions;
+
+    BillingStore(ByteBuffer buffer) {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Not a billing store (version " + VERSION + ")");
+        }
+        this.layout = new Layout(buffer.getInt(8), buffer.getInt(12));
+
+        // The dictionary is tiny, so it is decoded once onto the heap
+        this.descriptions = new String[buffer.getInt(16)];
+        int position = layout.dictionary();
+        for (int i = 0; i < descriptions.length; i++) {
+            int length = Short.toUnsignedInt(buffer.getShort(position));
+            byte[] bytes = new byte[length];
+            buffer.get(position + 2, bytes);
+            descriptions[i] = new String(bytes, UTF_8);
+            position += 2 + length;
+        }
+    }
+
+    /**
+     * Memory-maps a store file written by {@link Writer}.
+     */
+    public static BillingStore open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Billing stores larger than 2 GB are not supported: " + file);
+            }
+            return new BillingStore(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Builds a heap-backed store from per-user transaction lists, e.g. for mock data.
+     */
+    public static BillingStore of(Map<String, List<Transaction>> transactionsByUser) {
+        // Upper-case ASCII ids sort the same as their encoded bytes
+        Map<String, List<Transaction>> users = new TreeMap<>();
+        List<String> dictionary = new ArrayList<>();
+        Map<String, Integer> descriptionIds = new HashMap<>();
+        int transactionCount = 0;
+        for (Map.Entry<String, List<Transaction>> entry : transactionsByUser.entrySet()) {
+            List<Transaction> sorted = new ArrayList<>(entry.getValue());
+            sorted.sort(Comparator.comparing(Transaction::date).reversed());
+            users.put(entry.getKey().trim().toUpperCase(Locale.ROOT), sorted);
+            transactionCount += sorted.size();
+            for (Transaction transaction : sorted) {
+                descriptionIds.computeIfAbsent(transaction.description(), d -> {
+                    dictionary.add(d);
+                    return dictionary.size() - 1;
+                });
+            }
+        }
+
+        Layout layout = new Layout(users.size(), transactionCount);
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(layout.size(dictionary)));
+        Writer writer = new Writer(buffer, layout, dictionary);
+        int user = 0;
+        int next = 0;
+        for (Map.Entry<String, List<Transaction>> entry : users.entrySet()) {
+            writer.user(user++, entry.getKey(), next, entry.getValue().size());
+            for (Transaction transaction : entry.getValue()) {
+                writer.transaction(next++, transaction.date(), transaction.amountCents(), transaction.status(),
+                    descriptionIds.get(transaction.description()));
+            }
+        }
+        writer.finish();
+        return new BillingStore(buffer.asReadOnlyBuffer());
+    }
+
+    public int userCount() {
+        return layout.userCount();
+    }
+
+    public int transactionCount() {
+        return layout.transactionCount();
+    }
+
+    /**
+     * Returns one page of a user's transactions, newest first, or empty if the user is unknown.
+     *
+     * @param from   earliest date to include, or null
+     * @param to     latest date to include, or null
+     * @param status only transactions with this status, or null for all
+     * @param cursor value of nextCursor from the previous page, or null for the first page
+     * @param limit  maximum number of transactions on the page
+     */
+    public Optional<Page> query(String userId, LocalDate from, LocalDate to, Status status, String cursor, int limit) {
+        int user = findUser(userId);
+        if (user < 0) {
+            return Optional.empty();
+        }
+        int entry = layout.users() + user * USER_ENTRY_BYTES;
+        int first = buffer.getInt(entry + USER_ID_BYTES);
+        int end = first + buffer.getInt(entry + USER_ID_BYTES + 4);
+        int start = first + parseCursor(cursor);
+
+        long fromDay = from == null ? Long.MIN_VALUE : from.toEpochDay();
+        long toDay = to == null ? Long.MAX_VALUE : to.toEpochDay();
+
+        List<Transaction> transactions = new ArrayList<>(Math.min(limit, end - first));
+        String nextCursor = null;
+        int count = 0;
+        long paid = 0;
+        long outstanding = 0;
+
+        for (int i = first; i < end; i++) {
+            int day = buffer.getInt(layout.dates() + i * 4);
+            Status rowStatus = STATUSES[buffer.get(layout.statuses() + i)];
+            if (day < fromDay || day > toDay || (status != null && rowStatus != status)) {
+                continue;
+            }
+
+            long cents = buffer.getLong(layout.amounts() + i * 8);
+            count++;
+            if (rowStatus == Status.PAID) {
+                paid += cents;
+            } else if (rowStatus == Status.PENDING) {
+                outstanding += cents;
+            }
+
+            if (i >= start) {
+                if (transactions.size() < limit) {
+                    String description = descriptions[buffer.getInt(layout.descriptions() + i * 4)];
+                    transactions.add(new Transaction(LocalDate.ofEpochDay(day), description, cents, rowStatus));
+                } else if (nextCursor == null) {
+                    nextCursor = Integer.toString(i - first);
+                }
+            }
+        }
+        return Optional.of(new Page(transactions, new Summary(count, paid, outstanding), nextCursor));
+    }
+
+    // Binary search over the sorted user directory, comparing the padded id bytes
+    private int findUser(String userId) {
+        byte[] key = encodeUserId(userId);
+        if (key == null) {
+            return -1;
+        }
+        int low = 0;
+        int high = layout.userCount() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareUserId(layout.users() + mid * USER_ENTRY_BYTES, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int compareUserId(int position, byte[] key) {
+        for (int i = 0; i < USER_ID_BYTES; i++) {
+            int cmp = Byte.compareUnsigned(buffer.get(position + i), key[i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * User ids are matched case-insensitively and must be ASCII of at most 16 bytes.
+     * Returns null for ids that cannot be stored.
+     */
+    static byte[] encodeUserId(String userId) {
+        if (userId == null) {
+            return null;
+        }
+        String normalized = userId.trim().toUpperCase(Locale.ROOT);
+        byte[] bytes = normalized.getBytes(US_ASCII);
+        if (bytes.length == 0 || bytes.length > USER_ID_BYTES || !US_ASCII.newEncoder().canEncode(normalized)) {
+            return null;
+        }
+        byte[] key = new byte[USER_ID_BYTES];
+        System.arraycopy(bytes, 0, key, 0, bytes.length);
+        return key;
+    }
+
+    private static int parseCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Integer.parseInt(cursor.trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+
+    /**
+     * Fills a store buffer. Users must be added in ascending id order (as compared by
+     * {@link #encodeUserId}) and each user's transactions newest first.
+     */
+    static final class Writer {
+        private final ByteBuffer buffer;
+        private final Layout layout;
+        private final List<String> dictionary;
+
+        Writer(ByteBuffer buffer, Layout layout, List<String> dictionary) {
+            this.buffer = buffer;
+            this.layout = layout;
+            this.dictionary = dictionary;
+        }
+
+        void user(int index, String userId, int firstTransaction, int transactionCount) {
+            byte[] key = encodeUserId(userId);
+            if (key == null) {
+                throw new IllegalArgumentException("User id cannot be stored: " + userId);
+            }
+            int entry = layout.users() + index * USER_ENTRY_BYTES;
+            buffer.put(entry, key);
+            buffer.putInt(entry + USER_ID_BYTES, firstTransaction);
+            buffer.putInt(entry + USER_ID_BYTES + 4, transactionCount);
+        }
+
+        void transaction(int index, LocalDate date, long amountCents, Status status, int descriptionId) {
+            buffer.putInt(layout.dates() + index * 4, (int) date.toEpochDay());
+            buffer.putLong(layout.amounts() + index * 8, amountCents);
+            buffer.put(layout.statuses() + index, (byte) status.ordinal());
+            buffer.putInt(layout.descriptions() + index * 4, descriptionId);
+        }
+
+        void finish() {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, layout.userCount());
+            buffer.putInt(12, layout.transactionCount());
+            buffer.putInt(16, dictionary.size());
+            int position = layout.dictionary();
+            for (String description : dictionary) {
+                byte[] bytes = description.getBytes(UTF_8);
+                buffer.putShort(position, (short) bytes.length);
+                buffer.put(position + 2, bytes);
+                position += 2 + bytes.length;
+            }
+        }
+    }
+}
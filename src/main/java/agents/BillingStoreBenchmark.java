@@ -0,0 +1,102 @@
+package agents;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Measures lookup latency and heap footprint of the memory-mapped billing store.
+ * Generates the store first if the file does not exist. For comparison it also loads a slice of
+ * the same data as ordinary objects (a HashMap of transaction lists) and extrapolates its heap use.
+ *
+ * Run with: mvn exec:java -Dexec.mainClass="agents.BillingStoreBenchmark"
+ *           -Dexec.args="--store billing.bin --transactions 10000000 --lookups 1000000"
+ */
+public class BillingStoreBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        Path file = Path.of("billing.bin");
+        int users = 1_000_000;
+        int transactions = 10_000_000;
+        int lookups = 1_000_000;
+        int heapSampleUsers = 100_000;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--store" -> file = Path.of(args[i + 1]);
+                case "--users" -> users = Integer.parseInt(args[i + 1]);
+                case "--transactions" -> transactions = Integer.parseInt(args[i + 1]);
+                case "--lookups" -> lookups = Integer.parseInt(args[i + 1]);
+                case "--heap-sample-users" -> heapSampleUsers = Integer.parseInt(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        if (!Files.exists(file)) {
+            System.out.println("Generating " + file + " ...");
+            BillingDataGenerator.generate(file, users, transactions, 42);
+        }
+
+        long heapBefore = usedHeap();
+        long openStart = System.nanoTime();
+        BillingStore store = BillingStore.open(file);
+        double openMs = (System.nanoTime() - openStart) / 1e6;
+        long storeHeap = usedHeap() - heapBefore;
+
+        System.out.printf("Store:                %,d users, %,d transactions, %,d bytes on disk%n",
+            store.userCount(), store.transactionCount(), Files.size(file));
+        System.out.printf("Open time:            %.1f ms%n", openMs);
+        System.out.printf("Heap after open:      %,d bytes%n", Math.max(0, storeHeap));
+
+        // Warm up, then time first-page lookups of random users
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < 200_000; i++) {
+            store.query(userId(random.nextInt(store.userCount())), null, null, null, null, BillingHistory.PAGE_SIZE);
+        }
+        long[] latencies = new long[lookups];
+        for (int i = 0; i < lookups; i++) {
+            String userId = userId(random.nextInt(store.userCount()));
+            long start = System.nanoTime();
+            store.query(userId, null, null, null, null, BillingHistory.PAGE_SIZE);
+            latencies[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+        System.out.printf("Lookup p50:           %.2f us%n", latencies[lookups / 2] / 1e3);
+        System.out.printf("Lookup p99:           %.2f us%n", latencies[(int) (lookups * 0.99)] / 1e3);
+
+        // The same data as objects, for a slice of the users
+        int sampleUsers = Math.min(heapSampleUsers, store.userCount());
+        heapBefore = usedHeap();
+        Map<String, List<BillingStore.Transaction>> objects = new HashMap<>();
+        long sampleTransactions = 0;
+        for (int u = 0; u < sampleUsers; u++) {
+            String userId = userId(u);
+            List<BillingStore.Transaction> list = new ArrayList<>(
+                store.query(userId, null, null, null, null, Integer.MAX_VALUE).orElseThrow().transactions());
+            sampleTransactions += list.size();
+            objects.put(userId, list);
+        }
+        long objectHeap = usedHeap() - heapBefore;
+        double perTransaction = (double) objectHeap / sampleTransactions;
+        System.out.printf("Object model heap:    %.0f bytes/transaction, about %,d MB for the whole store%n",
+            perTransaction, (long) (perTransaction * store.transactionCount() / (1024 * 1024)));
+        System.out.println("(" + objects.size() + " users sampled)");
+    }
+
+    private static String userId(int index) {
+        return String.format("U%07d-%c", index, (char) ('A' + index % 26));
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,61 @@
+package agents;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import com.google.adk.models.BaseLlm;
+import com.google.adk.models.BaseLlmConnection;
+import com.google.adk.models.LlmRequest;
+import com.google.adk.models.LlmResponse;
+import com.google.genai.types.Content;
+
+import io.reactivex.rxjava3.core.Flowable;
+
+/**
+ * Fits every request under the agent's token ceiling before it is sent, see {@link ContextBudget}. Documents the
+ * delegate pins into the prompt count towards the ceiling; anything else that adds to the request, such as
+ * {@link PrefetchingLlm}, has to wrap this model so its additions are fitted too.
+ */
+public class BudgetedLlm extends BaseLlm {
+
+    // Pinned documents and their estimated tokens, estimated again only when the documents change
+    private record Pinned(List<Content> documents, int tokens) {}
+
+    private final BaseLlm delegate;
+    private final ContextBudget budget;
+    private final String agent;
+    private final Supplier<List<Content>> documents;
+    private volatile Pinned pinned = new Pinned(List.of(), 0);
+
+    public BudgetedLlm(BaseLlm delegate, ContextBudget budget, String agent) {
+        this(delegate, budget, agent, List::of);
+    }
+
+    public BudgetedLlm(BaseLlm delegate, ContextBudget budget, String agent, Supplier<List<Content>> documents) {
+        super(delegate.model());
+        this.delegate = delegate;
+        this.budget = budget;
+        this.agent = agent;
+        this.documents = documents;
+    }
+
+    @Override
+    public Flowable<LlmResponse> generateContent(LlmRequest llmRequest, boolean stream) {
+        return Flowable.defer(() -> delegate.generateContent(budget.fit(llmRequest, agent, pinnedTokens()), stream));
+    }
+
+    @Override
+    public BaseLlmConnection connect(LlmRequest llmRequest) {
+        return delegate.connect(llmRequest);
+    }
+
+    private int pinnedTokens() {
+        List<Content> current = documents.get();
+        Pinned known = pinned;
+        if (known.documents() != current) {
+            known = new Pinned(current, ContextBudget.estimate(current));
+            pinned = known;
+        }
+        return known.tokens();
+    }
+}
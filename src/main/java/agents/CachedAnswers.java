@@ -0,0 +1,96 @@
+package agents;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import com.google.adk.events.Event;
+import com.google.adk.sessions.BaseSessionService;
+import com.google.adk.sessions.Session;
+import com.google.genai.types.Content;
+import com.google.genai.types.FunctionResponse;
+import com.google.genai.types.Part;
+
+import io.reactivex.rxjava3.core.Flowable;
+
+/**
+ * Puts an {@link AnswerCache} in front of the technical specialist.
+ * On a hit the cached answer is emitted as the specialist's event and both the question and
+ * the answer are appended to the session, so later turns still see them in the history.
+ * On a miss the agent runs and its final answer and searchDocs results are cached.
+ */
+final class CachedAnswers {
+
+    private CachedAnswers() {
+    }
+
+    static Flowable<Event> serve(
+        AnswerCache cache,
+        BaseSessionService sessions,
+        String appName,
+        String userId,
+        String sessionId,
+        Content message,
+        String author,
+        Supplier<Flowable<Event>> run) {
+
+        String question = TeamRunner.textOf(message);
+        return Flowable.defer(() -> {
+            AnswerCache.Answer cached = cache.get(question);
+            if (cached != null) {
+                Content answer = Content.builder().role("model").parts(List.of(Part.fromText(cached.text()))).build();
+                Event event = event(author, answer);
+                Session session = sessions.getSession(appName, userId, sessionId, Optional.empty()).blockingGet();
+                if (session != null) {
+                    sessions.appendEvent(session, event("user", message)).blockingGet();
+                    sessions.appendEvent(session, event).blockingGet();
+                }
+                return Flowable.just(event);
+            }
+
+            long start = System.nanoTime();
+            StringBuilder finalText = new StringBuilder();
+            List<Object> chunks = new ArrayList<>();
+            return run.get()
+                .doOnNext(event -> collect(event, author, finalText, chunks))
+                .doOnComplete(() -> {
+                    if (finalText.length() > 0) {
+                        cache.put(question, new AnswerCache.Answer(finalText.toString(), chunks), System.nanoTime() - start);
+                    }
+                });
+        });
+    }
+
+    // Keeps the specialist's last complete text reply and the sections searchDocs returned
+    private static void collect(Event event, String author, StringBuilder finalText, List<Object> chunks) {
+        for (FunctionResponse response : event.functionResponses()) {
+            if ("searchDocs".equals(response.name().orElse(""))) {
+                Object results = response.response().orElse(Map.of()).get("results");
+                if (results instanceof List<?> list) {
+                    chunks.addAll(list);
+                }
+            }
+        }
+        if (!author.equals(event.author()) || event.partial().orElse(false) || !event.functionCalls().isEmpty()) {
+            return;
+        }
+        String text = event.content().map(TeamRunner::textOf).orElse("");
+        if (!text.isEmpty()) {
+            finalText.setLength(0);
+            finalText.append(text);
+        }
+    }
+
+    private static Event event(String author, Content content) {
+        return Event.builder()
+            .id(UUID.randomUUID().toString())
+            .invocationId(UUID.randomUUID().toString())
+            .author(author)
+            .content(content)
+            .timestamp(System.currentTimeMillis())
+            .build();
+    }
+}
@@ -0,0 +1,111 @@
+package agents;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.adk.models.BaseLlm;
+import com.google.adk.models.BaseLlmConnection;
+import com.google.adk.models.LlmRequest;
+import com.google.adk.models.LlmResponse;
+import com.google.genai.types.GenerateContentConfig;
+
+import io.reactivex.rxjava3.core.Flowable;
+
+/**
+ * Local stand-in for a provider with cached content, to check prefix caching without an API. It keeps
+ * uploaded prefixes in memory and sits in front of the real (usually scripted) model: a request that refers
+ * to a cached prefix gets the prefix put back before it is passed on, and every request's prefix bytes,
+ * i.e. the instruction and tool declarations it carries itself, are counted. Like the provider it rejects
+ * unknown names and requests that both refer to a cached prefix and carry an instruction or tools.
+ */
+public class CachedContentStandIn implements PrefixCache.Backend {
+
+    private final Map<String, PromptPrefix> cached = new ConcurrentHashMap<>();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder referencing = new LongAdder();
+    private final LongAdder prefixBytesSent = new LongAdder();
+    private final LongAdder uploads = new LongAdder();
+    private final LongAdder uploadedBytes = new LongAdder();
+
+    @Override
+    public Optional<String> create(PromptPrefix prefix) {
+        String name = "cachedContents/" + prefix.hash().substring(0, 16);
+        if (cached.putIfAbsent(name, prefix) == null) {
+            uploads.increment();
+            uploadedBytes.add(prefix.bytes());
+        }
+        return Optional.of(name);
+    }
+
+    @Override
+    public BaseLlm wrap(BaseLlm model) {
+        return new Model(model);
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("requests", requests.sum());
+        stats.put("referencingCache", referencing.sum());
+        stats.put("prefixBytesSent", prefixBytesSent.sum());
+        stats.put("uploads", uploads.sum());
+        stats.put("uploadedBytes", uploadedBytes.sum());
+        return stats;
+    }
+
+    public long prefixBytesSent() {
+        return prefixBytesSent.sum();
+    }
+
+    public long uploadedBytes() {
+        return uploadedBytes.sum();
+    }
+
+    public long requests() {
+        return requests.sum();
+    }
+
+    private class Model extends BaseLlm {
+
+        private final BaseLlm delegate;
+
+        Model(BaseLlm delegate) {
+            super(delegate.model());
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Flowable<LlmResponse> generateContent(LlmRequest llmRequest, boolean stream) {
+            return Flowable.defer(() -> {
+                requests.increment();
+                prefixBytesSent.add(PromptPrefix.of(model(), llmRequest, List.of()).bytes());
+
+                Optional<String> name = llmRequest.config().flatMap(GenerateContentConfig::cachedContent);
+                if (name.isEmpty()) {
+                    return delegate.generateContent(llmRequest, stream);
+                }
+                referencing.increment();
+                GenerateContentConfig config = llmRequest.config().get();
+                if (config.systemInstruction().isPresent() || config.tools().isPresent()) {
+                    return Flowable.error(new IllegalArgumentException(
+                        "A request with cached_content can not set system_instruction, tools or tool_config."));
+                }
+                PromptPrefix prefix = cached.get(name.get());
+                if (prefix == null) {
+                    return Flowable.error(new IllegalArgumentException("CachedContent not found: " + name.get()));
+                }
+                return delegate.generateContent(prefix.restore(llmRequest), stream);
+            });
+        }
+
+        @Override
+        public BaseLlmConnection connect(LlmRequest llmRequest) {
+            return delegate.connect(llmRequest);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package agents;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import com.google.adk.agents.RunConfig;
+import com.google.adk.events.Event;
+import com.google.adk.sessions.BaseSessionService;
+import com.google.adk.sessions.Session;
+import com.google.genai.types.Content;
+
+import io.reactivex.rxjava3.core.Flowable;
+
+/**
+ * Serves the first question of each session from an {@link AnswerCache}.
+ * Later messages in a session are follow-ups that depend on the conversation, so they always reach the agent.
+ * A message is the first one when the session has no events yet, so nothing is kept per session here.
+ */
+public class CachingRuntime implements AgentRuntime {
+
+    private final AgentRuntime delegate;
+    private final AnswerCache cache;
+    private final String author;
+
+    public CachingRuntime(AgentRuntime delegate, AnswerCache cache, String author) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.author = author;
+    }
+
+    @Override
+    public String appName() {
+        return delegate.appName();
+    }
+
+    @Override
+    public BaseSessionService sessionService() {
+        return delegate.sessionService();
+    }
+
+    public AnswerCache cache() {
+        return cache;
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>(delegate.stats());
+        stats.put("answerCache", cache.stats());
+        return stats;
+    }
+
+    @Override
+    public Flowable<Event> runAsync(String userId, String sessionId, Content newMessage, RunConfig runConfig) {
+        return Flowable.defer(() -> {
+            Session session = sessionService().getSession(appName(), userId, sessionId, Optional.empty()).blockingGet();
+            if (session != null && !session.events().isEmpty()) {
+                return delegate.runAsync(userId, sessionId, newMessage, runConfig);
+            }
+            return CachedAnswers.serve(cache, sessionService(), appName(), userId, sessionId, newMessage, author,
+                () -> delegate.runAsync(userId, sessionId, newMessage, runConfig));
+        });
+    }
+
+    @Override
+    public void closeSession(String userId, String sessionId) {
+        delegate.closeSession(userId, sessionId);
+    }
+}
@@ -0,0 +1,98 @@
+package agents;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import com.google.adk.models.BaseLlm;
+import com.google.adk.models.BaseLlmConnection;
+import com.google.adk.models.LlmRequest;
+import com.google.adk.models.LlmResponse;
+import com.google.genai.types.Content;
+import com.google.genai.types.FunctionCall;
+import com.google.genai.types.FunctionResponse;
+import com.google.genai.types.Part;
+
+import io.reactivex.rxjava3.core.Flowable;
+
+/**
+ * Puts the results of tool calls made in one model response back in the order the model asked for them.
+ * ADK merges the results of parallel calls ({@link ConcurrentTool}) in the order they finish, so without this
+ * the model would read the fastest tool's result first. Each result is matched to its call by id, or by name
+ * for calls without an id.
+ */
+public class CallOrderLlm extends BaseLlm {
+
+    private final BaseLlm delegate;
+
+    public CallOrderLlm(BaseLlm delegate) {
+        super(delegate.model());
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Flowable<LlmResponse> generateContent(LlmRequest llmRequest, boolean stream) {
+        return Flowable.defer(() -> delegate.generateContent(inCallOrder(llmRequest), stream));
+    }
+
+    @Override
+    public BaseLlmConnection connect(LlmRequest llmRequest) {
+        return delegate.connect(llmRequest);
+    }
+
+    static LlmRequest inCallOrder(LlmRequest request) {
+        List<Content> contents = request.contents();
+        List<Content> ordered = null;
+        for (int i = 1; i < contents.size(); i++) {
+            List<Part> parts = contents.get(i).parts().orElse(List.of());
+            if (parts.size() < 2 || !parts.stream().allMatch(part -> part.functionResponse().isPresent())) {
+                continue;
+            }
+            List<FunctionCall> calls = new ArrayList<>();
+            contents.get(i - 1).parts().orElse(List.of()).forEach(part -> part.functionCall().ifPresent(calls::add));
+            List<Part> sorted = sortByCall(parts, calls);
+            if (!sorted.equals(parts)) {
+                if (ordered == null) {
+                    ordered = new ArrayList<>(contents);
+                }
+                ordered.set(i, contents.get(i).toBuilder().parts(sorted).build());
+            }
+        }
+        return ordered == null ? request : request.toBuilder().contents(ordered).build();
+    }
+
+    // Results without a matching call keep their place after the matched ones
+    private static List<Part> sortByCall(List<Part> results, List<FunctionCall> calls) {
+        Part[] byCall = new Part[calls.size()];
+        List<Part> unmatched = new ArrayList<>();
+        for (Part part : results) {
+            int call = matchingCall(part.functionResponse().orElseThrow(), calls, byCall);
+            if (call < 0) {
+                unmatched.add(part);
+            } else {
+                byCall[call] = part;
+            }
+        }
+        List<Part> sorted = new ArrayList<>(results.size());
+        for (Part part : byCall) {
+            if (part != null) {
+                sorted.add(part);
+            }
+        }
+        sorted.addAll(unmatched);
+        return sorted;
+    }
+
+    private static int matchingCall(FunctionResponse response, List<FunctionCall> calls, Part[] taken) {
+        for (int i = 0; i < calls.size(); i++) {
+            FunctionCall call = calls.get(i);
+            boolean same = response.id().isPresent() && call.id().isPresent()
+                ? response.id().equals(call.id())
+                : Objects.equals(response.name().orElse(null), call.name().orElse(null));
+            if (same && taken[i] == null) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
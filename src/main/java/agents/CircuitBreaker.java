@@ -0,0 +1,196 @@
+package agents;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Stops calling an endpoint that keeps failing. The outcomes of the last calls are kept in a window; once
+ * enough of them failed, the breaker opens and calls fail at once with {@link OpenException}. After the open
+ * time a few trial calls are let through: if they succeed the breaker closes, if one fails it opens again.
+ * Calls that end without an outcome, e.g. a hedged duplicate that lost, only give back their trial slot.
+ * An outcome only counts in the state the call was let through in: a slow call admitted before the breaker
+ * opened neither closes nor re-opens it.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN;
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * @param window calls whose outcome counts towards the failure rate
+     * @param minCalls calls in the window before the breaker can open
+     * @param failureRate share of failed calls in the window that opens the breaker
+     * @param openFor time calls fail fast before trial calls are let through
+     * @param trialCalls trial calls in the half open state
+     */
+    public record Settings(int window, int minCalls, double failureRate, Duration openFor, int trialCalls) {
+        public static final Settings DEFAULT = new Settings(20, 10, 0.5, Duration.ofSeconds(15), 2);
+    }
+
+    /** Thrown to a caller when the breaker is open. */
+    public static class OpenException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public OpenException(String message) {
+            super(message);
+        }
+    }
+
+    private final String name;
+    private final Settings settings;
+    private final boolean[] outcomes;
+    private int recorded;
+    private int next;
+    private int failures;
+
+    private State state = State.CLOSED;
+    // Changes with every state change, so outcomes of calls let through in an earlier state are not counted
+    private long generation;
+    private long openedNanos;
+    private int trialsStarted;
+    private int trialsSucceeded;
+    private long opened;
+    private long rejected;
+
+    public CircuitBreaker(String name, Settings settings) {
+        this.name = name;
+        this.settings = settings;
+        this.outcomes = new boolean[settings.window()];
+    }
+
+    /**
+     * A call that was let through. It must end with exactly one of {@link #onSuccess}, {@link #onFailure} or
+     * {@link #onIgnored}.
+     */
+    public final class Permit {
+        private final long generation;
+
+        private Permit(long generation) {
+            this.generation = generation;
+        }
+
+        public void onSuccess() {
+            succeeded(generation);
+        }
+
+        public void onFailure() {
+            failed(generation);
+        }
+
+        /**
+         * The call ended without telling whether the endpoint works, e.g. it was cancelled.
+         */
+        public void onIgnored() {
+            ignored(generation);
+        }
+    }
+
+    /**
+     * Lets a call start now, or returns null if it must fail fast.
+     */
+    public synchronized Permit tryAcquire() {
+        if (state == State.OPEN && System.nanoTime() - openedNanos >= settings.openFor().toNanos()) {
+            state = State.HALF_OPEN;
+            generation++;
+            trialsStarted = 0;
+            trialsSucceeded = 0;
+        }
+        boolean allowed = switch (state) {
+            case CLOSED -> true;
+            case HALF_OPEN -> trialsStarted < settings.trialCalls();
+            case OPEN -> false;
+        };
+        if (!allowed) {
+            rejected++;
+            return null;
+        }
+        if (state == State.HALF_OPEN) {
+            trialsStarted++;
+        }
+        return new Permit(generation);
+    }
+
+    private synchronized void succeeded(long permitGeneration) {
+        if (permitGeneration != generation) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            if (++trialsSucceeded >= settings.trialCalls()) {
+                close();
+            }
+            return;
+        }
+        record(false);
+    }
+
+    private synchronized void failed(long permitGeneration) {
+        if (permitGeneration != generation) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        record(true);
+        if (recorded >= settings.minCalls() && failures >= settings.failureRate() * recorded) {
+            open();
+        }
+    }
+
+    private synchronized void ignored(long permitGeneration) {
+        if (permitGeneration == generation && state == State.HALF_OPEN && trialsStarted > trialsSucceeded) {
+            trialsStarted--;
+        }
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("state", state.label());
+        stats.put("failuresInWindow", failures);
+        stats.put("callsInWindow", recorded);
+        stats.put("opened", opened);
+        stats.put("rejected", rejected);
+        return stats;
+    }
+
+    private void record(boolean failed) {
+        if (recorded == outcomes.length && outcomes[next]) {
+            failures--;
+        }
+        outcomes[next] = failed;
+        if (failed) {
+            failures++;
+        }
+        next = (next + 1) % outcomes.length;
+        recorded = Math.min(recorded + 1, outcomes.length);
+    }
+
+    private void open() {
+        state = State.OPEN;
+        generation++;
+        openedNanos = System.nanoTime();
+        opened++;
+        System.err.println("Circuit breaker of " + name + " opened, calls fail fast for " + settings.openFor().toMillis() + " ms");
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        generation++;
+        recorded = 0;
+        next = 0;
+        failures = 0;
+        Arrays.fill(outcomes, false);
+    }
+}
@@ -0,0 +1,59 @@
+package agents;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.google.adk.tools.BaseTool;
+import com.google.adk.tools.ToolContext;
+import com.google.genai.types.FunctionDeclaration;
+
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+/**
+ * Runs a tool on a shared, bounded pool instead of the thread that handles the model response.
+ * ADK subscribes to all function calls of one model response together, so calls the model requests
+ * in the same turn run concurrently. The pool size is set with -Dagents.tools.threads. A call that takes longer
+ * than -Dagents.tools.timeoutMs (default 10000, 0 for no limit) returns an error result to the model; the
+ * tool itself keeps running on the pool until it returns.
+ */
+public class ConcurrentTool extends BaseTool {
+
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(
+        Integer.getInteger("agents.tools.threads", Math.max(4, Runtime.getRuntime().availableProcessors())),
+        runnable -> {
+            Thread thread = new Thread(runnable, "agent-tools");
+            thread.setDaemon(true);
+            return thread;
+        });
+    private static final Scheduler SCHEDULER = Schedulers.from(POOL);
+    private static final long TIMEOUT_MS = Long.getLong("agents.tools.timeoutMs", 10_000);
+
+    private final BaseTool delegate;
+
+    public ConcurrentTool(BaseTool delegate) {
+        super(delegate.name(), delegate.description(), delegate.longRunning());
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Optional<FunctionDeclaration> declaration() {
+        return delegate.declaration();
+    }
+
+    @Override
+    public Single<Map<String, Object>> runAsync(Map<String, Object> args, ToolContext toolContext) {
+        Single<Map<String, Object>> call = Single.defer(() -> delegate.runAsync(args, toolContext)).subscribeOn(SCHEDULER);
+        if (TIMEOUT_MS <= 0) {
+            return call;
+        }
+        // The model gets an error result it can act on instead of waiting for the call
+        return call.timeout(TIMEOUT_MS, TimeUnit.MILLISECONDS, Single.fromCallable(() -> Map.<String, Object>of(
+            "status", "error",
+            "message", name() + " did not finish within " + TIMEOUT_MS + " ms. Try again or answer without it.")));
+    }
+}
@@ -0,0 +1,810 @@
+package agents;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.adk.models.BaseLlm;
+import com.google.adk.models.LlmRequest;
+import com.google.genai.types.Content;
+import com.google.genai.types.FunctionDeclaration;
+import com.google.genai.types.FunctionResponse;
+import com.google.genai.types.GenerateContentConfig;
+import com.google.genai.types.Part;
+import com.google.genai.types.Tool;
+
+/**
+ * Keeps every model request of an agent under a token ceiling ({@link BudgetedLlm}).
+ *
+ * Tokens are estimated locally, roughly the way a BPE tokenizer splits text: one token per short word, more
+ * for long words and numbers, one per punctuation mark. The instruction and tool declarations count towards
+ * the ceiling but are never cut. The conversation is fitted in steps, each only if the previous was not enough:
+ * <ol>
+ * <li>tool results and texts over the part limit are shortened: lists keep their first entries, which for
+ * the tools here are the best matches or the latest transactions, and long texts keep the sentences that
+ * best match the user's question;</li>
+ * <li>parts of earlier turns are shortened to the smaller history part limit;</li>
+ * <li>earlier turns are left out, least recent and least related to the question first, and a note says how many;</li>
+ * <li>the parts of the current turn are shortened until they fit.</li>
+ * </ol>
+ * The user's current message is always sent whole. Every request that had to be cut is logged with what was left out.
+ * If the instruction, tool declarations and pinned documents alone reach the ceiling, the request is sent as it is.
+ */
+public class ContextBudget {
+
+    /**
+     * @param maxTokens ceiling of a request, for agents without their own
+     * @param maxPartTokens longest tool result or text sent as is
+     * @param historyPartTokens longest tool result or text of an earlier turn when the request is over the ceiling
+     * @param log whether requests that had to be cut are logged
+     */
+    public record Settings(int maxTokens, int maxPartTokens, int historyPartTokens, boolean log) {
+        public static final Settings DEFAULT = new Settings(16_000, 1_500, 300, true);
+    }
+
+    /** What fitting one request did. */
+    record Report(int before, int after, int droppedTurns, List<String> shortened) {
+
+        boolean trimmed() {
+            return droppedTurns > 0 || !shortened.isEmpty();
+        }
+    }
+
+    // A turn is weighted half as much for every this many newer turns
+    private static final double RECENCY_HALF_LIFE = 3;
+    // Tokens a shortened value keeps at least, and the overhead of a content and of a part
+    private static final int MIN_PART_TOKENS = 24;
+    private static final int CONTENT_TOKENS = 4;
+    private static final int PART_TOKENS = 2;
+    private static final String CONTEXT_PREFIX = "For context:";
+    private static final String NOTE_KEY = "contextNote";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static class Shared {
+        static final ContextBudget INSTANCE = fromSystemProperties();
+    }
+
+    private final boolean enabled;
+    private final Settings settings;
+    private final Map<String, Integer> agentMaxTokens;
+    private final Map<String, Counters> counters = new ConcurrentHashMap<>();
+
+    private static final class Counters {
+        final LongAdder calls = new LongAdder();
+        final LongAdder trimmed = new LongAdder();
+        final LongAdder tokensBefore = new LongAdder();
+        final LongAdder tokensAfter = new LongAdder();
+        final LongAdder droppedTurns = new LongAdder();
+        final LongAdder shortenedParts = new LongAdder();
+        final LongAdder overBudget = new LongAdder();
+    }
+
+    public ContextBudget(Settings settings, Map<String, Integer> agentMaxTokens) {
+        this(true, settings, agentMaxTokens);
+    }
+
+    private ContextBudget(boolean enabled, Settings settings, Map<String, Integer> agentMaxTokens) {
+        this.enabled = enabled;
+        this.settings = settings;
+        this.agentMaxTokens = Map.copyOf(agentMaxTokens);
+    }
+
+    /**
+     * The budget shared by every agent in the process.
+     */
+    public static ContextBudget shared() {
+        return Shared.INSTANCE;
+    }
+
+    /**
+     * Settings from -Dagents.context.maxTokens (default 16000), .maxPartTokens (default 1500),
+     * .historyPartTokens (default 300) and .log (default true). An agent's own ceiling is set with
+     * -Dagents.context.maxTokens.{agent}, where agent is team, technical, billing or simple.
+     * The budget is off unless -Dagents.context=true; until then requests are sent as they are.
+     */
+    public static ContextBudget fromSystemProperties() {
+        Settings d = Settings.DEFAULT;
+        Settings settings = new Settings(
+            Integer.getInteger("agents.context.maxTokens", d.maxTokens()),
+            Integer.getInteger("agents.context.maxPartTokens", d.maxPartTokens()),
+            Integer.getInteger("agents.context.historyPartTokens", d.historyPartTokens()),
+            Boolean.parseBoolean(System.getProperty("agents.context.log", String.valueOf(d.log()))));
+        Map<String, Integer> agents = new LinkedHashMap<>();
+        String prefix = "agents.context.maxTokens.";
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith(prefix)) {
+                agents.put(name.substring(prefix.length()), Integer.getInteger(name));
+            }
+        }
+        return new ContextBudget(Boolean.getBoolean("agents.context"), settings, agents);
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    public Settings settings() {
+        return settings;
+    }
+
+    public int maxTokens(String agent) {
+        return agentMaxTokens.getOrDefault(agent, settings.maxTokens());
+    }
+
+    /**
+     * Wraps the model an agent calls so its requests are fitted under the agent's ceiling.
+     */
+    public BaseLlm model(BaseLlm model, String agent) {
+        return model(model, agent, List::of);
+    }
+
+    /**
+     * Like {@link #model(BaseLlm, String)}, for a model that adds documents to the prompt after the request is
+     * fitted (see {@link PrefixCachingLlm}); they count towards the ceiling like the instruction.
+     */
+    public BaseLlm model(BaseLlm model, String agent, Supplier<List<Content>> pinned) {
+        return enabled ? new BudgetedLlm(model, this, agent, pinned) : model;
+    }
+
+    /**
+     * Per agent: model calls, calls that had to be cut, average estimated tokens of a request before and after,
+     * earlier turns left out, parts shortened, and calls still over the ceiling after fitting.
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new TreeMap<>();
+        counters.forEach((agent, c) -> {
+            long calls = Math.max(1, c.calls.sum());
+            Map<String, Object> agentStats = new LinkedHashMap<>();
+            agentStats.put("maxTokens", maxTokens(agent));
+            agentStats.put("calls", c.calls.sum());
+            agentStats.put("trimmed", c.trimmed.sum());
+            agentStats.put("averageTokensBefore", c.tokensBefore.sum() / calls);
+            agentStats.put("averageTokensAfter", c.tokensAfter.sum() / calls);
+            agentStats.put("droppedTurns", c.droppedTurns.sum());
+            agentStats.put("shortenedParts", c.shortenedParts.sum());
+            agentStats.put("overBudget", c.overBudget.sum());
+            stats.put(agent, agentStats);
+        });
+        return stats;
+    }
+
+    /**
+     * The request fitted under the agent's ceiling; the request itself if it already fits.
+     */
+    LlmRequest fit(LlmRequest request, String agent) {
+        return fit(request, agent, 0);
+    }
+
+    /**
+     * Like {@link #fit(LlmRequest, String)}, with pinnedTokens more that are added to the prompt after fitting.
+     */
+    LlmRequest fit(LlmRequest request, String agent, int pinnedTokens) {
+        int ceiling = maxTokens(agent);
+        int fixed = fixedTokens(request) + pinnedTokens;
+        List<Content> contents = request.contents();
+        int[] sizes = new int[contents.size()];
+        int before = fixed;
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = estimate(contents.get(i));
+            before += sizes[i];
+        }
+
+        Counters c = counters.computeIfAbsent(agent, name -> new Counters());
+        c.calls.increment();
+        c.tokensBefore.add(before);
+        if (before <= ceiling && !hasOversizedPart(contents, sizes)) {
+            c.tokensAfter.add(before);
+            return request;
+        }
+
+        int budget = ceiling - fixed;
+        if (budget <= 0) {
+            // Nothing left for the conversation: cutting it cannot bring the request under the ceiling
+            c.tokensAfter.add(before);
+            c.overBudget.increment();
+            if (settings.log()) {
+                System.err.println("Context budget " + agent + ": instruction, tools and pinned documents alone take "
+                    + fixed + " of " + ceiling + " tokens, request sent as it is");
+            }
+            return request;
+        }
+        Fitting fitting = new Fitting(contents, sizes, lastQuestion(contents));
+        int current = fitting.currentTurnStart();
+        fitting.shortenParts(current, contents.size(), settings.maxPartTokens());
+        // Earlier turns are shortened once, straight to the history limit if the part limit alone would not be enough
+        int projected = fitting.total();
+        for (int i = 0; i < current; i++) {
+            projected -= Math.max(0, sizes[i] - settings.maxPartTokens());
+        }
+        fitting.shortenParts(0, current, projected > budget ? settings.historyPartTokens() : settings.maxPartTokens());
+        if (fitting.total() > budget) {
+            fitting.dropEarlierTurns(budget);
+        }
+        if (fitting.total() > budget) {
+            fitting.shortenCurrentTurn(budget);
+        }
+
+        List<Content> fitted = fitting.contents();
+        int after = fixed + fitting.total();
+        Report report = new Report(before, after, fitting.droppedTurns, fitting.shortened);
+        c.tokensAfter.add(after);
+        if (report.trimmed()) {
+            c.trimmed.increment();
+            c.droppedTurns.add(report.droppedTurns());
+            c.shortenedParts.add(report.shortened().size());
+        }
+        if (after > ceiling) {
+            c.overBudget.increment();
+        }
+        if (settings.log() && report.trimmed()) {
+            System.err.println(describe(agent, ceiling, report));
+        }
+        return report.trimmed() ? request.toBuilder().contents(fitted).build() : request;
+    }
+
+    static String describe(String agent, int ceiling, Report report) {
+        StringBuilder line = new StringBuilder();
+        line.append("Context budget ").append(agent).append(": ").append(report.before()).append(" -> ")
+            .append(report.after()).append(" of ").append(ceiling).append(" tokens");
+        if (report.droppedTurns() > 0) {
+            line.append(", left out ").append(report.droppedTurns()).append(report.droppedTurns() == 1 ? " earlier turn" : " earlier turns");
+        }
+        if (!report.shortened().isEmpty()) {
+            Map<String, Integer> counts = new LinkedHashMap<>();
+            report.shortened().forEach(part -> counts.merge(part, 1, Integer::sum));
+            line.append(", shortened ");
+            String separator = "";
+            for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+                line.append(separator).append(entry.getKey());
+                if (entry.getValue() > 1) {
+                    line.append(" x").append(entry.getValue());
+                }
+                separator = ", ";
+            }
+        }
+        return line.toString();
+    }
+
+    private boolean hasOversizedPart(List<Content> contents, int[] sizes) {
+        for (int i = 0; i < sizes.length; i++) {
+            if (sizes[i] > settings.maxPartTokens()) {
+                for (Part part : contents.get(i).parts().orElse(List.of())) {
+                    if (estimate(part) > settings.maxPartTokens()) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    // The conversation being fitted: contents grouped in turns, each starting with a message typed by the user
+    private final class Fitting {
+        private final List<List<Content>> turns = new ArrayList<>();
+        private final List<int[]> sizes = new ArrayList<>();
+        private final Set<String> questionTerms;
+        private final List<String> shortened = new ArrayList<>();
+        private int droppedTurns;
+        private Content note;
+
+        Fitting(List<Content> contents, int[] contentSizes, String question) {
+            this.questionTerms = new HashSet<>(DocIndex.tokenize(question));
+            List<Integer> starts = new ArrayList<>();
+            for (int i = 0; i < contents.size(); i++) {
+                if (starts.isEmpty() || isTypedByUser(contents.get(i))) {
+                    starts.add(i);
+                }
+            }
+            starts.add(contents.size());
+            for (int t = 0; t + 1 < starts.size(); t++) {
+                turns.add(new ArrayList<>(contents.subList(starts.get(t), starts.get(t + 1))));
+                sizes.add(Arrays.copyOfRange(contentSizes, starts.get(t), starts.get(t + 1)));
+            }
+        }
+
+        int total() {
+            int total = note == null ? 0 : estimate(note);
+            for (int[] turnSizes : sizes) {
+                for (int size : turnSizes) {
+                    total += size;
+                }
+            }
+            return total;
+        }
+
+        // Index of the first content of the current turn, counted over all contents
+        int currentTurnStart() {
+            int start = 0;
+            for (int t = 0; t < turns.size() - 1; t++) {
+                start += turns.get(t).size();
+            }
+            return start;
+        }
+
+        List<Content> contents() {
+            List<Content> contents = new ArrayList<>();
+            if (note != null) {
+                contents.add(note);
+            }
+            turns.forEach(contents::addAll);
+            return contents;
+        }
+
+        // Shortens every part over the limit in the contents from..to (counted over all contents)
+        void shortenParts(int from, int to, int limit) {
+            int index = 0;
+            for (int t = 0; t < turns.size(); t++) {
+                List<Content> turn = turns.get(t);
+                for (int i = 0; i < turn.size(); i++, index++) {
+                    if (index >= from && index < to && sizes.get(t)[i] > limit) {
+                        replace(t, i, shortenContent(turn.get(i), limit));
+                    }
+                }
+            }
+        }
+
+        // Leaves out earlier turns, lowest score first, until the rest fits; the current turn is kept
+        void dropEarlierTurns(int budget) {
+            int earlier = turns.size() - 1;
+            if (earlier <= 0) {
+                return;
+            }
+            List<Integer> order = new ArrayList<>();
+            double[] scores = new double[earlier];
+            for (int t = 0; t < earlier; t++) {
+                order.add(t);
+                scores[t] = Math.pow(0.5, (earlier - t) / RECENCY_HALF_LIFE) + relevance(turns.get(t));
+            }
+            order.sort(Comparator.comparingDouble(t -> scores[t]));
+            Set<Integer> dropped = new HashSet<>();
+            int total = total();
+            int noteTokens = estimateTokens(droppedNote(earlier)) + CONTENT_TOKENS + PART_TOKENS;
+            for (int t : order) {
+                if (total + (dropped.isEmpty() ? 0 : noteTokens) <= budget) {
+                    break;
+                }
+                dropped.add(t);
+                for (int size : sizes.get(t)) {
+                    total -= size;
+                }
+            }
+            for (int t = earlier - 1; t >= 0; t--) {
+                if (dropped.contains(t)) {
+                    turns.remove(t);
+                    sizes.remove(t);
+                }
+            }
+            droppedTurns = dropped.size();
+            if (droppedTurns > 0) {
+                note = Content.builder().role("user").parts(List.of(Part.fromText(droppedNote(droppedTurns)))).build();
+            }
+        }
+
+        // Shortens the largest parts of the current turn until it fits; the user's message stays whole
+        void shortenCurrentTurn(int budget) {
+            int t = turns.size() - 1;
+            if (t < 0) {
+                return;
+            }
+            for (int round = 0; round < 8 && total() > budget; round++) {
+                int[] turnSizes = sizes.get(t);
+                int largest = -1;
+                for (int i = 0; i < turnSizes.length; i++) {
+                    if (!isTypedByUser(turns.get(t).get(i)) && (largest < 0 || turnSizes[i] > turnSizes[largest])) {
+                        largest = i;
+                    }
+                }
+                if (largest < 0 || turnSizes[largest] <= MIN_PART_TOKENS) {
+                    return;
+                }
+                int limit = Math.max(MIN_PART_TOKENS, turnSizes[largest] - (total() - budget));
+                replace(t, largest, shortenContent(turns.get(t).get(largest), limit));
+            }
+        }
+
+        private void replace(int t, int i, Content content) {
+            if (content != turns.get(t).get(i)) {
+                turns.get(t).set(i, content);
+                sizes.get(t)[i] = estimate(content);
+            }
+        }
+
+        // Share of the question's terms that appear in the turn
+        private double relevance(List<Content> turn) {
+            if (questionTerms.isEmpty()) {
+                return 0;
+            }
+            Set<String> terms = new HashSet<>();
+            for (Content content : turn) {
+                terms.addAll(DocIndex.tokenize(textOf(content)));
+            }
+            int found = 0;
+            for (String term : questionTerms) {
+                if (terms.contains(term)) {
+                    found++;
+                }
+            }
+            return (double) found / questionTerms.size();
+        }
+
+        // The user's own messages are left as they are
+        private Content shortenContent(Content content, int limit) {
+            if (isTypedByUser(content)) {
+                return content;
+            }
+            List<Part> parts = content.parts().orElse(List.of());
+            List<Part> shortenedParts = new ArrayList<>(parts.size());
+            boolean changed = false;
+            int partLimit = Math.max(MIN_PART_TOKENS, limit / Math.max(1, parts.size()));
+            for (Part part : parts) {
+                Part shorter = shortenPart(part, partLimit);
+                changed |= shorter != part;
+                shortenedParts.add(shorter);
+            }
+            return changed ? content.toBuilder().parts(shortenedParts).build() : content;
+        }
+
+        private Part shortenPart(Part part, int limit) {
+            if (estimate(part) <= limit) {
+                return part;
+            }
+            if (part.functionResponse().isPresent()) {
+                FunctionResponse response = part.functionResponse().get();
+                Map<String, Object> result = response.response().orElse(null);
+                if (result == null) {
+                    return part;
+                }
+                Object shorter = shorten(plain(result), limit);
+                if (!(shorter instanceof Map<?, ?>)) {
+                    return part;
+                }
+                @SuppressWarnings("unchecked")
+                Map<String, Object> map = (Map<String, Object>) shorter;
+                shortened.add(response.name().orElse("tool") + " result");
+                FunctionResponse.Builder builder = FunctionResponse.builder().name(response.name().orElse("")).response(map);
+                response.id().ifPresent(builder::id);
+                return Part.builder().functionResponse(builder.build()).build();
+            }
+            Optional<String> text = part.text();
+            if (text.isPresent() && part.functionCall().isEmpty()) {
+                shortened.add(text.get().startsWith(CONTEXT_PREFIX) ? "another agent's message" : "a message");
+                return Part.fromText(summarize(text.get(), limit, questionTerms));
+            }
+            return part;
+        }
+
+        private Object shorten(Object value, int limit) {
+            if (estimateValue(value) <= limit) {
+                return value;
+            }
+            if (value instanceof String text) {
+                return summarize(text, limit, questionTerms);
+            }
+            if (value instanceof List<?> list) {
+                return shortenList(list, limit);
+            }
+            if (value instanceof Map<?, ?> map) {
+                return shortenMap(map, limit);
+            }
+            return value;
+        }
+
+        // Keeps the first entries that fit; the tools list the best matches and the latest entries first
+        private List<Object> shortenList(List<?> list, int limit) {
+            List<Object> kept = new ArrayList<>();
+            int used = 2;
+            for (Object item : list) {
+                int size = estimateValue(item) + 1;
+                if (used + size <= limit) {
+                    kept.add(item);
+                    used += size;
+                } else {
+                    if (kept.isEmpty()) {
+                        kept.add(shorten(item, limit - used));
+                    }
+                    break;
+                }
+            }
+            return kept;
+        }
+
+        // Shortens the largest values first, and notes how many entries of a list were left out
+        private Map<String, Object> shortenMap(Map<?, ?> map, int limit) {
+            Map<String, Object> copy = new LinkedHashMap<>();
+            map.forEach((key, value) -> copy.put(String.valueOf(key), value));
+            Set<String> done = new HashSet<>();
+            int total = estimateValue(copy);
+            while (total > limit) {
+                String largest = null;
+                int largestSize = 0;
+                for (Map.Entry<String, Object> entry : copy.entrySet()) {
+                    int size = estimateValue(entry.getValue());
+                    if (!done.contains(entry.getKey()) && size > largestSize) {
+                        largest = entry.getKey();
+                        largestSize = size;
+                    }
+                }
+                if (largest == null || largestSize <= MIN_PART_TOKENS) {
+                    break;
+                }
+                done.add(largest);
+                done.add(NOTE_KEY);
+                Object value = copy.get(largest);
+                Object shorter = shorten(value, Math.max(MIN_PART_TOKENS, largestSize - (total - limit)));
+                copy.put(largest, shorter);
+                if (value instanceof List<?> list && shorter instanceof List<?> kept && kept.size() < list.size()) {
+                    copy.put(NOTE_KEY, "Showing " + kept.size() + " of " + list.size() + " " + largest
+                        + " to fit the context window; ask again with a narrower request for the others.");
+                }
+                total = estimateValue(copy);
+            }
+            return copy;
+        }
+    }
+
+    /**
+     * The text cut to about limit tokens: the first sentence, then the sentences sharing most terms with the
+     * question, in their original order, and a marker where text was left out.
+     */
+    static String summarize(String text, int limit, Set<String> questionTerms) {
+        List<String> sentences = sentences(text);
+        String marker = " [...]";
+        int budget = Math.max(1, limit - estimateTokens(marker));
+        if (sentences.size() <= 1) {
+            return cut(text, budget) + marker;
+        }
+        int[] sizes = new int[sentences.size()];
+        double[] scores = new double[sentences.size()];
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < sentences.size(); i++) {
+            sizes[i] = estimateTokens(sentences.get(i));
+            int found = 0;
+            for (String term : DocIndex.tokenize(sentences.get(i))) {
+                if (questionTerms.contains(term)) {
+                    found++;
+                }
+            }
+            // The first sentence usually says what the text is about
+            scores[i] = i == 0 ? Double.MAX_VALUE : found - i * 1e-6;
+            order.add(i);
+        }
+        order.sort(Comparator.comparingDouble(i -> -scores[i]));
+        boolean[] keep = new boolean[sentences.size()];
+        int used = 0;
+        for (int i : order) {
+            if (used + sizes[i] <= budget) {
+                keep[i] = true;
+                used += sizes[i];
+            }
+        }
+        StringBuilder out = new StringBuilder();
+        boolean gap = false;
+        for (int i = 0; i < sentences.size(); i++) {
+            if (keep[i]) {
+                if (gap && out.length() > 0) {
+                    out.setLength(out.toString().stripTrailing().length());
+                    out.append(marker).append(' ');
+                }
+                out.append(sentences.get(i));
+                gap = false;
+            } else {
+                gap = true;
+            }
+        }
+        if (out.length() == 0) {
+            return cut(text, budget) + marker;
+        }
+        return gap ? out.toString().stripTrailing() + marker : out.toString();
+    }
+
+    // Splits after sentence ends and line breaks, keeping the separators with the sentence
+    private static List<String> sentences(String text) {
+        List<String> sentences = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            boolean end = c == '\n' || ((c == '.' || c == '?' || c == '!') && (i + 1 == text.length() || Character.isWhitespace(text.charAt(i + 1))));
+            if (end) {
+                int next = i + 1;
+                while (next < text.length() && Character.isWhitespace(text.charAt(next))) {
+                    next++;
+                }
+                sentences.add(text.substring(start, next));
+                start = next;
+                i = next - 1;
+            }
+        }
+        if (start < text.length()) {
+            sentences.add(text.substring(start));
+        }
+        return sentences;
+    }
+
+    // The longest prefix of about the given tokens, ending at a space if there is one
+    private static String cut(String text, int tokens) {
+        int low = 0;
+        int high = text.length();
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (estimateTokens(text.subSequence(0, mid)) <= tokens) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        int space = text.lastIndexOf(' ', low);
+        return text.substring(0, space > low / 2 ? space : low);
+    }
+
+    /**
+     * Estimated tokens of a text, close to what BPE tokenizers give for English prose, code and JSON:
+     * a word is one token per six letters, a number one per three digits, every other visible character one,
+     * and whitespace is free.
+     */
+    public static int estimateTokens(CharSequence text) {
+        int tokens = 0;
+        int n = text.length();
+        int i = 0;
+        while (i < n) {
+            char c = text.charAt(i);
+            if (Character.isLetter(c) && c < 0x2E80) {
+                int start = i;
+                while (i < n && Character.isLetter(text.charAt(i)) && text.charAt(i) < 0x2E80) {
+                    i++;
+                }
+                tokens += (i - start + 5) / 6;
+            } else if (c >= '0' && c <= '9') {
+                int start = i;
+                while (i < n && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+                    i++;
+                }
+                tokens += (i - start + 2) / 3;
+            } else {
+                if (!Character.isWhitespace(c) && !Character.isLowSurrogate(c)) {
+                    tokens++;
+                }
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Estimated tokens of a whole request: instruction, tool declarations and conversation.
+     */
+    static int estimate(LlmRequest request) {
+        int tokens = fixedTokens(request);
+        for (Content content : request.contents()) {
+            tokens += estimate(content);
+        }
+        return tokens;
+    }
+
+    static int estimate(List<Content> contents) {
+        int tokens = 0;
+        for (Content content : contents) {
+            tokens += estimate(content);
+        }
+        return tokens;
+    }
+
+    static int estimate(Content content) {
+        int tokens = CONTENT_TOKENS;
+        for (Part part : content.parts().orElse(List.of())) {
+            tokens += estimate(part);
+        }
+        return tokens;
+    }
+
+    private static int estimate(Part part) {
+        int tokens = PART_TOKENS;
+        tokens += part.text().map(ContextBudget::estimateTokens).orElse(0);
+        tokens += part.functionCall().map(call -> estimateTokens(call.name().orElse(""))
+            + call.args().map(ContextBudget::estimateValue).orElse(0)).orElse(0);
+        tokens += part.functionResponse().map(response -> estimateTokens(response.name().orElse(""))
+            + response.response().map(ContextBudget::estimateValue).orElse(0)).orElse(0);
+        return tokens;
+    }
+
+    // Tokens of the value written as JSON, without writing it: quotes, colons and commas are a token each
+    private static int estimateValue(Object value) {
+        if (value == null) {
+            return 1;
+        }
+        if (value instanceof CharSequence text) {
+            return estimateTokens(text) + 2;
+        }
+        if (value instanceof Number || value instanceof Boolean) {
+            return estimateTokens(value.toString());
+        }
+        if (value instanceof Map<?, ?> map) {
+            int tokens = 2;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                tokens += estimateTokens(String.valueOf(entry.getKey())) + 4 + estimateValue(entry.getValue());
+            }
+            return tokens;
+        }
+        if (value instanceof Iterable<?> list) {
+            int tokens = 2;
+            for (Object item : list) {
+                tokens += estimateValue(item) + 1;
+            }
+            return tokens;
+        }
+        return estimateTokens(value.toString()) + 2;
+    }
+
+    private static int fixedTokens(LlmRequest request) {
+        GenerateContentConfig config = request.config().orElse(null);
+        if (config == null) {
+            return 0;
+        }
+        int tokens = config.systemInstruction().map(ContextBudget::estimate).orElse(0);
+        for (Tool tool : config.tools().orElse(List.of())) {
+            for (FunctionDeclaration declaration : tool.functionDeclarations().orElse(List.of())) {
+                tokens += estimateTokens(declaration.toJson());
+            }
+        }
+        return tokens;
+    }
+
+    // Tool results may hold values that are only formatted when written (see ToolResult), so they are
+    // read back from their JSON before parts of them are cut
+    private static Object plain(Map<String, Object> result) {
+        try {
+            return MAPPER.readValue(Json.write(result), Object.class);
+        } catch (JsonProcessingException e) {
+            return result;
+        }
+    }
+
+    private static boolean isTypedByUser(Content content) {
+        if (!"user".equals(content.role().orElse(""))) {
+            return false;
+        }
+        for (Part part : content.parts().orElse(List.of())) {
+            if (part.functionResponse().isPresent()) {
+                return false;
+            }
+            if (part.text().filter(text -> !text.isBlank() && !text.startsWith(CONTEXT_PREFIX)).isPresent()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String lastQuestion(List<Content> contents) {
+        for (int i = contents.size() - 1; i >= 0; i--) {
+            if (isTypedByUser(contents.get(i))) {
+                return textOf(contents.get(i));
+            }
+        }
+        return "";
+    }
+
+    private static String textOf(Content content) {
+        StringBuilder text = new StringBuilder();
+        for (Part part : content.parts().orElse(List.of())) {
+            part.text().ifPresent(t -> text.append(t).append(' '));
+            part.functionResponse().flatMap(FunctionResponse::response).ifPresent(r -> text.append(Json.write(r)).append(' '));
+        }
+        return text.toString();
+    }
+
+    private static String droppedNote(int turns) {
+        return CONTEXT_PREFIX + " " + turns + (turns == 1 ? " earlier turn of this conversation was" : " earlier turns of this conversation were")
+            + " left out to fit the context window.";
+    }
+}
@@ -0,0 +1,184 @@
+package agents;
+
+import static agents.ScriptedLlm.afterTool;
+import static agents.ScriptedLlm.forAgent;
+import static agents.ScriptedLlm.lastFunctionResponse;
+import static agents.ScriptedLlm.lastUserText;
+import static agents.ScriptedLlm.userSays;
+import static agents.ScriptedLlm.userTexts;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.adk.models.LlmRequest;
+import com.google.genai.types.FunctionResponse;
+
+/**
+ * Script for the scripted model that plays through the README conversations: the coordinator
+ * delegates, the technical specialist searches the docs, and the billing specialist gathers
+ * the user ID before calling submitTicket, billingHistory or paymentMethod.
+ */
+public final class DemoScript {
+
+    private static final String BILLING_TOPICS = "refund|bill|charge|payment|invoice|balance|card|money|subscription";
+    private static final String TECHNICAL_TOPICS = "nebula|sync|file|node|replicat|encrypt|port|cpu|dashboard|config|cache|disk|install|integrat|error|fail";
+
+    private static final Pattern USER_ID = Pattern.compile("\\b(\\d{4}(?:-[A-Za-z])?)\\b");
+    private static final Pattern PAYMENT_TOKEN = Pattern.compile("\\b(\\d{4,})\\b");
+    private static final Pattern METHOD_TYPE = Pattern.compile("(?i)\\b(visa|mastercard|amex|paypal|ach)\\b");
+    private static final Pattern PURCHASE_AGO = Pattern.compile("(?i)\\b(\\d+|an?|one|two|three|four|five|six|seven|eight|nine|ten)\\s+(day|week|month)s?\\s+ago");
+    private static final List<String> NUMBER_WORDS = List.of("zero", "one", "two", "three", "four", "five", "six", "seven", "eight", "nine", "ten");
+
+    private DemoScript() {
+    }
+
+    public static ScriptedLlm create(Duration firstToken, Duration perToken) {
+        return ScriptedLlm.builder()
+            .name("scripted-nebula")
+            .latency(firstToken, perToken)
+
+            // Coordinator: delegate on topic keywords through ADK's transferToAgent tool
+            .when(forAgent(AgentTeam.AGENT_NAME).and(userSays(BILLING_TOPICS)),
+                ScriptedLlm.Reply.call("transferToAgent", Map.of("agentName", BillingSpecialist.AGENT_NAME)))
+            .when(forAgent(AgentTeam.AGENT_NAME).and(userSays(TECHNICAL_TOPICS)),
+                ScriptedLlm.Reply.call("transferToAgent", Map.of("agentName", TechnicalSpecialist.AGENT_NAME)))
+            .when(forAgent(AgentTeam.AGENT_NAME),
+                ScriptedLlm.Reply.text("I'm sorry, your request can't be handled. I can help with Nebula technical or billing questions."))
+
+            // Technical specialist: search once, then answer from the best section
+            .when(afterTool("searchDocs"), DemoScript::answerFromDocs)
+            .when(forAgent(TechnicalSpecialist.AGENT_NAME),
+                request -> ScriptedLlm.Reply.call("searchDocs", Map.of("query", lastUserText(request), "k", 3)))
+
+            // Billing specialist: summarize tool results
+            .when(afterTool("submitTicket"), DemoScript::confirmTicket)
+            .when(afterTool("billingHistory"), request -> ScriptedLlm.Reply.text("Here is your billing history: " + toolResult(request)))
+            .when(afterTool("paymentMethod"), request -> ScriptedLlm.Reply.text("Payment method update: " + toolResult(request)))
+            .when(afterTool("paymentMethodStatus"), request -> ScriptedLlm.Reply.text("Payment method update status: " + toolResult(request)))
+
+            // Billing specialist: the refund flow from the README
+            .when(forAgent(BillingSpecialist.AGENT_NAME).and(conversationSays("refund")).and(hasUserId()).and(userSays("ago|day|week|month|yesterday")),
+                request -> ScriptedLlm.Reply.call("submitTicket", Map.of(
+                    "userId", userId(request),
+                    "ticketMessage", "User " + userId(request) + " is requesting a refund: " + String.join(" ", userTexts(request)),
+                    "daysSincePurchase", daysSincePurchase(request))))
+            .when(forAgent(BillingSpecialist.AGENT_NAME).and(conversationSays("refund")).and(hasUserId()),
+                ScriptedLlm.Reply.text("Thank you. When did you make the purchase?"))
+            .when(forAgent(BillingSpecialist.AGENT_NAME).and(conversationSays("refund")),
+                ScriptedLlm.Reply.text("I can help with that. What is your user ID and why would you like a refund?"))
+
+            // Billing specialist: payment method changes and billing history
+            .when(forAgent(BillingSpecialist.AGENT_NAME).and(userSays("went through|status of")).and(hasUserId()),
+                request -> ScriptedLlm.Reply.call("paymentMethodStatus", Map.of("userId", userId(request))))
+            .when(forAgent(BillingSpecialist.AGENT_NAME).and(conversationSays("card|payment method|visa|amex|paypal|ach")).and(hasUserId())
+                    .and(request -> PAYMENT_TOKEN.matcher(lastUserText(request)).find()),
+                DemoScript::updatePaymentMethod)
+            .when(forAgent(BillingSpecialist.AGENT_NAME).and(conversationSays("card|payment method")),
+                ScriptedLlm.Reply.text("Please give me your user ID, the card type and the last four digits of the new card."))
+            .when(forAgent(BillingSpecialist.AGENT_NAME).and(hasUserId()),
+                request -> ScriptedLlm.Reply.call("billingHistory", Map.of(
+                    "userId", userId(request), "fromDate", "", "toDate", "", "status", "", "cursor", "")))
+            .when(forAgent(BillingSpecialist.AGENT_NAME),
+                ScriptedLlm.Reply.text("Could you give me your user ID?"))
+
+            .fallback(ScriptedLlm.Reply.text("I'm a multipurpose agent. How can I help?"))
+            .build();
+    }
+
+    private static Predicate<LlmRequest> conversationSays(String regex) {
+        Pattern pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
+        return request -> userTexts(request).stream().anyMatch(text -> pattern.matcher(text).find());
+    }
+
+    private static Predicate<LlmRequest> hasUserId() {
+        return request -> !userId(request).isEmpty();
+    }
+
+    // The most recently mentioned user ID in the conversation
+    static String userId(LlmRequest request) {
+        List<String> texts = userTexts(request);
+        for (int i = texts.size() - 1; i >= 0; i--) {
+            Matcher matcher = USER_ID.matcher(texts.get(i));
+            if (matcher.find()) {
+                return matcher.group(1);
+            }
+        }
+        return "";
+    }
+
+    // Days since the purchase as the user described it, or -1 if they have not said
+    static int daysSincePurchase(LlmRequest request) {
+        List<String> texts = userTexts(request);
+        for (int i = texts.size() - 1; i >= 0; i--) {
+            String text = texts.get(i).toLowerCase();
+            Matcher ago = PURCHASE_AGO.matcher(text);
+            if (ago.find()) {
+                String count = ago.group(1);
+                int n = Character.isDigit(count.charAt(0)) ? Integer.parseInt(count) : Math.max(1, NUMBER_WORDS.indexOf(count));
+                return n * switch (ago.group(2)) {
+                    case "week" -> 7;
+                    case "month" -> 30;
+                    default -> 1;
+                };
+            }
+            if (text.contains("yesterday")) {
+                return 1;
+            }
+            if (text.contains("today")) {
+                return 0;
+            }
+        }
+        return -1;
+    }
+
+    private static ScriptedLlm.Reply confirmTicket(LlmRequest request) {
+        Map<String, Object> response = lastFunctionResponse(request).flatMap(FunctionResponse::response).orElse(Map.of());
+        if (!"SUCCESS".equals(response.get("status"))) {
+            return ScriptedLlm.Reply.text("I'm sorry, your ticket could not be saved. Please try again later.");
+        }
+        String eligibility = switch (String.valueOf(response.get("refund"))) {
+            case "Full refund" -> "You are eligible for a full refund.";
+            case "Partial refund" -> "You are eligible for a partial refund.";
+            case "No refund" -> "Unfortunately more than 30 days have passed since your purchase, so a refund cannot be made.";
+            default -> "Whether you get a full or partial refund depends on when you made the purchase.";
+        };
+        String ticket = Boolean.TRUE.equals(response.get("duplicate"))
+            ? " Your ticket #" + response.get("ticketId") + " was already opened"
+            : " Your ticket #" + response.get("ticketId") + " has been opened";
+        return ScriptedLlm.Reply.text(eligibility + ticket + " and you will receive an email with a form to fill out.");
+    }
+
+    private static ScriptedLlm.Reply updatePaymentMethod(LlmRequest request) {
+        String text = String.join(" ", userTexts(request));
+        Matcher method = METHOD_TYPE.matcher(text);
+        Matcher token = PAYMENT_TOKEN.matcher(lastUserText(request));
+        token.find();
+
+        Map<String, Object> args = new HashMap<>();
+        args.put("userId", userId(request));
+        args.put("methodType", method.find() ? method.group(1) : "Card");
+        args.put("paymentToken", token.group(1));
+        return ScriptedLlm.Reply.call("paymentMethod", args);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ScriptedLlm.Reply answerFromDocs(LlmRequest request) {
+        Map<String, Object> response = lastFunctionResponse(request).flatMap(FunctionResponse::response).orElse(Map.of());
+        Object results = response.get("results");
+        if (!(results instanceof List<?> list) || list.isEmpty()) {
+            return ScriptedLlm.Reply.text("The documentation does not cover this. Could you give me more details?");
+        }
+        Map<String, Object> top = (Map<String, Object>) list.get(0);
+        return ScriptedLlm.Reply.text(
+            "According to the " + top.get("source") + " (" + top.get("section") + "):\n" + top.get("content"));
+    }
+
+    private static String toolResult(LlmRequest request) {
+        return String.valueOf(lastFunctionResponse(request).flatMap(FunctionResponse::response).orElse(Map.of()));
+    }
+}
@@ -0,0 +1,21 @@
+package agents;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A single retrievable section of a Nebula document.
+ * The source tag tells the model which document the section came from,
+ * e.g. "troubleshootingNotes" or "sourceCode".
+ */
+public record DocChunk(String source, String section, String text) {
+
+    // Convert the chunk to a map, which is safer for LLM consumption
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("source", source);
+        map.put("section", section);
+        map.put("content", text);
+        return map;
+    }
+}
@@ -0,0 +1,220 @@
+package agents;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits the Nebula documents into sections small enough to be returned on their own.
+ * Troubleshooting notes are split on their numbered headings, integration tips on paragraphs
+ * and source code on Python classes and methods.
+ *
+ * Documents are scanned as UTF-8 bytes, so a memory-mapped file can be split without decoding it:
+ * {@link #sections} only records where each section starts and ends, and {@link #chunk} decodes one
+ * section when it is needed.
+ */
+public class DocChunker {
+
+    public enum Format { NUMBERED_HEADINGS, PARAGRAPHS, PYTHON }
+
+    /** A named section of a document, as a byte range of its UTF-8 encoding. */
+    public record Section(String name, int start, int end) {}
+
+    private static final Pattern NUMBERED_HEADING = Pattern.compile("^\\d+\\.\\s+\\S.*$");
+    private static final Pattern PYTHON_CLASS = Pattern.compile("^class\\s+(\\w+)");
+    private static final Pattern PYTHON_METHOD = Pattern.compile("^\\s+def\\s+(\\w+)");
+    private static final Pattern PYTHON_MAIN = Pattern.compile("^if\\s+__name__\\s*==");
+
+    /**
+     * Splits a document made of numbered sections ("1. Service Fails to Start").
+     * Sections with a heading but no body are dropped.
+     */
+    public static List<DocChunk> byNumberedHeadings(String source, String document) {
+        return chunks(source, Format.NUMBERED_HEADINGS, document);
+    }
+
+    /**
+     * Splits a prose document on blank lines. Each paragraph is tagged with its position.
+     */
+    public static List<DocChunk> byParagraphs(String source, String document) {
+        return chunks(source, Format.PARAGRAPHS, document);
+    }
+
+    /**
+     * Splits Python source into the module header, each class header, each method
+     * (tagged as Class.method) and the __main__ block.
+     */
+    public static List<DocChunk> byPythonDefinitions(String source, String code) {
+        return chunks(source, Format.PYTHON, code);
+    }
+
+    /**
+     * Finds the sections of a UTF-8 document without decoding more than the candidate heading lines.
+     */
+    public static List<Section> sections(ByteBuffer document, Format format) {
+        return switch (format) {
+            case NUMBERED_HEADINGS -> numberedHeadings(document);
+            case PARAGRAPHS -> paragraphs(document);
+            case PYTHON -> pythonDefinitions(document);
+        };
+    }
+
+    /**
+     * Decodes one section into a chunk.
+     */
+    public static DocChunk chunk(String source, Format format, Section section, ByteBuffer document) {
+        String raw = decode(document, section.start(), section.end());
+        String text = switch (format) {
+            case NUMBERED_HEADINGS -> {
+                int newline = raw.indexOf('\n');
+                yield section.name() + "\n" + (newline < 0 ? "" : raw.substring(newline + 1).strip());
+            }
+            case PARAGRAPHS -> raw.trim();
+            case PYTHON -> raw.stripTrailing();
+        };
+        return new DocChunk(source, section.name(), text);
+    }
+
+    private static List<DocChunk> chunks(String source, Format format, String document) {
+        ByteBuffer bytes = ByteBuffer.wrap(document.getBytes(UTF_8));
+        List<DocChunk> chunks = new ArrayList<>();
+        for (Section section : sections(bytes, format)) {
+            chunks.add(chunk(source, format, section, bytes));
+        }
+        return chunks;
+    }
+
+    private static List<Section> numberedHeadings(ByteBuffer document) {
+        List<Section> sections = new ArrayList<>();
+        String heading = null;
+        int start = 0;
+        boolean hasBody = false;
+
+        for (int line = 0, limit = document.limit(); line < limit; ) {
+            int end = lineEnd(document, line);
+            if (isDigit(document.get(line)) && NUMBERED_HEADING.matcher(decode(document, line, end)).matches()) {
+                if (heading != null && hasBody) {
+                    sections.add(new Section(heading, start, line));
+                }
+                heading = decode(document, line, end).trim();
+                start = line;
+                hasBody = false;
+            } else if (!isBlank(document, line, end)) {
+                hasBody = true;
+            }
+            line = end + 1;
+        }
+        if (heading != null && hasBody) {
+            sections.add(new Section(heading, start, document.limit()));
+        }
+        return sections;
+    }
+
+    private static List<Section> paragraphs(ByteBuffer document) {
+        List<Section> sections = new ArrayList<>();
+        int number = 1;
+        int start = -1;
+
+        for (int line = 0, limit = document.limit(); line < limit; ) {
+            int end = lineEnd(document, line);
+            if (isBlank(document, line, end)) {
+                if (start >= 0) {
+                    sections.add(new Section("paragraph " + number++, start, line));
+                    start = -1;
+                }
+            } else if (start < 0) {
+                start = line;
+            }
+            line = end + 1;
+        }
+        if (start >= 0) {
+            sections.add(new Section("paragraph " + number, start, document.limit()));
+        }
+        return sections;
+    }
+
+    private static List<Section> pythonDefinitions(ByteBuffer document) {
+        List<Section> sections = new ArrayList<>();
+        String currentClass = null;
+        String section = "module header";
+        int start = 0;
+
+        for (int line = 0, limit = document.limit(); line < limit; ) {
+            int end = lineEnd(document, line);
+            String next = null;
+
+            // Only lines starting with "class", "def" or "if" can open a section
+            int first = firstNonSpace(document, line, end);
+            if (first < end && "cdi".indexOf(document.get(first)) >= 0) {
+                String text = decode(document, line, end);
+                Matcher classMatch = PYTHON_CLASS.matcher(text);
+                Matcher methodMatch = PYTHON_METHOD.matcher(text);
+                if (classMatch.find()) {
+                    currentClass = classMatch.group(1);
+                    next = "class " + currentClass;
+                } else if (methodMatch.find()) {
+                    next = currentClass == null ? methodMatch.group(1) : currentClass + "." + methodMatch.group(1);
+                } else if (PYTHON_MAIN.matcher(text).find()) {
+                    currentClass = null;
+                    next = "__main__";
+                }
+            }
+
+            if (next != null) {
+                if (!isBlank(document, start, line)) {
+                    sections.add(new Section(section, start, line));
+                }
+                section = next;
+                start = line;
+            }
+            line = end + 1;
+        }
+        if (!isBlank(document, start, document.limit())) {
+            sections.add(new Section(section, start, document.limit()));
+        }
+        return sections;
+    }
+
+    // Index of the newline ending the line that starts at from, or the limit for the last line
+    private static int lineEnd(ByteBuffer document, int from) {
+        int limit = document.limit();
+        for (int i = from; i < limit; i++) {
+            if (document.get(i) == '\n') {
+                return i;
+            }
+        }
+        return limit;
+    }
+
+    private static int firstNonSpace(ByteBuffer document, int from, int to) {
+        int i = from;
+        while (i < to && (document.get(i) == ' ' || document.get(i) == '\t')) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isBlank(ByteBuffer document, int from, int to) {
+        for (int i = from; i < to; i++) {
+            byte b = document.get(i);
+            if (b != ' ' && b != '\t' && b != '\n' && b != '\r' && b != '\f' && b != 0x0B) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    static String decode(ByteBuffer document, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        document.get(from, bytes);
+        return new String(bytes, UTF_8);
+    }
+}
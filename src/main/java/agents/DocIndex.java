@@ -0,0 +1,212 @@
+package agents;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+/**
+ * In-memory BM25 index over document chunks.
+ * The index is built once and is read-only afterwards, so it can be shared by every session.
+ * A new version of the documents gets a new index.
+ */
+public class DocIndex {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private static final Set<String> STOP_WORDS = Set.of(
+        "a", "an", "and", "are", "as", "at", "be", "by", "do", "does", "for", "from", "how", "i", "in", "is", "it",
+        "my", "of", "on", "or", "the", "this", "to", "what", "when", "why", "with", "you", "your"
+    );
+
+    private static final String[] SUFFIXES = {"ation", "ion", "ing", "ed", "es", "s"};
+
+    // Postings of one term as (chunk, frequency) pairs in a growable int array
+    private static final class PostingList {
+        int[] data = new int[4];
+        int size;
+
+        void add(int chunk, int frequency) {
+            if (size + 2 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[size++] = chunk;
+            data[size++] = frequency;
+        }
+
+        int count() {
+            return size / 2;
+        }
+    }
+
+    /** A chunk together with its relevance to a query. */
+    public record Hit(DocChunk chunk, double score) {}
+
+    private final int count;
+    private final IntFunction<DocChunk> chunkAt;
+    // Term -> term id, and the postings of each term id
+    private final Map<String, Integer> termIds = new HashMap<>();
+    private final List<PostingList> postings = new ArrayList<>();
+    private final int[] lengths;
+    private final double averageLength;
+
+    public DocIndex(List<DocChunk> chunks) {
+        this(chunks.size(), List.copyOf(chunks)::get);
+    }
+
+    /**
+     * Indexes count chunks supplied by chunkAt. Only the postings and chunk lengths are kept, chunks are
+     * requested again when they are returned by a search, so chunkAt can decode them lazily from a mapped file.
+     */
+    public DocIndex(int count, IntFunction<DocChunk> chunkAt) {
+        this.count = count;
+        this.chunkAt = chunkAt;
+        this.lengths = new int[count];
+
+        long total = 0;
+        // Term frequencies of the current chunk, indexed by term id, and the ids seen in it
+        int[] frequencies = new int[1024];
+        int[] seen = new int[1024];
+        for (int i = 0; i < count; i++) {
+            DocChunk chunk = chunkAt.apply(i);
+            List<String> terms = tokenize(chunk.section() + " " + chunk.text());
+            lengths[i] = terms.size();
+            total += terms.size();
+
+            int distinct = 0;
+            for (String term : terms) {
+                int id = termIds.computeIfAbsent(term, t -> {
+                    postings.add(new PostingList());
+                    return postings.size() - 1;
+                });
+                if (id >= frequencies.length) {
+                    frequencies = Arrays.copyOf(frequencies, Math.max(id + 1, frequencies.length * 2));
+                }
+                if (frequencies[id]++ == 0) {
+                    if (distinct == seen.length) {
+                        seen = Arrays.copyOf(seen, seen.length * 2);
+                    }
+                    seen[distinct++] = id;
+                }
+            }
+            for (int j = 0; j < distinct; j++) {
+                postings.get(seen[j]).add(i, frequencies[seen[j]]);
+                frequencies[seen[j]] = 0;
+            }
+        }
+        for (PostingList list : postings) {
+            list.data = Arrays.copyOf(list.data, list.size);
+        }
+        this.averageLength = count == 0 ? 0 : (double) total / count;
+    }
+
+    /**
+     * Returns at most k chunks ranked by BM25 score. Chunks that share no term with the query are never returned.
+     */
+    public List<Hit> search(String query, int k) {
+        Map<Integer, Double> scores = new HashMap<>();
+        for (String term : new LinkedHashSet<>(tokenize(query))) {
+            Integer id = termIds.get(term);
+            if (id == null) {
+                continue;
+            }
+            PostingList list = postings.get(id);
+            double idf = Math.log(1 + (count - list.count() + 0.5) / (list.count() + 0.5));
+            for (int p = 0; p < list.size; p += 2) {
+                int chunk = list.data[p];
+                double tf = list.data[p + 1];
+                double norm = K1 * (1 - B + B * lengths[chunk] / averageLength);
+                scores.merge(chunk, idf * tf * (K1 + 1) / (tf + norm), Double::sum);
+            }
+        }
+
+        // Keep the k best in a min-heap; ties go to the earlier chunk
+        Comparator<Map.Entry<Integer, Double>> byScore = Map.Entry.<Integer, Double>comparingByValue()
+            .thenComparing(Map.Entry.<Integer, Double>comparingByKey().reversed());
+        PriorityQueue<Map.Entry<Integer, Double>> best = new PriorityQueue<>(byScore);
+        for (Map.Entry<Integer, Double> entry : scores.entrySet()) {
+            if (entry.getValue() <= 0 || k <= 0) {
+                continue;
+            }
+            if (best.size() < k) {
+                best.add(entry);
+            } else if (byScore.compare(entry, best.peek()) > 0) {
+                best.poll();
+                best.add(entry);
+            }
+        }
+
+        List<Hit> hits = new ArrayList<>();
+        while (!best.isEmpty()) {
+            Map.Entry<Integer, Double> entry = best.poll();
+            hits.add(new Hit(chunkAt.apply(entry.getKey()), entry.getValue()));
+        }
+        Collections.reverse(hits);
+        return hits;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * The i-th chunk in index order, i.e. the documents' sections in file order.
+     */
+    public DocChunk chunk(int i) {
+        return chunkAt.apply(i);
+    }
+
+    /**
+     * Lower-cases, splits on anything that is not a letter or digit (so "_encrypt" becomes "encrypt"),
+     * drops stop words and strips a few common English suffixes so "encryption" matches "encrypt".
+     */
+    static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        int start = -1;
+        for (int i = 0, n = text.length(); i <= n; ) {
+            int c = i < n ? text.codePointAt(i) : ' ';
+            boolean word = i < n && isWordCharacter(c);
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                String raw = text.substring(start, i).toLowerCase(Locale.ROOT);
+                if (!STOP_WORDS.contains(raw)) {
+                    terms.add(stem(raw));
+                }
+                start = -1;
+            }
+            i += i < n ? Character.charCount(c) : 1;
+        }
+        return terms;
+    }
+
+    // Same as the regex classes \p{L} and \p{N}, with a fast path for ASCII
+    private static boolean isWordCharacter(int c) {
+        if (c < 128) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+        }
+        if (Character.isLetter(c)) {
+            return true;
+        }
+        int type = Character.getType(c);
+        return type == Character.DECIMAL_DIGIT_NUMBER || type == Character.LETTER_NUMBER || type == Character.OTHER_NUMBER;
+    }
+
+    private static String stem(String term) {
+        for (String suffix : SUFFIXES) {
+            if (term.length() > suffix.length() + 3 && term.endsWith(suffix)) {
+                return term.substring(0, term.length() - suffix.length());
+            }
+        }
+        return term;
+    }
+}
@@ -0,0 +1,150 @@
+package agents;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.adk.events.Event;
+import com.google.genai.types.FunctionCall;
+import com.google.genai.types.FunctionResponse;
+
+import io.reactivex.rxjava3.core.Flowable;
+
+/**
+ * Prints the events of a conversation turn to the console as they arrive.
+ *
+ * Partial text is written and flushed as soon as each event comes in. The complete event that
+ * follows a streamed reply repeats the partial text, so it only ends the line; without streaming
+ * the complete event is printed whole. Tool calls and their results are shown as progress lines.
+ * The time from the start of a turn to the first character of reply text is recorded per turn.
+ */
+public class EventPrinter {
+
+    private final PrintStream out;
+    private final List<Long> firstVisibleNanos = new ArrayList<>();
+
+    private long turnStart;
+    private long firstVisible = -1;
+    private boolean streaming;
+    private boolean lineOpen;
+
+    public EventPrinter(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Prints every event of the turn and blocks until the turn is complete.
+     */
+    public void printTurn(Flowable<Event> events) {
+        turnStart = System.nanoTime();
+        firstVisible = -1;
+        streaming = false;
+        lineOpen = false;
+        try {
+            events.blockingForEach(this::print);
+        } finally {
+            if (lineOpen) {
+                out.println();
+            }
+            out.flush();
+            if (firstVisible >= 0) {
+                firstVisibleNanos.add(firstVisible);
+            }
+        }
+    }
+
+    /**
+     * Time to first visible character of the last turn in milliseconds, or -1 if it showed no text.
+     */
+    public double lastFirstVisibleMillis() {
+        return firstVisible < 0 ? -1 : firstVisible / 1e6;
+    }
+
+    /**
+     * p50 and p99 time to first visible character over all turns printed so far.
+     */
+    public String summary() {
+        List<Long> sorted = new ArrayList<>(firstVisibleNanos);
+        if (sorted.isEmpty()) {
+            return "First visible character: no replies";
+        }
+        Collections.sort(sorted);
+        return String.format("First visible character: p50 %.0f ms, p99 %.0f ms over %d turns",
+            sorted.get(sorted.size() / 2) / 1e6, sorted.get((int) Math.ceil(sorted.size() * 0.99) - 1) / 1e6, sorted.size());
+    }
+
+    private void print(Event event) {
+        if (!event.functionCalls().isEmpty()) {
+            for (FunctionCall call : event.functionCalls()) {
+                progress("… " + call.name().orElse("tool"));
+            }
+            return;
+        }
+        if (!event.functionResponses().isEmpty()) {
+            for (FunctionResponse response : event.functionResponses()) {
+                progress("✓ " + response.name().orElse("tool"));
+            }
+            return;
+        }
+
+        String text = event.content().map(TeamRunner::textOf).orElse("");
+        if (event.partial().orElse(false)) {
+            // Partial events carry the raw token text, including its spacing
+            String token = rawText(event);
+            if (!token.isEmpty()) {
+                markVisible();
+                streaming = true;
+                lineOpen = true;
+                out.print(token);
+                out.flush();
+            }
+            return;
+        }
+        if (streaming) {
+            // The complete event repeats what was streamed
+            streaming = false;
+            endLine();
+            return;
+        }
+        if (!text.isEmpty()) {
+            markVisible();
+            endLine();
+            out.println(text);
+            out.flush();
+        }
+    }
+
+    private void progress(String line) {
+        endLine();
+        out.println(line);
+        out.flush();
+    }
+
+    private void endLine() {
+        if (lineOpen) {
+            out.println();
+            lineOpen = false;
+        }
+    }
+
+    private void markVisible() {
+        if (firstVisible < 0) {
+            firstVisible = System.nanoTime() - turnStart;
+        }
+    }
+
+    /**
+     * True if the event shows reply text to the user, as opposed to tool calls and results.
+     */
+    static boolean hasText(Event event) {
+        return event.functionCalls().isEmpty() && event.functionResponses().isEmpty() && !rawText(event).isBlank();
+    }
+
+    // Text parts joined without trimming, so streamed tokens keep their spacing
+    static String rawText(Event event) {
+        StringBuilder text = new StringBuilder();
+        event.content().flatMap(content -> content.parts()).ifPresent(parts -> parts.forEach(part -> part.text().ifPresent(text::append)));
+        return text.toString();
+    }
+}
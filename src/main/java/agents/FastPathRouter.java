@@ -0,0 +1,179 @@
+package agents;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Local pre-router that sends confidently classified messages straight to a specialist,
+ * skipping the coordinator LLM round trip.
+ *
+ * Once a session has been handed to a specialist it stays there: follow-up messages such as
+ * "My ID is 1234" carry no topic, so they go to the current specialist, and switching to the
+ * other specialist needs a higher confidence than the first decision. Only messages that are
+ * neither confident nor part of an ongoing conversation go to the coordinator.
+ *
+ * A session that is not used for the idle timeout forgets its specialist, so sessions that are never
+ * ended (clients that go away) do not accumulate.
+ */
+public class FastPathRouter {
+
+    public static final double DEFAULT_THRESHOLD = 0.85;
+    public static final double DEFAULT_SWITCH_THRESHOLD = 0.95;
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(30);
+
+    private record Sticky(Route route, long lastUsedMillis) {}
+
+    private final IntentClassifier classifier;
+    private final double threshold;
+    private final double switchThreshold;
+    private final long idleMillis;
+    private final long sweepMillis;
+    private final Map<String, Sticky> currentSpecialist = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep;
+
+    // Per-route counters: hits were classified locally, sticky followed the current specialist,
+    // misses went to the coordinator and were delegated to this route
+    private final Map<Route, LongAdder> hits = counters();
+    private final Map<Route, LongAdder> sticky = counters();
+    private final Map<Route, LongAdder> misses = counters();
+    private final LongAdder coordinatorCalls = new LongAdder();
+
+    public FastPathRouter(IntentClassifier classifier, double threshold, double switchThreshold) {
+        this(classifier, threshold, switchThreshold, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    public FastPathRouter(IntentClassifier classifier, double threshold, double switchThreshold, Duration idleTimeout) {
+        this.classifier = classifier;
+        this.threshold = threshold;
+        this.switchThreshold = switchThreshold;
+        this.idleMillis = idleTimeout.toMillis();
+        this.sweepMillis = Math.max(1, Math.min(idleMillis / 2, 60_000));
+        this.nextSweep = new AtomicLong(System.currentTimeMillis() + sweepMillis);
+    }
+
+    /**
+     * Router trained on the bundled example utterances. Sticky specialists are forgotten after
+     * agents.sessions.idleMinutes, the same idle time after which sessions leave memory.
+     */
+    public static FastPathRouter withDefaultExamples() {
+        IntentClassifier classifier = new IntentClassifier(IntentClassifier.loadExamples("/routing/training.tsv"));
+        return new FastPathRouter(classifier, DEFAULT_THRESHOLD, DEFAULT_SWITCH_THRESHOLD,
+            Duration.ofMinutes(Long.getLong("agents.sessions.idleMinutes", DEFAULT_IDLE_TIMEOUT.toMinutes())));
+    }
+
+    /**
+     * A routing decision. Confident decisions were made from the message alone, so the message
+     * does not depend on earlier turns; sticky and coordinator decisions are not confident.
+     */
+    public record Decision(Route route, boolean confident) {}
+
+    /**
+     * Decides where the next message of a session goes.
+     */
+    public Route route(String sessionId, String message) {
+        return decide(sessionId, message).route();
+    }
+
+    public Decision decide(String sessionId, String message) {
+        long now = System.currentTimeMillis();
+        sweepIfDue(now);
+        IntentClassifier.Prediction prediction = classifier.classify(message);
+        Route current = current(sessionId, now);
+
+        double required = current == null || current == prediction.label() ? threshold : switchThreshold;
+        if (prediction.label() != Route.COORDINATOR && prediction.confidence() >= required) {
+            currentSpecialist.put(sessionId, new Sticky(prediction.label(), now));
+            hits.get(prediction.label()).increment();
+            return new Decision(prediction.label(), true);
+        }
+
+        if (current != null) {
+            currentSpecialist.put(sessionId, new Sticky(current, now));
+            sticky.get(current).increment();
+            return new Decision(current, false);
+        }
+
+        coordinatorCalls.increment();
+        return new Decision(Route.COORDINATOR, false);
+    }
+
+    /**
+     * Records the specialist the coordinator delegated to, so the session sticks to it.
+     */
+    public void recordCoordinatorChoice(String sessionId, Route route) {
+        if (route == Route.COORDINATOR) {
+            return;
+        }
+        currentSpecialist.put(sessionId, new Sticky(route, System.currentTimeMillis()));
+        misses.get(route).increment();
+    }
+
+    public void endSession(String sessionId) {
+        currentSpecialist.remove(sessionId);
+    }
+
+    /**
+     * Number of coordinator model calls avoided so far.
+     */
+    public long savedModelCalls() {
+        long saved = 0;
+        for (Route route : Route.values()) {
+            saved += hits.get(route).sum() + sticky.get(route).sum();
+        }
+        return saved;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (Route route : Route.values()) {
+            if (route == Route.COORDINATOR) {
+                continue;
+            }
+            Map<String, Long> counts = new LinkedHashMap<>();
+            counts.put("hits", hits.get(route).sum());
+            counts.put("sticky", sticky.get(route).sum());
+            counts.put("misses", misses.get(route).sum());
+            stats.put(route.name().toLowerCase(), counts);
+        }
+        stats.put("coordinatorCalls", coordinatorCalls.sum());
+        stats.put("stickySessions", currentSpecialist.size());
+        stats.put("savedModelCalls", savedModelCalls());
+        return stats;
+    }
+
+    // The specialist of a session, or null if it has none or was idle for longer than the timeout
+    private Route current(String sessionId, long now) {
+        Sticky entry = currentSpecialist.get(sessionId);
+        if (entry == null) {
+            return null;
+        }
+        if (now - entry.lastUsedMillis() > idleMillis) {
+            currentSpecialist.remove(sessionId, entry);
+            return null;
+        }
+        return entry.route();
+    }
+
+    // Drops idle sessions at most once per sweep interval, on whichever call comes first
+    private void sweepIfDue(long now) {
+        long due = nextSweep.get();
+        if (now < due || !nextSweep.compareAndSet(due, now + sweepMillis)) {
+            return;
+        }
+        long cutoff = now - idleMillis;
+        currentSpecialist.values().removeIf(entry -> entry.lastUsedMillis() < cutoff);
+    }
+
+    private static Map<Route, LongAdder> counters() {
+        Map<Route, LongAdder> counters = new EnumMap<>(Route.class);
+        for (Route route : Route.values()) {
+            counters.put(route, new LongAdder());
+        }
+        return counters;
+    }
+}
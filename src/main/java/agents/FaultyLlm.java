@@ -0,0 +1,77 @@
+package agents;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.adk.models.BaseLlm;
+import com.google.adk.models.BaseLlmConnection;
+import com.google.adk.models.LlmRequest;
+import com.google.adk.models.LlmResponse;
+
+import io.reactivex.rxjava3.core.Flowable;
+
+/**
+ * Injects the faults of an unreliable provider in front of a local model such as {@link ScriptedLlm}:
+ * a share of calls starts only after a long stall, a share fails with a 503 UNAVAILABLE error, and
+ * while the model is marked down every call fails. Used to check the resilience layer without a network.
+ */
+public class FaultyLlm extends BaseLlm {
+
+    private final BaseLlm delegate;
+    private final double slowShare;
+    private final long slowMillis;
+    private final double failShare;
+    private volatile boolean down;
+    private final LongAdder slowed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * @param slowShare share of calls that stall before the delegate is called
+     * @param slowMillis length of a stall
+     * @param failShare share of calls that fail at once
+     */
+    public FaultyLlm(BaseLlm delegate, double slowShare, long slowMillis, double failShare) {
+        super(delegate.model());
+        this.delegate = delegate;
+        this.slowShare = slowShare;
+        this.slowMillis = slowMillis;
+        this.failShare = failShare;
+    }
+
+    @Override
+    public Flowable<LlmResponse> generateContent(LlmRequest llmRequest, boolean stream) {
+        return Flowable.defer(() -> {
+            double roll = ThreadLocalRandom.current().nextDouble();
+            if (down || roll < failShare) {
+                failed.increment();
+                return Flowable.error(new RuntimeException("503 UNAVAILABLE: the model is overloaded, try again later"));
+            }
+            if (roll < failShare + slowShare) {
+                slowed.increment();
+                return Flowable.timer(slowMillis, TimeUnit.MILLISECONDS).concatMap(tick -> delegate.generateContent(llmRequest, stream));
+            }
+            return delegate.generateContent(llmRequest, stream);
+        });
+    }
+
+    @Override
+    public BaseLlmConnection connect(LlmRequest llmRequest) {
+        return delegate.connect(llmRequest);
+    }
+
+    /**
+     * Fails every call while down, like a provider outage.
+     */
+    public void setDown(boolean down) {
+        this.down = down;
+    }
+
+    public long slowed() {
+        return slowed.sum();
+    }
+
+    public long failed() {
+        return failed.sum();
+    }
+}
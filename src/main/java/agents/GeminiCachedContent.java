@@ -0,0 +1,42 @@
+package agents;
+
+import java.util.Optional;
+
+import com.google.genai.Client;
+import com.google.genai.types.CachedContent;
+import com.google.genai.types.CreateCachedContentConfig;
+
+/**
+ * Gemini context caching as a {@link PrefixCache} backend: each prefix becomes a cached content resource
+ * holding the system instruction and tool declarations, kept for the API's default time to live.
+ * Gemini only caches prefixes above a minimum token count; smaller ones fail to upload and stay inline.
+ */
+public class GeminiCachedContent implements PrefixCache.Backend {
+
+    private final Client client;
+
+    public GeminiCachedContent(Client client) {
+        this.client = client;
+    }
+
+    /**
+     * Uses the GOOGLE_API_KEY environment variable, like {@link Models#gemini}.
+     */
+    public static GeminiCachedContent fromEnvironment() {
+        return new GeminiCachedContent(Client.builder().apiKey(System.getenv("GOOGLE_API_KEY")).build());
+    }
+
+    @Override
+    public Optional<String> create(PromptPrefix prefix) {
+        CreateCachedContentConfig.Builder config = CreateCachedContentConfig.builder()
+            .displayName("agents-" + prefix.hash().substring(0, 16));
+        if (prefix.systemInstruction() != null) {
+            config.systemInstruction(prefix.systemInstruction());
+        }
+        if (!prefix.tools().isEmpty()) {
+            config.tools(prefix.tools());
+        }
+        CachedContent cached = client.caches.create(prefix.model(), config.build());
+        return cached.name();
+    }
+}
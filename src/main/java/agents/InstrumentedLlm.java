@@ -0,0 +1,91 @@
+package agents;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.adk.models.BaseLlm;
+import com.google.adk.models.BaseLlmConnection;
+import com.google.adk.models.LlmRequest;
+import com.google.adk.models.LlmResponse;
+import com.google.genai.types.Content;
+import com.google.genai.types.Part;
+
+import io.reactivex.rxjava3.core.Flowable;
+
+/**
+ * Records a {@link Span.Kind#MODEL} span per generateContent call: wall time, time to the first
+ * response and the estimated prompt and response tokens. Function calls and function responses in
+ * the prompt count towards its size, so large tool results show up as prompt tokens on the next call.
+ */
+public class InstrumentedLlm extends BaseLlm {
+
+    private final BaseLlm delegate;
+    private final String agentName;
+
+    public InstrumentedLlm(BaseLlm delegate, String agentName) {
+        super(delegate.model());
+        this.delegate = delegate;
+        this.agentName = agentName;
+    }
+
+    @Override
+    public Flowable<LlmResponse> generateContent(LlmRequest llmRequest, boolean stream) {
+        return Flowable.defer(() -> {
+            long startMillis = System.currentTimeMillis();
+            long start = System.nanoTime();
+            long promptChars = promptChars(llmRequest);
+            AtomicLong firstToken = new AtomicLong(-1);
+            // Streaming ends with a complete response repeating the partials, so partials only count without one
+            AtomicLong completeChars = new AtomicLong();
+            AtomicLong partialChars = new AtomicLong();
+            AtomicBoolean sawComplete = new AtomicBoolean();
+            AtomicBoolean failed = new AtomicBoolean();
+
+            return delegate.generateContent(llmRequest, stream)
+                .doOnNext(response -> {
+                    firstToken.compareAndSet(-1, System.nanoTime() - start);
+                    long chars = response.content().map(InstrumentedLlm::chars).orElse(0L);
+                    if (response.partial().orElse(false)) {
+                        partialChars.addAndGet(chars);
+                    } else {
+                        sawComplete.set(true);
+                        completeChars.addAndGet(chars);
+                    }
+                })
+                .doOnError(e -> failed.set(true))
+                .doFinally(() -> {
+                    long responseChars = sawComplete.get() ? completeChars.get() : partialChars.get();
+                    Telemetry.record(new Span(Span.Kind.MODEL, agentName, startMillis, System.nanoTime() - start,
+                        firstToken.get(), Telemetry.estimateTokens(promptChars), Telemetry.estimateTokens(responseChars),
+                        -1, failed.get()));
+                });
+        });
+    }
+
+    @Override
+    public BaseLlmConnection connect(LlmRequest llmRequest) {
+        return delegate.connect(llmRequest);
+    }
+
+    static long promptChars(LlmRequest request) {
+        long chars = request.config()
+            .flatMap(config -> config.systemInstruction())
+            .map(InstrumentedLlm::chars)
+            .orElse(0L);
+        for (Content content : request.contents()) {
+            chars += chars(content);
+        }
+        return chars;
+    }
+
+    static long chars(Content content) {
+        long chars = 0;
+        for (Part part : content.parts().orElse(List.of())) {
+            chars += part.text().map(String::length).orElse(0);
+            chars += part.functionCall().flatMap(call -> call.args()).map(Json::length).orElse(0);
+            chars += part.functionResponse().flatMap(response -> response.response()).map(Json::length).orElse(0);
+        }
+        return chars;
+    }
+}
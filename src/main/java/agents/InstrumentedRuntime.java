@@ -0,0 +1,109 @@
+package agents;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.adk.agents.RunConfig;
+import com.google.adk.events.Event;
+import com.google.adk.sessions.BaseSessionService;
+import com.google.genai.types.Content;
+
+import io.reactivex.rxjava3.core.Flowable;
+
+/**
+ * Records a {@link Span.Kind#TURN} span per user message and a {@link Span.Kind#AGENT} span per
+ * agent hop, i.e. per run of consecutive events from the same author. The time to first token of a
+ * turn is the time until the first event with text the user can see, partial or complete; tool calls
+ * before it do not count.
+ */
+public class InstrumentedRuntime implements AgentRuntime {
+
+    private final AgentRuntime delegate;
+
+    public InstrumentedRuntime(AgentRuntime delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public String appName() {
+        return delegate.appName();
+    }
+
+    @Override
+    public BaseSessionService sessionService() {
+        return delegate.sessionService();
+    }
+
+    @Override
+    public Flowable<Event> runAsync(String userId, String sessionId, Content newMessage, RunConfig runConfig) {
+        return Flowable.defer(() -> {
+            Turn turn = new Turn();
+            return delegate.runAsync(userId, sessionId, newMessage, runConfig)
+                .doOnNext(turn::onEvent)
+                .doOnError(e -> turn.failed = true)
+                .doFinally(turn::finish);
+        });
+    }
+
+    @Override
+    public void closeSession(String userId, String sessionId) {
+        delegate.closeSession(userId, sessionId);
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>(delegate.stats());
+        stats.put("telemetry", Telemetry.metrics().snapshot());
+        return stats;
+    }
+
+    // Events of one turn arrive serially, so the fields need no synchronization
+    private final class Turn {
+        final long startMillis = System.currentTimeMillis();
+        final long start = System.nanoTime();
+        long firstText = -1;
+        long responseChars;
+        volatile boolean failed;
+
+        String hopAuthor;
+        long hopStartMillis;
+        long hopStart;
+        long hopEnd;
+
+        void onEvent(Event event) {
+            long now = System.nanoTime();
+            if (firstText < 0 && EventPrinter.hasText(event)) {
+                firstText = now - start;
+            }
+            // A streamed reply ends with a complete event that repeats its partial events
+            if (!event.partial().orElse(false)) {
+                responseChars += event.content().map(InstrumentedLlm::chars).orElse(0L);
+            }
+
+            String author = event.author();
+            if (hopAuthor != null && !hopAuthor.equals(author)) {
+                finishHop();
+            }
+            if (hopAuthor == null || !hopAuthor.equals(author)) {
+                // A hop starts where the previous one ended, or with the turn
+                hopStart = hopEnd == 0 ? start : hopEnd;
+                hopStartMillis = startMillis + (hopStart - start) / 1_000_000;
+                hopAuthor = author;
+            }
+            hopEnd = now;
+        }
+
+        void finishHop() {
+            Telemetry.record(new Span(Span.Kind.AGENT, hopAuthor, hopStartMillis, hopEnd - hopStart, -1, -1, -1, -1, false));
+            hopAuthor = null;
+        }
+
+        void finish() {
+            if (hopAuthor != null) {
+                finishHop();
+            }
+            Telemetry.record(new Span(Span.Kind.TURN, appName(), startMillis, System.nanoTime() - start,
+                firstText, -1, Telemetry.estimateTokens(responseChars), -1, failed));
+        }
+    }
+}
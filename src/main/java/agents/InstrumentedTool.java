@@ -0,0 +1,42 @@
+package agents;
+
+import java.util.Map;
+import java.util.Optional;
+
+import com.google.adk.tools.BaseTool;
+import com.google.adk.tools.ToolContext;
+import com.google.genai.types.FunctionDeclaration;
+
+import io.reactivex.rxjava3.core.Single;
+
+/**
+ * Records a {@link Span.Kind#TOOL} span per invocation with the wall time and the size of the
+ * result as JSON, which is roughly what the model has to read on its next call.
+ */
+public class InstrumentedTool extends BaseTool {
+
+    private final BaseTool delegate;
+
+    public InstrumentedTool(BaseTool delegate) {
+        super(delegate.name(), delegate.description(), delegate.longRunning());
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Optional<FunctionDeclaration> declaration() {
+        return delegate.declaration();
+    }
+
+    @Override
+    public Single<Map<String, Object>> runAsync(Map<String, Object> args, ToolContext toolContext) {
+        return Single.defer(() -> {
+            long startMillis = System.currentTimeMillis();
+            long start = System.nanoTime();
+            return delegate.runAsync(args, toolContext)
+                .doOnSuccess(result -> Telemetry.record(new Span(Span.Kind.TOOL, name(), startMillis,
+                    System.nanoTime() - start, -1, -1, -1, Json.utf8Length(result), false)))
+                .doOnError(e -> Telemetry.record(new Span(Span.Kind.TOOL, name(), startMillis,
+                    System.nanoTime() - start, -1, -1, -1, -1, true)));
+        });
+    }
+}
@@ -0,0 +1,137 @@
+package agents;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Multinomial naive Bayes classifier over labelled example utterances.
+ * It uses the same tokenizer as the documentation index, so "encryption" and "encrypted" count as one term.
+ */
+public class IntentClassifier {
+
+    /** A labelled example utterance. */
+    public record Example(Route label, String text) {}
+
+    /** The most likely label and its posterior probability. */
+    public record Prediction(Route label, double confidence) {}
+
+    private final Map<Route, Map<String, Integer>> termCounts = new EnumMap<>(Route.class);
+    private final Map<Route, Integer> totalTerms = new EnumMap<>(Route.class);
+    private final Map<Route, Integer> exampleCounts = new EnumMap<>(Route.class);
+    private final Set<String> vocabulary = new HashSet<>();
+    private int examples;
+
+    public IntentClassifier(List<Example> trainingSet) {
+        for (Example example : trainingSet) {
+            examples++;
+            exampleCounts.merge(example.label(), 1, Integer::sum);
+            Map<String, Integer> counts = termCounts.computeIfAbsent(example.label(), l -> new HashMap<>());
+            for (String term : DocIndex.tokenize(example.text())) {
+                counts.merge(term, 1, Integer::sum);
+                totalTerms.merge(example.label(), 1, Integer::sum);
+                vocabulary.add(term);
+            }
+        }
+    }
+
+    /**
+     * Classifies a message. Messages without a single known term get confidence 0,
+     * since the prior alone says nothing about them.
+     */
+    public Prediction classify(String text) {
+        List<String> terms = new ArrayList<>();
+        for (String term : DocIndex.tokenize(text)) {
+            if (vocabulary.contains(term)) {
+                terms.add(term);
+            }
+        }
+        if (terms.isEmpty() || termCounts.isEmpty()) {
+            return new Prediction(Route.COORDINATOR, 0);
+        }
+
+        Map<Route, Double> logScores = new EnumMap<>(Route.class);
+        for (Map.Entry<Route, Map<String, Integer>> entry : termCounts.entrySet()) {
+            Route label = entry.getKey();
+            double denominator = totalTerms.getOrDefault(label, 0) + vocabulary.size();
+            double score = Math.log((double) exampleCounts.get(label) / examples);
+            for (String term : terms) {
+                score += Math.log((entry.getValue().getOrDefault(term, 0) + 1) / denominator);
+            }
+            logScores.put(label, score);
+        }
+
+        // Softmax over the log scores, shifted by the maximum for numerical stability
+        double max = logScores.values().stream().mapToDouble(Double::doubleValue).max().orElse(0);
+        double sum = 0;
+        Route best = null;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (Map.Entry<Route, Double> entry : logScores.entrySet()) {
+            sum += Math.exp(entry.getValue() - max);
+            if (entry.getValue() > bestScore) {
+                bestScore = entry.getValue();
+                best = entry.getKey();
+            }
+        }
+        return new Prediction(best, Math.exp(bestScore - max) / sum);
+    }
+
+    /**
+     * Reads examples from a classpath resource with one "LABEL<TAB>utterance" per line.
+     * Blank lines and lines starting with '#' are ignored.
+     */
+    public static List<Example> loadExamples(String resource) {
+        List<Example> result = new ArrayList<>();
+        for (List<Example> conversation : loadConversations(resource)) {
+            result.addAll(conversation);
+        }
+        return result;
+    }
+
+    /**
+     * Same format as {@link #loadExamples(String)}, but a blank line starts a new conversation.
+     */
+    public static List<List<Example>> loadConversations(String resource) {
+        InputStream in = IntentClassifier.class.getResourceAsStream(resource);
+        if (in == null) {
+            throw new IllegalArgumentException("Missing classpath resource: " + resource);
+        }
+
+        List<List<Example>> conversations = new ArrayList<>();
+        List<Example> current = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#")) {
+                    continue;
+                }
+                if (line.isBlank()) {
+                    if (!current.isEmpty()) {
+                        conversations.add(current);
+                        current = new ArrayList<>();
+                    }
+                    continue;
+                }
+                String[] fields = line.split("\t", 2);
+                current.add(new Example(Route.valueOf(fields[0].trim()), fields[1].trim()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (!current.isEmpty()) {
+            conversations.add(current);
+        }
+        return conversations;
+    }
+}
@@ -0,0 +1,141 @@
+package agents;
+
+import java.util.Map;
+
+/**
+ * Minimal JSON string helpers for the places where we write JSON by hand.
+ */
+public final class Json {
+
+    // Larger buffers are dropped after use rather than kept by the thread
+    private static final int MAX_KEPT_BUFFER = 64 * 1024;
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(1024));
+
+    private Json() {
+    }
+
+    /**
+     * Returns the value as a quoted JSON string literal, or null when the value is null.
+     */
+    public static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder out = new StringBuilder(value.length() + 2);
+        appendQuoted(out, value);
+        return out.toString();
+    }
+
+    /**
+     * Writes maps, lists, strings, numbers and booleans as JSON. Other values are written as strings.
+     */
+    public static String write(Object value) {
+        StringBuilder out = new StringBuilder();
+        append(out, value);
+        return out.toString();
+    }
+
+    /**
+     * The length of the value written as JSON in characters. Like {@link #utf8Length}, this writes into
+     * a buffer kept per thread instead of creating a string.
+     */
+    public static int length(Object value) {
+        StringBuilder out = buffer(value);
+        int length = out.length();
+        release(out);
+        return length;
+    }
+
+    /**
+     * The size of the value written as JSON in UTF-8 bytes. Writes into a buffer kept per thread,
+     * so measuring a result does not create a string or a byte array.
+     */
+    public static int utf8Length(Object value) {
+        StringBuilder out = buffer(value);
+        int bytes = 0;
+        for (int i = 0; i < out.length(); i++) {
+            char c = out.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < out.length() && Character.isLowSurrogate(out.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        release(out);
+        return bytes;
+    }
+
+    private static StringBuilder buffer(Object value) {
+        StringBuilder out = BUFFER.get();
+        out.setLength(0);
+        append(out, value);
+        return out;
+    }
+
+    private static void release(StringBuilder out) {
+        if (out.capacity() > MAX_KEPT_BUFFER) {
+            BUFFER.remove();
+        } else {
+            out.setLength(0);
+        }
+    }
+
+    public static void append(StringBuilder out, Object value) {
+        if (value == null) {
+            out.append("null");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            out.append(value);
+        } else if (value instanceof ToolResult result) {
+            result.appendJson(out);
+        } else if (value instanceof Map<?, ?> map) {
+            out.append('{');
+            String separator = "";
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                out.append(separator);
+                appendQuoted(out, String.valueOf(entry.getKey()));
+                out.append(": ");
+                append(out, entry.getValue());
+                separator = ", ";
+            }
+            out.append('}');
+        } else if (value instanceof Iterable<?> list) {
+            out.append('[');
+            String separator = "";
+            for (Object item : list) {
+                out.append(separator);
+                append(out, item);
+                separator = ", ";
+            }
+            out.append(']');
+        } else {
+            appendQuoted(out, value.toString());
+        }
+    }
+
+    public static void appendQuoted(StringBuilder out, CharSequence value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                }
+            }
+        }
+        out.append('"');
+    }
+}
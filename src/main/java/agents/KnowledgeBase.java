@@ -0,0 +1,228 @@
+package agents;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * The technical documentation, loaded from a directory of files instead of being compiled in.
+ *
+ * Each file is memory-mapped and split into sections by byte offsets (see {@link DocChunker}); only the BM25
+ * postings and the section offsets live on the heap, and a section's text is decoded when a search returns it.
+ * The file name without extension is the source tag, e.g. troubleshootingNotes.md becomes "troubleshootingNotes".
+ *
+ * A watcher thread rebuilds the index when a file in the directory changes and swaps the new {@link Snapshot}
+ * in with a single volatile write. Searches that already hold the old snapshot finish on it, so nothing waits
+ * for a reload. Update files by writing a new file and renaming it over the old one; truncating a file in place
+ * while it is mapped is not safe.
+ */
+public class KnowledgeBase implements AutoCloseable {
+
+    /** One immutable version of the knowledge base. */
+    public record Snapshot(DocIndex index, String version, int documents, long bytes) {}
+
+    private record MappedDocument(String source, DocChunker.Format format, ByteBuffer buffer, List<DocChunker.Section> sections) {}
+
+    // Wait for a burst of file events to settle before reloading
+    private static final long RELOAD_DELAY_MS = 200;
+
+    private final Path directory;
+    private volatile Snapshot current;
+    private volatile WatchService watchService;
+
+    private KnowledgeBase(Path directory, Snapshot snapshot) {
+        this.directory = directory;
+        this.current = snapshot;
+    }
+
+    /**
+     * Maps and indexes every file in the directory.
+     */
+    public static KnowledgeBase open(Path directory) throws IOException {
+        return new KnowledgeBase(directory, load(directory));
+    }
+
+    /**
+     * Knowledge base in -Dagents.knowledge.dir (default "knowledge"), reloaded on change unless
+     * -Dagents.knowledge.watch=false. A missing directory gives an empty knowledge base.
+     */
+    public static KnowledgeBase fromSystemProperties() {
+        return openOrEmpty(Path.of(System.getProperty("agents.knowledge.dir", "knowledge")));
+    }
+
+    /**
+     * Knowledge base in the directory, reloaded on change unless -Dagents.knowledge.watch=false.
+     * A directory that cannot be read gives an empty knowledge base.
+     */
+    public static KnowledgeBase openOrEmpty(Path directory) {
+        try {
+            KnowledgeBase knowledgeBase = open(directory);
+            if (Boolean.parseBoolean(System.getProperty("agents.knowledge.watch", "true"))) {
+                knowledgeBase.watch();
+            }
+            return knowledgeBase;
+        } catch (IOException e) {
+            System.err.println("Cannot load knowledge base from " + directory.toAbsolutePath() + ": " + e);
+            return new KnowledgeBase(directory, new Snapshot(new DocIndex(List.of()), "empty", 0, 0));
+        }
+    }
+
+    public Snapshot snapshot() {
+        return current;
+    }
+
+    public DocIndex index() {
+        return current.index();
+    }
+
+    public String version() {
+        return current.version();
+    }
+
+    /**
+     * Builds a new snapshot from the directory and swaps it in.
+     */
+    public void reload() throws IOException {
+        current = load(directory);
+    }
+
+    /**
+     * Starts a daemon thread that reloads the knowledge base when files in the directory change.
+     */
+    public synchronized void watch() throws IOException {
+        if (watchService != null) {
+            return;
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        directory.register(watchService,
+            StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+
+        Thread watcher = new Thread(this::watchLoop, "knowledge-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    private void watchLoop() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Thread.sleep(RELOAD_DELAY_MS);
+                key.pollEvents();
+                key.reset();
+                try {
+                    Snapshot previous = current;
+                    reload();
+                    if (!previous.version().equals(current.version())) {
+                        System.out.println("Knowledge base reloaded: " + current.documents() + " documents, "
+                            + current.index().size() + " sections");
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // Keep serving the previous snapshot, e.g. if a file was caught half written
+                    System.err.println("Knowledge base reload failed: " + e);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        }
+    }
+
+    static Snapshot load(Path directory) throws IOException {
+        List<Path> files;
+        try (Stream<Path> paths = Files.list(directory)) {
+            files = paths
+                .filter(Files::isRegularFile)
+                .filter(path -> !path.getFileName().toString().startsWith("."))
+                .filter(path -> !path.getFileName().toString().endsWith("~") && !path.getFileName().toString().endsWith(".tmp"))
+                .sorted()
+                .toList();
+        }
+
+        List<MappedDocument> documents = new ArrayList<>();
+        long bytes = 0;
+        MessageDigest digest = sha256();
+        for (Path file : files) {
+            MappedDocument document = map(file);
+            documents.add(document);
+            bytes += document.buffer().limit();
+            // Version is a hash of the content, so touching a file without changing it keeps cached answers;
+            // the pages were just read by the chunker, so this is one more pass over memory, not over the disk
+            digest.update((file.getFileName() + "\0" + document.buffer().limit() + "\n").getBytes(UTF_8));
+            digest.update(document.buffer().duplicate());
+        }
+
+        // Section i of the knowledge base is section i - first[d] of document d
+        int[] first = new int[documents.size()];
+        int count = 0;
+        for (int d = 0; d < documents.size(); d++) {
+            first[d] = count;
+            count += documents.get(d).sections().size();
+        }
+
+        DocIndex index = new DocIndex(count, i -> {
+            int found = Arrays.binarySearch(first, i);
+            // Documents without sections share a start index with the next document, so take the last match
+            int d = found >= 0 ? found : -found - 2;
+            while (d + 1 < first.length && first[d + 1] == i) {
+                d++;
+            }
+            MappedDocument document = documents.get(d);
+            DocChunker.Section section = document.sections().get(i - first[d]);
+            return DocChunker.chunk(document.source(), document.format(), section, document.buffer());
+        });
+        return new Snapshot(index, HexFormat.of().formatHex(digest.digest()), documents.size(), bytes);
+    }
+
+    private static MappedDocument map(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is larger than 2 GB; split it into several documents.");
+            }
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        // Python for .py files, numbered headings for documents that have them, paragraphs otherwise
+        DocChunker.Format format = name.endsWith(".py") ? DocChunker.Format.PYTHON : DocChunker.Format.NUMBERED_HEADINGS;
+        List<DocChunker.Section> sections = DocChunker.sections(buffer, format);
+        if (sections.isEmpty() && format == DocChunker.Format.NUMBERED_HEADINGS) {
+            format = DocChunker.Format.PARAGRAPHS;
+            sections = DocChunker.sections(buffer, format);
+        }
+        int dot = name.lastIndexOf('.');
+        String source = dot > 0 ? name.substring(0, dot) : name;
+        return new MappedDocument(source, format, buffer, sections);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
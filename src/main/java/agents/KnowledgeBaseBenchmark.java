@@ -0,0 +1,182 @@
+package agents;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+/**
+ * Compares startup time and heap use of the memory-mapped knowledge base with loading every document
+ * eagerly into strings and chunks, on a generated corpus of troubleshooting-style documents.
+ * Both indexes need a few GB of heap for the default 1 GB corpus.
+ *
+ * Run with: mvn exec:java -Dexec.mainClass="agents.KnowledgeBaseBenchmark" -Dexec.args="--size-mb 1024"
+ *           (with MAVEN_OPTS="-Xmx8g"); pass --dir to keep the generated corpus between runs, and
+ *           --mode mapped or --mode eager to measure each in a fresh JVM.
+ */
+public class KnowledgeBaseBenchmark {
+
+    private static final int FILE_BYTES = 16 * 1024 * 1024;
+    private static final int SEARCHES = 10_000;
+
+    public static void main(String[] args) throws IOException {
+        long sizeMb = 1024;
+        Path directory = null;
+        String mode = "both";
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--size-mb" -> sizeMb = Long.parseLong(args[i + 1]);
+                case "--dir" -> directory = Path.of(args[i + 1]);
+                case "--mode" -> mode = args[i + 1];
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        boolean temporary = directory == null;
+        if (temporary) {
+            directory = Files.createTempDirectory("knowledge-bench");
+        }
+        try {
+            if (!Files.exists(directory) || isEmpty(directory)) {
+                System.out.println("Generating " + sizeMb + " MB corpus in " + directory + " ...");
+                generate(directory, sizeMb * 1024 * 1024, 42);
+            }
+
+            if (!"eager".equals(mode)) {
+                runMapped(directory);
+            }
+            if (!"mapped".equals(mode)) {
+                runEager(directory);
+            }
+        } finally {
+            if (temporary) {
+                deleteRecursively(directory);
+            }
+        }
+    }
+
+    private static void runMapped(Path directory) throws IOException {
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        KnowledgeBase mapped = KnowledgeBase.open(directory);
+        double mappedMs = (System.nanoTime() - start) / 1e6;
+        long mappedHeap = usedHeap() - heapBefore;
+        KnowledgeBase.Snapshot snapshot = mapped.snapshot();
+        System.out.printf("Corpus:            %d documents, %,d bytes, %,d sections%n",
+            snapshot.documents(), snapshot.bytes(), snapshot.index().size());
+        System.out.printf("Mapped startup:    %,.0f ms, heap %,d MB%n", mappedMs, mappedHeap / (1024 * 1024));
+        report("Mapped search:    ", snapshot.index());
+    }
+
+    private static void runEager(Path directory) throws IOException {
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        List<String> documents = new ArrayList<>();
+        List<DocChunk> chunks = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.sorted().toList()) {
+                String text = Files.readString(file, UTF_8);
+                documents.add(text);
+                chunks.addAll(DocChunker.byNumberedHeadings(file.getFileName().toString(), text));
+            }
+        }
+        DocIndex eager = new DocIndex(chunks);
+        double eagerMs = (System.nanoTime() - start) / 1e6;
+        long eagerHeap = usedHeap() - heapBefore;
+        System.out.printf("Eager startup:     %,.0f ms, heap %,d MB%n", eagerMs, eagerHeap / (1024 * 1024));
+        report("Eager search:     ", eager);
+        System.out.println("(" + documents.size() + " documents held as strings)");
+    }
+
+    private static void report(String label, DocIndex index) {
+        SplittableRandom random = new SplittableRandom(7);
+        long[] latencies = new long[SEARCHES];
+        for (int i = 0; i < SEARCHES; i++) {
+            String query = word(random.nextInt(2000)) + " " + word(random.nextInt(20_000));
+            long start = System.nanoTime();
+            index.search(query, 3);
+            latencies[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+        System.out.printf("%sp50 %.2f ms, p99 %.2f ms%n", label, latencies[SEARCHES / 2] / 1e6, latencies[(int) (SEARCHES * 0.99)] / 1e6);
+    }
+
+    // Troubleshooting-style documents: numbered sections of a few lines drawn from a skewed vocabulary
+    private static void generate(Path directory, long bytes, long seed) throws IOException {
+        Files.createDirectories(directory);
+        SplittableRandom random = new SplittableRandom(seed);
+        long written = 0;
+        for (int file = 1; written < bytes; file++) {
+            Path path = directory.resolve(String.format("generated-%04d.md", file));
+            try (BufferedWriter out = Files.newBufferedWriter(path, UTF_8)) {
+                long fileBytes = 0;
+                for (int section = 1; fileBytes < FILE_BYTES && written + fileBytes < bytes; section++) {
+                    StringBuilder text = new StringBuilder();
+                    text.append(section).append(". ").append(sentence(random, 4)).append("\n\n");
+                    int lines = 3 + random.nextInt(10);
+                    for (int line = 0; line < lines; line++) {
+                        text.append(sentence(random, 8 + random.nextInt(12))).append(".\n");
+                    }
+                    text.append('\n');
+                    out.write(text.toString());
+                    fileBytes += text.length();
+                }
+                written += fileBytes;
+            }
+        }
+    }
+
+    private static String sentence(SplittableRandom random, int words) {
+        StringBuilder sentence = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                sentence.append(' ');
+            }
+            // Squaring the uniform draw favours common words, roughly like natural text
+            double u = random.nextDouble();
+            sentence.append(word((int) (u * u * 50_000)));
+        }
+        return sentence.toString();
+    }
+
+    private static String word(int index) {
+        String[] syllables = {"neb", "u", "la", "sync", "ro", "ta", "ken", "mi", "vo", "der", "pa", "lin", "cor", "ex", "is", "an"};
+        StringBuilder word = new StringBuilder();
+        int n = index;
+        do {
+            word.append(syllables[n % syllables.length]);
+            n /= syllables.length;
+        } while (n > 0);
+        return word.toString();
+    }
+
+    private static boolean isEmpty(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.findAny().isEmpty();
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
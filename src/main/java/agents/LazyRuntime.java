@@ -0,0 +1,68 @@
+package agents;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+import com.google.adk.agents.RunConfig;
+import com.google.adk.events.Event;
+import com.google.adk.sessions.BaseSessionService;
+import com.google.genai.types.Content;
+
+import io.reactivex.rxjava3.core.Flowable;
+
+/**
+ * A runtime that builds its delegate, and with it the agent tree, on first use. The server registers
+ * every app this way, so it starts without building trees nobody has asked for yet.
+ */
+public class LazyRuntime implements AgentRuntime {
+
+    private final Supplier<AgentRuntime> factory;
+    private volatile AgentRuntime delegate;
+
+    public LazyRuntime(Supplier<AgentRuntime> factory) {
+        this.factory = factory;
+    }
+
+    private AgentRuntime delegate() {
+        AgentRuntime runtime = delegate;
+        if (runtime == null) {
+            synchronized (this) {
+                runtime = delegate;
+                if (runtime == null) {
+                    runtime = factory.get();
+                    delegate = runtime;
+                }
+            }
+        }
+        return runtime;
+    }
+
+    @Override
+    public String appName() {
+        return delegate().appName();
+    }
+
+    @Override
+    public BaseSessionService sessionService() {
+        return delegate().sessionService();
+    }
+
+    @Override
+    public Flowable<Event> runAsync(String userId, String sessionId, Content newMessage, RunConfig runConfig) {
+        return delegate().runAsync(userId, sessionId, newMessage, runConfig);
+    }
+
+    @Override
+    public void closeSession(String userId, String sessionId) {
+        delegate().closeSession(userId, sessionId);
+    }
+
+    /**
+     * The delegate's counters, or nothing if it has not been built; asking for stats does not build it.
+     */
+    @Override
+    public Map<String, Object> stats() {
+        AgentRuntime runtime = delegate;
+        return runtime == null ? Map.of() : runtime.stats();
+    }
+}
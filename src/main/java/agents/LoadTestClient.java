@@ -0,0 +1,146 @@
+package agents;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Load generator for {@link AgentServer}. Each simulated user creates a session, sends one
+ * message, reads the event stream to the end and deletes the session.
+ * Reports time to first event and to the first event with reply text (p50/p99), and completed sessions per second.
+ *
+ * Run with: mvn exec:java -Dexec.mainClass="agents.LoadTestClient"
+ *           -Dexec.args="--url http://localhost:8080/technical --sessions 5000 --concurrency 500"
+ */
+public class LoadTestClient {
+
+    private static final Pattern SESSION_ID = Pattern.compile("\"sessionId\":\\s*\"([^\"]+)\"");
+    private static final Pattern NON_EMPTY_TEXT = Pattern.compile("\"text\":\\s*\"[^\"]");
+
+    public static void main(String[] args) throws InterruptedException {
+        String url = "http://localhost:8080/technical";
+        int sessions = 1000;
+        int concurrency = 100;
+        String message = "Why are my files corrupted?";
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--url" -> url = args[i + 1];
+                case "--sessions" -> sessions = Integer.parseInt(args[i + 1]);
+                case "--concurrency" -> concurrency = Integer.parseInt(args[i + 1]);
+                case "--message" -> message = args[i + 1];
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        HttpClient client = HttpClient.newBuilder()
+            .executor(Executors.newFixedThreadPool(Math.max(4, concurrency / 8)))
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+        List<Long> firstEventNanos = Collections.synchronizedList(new ArrayList<>());
+        List<Long> firstTextNanos = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger remaining = new AtomicInteger(sessions);
+        LongAdder failures = new LongAdder();
+        String baseUrl = url;
+        String text = message;
+
+        ExecutorService users = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        for (int i = 0; i < concurrency; i++) {
+            users.execute(() -> {
+                while (remaining.getAndDecrement() > 0) {
+                    try {
+                        long[] latencies = runSession(client, baseUrl, text);
+                        firstEventNanos.add(latencies[0]);
+                        if (latencies[1] >= 0) {
+                            firstTextNanos.add(latencies[1]);
+                        }
+                    } catch (Exception e) {
+                        failures.increment();
+                    }
+                }
+            });
+        }
+        users.shutdown();
+        users.awaitTermination(1, TimeUnit.HOURS);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        List<Long> sorted = new ArrayList<>(firstEventNanos);
+        Collections.sort(sorted);
+        System.out.printf("Sessions:            %d ok, %d failed%n", sorted.size(), failures.sum());
+        System.out.printf("Concurrency:         %d%n", concurrency);
+        System.out.printf("Throughput:          %.1f sessions/s%n", sorted.size() / seconds);
+        System.out.printf("First event p50:     %.1f ms%n", percentile(sorted, 0.50) / 1e6);
+        System.out.printf("First event p99:     %.1f ms%n", percentile(sorted, 0.99) / 1e6);
+        List<Long> sortedText = new ArrayList<>(firstTextNanos);
+        Collections.sort(sortedText);
+        System.out.printf("First text p50:      %.1f ms%n", percentile(sortedText, 0.50) / 1e6);
+        System.out.printf("First text p99:      %.1f ms%n", percentile(sortedText, 0.99) / 1e6);
+    }
+
+    // Returns the time from sending the message to the first event and to the first reply text (-1 if none)
+    private static long[] runSession(HttpClient client, String baseUrl, String message) throws Exception {
+        HttpResponse<String> created = client.send(
+            HttpRequest.newBuilder(URI.create(baseUrl + "/sessions")).POST(HttpRequest.BodyPublishers.noBody()).build(),
+            HttpResponse.BodyHandlers.ofString());
+        Matcher matcher = SESSION_ID.matcher(created.body());
+        if (created.statusCode() != 201 || !matcher.find()) {
+            throw new IllegalStateException("Session was not created: " + created.statusCode());
+        }
+        String sessionUrl = baseUrl + "/sessions/" + matcher.group(1);
+
+        long sent = System.nanoTime();
+        long firstEvent = -1;
+        long firstText = -1;
+        HttpResponse<InputStream> stream = client.send(
+            HttpRequest.newBuilder(URI.create(sessionUrl + "/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(message, UTF_8))
+                .build(),
+            HttpResponse.BodyHandlers.ofInputStream());
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream.body(), UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (firstEvent < 0 && line.startsWith("event:")) {
+                    firstEvent = System.nanoTime() - sent;
+                }
+                if (firstText < 0 && line.startsWith("data:") && NON_EMPTY_TEXT.matcher(line).find()) {
+                    firstText = System.nanoTime() - sent;
+                }
+                if (line.startsWith("event: error")) {
+                    throw new IllegalStateException("Server reported an error");
+                }
+            }
+        }
+
+        client.send(HttpRequest.newBuilder(URI.create(sessionUrl)).DELETE().build(), HttpResponse.BodyHandlers.discarding());
+        if (firstEvent < 0) {
+            throw new IllegalStateException("No events received");
+        }
+        return new long[] {firstEvent, firstText};
+    }
+
+    private static long percentile(List<Long> sorted, double p) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1)));
+    }
+}
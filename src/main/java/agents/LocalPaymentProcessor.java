@@ -0,0 +1,79 @@
+package agents;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stand-in for a remote payment processor. Every batch costs a fixed round trip plus a little time per update,
+ * a share of batches fails with a transient error, and the account 3003-C is always held for security review.
+ */
+public class LocalPaymentProcessor implements PaymentProcessor {
+
+    private static final String DENIED_USER = "3003-C";
+
+    private final long batchMillis;
+    private final long updateMillis;
+    private final double failShare;
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder updates = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * @param batchMillis time of one call, whatever the batch size
+     * @param updateMillis additional time per update in the batch
+     * @param failShare share of calls that fail without applying anything
+     */
+    public LocalPaymentProcessor(long batchMillis, long updateMillis, double failShare) {
+        this.batchMillis = batchMillis;
+        this.updateMillis = updateMillis;
+        this.failShare = failShare;
+    }
+
+    /**
+     * Processor configured with -Dagents.payments.local.latencyMs (default 200), .perUpdateMs (default 1)
+     * and .failShare (default 0).
+     */
+    public static LocalPaymentProcessor fromSystemProperties() {
+        return new LocalPaymentProcessor(
+            Long.getLong("agents.payments.local.latencyMs", 200),
+            Long.getLong("agents.payments.local.perUpdateMs", 1),
+            Double.parseDouble(System.getProperty("agents.payments.local.failShare", "0")));
+    }
+
+    @Override
+    public Map<Long, Outcome> apply(List<PaymentOutbox.Update> batch) throws IOException {
+        batches.increment();
+        try {
+            Thread.sleep(batchMillis + updateMillis * batch.size());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Payment processor call interrupted");
+        }
+        if (ThreadLocalRandom.current().nextDouble() < failShare) {
+            failures.increment();
+            throw new IOException("503 Service Unavailable from payment processor");
+        }
+        updates.add(batch.size());
+        Map<Long, Outcome> outcomes = new HashMap<>();
+        for (PaymentOutbox.Update update : batch) {
+            outcomes.put(update.id(), update.userId().equalsIgnoreCase(DENIED_USER)
+                ? Outcome.rejected("Payment processor denied the request for security review on this account.")
+                : Outcome.applied("Payment method updated to " + update.methodType() + " ending in " + update.lastFour() + "."));
+        }
+        return outcomes;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("batches", batches.sum());
+        stats.put("updates", updates.sum());
+        stats.put("failedBatches", failures.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,116 @@
+package agents;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process registry that aggregates spans by kind and name, e.g. "tool:searchDocs".
+ * Durations go into power-of-two microsecond buckets, so percentiles are upper bounds accurate to a factor of two.
+ */
+public class Metrics {
+
+    private final Map<String, Stat> stats = new ConcurrentHashMap<>();
+
+    public void record(Span span) {
+        stats.computeIfAbsent(span.kind().label() + ":" + span.name(), key -> new Stat()).record(span);
+    }
+
+    public void reset() {
+        stats.clear();
+    }
+
+    /**
+     * Aggregates per key, sorted by key.
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new TreeMap<>();
+        stats.forEach((key, stat) -> snapshot.put(key, stat.toMap()));
+        return snapshot;
+    }
+
+    private static final class Stat {
+        private static final int BUCKETS = 40;
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder firstTokenNanos = new LongAdder();
+        private final LongAdder firstTokenCount = new LongAdder();
+        private final LongAdder promptTokens = new LongAdder();
+        private final LongAdder responseTokens = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAccumulator maxBytes = new LongAccumulator(Math::max, 0);
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+        void record(Span span) {
+            count.increment();
+            if (span.error()) {
+                errors.increment();
+            }
+            totalNanos.add(span.durationNanos());
+            maxNanos.accumulate(span.durationNanos());
+            if (span.firstTokenNanos() >= 0) {
+                firstTokenNanos.add(span.firstTokenNanos());
+                firstTokenCount.increment();
+            }
+            promptTokens.add(Math.max(0, span.promptTokens()));
+            responseTokens.add(Math.max(0, span.responseTokens()));
+            if (span.bytes() >= 0) {
+                bytes.add(span.bytes());
+                maxBytes.accumulate(span.bytes());
+            }
+            histogram.incrementAndGet(bucket(span.durationNanos() / 1000));
+        }
+
+        // Bucket i holds durations below 2^i microseconds
+        private static int bucket(long micros) {
+            return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        }
+
+        private double percentileMs(double fraction) {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                total += histogram.get(i);
+            }
+            long rank = (long) Math.ceil(total * fraction);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += histogram.get(i);
+                if (seen >= rank && seen > 0) {
+                    // Upper bound of the bucket, but never above the largest duration seen
+                    return Math.min((1L << i) * 1000, maxNanos.get()) / 1e6;
+                }
+            }
+            return 0;
+        }
+
+        Map<String, Object> toMap() {
+            long n = count.sum();
+            Map<String, Object> map = new TreeMap<>();
+            map.put("count", n);
+            map.put("errors", errors.sum());
+            map.put("meanMs", n == 0 ? 0 : totalNanos.sum() / 1e6 / n);
+            map.put("p50Ms", percentileMs(0.5));
+            map.put("p99Ms", percentileMs(0.99));
+            map.put("maxMs", maxNanos.get() / 1e6);
+            long firstTokens = firstTokenCount.sum();
+            if (firstTokens > 0) {
+                map.put("meanFirstTokenMs", firstTokenNanos.sum() / 1e6 / firstTokens);
+            }
+            if (promptTokens.sum() > 0 || responseTokens.sum() > 0) {
+                map.put("promptTokens", promptTokens.sum());
+                map.put("responseTokens", responseTokens.sum());
+            }
+            if (bytes.sum() > 0) {
+                map.put("bytes", bytes.sum());
+                map.put("maxBytes", maxBytes.get());
+            }
+            return map;
+        }
+    }
+}
@@ -0,0 +1,526 @@
+package agents;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import com.google.adk.models.BaseLlm;
+
+/**
+ * Admits model calls so that all agents of the process share one budget per model instead of calling
+ * the provider independently.
+ *
+ * Per model there is a token bucket for the request rate, a concurrency limit and one queue per {@link Lane}.
+ * A call starts when a request token and a concurrency slot are free; waiting calls are started highest lane
+ * first and in arrival order within a lane. The concurrency limit adapts with AIMD: it grows by about one per
+ * limit's worth of calls that answer within the latency target, and shrinks by a tenth when answers are slower
+ * than the target or by half when the provider answers 429 (which also empties the bucket, pausing new calls).
+ * When a queue is full, the newest call of a lower lane is rejected to make room; calls that wait longer than
+ * the queue timeout are rejected as well, so callers see {@link OverloadedException} instead of waiting forever.
+ */
+public class ModelScheduler {
+
+    /** Priority of a call, highest first. */
+    public enum Lane {
+        ROUTING, BILLING, TECHNICAL, CHAT;
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Limits applied to every model.
+     *
+     * @param requestsPerMinute token bucket rate; 0 means no rate limit
+     * @param burst bucket capacity
+     * @param minConcurrency lower bound of the adaptive limit
+     * @param maxConcurrency upper bound and starting value of the adaptive limit
+     * @param latencyTarget time to the first response above which the limit shrinks; zero disables this
+     * @param maxQueued calls waiting per model before lower lanes are shed
+     * @param queueTimeout longest time a call waits for admission
+     */
+    public record Limits(
+        int requestsPerMinute,
+        int burst,
+        int minConcurrency,
+        int maxConcurrency,
+        Duration latencyTarget,
+        int maxQueued,
+        Duration queueTimeout
+    ) {
+        public static final Limits DEFAULT = new Limits(0, 10, 1, 256, Duration.ofSeconds(10), 1000, Duration.ofSeconds(30));
+    }
+
+    /** Thrown to a caller whose model call was not admitted. */
+    public static class OverloadedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public OverloadedException(String message) {
+            super(message);
+        }
+    }
+
+    private enum State { QUEUED, GRANTED, RUNNING, DONE, CANCELLED }
+
+    // AIMD factors
+    private static final double SLOW_DECREASE = 0.9;
+    private static final double THROTTLED_DECREASE = 0.5;
+
+    private static final ScheduledThreadPoolExecutor TIMER = timer();
+    // Calls admitted after waiting start here, not on the thread that finished the previous call
+    private static final ExecutorService DISPATCH = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "model-dispatch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static class Shared {
+        static final ModelScheduler INSTANCE = fromSystemProperties();
+    }
+
+    private final boolean enabled;
+    private final Limits limits;
+    private final Map<String, ModelQueue> queues = new ConcurrentHashMap<>();
+    private final Metrics queueTimes = new Metrics();
+
+    public ModelScheduler(Limits limits) {
+        this(true, limits);
+    }
+
+    private ModelScheduler(boolean enabled, Limits limits) {
+        this.enabled = enabled;
+        this.limits = limits;
+    }
+
+    /**
+     * The scheduler shared by every agent in the process.
+     */
+    public static ModelScheduler shared() {
+        return Shared.INSTANCE;
+    }
+
+    /**
+     * Scheduler configured with -Dagents.scheduler.rpm, .burst, .minConcurrency, .maxConcurrency, .latencyTargetMs,
+     * .maxQueued and .queueTimeoutMs; -Dagents.scheduler=false passes every call straight through.
+     */
+    public static ModelScheduler fromSystemProperties() {
+        Limits d = Limits.DEFAULT;
+        Limits limits = new Limits(
+            Integer.getInteger("agents.scheduler.rpm", d.requestsPerMinute()),
+            Integer.getInteger("agents.scheduler.burst", d.burst()),
+            Integer.getInteger("agents.scheduler.minConcurrency", d.minConcurrency()),
+            Integer.getInteger("agents.scheduler.maxConcurrency", d.maxConcurrency()),
+            Duration.ofMillis(Long.getLong("agents.scheduler.latencyTargetMs", d.latencyTarget().toMillis())),
+            Integer.getInteger("agents.scheduler.maxQueued", d.maxQueued()),
+            Duration.ofMillis(Long.getLong("agents.scheduler.queueTimeoutMs", d.queueTimeout().toMillis()))
+        );
+        return new ModelScheduler(Boolean.parseBoolean(System.getProperty("agents.scheduler", "true")), limits);
+    }
+
+    /**
+     * Wraps the model an agent calls so its calls are admitted in the given lane.
+     */
+    public BaseLlm schedule(BaseLlm model, Lane lane) {
+        return enabled ? new ScheduledLlm(model, this, lane) : model;
+    }
+
+    /**
+     * Queues a call. onStart runs once the call is admitted, on the calling thread if it is admitted
+     * immediately; the caller must then {@link Call#start()} it and eventually {@link Call#finish} it.
+     * onReject runs if the call is shed or times out.
+     */
+    public Call submit(String model, Lane lane, Consumer<Call> onStart, Consumer<Throwable> onReject) {
+        ModelQueue queue = queues.computeIfAbsent(model, ModelQueue::new);
+        Call call = new Call(queue, lane, onStart, onReject);
+        queue.enqueue(call);
+        return call;
+    }
+
+    /**
+     * Per model: adaptive limit, calls in flight and queued per lane, admissions, rejections and 429s,
+     * and queue time percentiles per lane.
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> models = new TreeMap<>();
+        queues.forEach((model, queue) -> models.put(model, queue.stats()));
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("models", models);
+        stats.put("queueTimes", queueTimes.snapshot());
+        return stats;
+    }
+
+    /**
+     * True for the provider's "too many requests" answer (HTTP 429, RESOURCE_EXHAUSTED).
+     */
+    public static boolean isThrottled(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause()) {
+            String message = String.valueOf(e.getMessage());
+            if (message.contains("429") || message.contains("RESOURCE_EXHAUSTED") || message.contains("Resource has been exhausted")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** One model call, from queueing to completion. */
+    public final class Call {
+        private final ModelQueue queue;
+        private final Lane lane;
+        private final Consumer<Call> onStart;
+        private final Consumer<Throwable> onReject;
+        private final long queuedMillis = System.currentTimeMillis();
+        private final long queuedNanos = System.nanoTime();
+        private long startedNanos;
+        private long firstResponseNanos = -1;
+        private State state = State.QUEUED;
+        private ScheduledFuture<?> timeout;
+
+        private Call(ModelQueue queue, Lane lane, Consumer<Call> onStart, Consumer<Throwable> onReject) {
+            this.queue = queue;
+            this.lane = lane;
+            this.onStart = onStart;
+            this.onReject = onReject;
+        }
+
+        public Lane lane() {
+            return lane;
+        }
+
+        /**
+         * Claims an admitted call for running; false if it was cancelled in the meantime.
+         */
+        public boolean start() {
+            synchronized (queue) {
+                if (state != State.GRANTED) {
+                    return false;
+                }
+                state = State.RUNNING;
+                startedNanos = System.nanoTime();
+                return true;
+            }
+        }
+
+        /**
+         * Marks the arrival of the first response, which is the latency the limit adapts to.
+         */
+        public void firstResponse() {
+            synchronized (queue) {
+                if (firstResponseNanos < 0) {
+                    firstResponseNanos = System.nanoTime();
+                }
+            }
+        }
+
+        /**
+         * Releases the concurrency slot; error is null for a successful call.
+         */
+        public void finish(Throwable error) {
+            queue.finish(this, error);
+        }
+
+        /**
+         * Withdraws a call that is still queued or admitted but not started. Running calls are not affected.
+         */
+        public void cancel() {
+            queue.cancel(this);
+        }
+
+        /**
+         * Releases the slot of a running call whose caller went away. The call has no outcome, so it is
+         * neither counted as completed nor fed to the limit.
+         */
+        public void abandon() {
+            queue.abandon(this);
+        }
+    }
+
+    private final class ModelQueue {
+        private final String model;
+        private final List<ArrayDeque<Call>> lanes = new ArrayList<>();
+        private double limit;
+        private int inFlight;
+        private int queued;
+        private double tokens;
+        private long refilledNanos = System.nanoTime();
+        private long lastDecreaseNanos;
+        private boolean wakeupScheduled;
+
+        private final LongAdder admitted = new LongAdder();
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder throttled = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder timedOut = new LongAdder();
+        private final LongAdder abandoned = new LongAdder();
+        private final AtomicInteger peakQueued = new AtomicInteger();
+
+        ModelQueue(String model) {
+            this.model = model;
+            this.limit = limits.maxConcurrency();
+            this.tokens = limits.burst();
+            for (int i = 0; i < Lane.values().length; i++) {
+                lanes.add(new ArrayDeque<>());
+            }
+        }
+
+        void enqueue(Call call) {
+            Call shed = null;
+            synchronized (this) {
+                if (queued >= limits.maxQueued()) {
+                    shed = newestBelow(call.lane());
+                    if (shed == null) {
+                        shed = call;
+                    } else {
+                        lanes.get(shed.lane().ordinal()).removeLast();
+                        shed.state = State.CANCELLED;
+                        if (shed.timeout != null) {
+                            shed.timeout.cancel(false);
+                        }
+                        queued--;
+                    }
+                }
+                if (shed != call) {
+                    lanes.get(call.lane().ordinal()).addLast(call);
+                    queued++;
+                    peakQueued.accumulateAndGet(queued, Math::max);
+                    if (!limits.queueTimeout().isZero()) {
+                        call.timeout = TIMER.schedule(() -> expire(call), limits.queueTimeout().toNanos(), TimeUnit.NANOSECONDS);
+                    }
+                }
+            }
+            if (shed != null) {
+                reject(shed, "queue is full", rejected);
+            }
+            // Admit inline if there is capacity, so an idle scheduler adds no thread hop
+            List<Call> admittedCalls = admit();
+            for (Call admittedCall : admittedCalls) {
+                if (admittedCall == call) {
+                    call.onStart.accept(call);
+                } else {
+                    DISPATCH.execute(() -> admittedCall.onStart.accept(admittedCall));
+                }
+            }
+        }
+
+        void finish(Call call, Throwable error) {
+            synchronized (this) {
+                if (call.state != State.RUNNING) {
+                    return;
+                }
+                call.state = State.DONE;
+                inFlight--;
+                long now = System.nanoTime();
+                if (error == null) {
+                    completed.increment();
+                    long latency = (call.firstResponseNanos >= 0 ? call.firstResponseNanos : now) - call.startedNanos;
+                    Duration target = limits.latencyTarget();
+                    if (!target.isZero() && latency > target.toNanos()) {
+                        decrease(SLOW_DECREASE, now);
+                    } else {
+                        limit = Math.min(limits.maxConcurrency(), limit + 1 / limit);
+                    }
+                } else if (isThrottled(error)) {
+                    throttled.increment();
+                    tokens = 0;
+                    refilledNanos = now;
+                    decrease(THROTTLED_DECREASE, now);
+                } else {
+                    failed.increment();
+                }
+            }
+            dispatchLater();
+        }
+
+        void cancel(Call call) {
+            synchronized (this) {
+                if (call.state == State.QUEUED) {
+                    lanes.get(call.lane().ordinal()).remove(call);
+                    queued--;
+                    if (call.timeout != null) {
+                        call.timeout.cancel(false);
+                    }
+                } else if (call.state == State.GRANTED) {
+                    inFlight--;
+                } else {
+                    return;
+                }
+                call.state = State.CANCELLED;
+            }
+            dispatchLater();
+        }
+
+        void abandon(Call call) {
+            synchronized (this) {
+                if (call.state != State.RUNNING) {
+                    return;
+                }
+                call.state = State.CANCELLED;
+                inFlight--;
+                abandoned.increment();
+            }
+            dispatchLater();
+        }
+
+        // Decreases at most once per latency target (or second), so a burst of 429s from calls that were
+        // already in flight counts as one signal
+        private void decrease(double factor, long now) {
+            long cooldown = Math.max(limits.latencyTarget().toNanos(), TimeUnit.SECONDS.toNanos(1));
+            if (lastDecreaseNanos == 0 || now - lastDecreaseNanos >= cooldown) {
+                limit = Math.max(limits.minConcurrency(), limit * factor);
+                lastDecreaseNanos = now;
+            }
+        }
+
+        private void expire(Call call) {
+            synchronized (this) {
+                if (call.state != State.QUEUED) {
+                    return;
+                }
+                lanes.get(call.lane().ordinal()).remove(call);
+                queued--;
+                call.state = State.CANCELLED;
+            }
+            reject(call, "no capacity within " + limits.queueTimeout().toMillis() + " ms", timedOut);
+        }
+
+        private void reject(Call call, String reason, LongAdder counter) {
+            counter.increment();
+            recordQueueTime(call, true);
+            call.onReject.accept(new OverloadedException("Model " + model + " is overloaded: " + reason + "."));
+        }
+
+        private void dispatchLater() {
+            for (Call call : admit()) {
+                DISPATCH.execute(() -> call.onStart.accept(call));
+            }
+        }
+
+        // Takes calls off the queues, highest lane first, while a request token and a concurrency slot are free
+        private List<Call> admit() {
+            List<Call> admittedCalls = new ArrayList<>();
+            synchronized (this) {
+                while (queued > 0 && inFlight < Math.max(1, (int) limit)) {
+                    if (!takeToken()) {
+                        scheduleWakeup();
+                        break;
+                    }
+                    Call call = pollHighest();
+                    call.state = State.GRANTED;
+                    if (call.timeout != null) {
+                        call.timeout.cancel(false);
+                    }
+                    inFlight++;
+                    admitted.increment();
+                    admittedCalls.add(call);
+                }
+            }
+            for (Call call : admittedCalls) {
+                recordQueueTime(call, false);
+            }
+            return admittedCalls;
+        }
+
+        private boolean takeToken() {
+            if (limits.requestsPerMinute() <= 0) {
+                return true;
+            }
+            long now = System.nanoTime();
+            tokens = Math.min(limits.burst(), tokens + (now - refilledNanos) * limits.requestsPerMinute() / 60e9);
+            refilledNanos = now;
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+
+        private void scheduleWakeup() {
+            if (wakeupScheduled) {
+                return;
+            }
+            wakeupScheduled = true;
+            long nanos = (long) Math.ceil((1 - tokens) * 60e9 / limits.requestsPerMinute());
+            TIMER.schedule(() -> {
+                synchronized (this) {
+                    wakeupScheduled = false;
+                }
+                dispatchLater();
+            }, Math.max(1, nanos), TimeUnit.NANOSECONDS);
+        }
+
+        private Call pollHighest() {
+            for (ArrayDeque<Call> lane : lanes) {
+                Call call = lane.pollFirst();
+                if (call != null) {
+                    queued--;
+                    return call;
+                }
+            }
+            throw new IllegalStateException("No queued call");
+        }
+
+        private Call newestBelow(Lane lane) {
+            for (int i = lanes.size() - 1; i > lane.ordinal(); i--) {
+                Call call = lanes.get(i).peekLast();
+                if (call != null) {
+                    return call;
+                }
+            }
+            return null;
+        }
+
+        private void recordQueueTime(Call call, boolean rejectedCall) {
+            Span span = new Span(Span.Kind.QUEUE, model + "/" + call.lane().label(), call.queuedMillis,
+                System.nanoTime() - call.queuedNanos, -1, -1, -1, -1, rejectedCall);
+            queueTimes.record(span);
+            if (Telemetry.enabled()) {
+                Telemetry.record(span);
+            }
+        }
+
+        synchronized Map<String, Object> stats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("limit", Math.round(limit * 10) / 10.0);
+            stats.put("inFlight", inFlight);
+            Map<String, Object> waiting = new LinkedHashMap<>();
+            for (Lane lane : Lane.values()) {
+                waiting.put(lane.label(), lanes.get(lane.ordinal()).size());
+            }
+            stats.put("queued", waiting);
+            stats.put("peakQueued", peakQueued.get());
+            stats.put("admitted", admitted.sum());
+            stats.put("completed", completed.sum());
+            stats.put("failed", failed.sum());
+            stats.put("throttled", throttled.sum());
+            stats.put("rejected", rejected.sum());
+            stats.put("timedOut", timedOut.sum());
+            stats.put("abandoned", abandoned.sum());
+            return stats;
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor timer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "model-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+}
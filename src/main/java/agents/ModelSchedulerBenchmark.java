@@ -0,0 +1,146 @@
+package agents;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.adk.models.BaseLlm;
+import com.google.adk.models.LlmRequest;
+import com.google.genai.types.Content;
+import com.google.genai.types.Part;
+
+/**
+ * Drives a stub provider with a quota ({@link ThrottlingLlm} over {@link ScriptedLlm}) from many concurrent
+ * callers spread over the scheduler lanes, first calling it directly and then through a {@link ModelScheduler}
+ * with only the adaptive concurrency limit and with the rate limit set to the quota as well.
+ * Prints per lane the calls that succeeded, failed with 429, or were shed by the scheduler, and their latency.
+ *
+ * Run with: mvn exec:java -Dexec.mainClass="agents.ModelSchedulerBenchmark" -Dexec.args="--clients 64 --seconds 20 --rpm 1200"
+ */
+public class ModelSchedulerBenchmark {
+
+    // One caller in ten routes, two handle billing, three are technical and four chat
+    private static final ModelScheduler.Lane[] LANE_MIX = {
+        ModelScheduler.Lane.ROUTING,
+        ModelScheduler.Lane.BILLING, ModelScheduler.Lane.BILLING,
+        ModelScheduler.Lane.TECHNICAL, ModelScheduler.Lane.TECHNICAL, ModelScheduler.Lane.TECHNICAL,
+        ModelScheduler.Lane.CHAT, ModelScheduler.Lane.CHAT, ModelScheduler.Lane.CHAT, ModelScheduler.Lane.CHAT
+    };
+
+    private static final class LaneResult {
+        final List<Long> latencies = new ArrayList<>();
+        long throttled;
+        long shed;
+        long failed;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int clients = 64;
+        int seconds = 20;
+        int rpm = 1200;
+        int maxConcurrent = 16;
+        long firstTokenMs = 200;
+        long congestionMs = 20;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--clients" -> clients = Integer.parseInt(args[i + 1]);
+                case "--seconds" -> seconds = Integer.parseInt(args[i + 1]);
+                case "--rpm" -> rpm = Integer.parseInt(args[i + 1]);
+                case "--max-concurrent" -> maxConcurrent = Integer.parseInt(args[i + 1]);
+                case "--first-token-ms" -> firstTokenMs = Long.parseLong(args[i + 1]);
+                case "--congestion-ms" -> congestionMs = Long.parseLong(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        Duration latencyTarget = Duration.ofMillis(firstTokenMs + congestionMs * maxConcurrent / 2);
+        System.out.printf("Quota %d requests/min, %d concurrent; %d callers for %d s each run%n%n", rpm, maxConcurrent, clients, seconds);
+        System.out.printf("%-14s %-10s %8s %8s %8s %8s %9s %9s%n", "mode", "lane", "ok", "429", "shed", "errors", "p50 ms", "p99 ms");
+
+        for (String mode : List.of("direct", "adaptive", "adaptive+rpm")) {
+            ThrottlingLlm provider = new ThrottlingLlm(stub(firstTokenMs), rpm, maxConcurrent, congestionMs);
+            ModelScheduler scheduler = new ModelScheduler(new ModelScheduler.Limits(
+                mode.endsWith("rpm") ? rpm : 0, Math.max(1, rpm / 60), 1, clients, latencyTarget, 10_000, Duration.ofSeconds(5)));
+
+            Map<ModelScheduler.Lane, LaneResult> results = new EnumMap<>(ModelScheduler.Lane.class);
+            for (ModelScheduler.Lane lane : ModelScheduler.Lane.values()) {
+                results.put(lane, new LaneResult());
+            }
+
+            long deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+            List<Thread> threads = new ArrayList<>();
+            for (int c = 0; c < clients; c++) {
+                ModelScheduler.Lane lane = LANE_MIX[c % LANE_MIX.length];
+                BaseLlm model = "direct".equals(mode) ? provider : scheduler.schedule(provider, lane);
+                Thread thread = new Thread(() -> callUntil(deadline, model, results.get(lane)), "caller-" + c);
+                thread.start();
+                threads.add(thread);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            results.forEach((lane, result) -> print(mode, lane, result));
+            if (!"direct".equals(mode)) {
+                System.out.println("  scheduler " + scheduler.stats().get("models"));
+            }
+        }
+    }
+
+    private static void callUntil(long deadline, BaseLlm model, LaneResult result) {
+        LlmRequest request = LlmRequest.builder()
+            .contents(List.of(Content.fromParts(Part.fromText("Hello, how are you today?"))))
+            .build();
+        while (System.nanoTime() < deadline) {
+            long start = System.nanoTime();
+            try {
+                model.generateContent(request, false).blockingLast();
+                long latency = System.nanoTime() - start;
+                synchronized (result) {
+                    result.latencies.add(latency);
+                }
+            } catch (ModelScheduler.OverloadedException e) {
+                synchronized (result) {
+                    result.shed++;
+                }
+            } catch (RuntimeException e) {
+                synchronized (result) {
+                    if (ModelScheduler.isThrottled(e)) {
+                        result.throttled++;
+                    } else {
+                        result.failed++;
+                    }
+                }
+                // A caller that got an error retries after a short pause, like a user resending
+                sleep(100);
+            }
+        }
+    }
+
+    private static void print(String mode, ModelScheduler.Lane lane, LaneResult result) {
+        List<Long> latencies = result.latencies;
+        latencies.sort(null);
+        double p50 = latencies.isEmpty() ? 0 : latencies.get(latencies.size() / 2) / 1e6;
+        double p99 = latencies.isEmpty() ? 0 : latencies.get((int) (latencies.size() * 0.99)) / 1e6;
+        System.out.printf("%-14s %-10s %8d %8d %8d %8d %9.0f %9.0f%n",
+            mode, lane.label(), latencies.size(), result.throttled, result.shed, result.failed, p50, p99);
+    }
+
+    private static ScriptedLlm stub(long firstTokenMs) {
+        return ScriptedLlm.builder()
+            .name("stub-model")
+            .fallback(ScriptedLlm.Reply.text("I'm doing well, thank you for asking. How can I help you today?"))
+            .latency(Duration.ofMillis(firstTokenMs), Duration.ofMillis(5))
+            .build();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
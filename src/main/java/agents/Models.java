@@ -0,0 +1,48 @@
+package agents;
+
+import java.time.Duration;
+
+import com.google.adk.models.BaseLlm;
+import com.google.adk.models.Gemini;
+
+/**
+ * Chooses the model every agent is built with.
+ *
+ * By default agents use Gemini. Start the JVM with -Dagents.model=stub (or set AGENTS_MODEL=stub)
+ * to run the whole agent pipeline against the local scripted model, with no network access.
+ * The stub latency is set with -Dagents.stub.firstTokenMs and -Dagents.stub.tokenMs.
+ */
+public final class Models {
+
+    public static final String DEFAULT_MODEL = "gemini-2.5-flash";
+
+    private static BaseLlm configured;
+
+    private Models() {
+    }
+
+    /**
+     * The model selected by configuration. All agents share the same instance.
+     */
+    public static synchronized BaseLlm configured() {
+        if (configured == null) {
+            String name = System.getProperty("agents.model", System.getenv().getOrDefault("AGENTS_MODEL", DEFAULT_MODEL));
+            configured = "stub".equalsIgnoreCase(name) ? stub() : gemini(name);
+        }
+        return configured;
+    }
+
+    public static BaseLlm gemini(String modelName) {
+        return new Gemini(modelName, System.getenv("GOOGLE_API_KEY"));
+    }
+
+    /**
+     * The scripted Nebula demo model with latency taken from system properties.
+     */
+    public static ScriptedLlm stub() {
+        return DemoScript.create(
+            Duration.ofMillis(Long.getLong("agents.stub.firstTokenMs", 300)),
+            Duration.ofMillis(Long.getLong("agents.stub.tokenMs", 15))
+        );
+    }
+}
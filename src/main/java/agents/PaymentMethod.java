@@ -1,15 +1,53 @@
 package agents;
 
 import com.google.adk.tools.Annotations.Schema;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Map;
-import java.util.HashMap;
 
 /**
  * Provides functionality for updating a user's payment method in the system.
  * This class is designed to be registered as a tool for an ADK agent.
+ *
+ * Updates are validated and written to the {@link PaymentOutbox}, which sends them to the payment processor in the
+ * background, so the agent can answer without waiting for the processor. {@link #paymentMethodStatus} tells whether
+ * the latest update of a user went through.
  */
 public class PaymentMethod {
 
+    private static final ToolResult.Shape RESPONSE = ToolResult.Shape.builder().value("status").value("updateId").value("message").build();
+
+    // Results that don't depend on the request are built once
+    private static final ToolResult MISSING_USER = RESPONSE.of("ERROR", null, "User ID is required for updating payment method.");
+    private static final ToolResult INVALID_TOKEN = RESPONSE.of("ERROR", null, "Invalid payment token provided. Token must be at least 4 characters.");
+    private static final ToolResult CARD_NUMBER = RESPONSE.of("ERROR", null,
+        "A full card number must not be sent. Provide a payment token or the last 4 digits of the card.");
+    private static final ToolResult NO_UPDATE = RESPONSE.of("NOT_FOUND", null, "No payment method update was requested for this user.");
+
+    private static volatile PaymentOutbox opened;
+
+    // Opened on first use; see PaymentOutbox.fromSystemProperties() for the settings
+    private static class Outbox {
+        static final PaymentOutbox INSTANCE = open();
+
+        private static PaymentOutbox open() {
+            try {
+                PaymentOutbox outbox = PaymentOutbox.fromSystemProperties();
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    try {
+                        outbox.close();
+                    } catch (IOException e) {
+                        System.err.println("Payment outbox close error: " + e.getMessage());
+                    }
+                }));
+                opened = outbox;
+                return outbox;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot open payment outbox", e);
+            }
+        }
+    }
+
     /**
      * Updates the user's primary payment method using tokenized or partial details.
      * The agent MUST use this tool whenever the user asks to 'change their card', 
@@ -17,10 +55,12 @@ public class PaymentMethod {
      * * @param userId The unique identifier for the user whose payment method is being updated.
      * @param methodType The type of payment method being used (e.g., "Visa", "MasterCard", "PayPal").
      * @param paymentToken A simulated secure token or the last 4 digits of the card/account number.
-     * @return A map containing the update status and a confirmation message.
+     * @return A map containing the update status, the id of the update and a confirmation message.
      */
-    @Schema(description = "Updates the user's primary payment method with new details, requiring the user ID and payment token/type.")
-    public static Map<String, String> paymentMethod(
+    @Schema(description = "Updates the user's primary payment method with new details, requiring the user ID and payment token/type. "
+                          + "The update is accepted at once and applied by the payment processor shortly after; use the payment "
+                          + "method status tool to tell the user whether it went through.")
+    public static Map<String, Object> paymentMethod(
         @Schema(name = "userId", description = "The unique identifier of the user (e.g., email or account number).")
         String userId,
         
@@ -30,39 +70,69 @@ public class PaymentMethod {
         @Schema(name = "paymentToken", description = "A secure token or identifier for the new payment method (e.g., last 4 digits of a card).")
         String paymentToken) {
 
-        // --- Start Simulation/Mock Logic ---
-        Map<String, String> response = new HashMap<>();
-
         // Basic validation
         if (userId == null || userId.isEmpty()) {
-            response.put("status", "ERROR");
-            response.put("message", "User ID is required for updating payment method.");
-            return response;
+            return MISSING_USER;
         }
 
-        if (paymentToken.length() < 4) {
-            response.put("status", "ERROR");
-            response.put("message", "Invalid payment token provided. Token must be at least 4 characters.");
-            return response;
+        if (paymentToken == null || paymentToken.length() < 4) {
+            return INVALID_TOKEN;
         }
 
-        // Simulate success and data sanitization
-        String maskedToken = paymentToken.substring(paymentToken.length() - 4);
-        
-        if (userId.equalsIgnoreCase("3003-C")) {
-            // Simulate a user profile that rejects updates
-            response.put("status", "FAILURE");
-            response.put("message", "Payment processor denied the request for security review on this account.");
-        } else {
-            // Simulate successful update
-            response.put("status", "SUCCESS");
-            response.put("message", String.format(
-                "Successfully updated payment method for user %s to %s ending in %s.",
-                userId, methodType, maskedToken
-            ));
+        // The token is written to the outbox log, so a card number is refused before it gets there
+        if (PaymentOutbox.looksLikeCardNumber(paymentToken)) {
+            return CARD_NUMBER;
         }
-        
-        // --- End Simulation/Mock Logic ---
-        return response;
+
+        try {
+            // Returns once the update is on disk; the processor is called in the background
+            PaymentOutbox.Accepted accepted = Outbox.INSTANCE.submit(userId, methodType, paymentToken);
+            return acceptedResult(accepted.id(), userId, methodType, paymentToken);
+        } catch (IOException | UncheckedIOException | IllegalStateException e) {
+            System.err.println("Payment outbox write error: " + e.getMessage());
+            return RESPONSE.of("ERROR", null, "A system error prevented saving the payment method update: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reports whether the latest payment method update of a user was applied, is still being processed, or failed.
+     */
+    @Schema(description = "Returns whether the user's latest payment method update was applied by the payment processor, "
+                          + "is still pending, or was rejected or failed, with the reason.")
+    public static Map<String, Object> paymentMethodStatus(
+        @Schema(name = "userId", description = "The unique identifier of the user whose update to check.")
+        String userId) {
+
+        if (userId == null || userId.isEmpty()) {
+            return MISSING_USER;
+        }
+        return Outbox.INSTANCE.status(userId).map(PaymentMethod::statusResult).orElse(NO_UPDATE);
+    }
+
+    // Shows only the last 4 characters of the token
+    static ToolResult acceptedResult(long updateId, String userId, String methodType, String paymentToken) {
+        return RESPONSE.of("ACCEPTED", Long.toString(updateId), "The update of the payment method for user " + userId + " to "
+            + methodType + " ending in " + paymentToken.substring(paymentToken.length() - 4)
+            + " was accepted and will be applied by the payment processor within a few moments.");
+    }
+
+    private static ToolResult statusResult(PaymentOutbox.Status status) {
+        String id = Long.toString(status.id());
+        String update = "The update to " + status.methodType() + " ending in " + status.lastFour();
+        return switch (status.state()) {
+            case QUEUED, SENDING -> RESPONSE.of("PENDING", id, update + " is still being processed"
+                + (status.attempts() > 0 ? ", the payment processor did not respond yet." : "."));
+            case APPLIED -> RESPONSE.of("SUCCESS", id, update + " was applied. " + status.message());
+            case REJECTED -> RESPONSE.of("FAILURE", id, update + " was rejected. " + status.message());
+            case FAILED, SUPERSEDED -> RESPONSE.of("FAILURE", id, update + " did not go through. " + status.message());
+        };
+    }
+
+    /**
+     * Outbox counters (see {@link PaymentOutbox#stats}), or nothing if no update was made yet.
+     */
+    public static Map<String, Object> stats() {
+        PaymentOutbox outbox = opened;
+        return outbox == null ? Map.of() : outbox.stats();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,672 @@
+package agents;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-behind pipeline for payment method updates. An update is accepted as soon as it is in the outbox
+ * log on disk; sender threads deliver it to the {@link PaymentProcessor} later, so the caller never waits
+ * for the processor.
+ *
+ * Updates for the same user are coalesced: only the latest one is sent, and an older one that has not
+ * been sent yet is dropped as superseded. A user has at most one update in flight, so a newer update
+ * always reaches the processor after an older one. Senders wait up to the linger time to fill a batch,
+ * and resend the updates of a failed call with exponential backoff and jitter until they run out of attempts.
+ *
+ * The log holds one line per accepted update and one per outcome. Accepting an update forces the log to
+ * disk; concurrent submitters share one force. On startup the log is replayed, updates without an outcome
+ * are queued again and the log is rewritten with the latest update of each user, which is also done while
+ * running when the log grows past the compaction size. Payment tokens are written to the log, so only
+ * processor tokens or the last digits of a card are accepted: a token holding something as long as a card
+ * number is refused before anything is written.
+ */
+public class PaymentOutbox implements AutoCloseable {
+
+    public enum State {
+        /** Accepted and waiting to be sent. */
+        QUEUED,
+        /** In a batch the processor is handling. */
+        SENDING,
+        APPLIED,
+        REJECTED,
+        /** Not delivered within the allowed attempts. */
+        FAILED,
+        /** Replaced by a newer update for the same user before it was applied. */
+        SUPERSEDED;
+
+        public boolean finished() {
+            return this != QUEUED && this != SENDING;
+        }
+    }
+
+    /** An accepted update as sent to the processor. */
+    public record Update(long id, String userId, String methodType, String token, long createdMillis) {
+
+        public String lastFour() {
+            return token.length() <= 4 ? token : token.substring(token.length() - 4);
+        }
+    }
+
+    /** Where an update is; finished is null until it has an outcome. */
+    public record Status(long id, String userId, String methodType, String lastFour, State state, int attempts,
+                         String message, Instant created, Instant finished) {}
+
+    /** The id of an accepted update, and a future that completes with its final status. */
+    public record Accepted(long id, CompletableFuture<Status> outcome) {}
+
+    /**
+     * @param directory where the outbox log is kept
+     * @param fsync whether an update is forced to disk before it is accepted
+     * @param batchSize most updates per processor call
+     * @param linger longest wait for a batch to fill before a smaller one is sent
+     * @param senders threads calling the processor, each with one batch in flight
+     * @param maxAttempts processor calls per update before it fails
+     * @param initialBackoff wait before the first resend, doubled for every further one
+     * @param maxBackoff upper bound of the wait between resends
+     * @param compactBytes log size at which it is rewritten with the latest update of each user
+     */
+    public record Settings(
+        Path directory,
+        boolean fsync,
+        int batchSize,
+        Duration linger,
+        int senders,
+        int maxAttempts,
+        Duration initialBackoff,
+        Duration maxBackoff,
+        long compactBytes
+    ) {
+        public static final Settings DEFAULT = new Settings(Path.of("payments"), true, 100, Duration.ofMillis(20), 2, 8,
+            Duration.ofMillis(250), Duration.ofSeconds(30), 64L * 1024 * 1024);
+    }
+
+    private static final String LOG_FILE = "outbox.log";
+    private static final String UPDATE = "U";
+    private static final String OUTCOME = "S";
+    // Card numbers have 12 to 19 digits
+    private static final int CARD_NUMBER_DIGITS = 12;
+
+    // Mutable state of an update, guarded by the outbox
+    private static final class Entry {
+        final Update update;
+        final String key;
+        final CompletableFuture<Status> outcome = new CompletableFuture<>();
+        State state = State.QUEUED;
+        int attempts;
+        String message;
+        long finishedMillis;
+        long readyNanos;
+
+        Entry(Update update) {
+            this.update = update;
+            this.key = key(update.userId());
+        }
+
+        Status status() {
+            return new Status(update.id(), update.userId(), update.methodType(), update.lastFour(), state, attempts, message,
+                Instant.ofEpochMilli(update.createdMillis()), state.finished() ? Instant.ofEpochMilli(finishedMillis) : null);
+        }
+    }
+
+    private final Settings settings;
+    private final PaymentProcessor processor;
+    private final Path logPath;
+
+    // Guarded by this; keyed by the normalized user id
+    private final Map<String, Entry> latest = new HashMap<>();
+    private final LinkedHashMap<String, Entry> pending = new LinkedHashMap<>();
+    private final Set<String> inFlight = new HashSet<>();
+    private long nextId = 1;
+    private long written;
+    private long compactAt;
+
+    // Lock order: forceLock, then this
+    private final Object forceLock = new Object();
+    private FileChannel channel;
+    private long forced;
+
+    private final List<Thread> senders = new ArrayList<>();
+    private volatile boolean closed;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder superseded = new LongAdder();
+    private final LongAdder applied = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder resent = new LongAdder();
+
+    public PaymentOutbox(Settings settings, PaymentProcessor processor) throws IOException {
+        this.settings = settings;
+        this.processor = processor;
+        this.logPath = settings.directory().resolve(LOG_FILE);
+        Files.createDirectories(settings.directory());
+        recover();
+        synchronized (forceLock) {
+            synchronized (this) {
+                rewrite();
+            }
+        }
+        for (int i = 0; i < settings.senders(); i++) {
+            Thread sender = new Thread(this::sendLoop, "payment-outbox-sender-" + i);
+            sender.setDaemon(true);
+            sender.start();
+            senders.add(sender);
+        }
+    }
+
+    /**
+     * Outbox configured from -Dagents.payments.dir (default "payments"), .fsync (default true), .batchSize,
+     * .lingerMs, .senders, .maxAttempts, .backoffMs, .maxBackoffMs and .compactBytes, sending to the processor
+     * chosen by {@link PaymentProcessor#fromSystemProperties()}.
+     */
+    public static PaymentOutbox fromSystemProperties() throws IOException {
+        Settings d = Settings.DEFAULT;
+        Settings settings = new Settings(
+            Path.of(System.getProperty("agents.payments.dir", d.directory().toString())),
+            Boolean.parseBoolean(System.getProperty("agents.payments.fsync", String.valueOf(d.fsync()))),
+            Integer.getInteger("agents.payments.batchSize", d.batchSize()),
+            Duration.ofMillis(Long.getLong("agents.payments.lingerMs", d.linger().toMillis())),
+            Integer.getInteger("agents.payments.senders", d.senders()),
+            Integer.getInteger("agents.payments.maxAttempts", d.maxAttempts()),
+            Duration.ofMillis(Long.getLong("agents.payments.backoffMs", d.initialBackoff().toMillis())),
+            Duration.ofMillis(Long.getLong("agents.payments.maxBackoffMs", d.maxBackoff().toMillis())),
+            Long.getLong("agents.payments.compactBytes", d.compactBytes()));
+        return new PaymentOutbox(settings, PaymentProcessor.fromSystemProperties());
+    }
+
+    /**
+     * Writes an update to the outbox and returns once it is on disk. An update for the same user that has not
+     * been sent yet is superseded by this one. The arguments are expected to be validated by the caller.
+     *
+     * @throws IllegalArgumentException if the token looks like a card number
+     */
+    public Accepted submit(String userId, String methodType, String token) throws IOException {
+        if (looksLikeCardNumber(token)) {
+            throw new IllegalArgumentException("Payment tokens must not hold a card number.");
+        }
+        if (closed) {
+            throw new IllegalStateException("Payment outbox is closed.");
+        }
+        Entry entry;
+        long end;
+        synchronized (this) {
+            entry = new Entry(new Update(nextId++, userId, methodType, token, System.currentTimeMillis()));
+            append(formatUpdate(entry.update));
+            end = written;
+            latest.put(entry.key, entry);
+        }
+        try {
+            force(end);
+        } catch (IOException e) {
+            synchronized (this) {
+                finish(entry, State.FAILED, "The update could not be saved: " + e.getMessage());
+            }
+            throw e;
+        }
+        synchronized (this) {
+            // A newer update for the user may have been written while this one was being forced
+            if (latest.get(entry.key) != entry) {
+                finish(entry, State.SUPERSEDED, "Replaced by a newer update.");
+            } else if (entry.state == State.QUEUED) {
+                queue(entry);
+            }
+        }
+        accepted.increment();
+        return new Accepted(entry.update.id(), entry.outcome);
+    }
+
+    /**
+     * The latest update of a user, if there was one.
+     */
+    public synchronized Optional<Status> status(String userId) {
+        Entry entry = latest.get(key(userId));
+        return entry == null ? Optional.empty() : Optional.of(entry.status());
+    }
+
+    /**
+     * Update counts since the outbox was opened: accepted, superseded by a newer update before being applied,
+     * applied, rejected and failed; updates waiting and being sent, processor calls, updates sent and resent,
+     * and the average batch size.
+     */
+    public Map<String, Object> stats() {
+        long batchCount = batches.sum();
+        long sentCount = sent.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("accepted", accepted.sum());
+        stats.put("superseded", superseded.sum());
+        stats.put("applied", applied.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("failed", failed.sum());
+        synchronized (this) {
+            stats.put("queued", pending.size());
+            stats.put("sending", inFlight.size());
+            stats.put("users", latest.size());
+            stats.put("logBytes", written);
+        }
+        stats.put("batches", batchCount);
+        stats.put("sent", sentCount);
+        stats.put("resent", resent.sum());
+        stats.put("averageBatch", batchCount == 0 ? 0.0 : (double) sentCount / batchCount);
+        return stats;
+    }
+
+    /**
+     * Stops the senders once their current processor call returns. Updates that were not delivered stay in the
+     * outbox and are sent after the next start.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        synchronized (this) {
+            notifyAll();
+        }
+        for (Thread sender : senders) {
+            try {
+                sender.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        synchronized (forceLock) {
+            synchronized (this) {
+                channel.force(false);
+                channel.close();
+            }
+        }
+    }
+
+    private void sendLoop() {
+        List<Entry> batch;
+        while ((batch = takeBatch()) != null) {
+            send(batch);
+            compactIfDue();
+        }
+    }
+
+    /**
+     * Whether text holds a card number: a run of at least 12 digits, which may be grouped by spaces or dashes.
+     * Every card number is at least that long, while the last digits of a card or a processor token are not.
+     */
+    public static boolean looksLikeCardNumber(String text) {
+        if (text == null) {
+            return false;
+        }
+        int digits = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (++digits >= CARD_NUMBER_DIGITS) {
+                    return true;
+                }
+            } else if (!((c == ' ' || c == '-') && digits > 0)) {
+                digits = 0;
+            }
+        }
+        return false;
+    }
+
+    // Waits for a full batch, or for the oldest waiting update to have lingered long enough; null once closed
+    private synchronized List<Entry> takeBatch() {
+        long lingerNanos = settings.linger().toNanos();
+        while (!closed) {
+            List<Entry> ready = new ArrayList<>();
+            for (Entry entry : pending.values()) {
+                if (!inFlight.contains(entry.key)) {
+                    ready.add(entry);
+                    if (ready.size() == settings.batchSize()) {
+                        break;
+                    }
+                }
+            }
+            long waitNanos = ready.isEmpty() ? TimeUnit.SECONDS.toNanos(1) : lingerNanos - (System.nanoTime() - ready.get(0).readyNanos);
+            if (!ready.isEmpty() && (ready.size() == settings.batchSize() || waitNanos <= 0)) {
+                for (Entry entry : ready) {
+                    pending.remove(entry.key);
+                    inFlight.add(entry.key);
+                    entry.state = State.SENDING;
+                }
+                return ready;
+            }
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private void send(List<Entry> batch) {
+        List<Entry> remaining = batch;
+        String lastError = null;
+        for (int attempt = 1; ; attempt++) {
+            List<Update> updates = new ArrayList<>(remaining.size());
+            for (Entry entry : remaining) {
+                updates.add(entry.update);
+            }
+            batches.increment();
+            sent.add(updates.size());
+            if (attempt > 1) {
+                resent.add(updates.size());
+            }
+            Map<Long, PaymentProcessor.Outcome> outcomes;
+            try {
+                outcomes = processor.apply(updates);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Payment processor error (attempt " + attempt + "): " + e.getMessage());
+                lastError = e.getMessage();
+                outcomes = Map.of();
+            }
+
+            List<Entry> retry = new ArrayList<>();
+            synchronized (this) {
+                for (Entry entry : remaining) {
+                    entry.attempts = attempt;
+                    PaymentProcessor.Outcome outcome = outcomes.get(entry.update.id());
+                    if (outcome != null) {
+                        finish(entry, outcome.applied() ? State.APPLIED : State.REJECTED, outcome.message());
+                    } else if (attempt >= settings.maxAttempts()) {
+                        finish(entry, State.FAILED, "The payment processor could not be reached after " + attempt + " attempts"
+                            + (lastError == null ? "." : ": " + lastError));
+                    } else {
+                        retry.add(entry);
+                    }
+                }
+                if (retry.isEmpty()) {
+                    return;
+                }
+                if (!backoff(attempt)) {
+                    // Closed: the updates stay in the log and are sent after the next start
+                    retry.forEach(this::release);
+                    return;
+                }
+                // Updates replaced while waiting are not sent again; the newer one follows
+                remaining = new ArrayList<>();
+                for (Entry entry : retry) {
+                    if (latest.get(entry.key) == entry) {
+                        remaining.add(entry);
+                    } else {
+                        finish(entry, State.SUPERSEDED, "Replaced by a newer update.");
+                    }
+                }
+                if (remaining.isEmpty()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // Waits before a resend, half to all of an exponentially growing delay; false if the outbox was closed meanwhile
+    private boolean backoff(int attempt) {
+        long initial = settings.initialBackoff().toNanos();
+        long cap = Math.min(settings.maxBackoff().toNanos(), initial << Math.min(attempt - 1, 30));
+        long deadline = System.nanoTime() + cap / 2 + ThreadLocalRandom.current().nextLong(cap / 2 + 1);
+        long left;
+        while (!closed && (left = deadline - System.nanoTime()) > 0) {
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, left);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return !closed;
+    }
+
+    // Called with the lock held
+    private void queue(Entry entry) {
+        entry.readyNanos = System.nanoTime();
+        Entry older = pending.put(entry.key, entry);
+        if (older != null) {
+            finish(older, State.SUPERSEDED, "Replaced by a newer update.");
+        }
+        notifyAll();
+    }
+
+    // Called with the lock held
+    private void finish(Entry entry, State state, String message) {
+        if (entry.state == State.SENDING) {
+            inFlight.remove(entry.key);
+        }
+        entry.state = state;
+        entry.message = message;
+        entry.finishedMillis = System.currentTimeMillis();
+        switch (state) {
+            case APPLIED -> applied.increment();
+            case REJECTED -> rejected.increment();
+            case FAILED -> failed.increment();
+            case SUPERSEDED -> superseded.increment();
+            default -> throw new IllegalArgumentException("Not a final state: " + state);
+        }
+        if (state != State.SUPERSEDED) {
+            // Not forced: if the outcome is lost the update is sent again after a restart, and the result is the same
+            try {
+                append(formatOutcome(entry));
+            } catch (IOException e) {
+                System.err.println("Payment outbox write error: " + e.getMessage());
+            }
+        }
+        entry.outcome.complete(entry.status());
+        notifyAll();
+    }
+
+    // Called with the lock held, when the outbox is closing
+    private void release(Entry entry) {
+        inFlight.remove(entry.key);
+        entry.state = State.QUEUED;
+    }
+
+    // Called with the lock held
+    private void append(String line) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        written += buffer.limit();
+    }
+
+    // Forces the log up to end, unless a force that started later already covered it
+    private void force(long end) throws IOException {
+        if (!settings.fsync()) {
+            return;
+        }
+        synchronized (forceLock) {
+            if (forced >= end) {
+                return;
+            }
+            long target;
+            synchronized (this) {
+                target = written;
+            }
+            channel.force(false);
+            forced = target;
+        }
+    }
+
+    private void compactIfDue() {
+        synchronized (forceLock) {
+            synchronized (this) {
+                if (written < compactAt || closed) {
+                    return;
+                }
+                try {
+                    rewrite();
+                } catch (IOException e) {
+                    System.err.println("Payment outbox compaction error: " + e.getMessage());
+                    compactAt = written + settings.compactBytes();
+                }
+            }
+        }
+    }
+
+    // Called with both locks held: replaces the log with the latest update of each user and its outcome
+    private void rewrite() throws IOException {
+        Path temporary = settings.directory().resolve(LOG_FILE + ".tmp");
+        List<Entry> entries = new ArrayList<>(latest.values());
+        entries.sort(Comparator.comparingLong(entry -> entry.update.id()));
+        long size = 0;
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            StringBuilder text = new StringBuilder();
+            for (Entry entry : entries) {
+                text.append(formatUpdate(entry.update));
+                if (entry.state.finished()) {
+                    text.append(formatOutcome(entry));
+                }
+                if (text.length() >= 64 * 1024) {
+                    size += write(out, text);
+                }
+            }
+            size += write(out, text);
+            out.force(false);
+        }
+        if (channel != null) {
+            channel.close();
+        }
+        Files.move(temporary, logPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        written = size;
+        forced = size;
+        compactAt = Math.max(settings.compactBytes(), 2 * size);
+    }
+
+    private static long write(FileChannel out, StringBuilder text) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(text.toString().getBytes(UTF_8));
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        text.setLength(0);
+        return buffer.limit();
+    }
+
+    // Replays the log: the latest update of each user, with its outcome if it has one, and queues the rest
+    private void recover() throws IOException {
+        if (!Files.exists(logPath)) {
+            return;
+        }
+        Map<Long, Entry> byId = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(logPath, UTF_8)) {
+            // Each line is read one line late, so a last line torn by a crash (no line break) is left out
+            String line = reader.readLine();
+            String next;
+            while (line != null) {
+                next = reader.readLine();
+                if (next != null || endsWithLineBreak()) {
+                    replay(line, byId);
+                }
+                line = next;
+            }
+        }
+        List<Entry> unsent = new ArrayList<>();
+        for (Entry entry : latest.values()) {
+            if (entry.state.finished()) {
+                entry.outcome.complete(entry.status());
+            } else {
+                unsent.add(entry);
+            }
+        }
+        unsent.sort(Comparator.comparingLong(entry -> entry.update.id()));
+        for (Entry entry : unsent) {
+            entry.state = State.QUEUED;
+            entry.readyNanos = System.nanoTime();
+            pending.put(entry.key, entry);
+        }
+    }
+
+    private void replay(String line, Map<Long, Entry> byId) {
+        String[] fields = line.split("\t", -1);
+        try {
+            if (fields.length == 6 && UPDATE.equals(fields[0])) {
+                Entry entry = new Entry(new Update(Long.parseLong(fields[1]), unescape(fields[3]), unescape(fields[4]),
+                    unescape(fields[5]), Long.parseLong(fields[2])));
+                byId.put(entry.update.id(), entry);
+                latest.put(entry.key, entry);
+                nextId = Math.max(nextId, entry.update.id() + 1);
+            } else if (fields.length == 6 && OUTCOME.equals(fields[0])) {
+                Entry entry = byId.get(Long.parseLong(fields[1]));
+                if (entry != null) {
+                    entry.state = State.valueOf(fields[2]);
+                    entry.finishedMillis = Long.parseLong(fields[3]);
+                    entry.attempts = Integer.parseInt(fields[4]);
+                    entry.message = unescape(fields[5]);
+                }
+            } else {
+                System.err.println("Skipping unreadable payment outbox line: " + line);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Skipping unreadable payment outbox line: " + e.getMessage());
+        }
+    }
+
+    private boolean endsWithLineBreak() throws IOException {
+        try (FileChannel in = FileChannel.open(logPath, StandardOpenOption.READ)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            return in.size() > 0 && in.read(last, in.size() - 1) == 1 && last.get(0) == '\n';
+        }
+    }
+
+    // User ids are matched like in BillingStore, so " 1001-a" and "1001-A" are the same user
+    private static String key(String userId) {
+        return userId.trim().toUpperCase(Locale.ROOT);
+    }
+
+    static String formatUpdate(Update update) {
+        return UPDATE + "\t" + update.id() + "\t" + update.createdMillis() + "\t" + escape(update.userId()) + "\t"
+            + escape(update.methodType()) + "\t" + escape(update.token()) + "\n";
+    }
+
+    private static String formatOutcome(Entry entry) {
+        return OUTCOME + "\t" + entry.update.id() + "\t" + entry.state + "\t" + entry.finishedMillis + "\t" + entry.attempts
+            + "\t" + escape(entry.message) + "\n";
+    }
+
+    // One record per line with tab-separated fields, so tabs and line breaks inside values are escaped
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String unescape(String text) {
+        StringBuilder out = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                char next = text.charAt(++i);
+                out.append(next == 'n' ? '\n' : next == 'r' ? '\r' : next == 't' ? '\t' : next);
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,48 @@
+package agents;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Client of the payment processor that {@link PaymentOutbox} sends payment method updates to in batches.
+ * A batch holds at most one update per user.
+ */
+public interface PaymentProcessor {
+
+    /** What the processor did with one update: applied it, or rejected it with a reason. */
+    record Outcome(boolean applied, String message) {
+
+        public static Outcome applied(String message) {
+            return new Outcome(true, message);
+        }
+
+        public static Outcome rejected(String message) {
+            return new Outcome(false, message);
+        }
+    }
+
+    /**
+     * Applies a batch of updates and returns the outcome of each by update id. Throwing, or leaving an update
+     * out of the result, means the processor could not handle it right now; such updates are sent again.
+     */
+    Map<Long, Outcome> apply(List<PaymentOutbox.Update> batch) throws IOException;
+
+    /**
+     * The processor named by -Dagents.payments.processor: "local" (the default) for {@link LocalPaymentProcessor},
+     * or the name of a class with a public no-argument constructor.
+     */
+    static PaymentProcessor fromSystemProperties() {
+        String name = System.getProperty("agents.payments.processor", "local");
+        if ("local".equals(name)) {
+            return LocalPaymentProcessor.fromSystemProperties();
+        }
+        try {
+            return (PaymentProcessor) Class.forName(name).getConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            Throwable cause = e instanceof InvocationTargetException ? e.getCause() : e;
+            throw new IllegalArgumentException("Cannot create payment processor " + name + ": " + cause, cause);
+        }
+    }
+}
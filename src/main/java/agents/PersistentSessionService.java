@@ -0,0 +1,489 @@
+package agents;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.adk.events.Event;
+import com.google.adk.sessions.BaseSessionService;
+import com.google.adk.sessions.GetSessionConfig;
+import com.google.adk.sessions.InMemorySessionService;
+import com.google.adk.sessions.ListEventsResponse;
+import com.google.adk.sessions.ListSessionsResponse;
+import com.google.adk.sessions.Session;
+import com.google.genai.types.Content;
+import com.google.genai.types.Part;
+
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.Single;
+
+/**
+ * Session service that keeps every session in an append-only log on disk and only the hot ones in memory.
+ *
+ * Each session is a file sessions/{app}/{user}/{id}.log. Its lines are a state snapshot ("S" + JSON) followed by
+ * the events appended since ("E" + event JSON). The in-memory part is a wrapped InMemorySessionService, limited
+ * to the most recently used sessions; sessions that are idle for too long or fall out of the LRU are dropped from
+ * memory and loaded back from their log on the next getSession.
+ *
+ * When a session has more than {@link Compaction#maxEvents()} events, the next getSession (i.e. the start of the
+ * next turn) replaces the older events with one summary event and keeps the most recent ones, starting at a user
+ * message. The log is rewritten with the compacted history, so both the prompt and the file stay bounded.
+ *
+ * Each hot session keeps its log open for appending, so agents.sessions.maxHot also bounds the open files; the
+ * log is closed when the session leaves memory.
+ *
+ * Idle sessions are evicted by a shared background thread; {@link #close()} stops doing so for this service.
+ */
+public class PersistentSessionService implements BaseSessionService, AutoCloseable {
+
+    /**
+     * Compaction settings: compact above maxEvents, keep about keepEvents recent events, and keep at most
+     * maxSummaryChars of summary text.
+     */
+    public record Compaction(int maxEvents, int keepEvents, int maxSummaryChars) {
+        public static final Compaction DEFAULT = new Compaction(40, 16, 2000);
+        public static final Compaction NONE = new Compaction(Integer.MAX_VALUE, Integer.MAX_VALUE, 0);
+    }
+
+    // The summary is a user message, which the agents read as context rather than as a request
+    static final String SUMMARY_PREFIX = "For context: summary of the earlier conversation:\n";
+    private static final int SUMMARY_LINE_CHARS = 200;
+
+    private static final ScheduledThreadPoolExecutor SWEEPER = sweeper();
+
+    private record Key(String appName, String userId, String sessionId) {}
+
+    private static final class Hot {
+        long lastAccess;
+        int events;
+        // Opened on the first append and only used under the session's lock
+        FileChannel log;
+    }
+
+    private final Path directory;
+    private final int maxHotSessions;
+    private final long idleMillis;
+    private final Compaction compaction;
+    private final ObjectMapper mapper = new ObjectMapper();
+    // The hot sessions themselves; ADK's in-memory service is final, so it is wrapped rather than extended
+    private final InMemorySessionService memory = new InMemorySessionService();
+
+    // Hot sessions, least recently used first; guarded by itself
+    private final LinkedHashMap<Key, Hot> hot = new LinkedHashMap<>(16, 0.75f, true);
+    // Striped locks, so loading, appending, compacting and evicting one session never interleave
+    private final Object[] locks = new Object[64];
+
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder compactions = new LongAdder();
+    private final ScheduledFuture<?> sweep;
+
+    public PersistentSessionService(Path directory, int maxHotSessions, Duration idleTimeout, Compaction compaction) {
+        this.directory = directory;
+        this.maxHotSessions = maxHotSessions;
+        this.idleMillis = idleTimeout.toMillis();
+        this.compaction = compaction;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        long sweepMillis = Math.max(1000, Math.min(idleMillis / 2, 60_000));
+        sweep = SWEEPER.scheduleWithFixedDelay(this::evictIdle, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Cancelled sweeps are removed from the queue at once, so a closed service is not kept reachable by its task
+    private static ScheduledThreadPoolExecutor sweeper() {
+        ScheduledThreadPoolExecutor sweeper = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "session-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.setRemoveOnCancelPolicy(true);
+        return sweeper;
+    }
+
+    /**
+     * Stops the idle sweep of this service and closes the open logs. Sessions are already on disk, so nothing else
+     * needs to be written; a session used after this opens its log again.
+     */
+    @Override
+    public void close() {
+        sweep.cancel(false);
+        List<Key> keys;
+        synchronized (hot) {
+            keys = new ArrayList<>(hot.keySet());
+        }
+        for (Key key : keys) {
+            synchronized (lock(key)) {
+                closeLog(hot(key));
+            }
+        }
+    }
+
+    /**
+     * Session service configured from system properties: agents.sessions.dir (default "sessions", or "memory"
+     * for a plain InMemorySessionService), agents.sessions.maxHot, agents.sessions.idleMinutes,
+     * agents.sessions.maxEvents and agents.sessions.keepEvents.
+     */
+    public static BaseSessionService fromSystemProperties() {
+        String dir = System.getProperty("agents.sessions.dir", "sessions");
+        if ("memory".equalsIgnoreCase(dir)) {
+            return new InMemorySessionService();
+        }
+        return new PersistentSessionService(
+            Path.of(dir),
+            Integer.getInteger("agents.sessions.maxHot", 10_000),
+            Duration.ofMinutes(Long.getLong("agents.sessions.idleMinutes", 30)),
+            new Compaction(
+                Integer.getInteger("agents.sessions.maxEvents", Compaction.DEFAULT.maxEvents()),
+                Integer.getInteger("agents.sessions.keepEvents", Compaction.DEFAULT.keepEvents()),
+                Compaction.DEFAULT.maxSummaryChars())
+        );
+    }
+
+    @Override
+    public Single<Session> createSession(String appName, String userId, ConcurrentMap<String, Object> state, String sessionId) {
+        return Single.fromCallable(() -> {
+            String id = sessionId != null ? sessionId : UUID.randomUUID().toString();
+            Key key = new Key(appName, userId, id);
+            synchronized (lock(key)) {
+                if (hot(key) != null || Files.exists(path(key))) {
+                    throw new IllegalStateException("Session " + id + " already exists.");
+                }
+                Session session = memory.createSession(appName, userId, state, id).blockingGet();
+                writeLog(key, session.state(), List.of());
+                touch(key).events = 0;
+                return session;
+            }
+        }).doOnSuccess(session -> evictOverflow());
+    }
+
+    @Override
+    public Maybe<Session> getSession(String appName, String userId, String sessionId, Optional<GetSessionConfig> config) {
+        return Maybe.defer(() -> {
+            Key key = new Key(appName, userId, sessionId);
+            synchronized (lock(key)) {
+                if (hot(key) == null && !load(key)) {
+                    return Maybe.<Session>empty();
+                }
+                compactIfNeeded(key);
+                touch(key);
+            }
+            evictOverflow();
+            return memory.getSession(appName, userId, sessionId, config);
+        });
+    }
+
+    @Override
+    public Single<Event> appendEvent(Session session, Event event) {
+        return Single.defer(() -> {
+            Key key = new Key(session.appName(), session.userId(), session.id());
+            synchronized (lock(key)) {
+                // The session may have been evicted while its turn was still running
+                if (hot(key) == null && !load(key)) {
+                    throw new IllegalStateException("Session " + session.id() + " does not exist.");
+                }
+                Event appended = memory.appendEvent(session, event).blockingGet();
+                if (!event.partial().orElse(false)) {
+                    Hot entry = touch(key);
+                    append(key, entry, "E" + event.toJson());
+                    entry.events++;
+                }
+                return Single.just(appended);
+            }
+        });
+    }
+
+    @Override
+    public Completable deleteSession(String appName, String userId, String sessionId) {
+        return Completable.defer(() -> {
+            Key key = new Key(appName, userId, sessionId);
+            synchronized (lock(key)) {
+                Hot entry;
+                synchronized (hot) {
+                    entry = hot.remove(key);
+                }
+                boolean wasHot = entry != null;
+                closeLog(entry);
+                Files.deleteIfExists(path(key));
+                return wasHot ? memory.deleteSession(appName, userId, sessionId) : Completable.complete();
+            }
+        });
+    }
+
+    // Lists only the hot sessions, as the sessions on disk are not indexed
+    @Override
+    public Single<ListSessionsResponse> listSessions(String appName, String userId) {
+        return memory.listSessions(appName, userId);
+    }
+
+    @Override
+    public Single<ListEventsResponse> listEvents(String appName, String userId, String sessionId) {
+        return memory.listEvents(appName, userId, sessionId);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (hot) {
+            stats.put("hotSessions", hot.size());
+        }
+        stats.put("loads", loads.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("compactions", compactions.sum());
+        return stats;
+    }
+
+    /**
+     * Drops every session from memory; they stay on disk. Used by benchmarks to measure resume latency.
+     */
+    public void evictAll() {
+        List<Key> keys;
+        synchronized (hot) {
+            keys = new ArrayList<>(hot.keySet());
+        }
+        keys.forEach(key -> evict(key, Long.MAX_VALUE));
+    }
+
+    private Object lock(Key key) {
+        return locks[Math.floorMod(key.hashCode(), locks.length)];
+    }
+
+    private Hot hot(Key key) {
+        synchronized (hot) {
+            return hot.get(key);
+        }
+    }
+
+    private Hot touch(Key key) {
+        synchronized (hot) {
+            Hot entry = hot.computeIfAbsent(key, k -> new Hot());
+            entry.lastAccess = System.currentTimeMillis();
+            return entry;
+        }
+    }
+
+    // Loads a session from its log into memory; false if there is no log
+    private boolean load(Key key) throws IOException {
+        Path path = path(key);
+        if (!Files.exists(path)) {
+            return false;
+        }
+        Map<String, Object> state = new HashMap<>();
+        List<Event> events = new ArrayList<>();
+        for (String line : Files.readAllLines(path, UTF_8)) {
+            if (line.startsWith("S")) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> snapshot = mapper.readValue(line.substring(1), Map.class);
+                state = snapshot;
+                events.clear();
+            } else if (line.startsWith("E")) {
+                events.add(Event.fromJson(line.substring(1)));
+            }
+        }
+
+        Session session = memory.createSession(key.appName(), key.userId(), new ConcurrentHashMap<>(state), key.sessionId()).blockingGet();
+        for (Event event : events) {
+            memory.appendEvent(session, event).blockingGet();
+        }
+        touch(key).events = events.size();
+        loads.increment();
+        return true;
+    }
+
+    private void compactIfNeeded(Key key) throws IOException {
+        Hot entry = hot(key);
+        if (entry == null || entry.events <= compaction.maxEvents()) {
+            return;
+        }
+        Session stored = memory.getSession(key.appName(), key.userId(), key.sessionId(), Optional.empty()).blockingGet();
+        List<Event> events = stored.events();
+
+        // Keep the recent events from a user message on, so no tool call is separated from its response
+        int cut = -1;
+        for (int i = Math.max(1, events.size() - compaction.keepEvents()); i < events.size(); i++) {
+            if ("user".equals(events.get(i).author()) && !isSummary(events.get(i))) {
+                cut = i;
+                break;
+            }
+        }
+        if (cut < 0) {
+            return;
+        }
+
+        List<Event> kept = new ArrayList<>();
+        kept.add(summarize(events.subList(0, cut)));
+        kept.addAll(events.subList(cut, events.size()));
+        ConcurrentMap<String, Object> state = new ConcurrentHashMap<>(stored.state());
+        writeLog(key, state, kept);
+        // The open log is the file that was just replaced
+        closeLog(entry);
+
+        memory.deleteSession(key.appName(), key.userId(), key.sessionId()).blockingAwait();
+        Session compacted = memory.createSession(key.appName(), key.userId(), state, key.sessionId()).blockingGet();
+        for (Event event : kept) {
+            memory.appendEvent(compacted, event).blockingGet();
+        }
+        entry.events = kept.size();
+        compactions.increment();
+    }
+
+    // One line per user message and agent answer, most recent last, trimmed from the front to the size limit
+    private Event summarize(List<Event> events) {
+        StringBuilder summary = new StringBuilder();
+        for (Event event : events) {
+            String text = event.content().map(TeamRunner::textOf).orElse("").strip();
+            if (isSummary(event)) {
+                summary.append(text.substring(SUMMARY_PREFIX.strip().length()).strip()).append('\n');
+            } else if (!text.isEmpty()) {
+                String line = text.replace('\n', ' ');
+                if (line.length() > SUMMARY_LINE_CHARS) {
+                    line = line.substring(0, SUMMARY_LINE_CHARS) + "...";
+                }
+                summary.append(event.author()).append(": ").append(line).append('\n');
+            }
+        }
+        int excess = summary.length() - compaction.maxSummaryChars();
+        if (excess > 0) {
+            int lineStart = summary.indexOf("\n", excess);
+            summary.delete(0, lineStart < 0 ? summary.length() : lineStart + 1);
+        }
+
+        Content content = Content.builder().role("user").parts(List.of(Part.fromText(SUMMARY_PREFIX + summary))).build();
+        return Event.builder()
+            .id(UUID.randomUUID().toString())
+            .invocationId(events.isEmpty() ? UUID.randomUUID().toString() : events.get(events.size() - 1).invocationId())
+            .author("user")
+            .content(content)
+            .timestamp(events.isEmpty() ? System.currentTimeMillis() : events.get(events.size() - 1).timestamp())
+            .build();
+    }
+
+    private static boolean isSummary(Event event) {
+        return "user".equals(event.author())
+            && event.content().map(TeamRunner::textOf).orElse("").startsWith(SUMMARY_PREFIX);
+    }
+
+    private void evictIdle() {
+        try {
+            long cutoff = System.currentTimeMillis() - idleMillis;
+            List<Key> idle = new ArrayList<>();
+            synchronized (hot) {
+                for (Map.Entry<Key, Hot> entry : hot.entrySet()) {
+                    if (entry.getValue().lastAccess > cutoff) {
+                        break;
+                    }
+                    idle.add(entry.getKey());
+                }
+            }
+            idle.forEach(key -> evict(key, cutoff));
+        } catch (RuntimeException e) {
+            System.err.println("Session eviction error: " + e.getMessage());
+        }
+    }
+
+    private void evictOverflow() {
+        List<Key> overflow = new ArrayList<>();
+        synchronized (hot) {
+            Iterator<Key> keys = hot.keySet().iterator();
+            for (int excess = hot.size() - maxHotSessions; excess > 0 && keys.hasNext(); excess--) {
+                overflow.add(keys.next());
+            }
+        }
+        overflow.forEach(key -> evict(key, Long.MAX_VALUE));
+    }
+
+    // Drops a session from memory if it was not used after the cutoff; everything is already on disk
+    private void evict(Key key, long cutoff) {
+        synchronized (lock(key)) {
+            Hot entry;
+            synchronized (hot) {
+                entry = hot.get(key);
+                if (entry == null || entry.lastAccess > cutoff) {
+                    return;
+                }
+                hot.remove(key);
+            }
+            closeLog(entry);
+            memory.deleteSession(key.appName(), key.userId(), key.sessionId()).blockingAwait();
+            evictions.increment();
+        }
+    }
+
+    private Path path(Key key) {
+        return directory
+            .resolve(fileName(key.appName()))
+            .resolve(fileName(key.userId()))
+            .resolve(fileName(key.sessionId()) + ".log");
+    }
+
+    // URL-encodes a name for use as one path element; dots are encoded too, so "." and ".." cannot leave the directory
+    static String fileName(String name) {
+        return URLEncoder.encode(name, UTF_8).replace(".", "%2E");
+    }
+
+    // Appends through the session's open log, opening it on first use; called with the session's lock held
+    private void append(Key key, Hot entry, String line) {
+        try {
+            if (entry.log == null) {
+                entry.log = FileChannel.open(path(key), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            }
+            ByteBuffer bytes = UTF_8.encode(line + "\n");
+            while (bytes.hasRemaining()) {
+                entry.log.write(bytes);
+            }
+        } catch (IOException e) {
+            closeLog(entry);
+            throw new UncheckedIOException("Cannot append to session log of " + key.sessionId(), e);
+        }
+    }
+
+    private static void closeLog(Hot entry) {
+        if (entry == null || entry.log == null) {
+            return;
+        }
+        try {
+            entry.log.close();
+        } catch (IOException e) {
+            System.err.println("Session log close error: " + e.getMessage());
+        }
+        entry.log = null;
+    }
+
+    // Replaces the log with a snapshot of the state followed by the given events
+    private void writeLog(Key key, Map<String, Object> state, List<Event> events) throws IOException {
+        Path path = path(key);
+        Files.createDirectories(path.getParent());
+        StringBuilder log = new StringBuilder();
+        log.append('S').append(mapper.writeValueAsString(state)).append('\n');
+        for (Event event : events) {
+            log.append('E').append(event.toJson()).append('\n');
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.writeString(temp, log, UTF_8);
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,68 @@
+package agents;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.google.adk.models.BaseLlm;
+import com.google.adk.models.BaseLlmConnection;
+import com.google.adk.models.LlmRequest;
+import com.google.adk.models.LlmResponse;
+import com.google.genai.types.Content;
+import com.google.genai.types.Part;
+
+import io.reactivex.rxjava3.core.Flowable;
+
+/**
+ * Speculative documentation prefetch for the technical specialist.
+ *
+ * On the first model call of a turn, the user's question is checked against the local documentation index.
+ * If it matches well enough, the searchDocs call the model would most likely make is run right away and
+ * attached to the request as a completed call and response, so the model can answer in one round trip.
+ * The model can still search again if the prefetched sections are not what it needs.
+ */
+public class PrefetchingLlm extends BaseLlm {
+
+    static final double DEFAULT_MIN_SCORE = 1.0;
+    static final int PREFETCH_RESULTS = 3;
+
+    private final BaseLlm delegate;
+    private final double minScore;
+
+    public PrefetchingLlm(BaseLlm delegate, double minScore) {
+        super(delegate.model());
+        this.delegate = delegate;
+        this.minScore = minScore;
+    }
+
+    @Override
+    public Flowable<LlmResponse> generateContent(LlmRequest llmRequest, boolean stream) {
+        return Flowable.defer(() -> delegate.generateContent(withPrefetch(llmRequest), stream));
+    }
+
+    @Override
+    public BaseLlmConnection connect(LlmRequest llmRequest) {
+        return delegate.connect(llmRequest);
+    }
+
+    LlmRequest withPrefetch(LlmRequest request) {
+        List<Content> contents = request.contents();
+        // Only a fresh question: the last content is the user's message, not a tool result
+        if (contents.isEmpty() || !"user".equals(contents.get(contents.size() - 1).role().orElse(""))
+                || ScriptedLlm.lastFunctionResponse(request).isPresent()) {
+            return request;
+        }
+        String question = ScriptedLlm.lastUserText(request);
+        List<DocIndex.Hit> hits = TechnicalSpecialist.knowledgeBase().index().search(question, 1);
+        if (hits.isEmpty() || hits.get(0).score() < minScore) {
+            return request;
+        }
+
+        Map<String, Object> args = Map.of("query", question, "k", PREFETCH_RESULTS);
+        Map<String, Object> result = TechnicalSpecialist.searchDocs(question, PREFETCH_RESULTS);
+        List<Content> prefetched = new ArrayList<>(contents);
+        prefetched.add(Content.builder().role("model").parts(List.of(Part.fromFunctionCall("searchDocs", args))).build());
+        prefetched.add(Content.builder().role("user").parts(List.of(Part.fromFunctionResponse("searchDocs", result))).build());
+        return request.toBuilder().contents(prefetched).build();
+    }
+}
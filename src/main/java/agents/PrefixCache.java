@@ -0,0 +1,153 @@
+package agents;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.adk.models.BaseLlm;
+
+/**
+ * Prompt prefixes held by the model provider, by content hash. The first request with a prefix uploads it
+ * to the backend; later requests with the same hash refer to it by name until the time to live is up, when
+ * it is uploaded again. A backend without cache support, or an upload that fails (e.g. a prefix below the
+ * provider's minimum size), leaves the prefix inline for the same period.
+ *
+ * Select with -Dagents.prefixCache: off (the default, requests are left alone), inline (prefixes are built,
+ * documents pinned, and always sent in full), local ({@link CachedContentStandIn}, which records the bytes
+ * sent) or gemini ({@link GeminiCachedContent}). -Dagents.prefixCache.ttlMinutes sets the time to live
+ * (default 55, under Gemini's default of an hour).
+ */
+public class PrefixCache {
+
+    /**
+     * Where cached prefixes live.
+     */
+    public interface Backend {
+
+        /**
+         * Uploads the prefix and returns the name to refer to it by, or empty if the backend cannot cache it.
+         */
+        Optional<String> create(PromptPrefix prefix);
+
+        /**
+         * The model requests go to; a local backend wraps it to see what is sent.
+         */
+        default BaseLlm wrap(BaseLlm model) {
+            return model;
+        }
+
+        default Map<String, Object> stats() {
+            return Map.of();
+        }
+    }
+
+    /** A backend without cache support: everything is sent inline. */
+    public static final Backend NONE = prefix -> Optional.empty();
+
+    private record Entry(Optional<String> name, long expiresAtNanos) {}
+
+    private final Backend backend;
+    private final long ttlNanos;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder inline = new LongAdder();
+    private final LongAdder uploads = new LongAdder();
+    private final LongAdder uploadedBytes = new LongAdder();
+    private final LongAdder failedUploads = new LongAdder();
+    private final LongAdder invalidated = new LongAdder();
+
+    public PrefixCache(Backend backend, Duration ttl) {
+        this.backend = backend;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    private static class Shared {
+        static final Optional<PrefixCache> INSTANCE = fromSystemProperties();
+    }
+
+    /**
+     * The cache shared by every agent in the process, or empty if prefix caching is off.
+     */
+    public static Optional<PrefixCache> shared() {
+        return Shared.INSTANCE;
+    }
+
+    public static Optional<PrefixCache> fromSystemProperties() {
+        String mode = System.getProperty("agents.prefixCache", "off");
+        Duration ttl = Duration.ofMinutes(Long.getLong("agents.prefixCache.ttlMinutes", 55));
+        return switch (mode) {
+            case "off" -> Optional.empty();
+            case "inline" -> Optional.of(new PrefixCache(NONE, ttl));
+            case "local" -> Optional.of(new PrefixCache(new CachedContentStandIn(), ttl));
+            case "gemini" -> Optional.of(new PrefixCache(GeminiCachedContent.fromEnvironment(), ttl));
+            default -> throw new IllegalArgumentException("Unknown agents.prefixCache: " + mode + ", expected off, inline, local or gemini");
+        };
+    }
+
+    public Backend backend() {
+        return backend;
+    }
+
+    /**
+     * The name of the cached prefix, uploading it first if needed, or empty to send it inline.
+     */
+    public Optional<String> reference(PromptPrefix prefix) {
+        Entry entry = entries.get(prefix.hash());
+        if (entry == null || entry.expiresAtNanos() - System.nanoTime() <= 0) {
+            // One upload per prefix: concurrent first requests wait for it instead of uploading again
+            entry = entries.compute(prefix.hash(), (hash, current) ->
+                current != null && current.expiresAtNanos() - System.nanoTime() > 0 ? current : upload(prefix));
+        }
+        if (entry.name().isPresent()) {
+            hits.increment();
+        } else {
+            inline.increment();
+        }
+        return entry.name();
+    }
+
+    /**
+     * Forgets a cached prefix the provider no longer has, so the next request uploads it again.
+     */
+    public void invalidate(PromptPrefix prefix) {
+        if (entries.remove(prefix.hash()) != null) {
+            invalidated.increment();
+        }
+    }
+
+    private Entry upload(PromptPrefix prefix) {
+        Optional<String> name;
+        try {
+            name = backend.create(prefix);
+        } catch (RuntimeException e) {
+            System.err.println("Prompt prefix upload failed, sending it inline: " + e.getMessage());
+            failedUploads.increment();
+            name = Optional.empty();
+        }
+        if (name.isPresent()) {
+            uploads.increment();
+            uploadedBytes.add(prefix.bytes());
+        }
+        return new Entry(name, System.nanoTime() + ttlNanos);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("prefixes", entries.size());
+        stats.put("hits", hits.sum());
+        stats.put("inline", inline.sum());
+        stats.put("uploads", uploads.sum());
+        stats.put("uploadedBytes", uploadedBytes.sum());
+        stats.put("failedUploads", failedUploads.sum());
+        stats.put("invalidated", invalidated.sum());
+        Map<String, Object> backendStats = backend.stats();
+        if (!backendStats.isEmpty()) {
+            stats.put("backend", backendStats);
+        }
+        return stats;
+    }
+}
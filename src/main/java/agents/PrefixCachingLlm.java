@@ -0,0 +1,73 @@
+package agents;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import com.google.adk.models.BaseLlm;
+import com.google.adk.models.BaseLlmConnection;
+import com.google.adk.models.LlmRequest;
+import com.google.adk.models.LlmResponse;
+import com.google.genai.types.Content;
+
+import io.reactivex.rxjava3.core.Flowable;
+
+/**
+ * Sends an agent's static prompt prefix (instruction, tool declarations and pinned documents) once and refers
+ * to it afterwards, see {@link PrefixCache}. If the provider has dropped a cached prefix before its time to
+ * live is up, the request is sent again inline and the prefix is uploaded again on the next call.
+ */
+public class PrefixCachingLlm extends BaseLlm {
+
+    private final BaseLlm delegate;
+    private final PrefixCache cache;
+    private final Supplier<List<Content>> documents;
+
+    public PrefixCachingLlm(BaseLlm delegate, PrefixCache cache, Supplier<List<Content>> documents) {
+        super(delegate.model());
+        this.delegate = delegate;
+        this.cache = cache;
+        this.documents = documents;
+    }
+
+    /**
+     * Wraps an agent's model when -Dagents.prefixCache is on, otherwise returns it unchanged.
+     */
+    public static BaseLlm wrap(BaseLlm model, Supplier<List<Content>> documents) {
+        Optional<PrefixCache> cache = PrefixCache.shared();
+        return cache.isEmpty() ? model : new PrefixCachingLlm(cache.get().backend().wrap(model), cache.get(), documents);
+    }
+
+    @Override
+    public Flowable<LlmResponse> generateContent(LlmRequest llmRequest, boolean stream) {
+        return Flowable.defer(() -> {
+            PromptPrefix prefix = PromptPrefix.of(model(), llmRequest, documents.get());
+            Optional<String> name = cache.reference(prefix);
+            if (name.isEmpty()) {
+                return delegate.generateContent(prefix.inline(llmRequest), stream);
+            }
+            AtomicBoolean received = new AtomicBoolean();
+            return delegate.generateContent(prefix.referencedBy(llmRequest, name.get()), stream)
+                .doOnNext(response -> received.set(true))
+                .onErrorResumeNext(e -> {
+                    if (received.get() || !isCacheMiss(e)) {
+                        return Flowable.error(e);
+                    }
+                    cache.invalidate(prefix);
+                    return delegate.generateContent(prefix.inline(llmRequest), stream);
+                });
+        });
+    }
+
+    @Override
+    public BaseLlmConnection connect(LlmRequest llmRequest) {
+        return delegate.connect(llmRequest);
+    }
+
+    // e.g. "CachedContent not found (or permission denied)"
+    static boolean isCacheMiss(Throwable e) {
+        String message = String.valueOf(e.getMessage()).toLowerCase();
+        return message.contains("cachedcontent") || message.contains("cached content");
+    }
+}
@@ -0,0 +1,121 @@
+package agents;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.adk.models.LlmRequest;
+import com.google.genai.types.Content;
+import com.google.genai.types.FunctionDeclaration;
+import com.google.genai.types.GenerateContentConfig;
+import com.google.genai.types.Part;
+import com.google.genai.types.Tool;
+
+/**
+ * The part of a model request that is the same on every call of an agent: the system instruction, the tool
+ * declarations and any pinned documents, which are appended to the instruction. The hash covers the model
+ * and all of it, so a changed instruction, tool or document gives a new prefix rather than a stale cache hit.
+ */
+public record PromptPrefix(String model, String hash, Content systemInstruction, List<Tool> tools, boolean pinsDocuments, long bytes) {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // Request config fields that a cached prefix replaces
+    private static final List<String> CACHED_FIELDS = List.of("systemInstruction", "tools", "toolConfig");
+
+    /**
+     * The prefix of a request, with the documents added to its system instruction.
+     */
+    public static PromptPrefix of(String model, LlmRequest request, List<Content> documents) {
+        GenerateContentConfig config = request.config().orElse(null);
+        List<Part> parts = new ArrayList<>();
+        if (config != null) {
+            config.systemInstruction().flatMap(Content::parts).ifPresent(parts::addAll);
+        }
+        for (Content document : documents) {
+            document.parts().ifPresent(parts::addAll);
+        }
+        List<Tool> tools = config == null ? List.of() : config.tools().orElse(List.of());
+
+        MessageDigest digest = sha256();
+        update(digest, model);
+        long bytes = 0;
+        for (Part part : parts) {
+            bytes += update(digest, part.text().orElse(""));
+        }
+        for (Tool tool : tools) {
+            for (FunctionDeclaration declaration : tool.functionDeclarations().orElse(List.of())) {
+                bytes += update(digest, declaration.toJson());
+            }
+        }
+        Content instruction = parts.isEmpty() ? null : Content.fromParts(parts.toArray(Part[]::new));
+        return new PromptPrefix(model, HexFormat.of().formatHex(digest.digest()), instruction, List.copyOf(tools), !documents.isEmpty(), bytes);
+    }
+
+    /**
+     * The request with the whole prefix sent along, for backends without a prefix cache.
+     */
+    public LlmRequest inline(LlmRequest request) {
+        if (!pinsDocuments || request.config().isEmpty()) {
+            return request;
+        }
+        GenerateContentConfig config = request.config().get().toBuilder().systemInstruction(systemInstruction).build();
+        return request.toBuilder().config(config).build();
+    }
+
+    /**
+     * The request referring to the prefix cached under the name instead of sending it. Providers reject a
+     * request that has both, so the instruction and tools are removed from the config.
+     */
+    public LlmRequest referencedBy(LlmRequest request, String cachedContent) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        try {
+            if (request.config().isPresent()) {
+                fields = MAPPER.readValue(request.config().get().toJson(), new TypeReference<LinkedHashMap<String, Object>>() {});
+            }
+            CACHED_FIELDS.forEach(fields::remove);
+            fields.put("cachedContent", cachedContent);
+            return request.toBuilder().config(GenerateContentConfig.fromJson(MAPPER.writeValueAsString(fields))).build();
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot rewrite request config", e);
+        }
+    }
+
+    /**
+     * The request as the provider sees it once it has looked up the cached prefix.
+     */
+    public LlmRequest restore(LlmRequest request) {
+        GenerateContentConfig.Builder config = request.config().map(GenerateContentConfig::toBuilder).orElseGet(GenerateContentConfig::builder);
+        if (systemInstruction != null) {
+            config.systemInstruction(systemInstruction);
+        }
+        if (!tools.isEmpty()) {
+            config.tools(tools);
+        }
+        return request.toBuilder().config(config.build()).build();
+    }
+
+    private static long update(MessageDigest digest, String text) {
+        byte[] bytes = (text == null ? "" : text).getBytes(UTF_8);
+        digest.update(bytes);
+        digest.update((byte) 0);
+        return bytes.length;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package agents;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Outlines Python source for the {@link SourceIndex}: classes, methods, functions and module constants with
+ * their line ranges, TODO/FIXME/WARNING style markers in comments and docstrings, and the lines each identifier
+ * is used on. This is a line scanner that follows indentation, not a full parser; it copes with the layout
+ * of ordinary code (one definition per line, triple quoted docstrings, signatures over several lines).
+ */
+final class PythonOutline {
+
+    private static final Pattern CLASS = Pattern.compile("^(\\s*)class\\s+(\\w+)\\s*(\\([^)]*\\))?\\s*:");
+    private static final Pattern DEF = Pattern.compile("^(\\s*)(?:async\\s+)?def\\s+(\\w+)\\s*\\(");
+    private static final Pattern CONSTANT = Pattern.compile("^([A-Z][A-Z0-9_]*)\\s*(?::[^=]+)?=(?!=)");
+    private static final Pattern MARKER = Pattern.compile("\\b(TODO|FIXME|XXX|HACK|WARNING|NOTE)\\b:?\\s*(.*)");
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_]\\w*");
+
+    private static final Set<String> KEYWORDS = Set.of(
+        "False", "None", "True", "and", "as", "assert", "async", "await", "break", "class", "continue", "def", "del",
+        "elif", "else", "except", "finally", "for", "from", "global", "if", "import", "in", "is", "lambda", "nonlocal",
+        "not", "or", "pass", "raise", "return", "try", "while", "with", "yield", "self", "cls");
+
+    // Continuation lines of a comment that are folded into the marker above them
+    private static final int MARKER_LINES = 4;
+    // Lines joined to find the end of a signature
+    private static final int SIGNATURE_LINES = 8;
+
+    private PythonOutline() {
+    }
+
+    private static final class Scope {
+        final int indent;
+        final SourceIndex.Kind kind;
+        final String name;
+        final String qualifiedName;
+        final int line;
+        final String signature;
+        String doc = "";
+
+        Scope(int indent, SourceIndex.Kind kind, String name, String qualifiedName, int line, String signature) {
+            this.indent = indent;
+            this.kind = kind;
+            this.name = name;
+            this.qualifiedName = qualifiedName;
+            this.line = line;
+            this.signature = signature;
+        }
+    }
+
+    /**
+     * Outlines one file; lines are numbered from 1.
+     */
+    static SourceIndex.FileEntry outline(String path, long size, long modified, List<String> lines) {
+        List<SourceIndex.Symbol> symbols = new ArrayList<>();
+        List<SourceIndex.Marker> markers = new ArrayList<>();
+        Map<String, Set<Integer>> references = new TreeMap<>();
+        Deque<Scope> scopes = new ArrayDeque<>();
+
+        String openQuote = null;
+        Scope awaitingDoc = null;
+        int lastCodeLine = 0;
+        SourceIndex.Marker openMarker = null;
+        int markerLines = 0;
+        int brackets = 0;
+
+        for (int i = 0; i < lines.size(); i++) {
+            int number = i + 1;
+            String line = lines.get(i);
+            String stripped = line.strip();
+
+            if (openQuote != null) {
+                // Inside a triple quoted string: only markers count
+                int close = line.indexOf(openQuote);
+                String text = close < 0 ? line : line.substring(0, close);
+                addMarker(markers, text, number);
+                if (awaitingDoc != null && awaitingDoc.doc.isEmpty() && !text.isBlank()) {
+                    awaitingDoc.doc = text.strip();
+                }
+                if (close >= 0) {
+                    openQuote = null;
+                    awaitingDoc = null;
+                }
+                openMarker = null;
+                continue;
+            }
+            if (stripped.isEmpty()) {
+                continue;
+            }
+
+            int comment = commentStart(line);
+            String commentText = comment < 0 ? "" : line.substring(comment + 1).strip();
+            String code = comment < 0 ? line : line.substring(0, comment);
+
+            if (code.isBlank()) {
+                // A comment line: starts a marker or continues the one above
+                SourceIndex.Marker marker = marker(commentText, number);
+                if (marker != null) {
+                    markers.add(marker);
+                    openMarker = marker;
+                    markerLines = 1;
+                } else if (openMarker != null && markerLines < MARKER_LINES && !commentText.isEmpty()) {
+                    SourceIndex.Marker extended = new SourceIndex.Marker(openMarker.tag(), openMarker.line(),
+                        openMarker.text() + " " + commentText);
+                    markers.set(markers.size() - 1, extended);
+                    openMarker = extended;
+                    markerLines++;
+                } else {
+                    openMarker = null;
+                }
+                continue;
+            }
+            openMarker = null;
+            if (!commentText.isEmpty()) {
+                addMarker(markers, commentText, number);
+            }
+
+            String plain = stripString(code);
+            if (brackets > 0) {
+                // Continues a statement whose brackets are still open, whatever its indentation
+                brackets = Math.max(0, brackets + bracketBalance(plain));
+                addReferences(references, plain, null, number);
+                openQuote = unclosedTripleQuote(code);
+                lastCodeLine = number;
+                continue;
+            }
+
+            int indent = indent(line);
+            while (!scopes.isEmpty() && scopes.peek().indent >= indent) {
+                close(scopes.pop(), lastCodeLine, symbols);
+            }
+
+            Matcher matcher;
+            String defined = null;
+            if ((matcher = CLASS.matcher(code)).find()) {
+                defined = matcher.group(2);
+                scopes.push(scope(scopes, indent, SourceIndex.Kind.CLASS, defined, number, code.strip()));
+                awaitingDoc = scopes.peek();
+            } else if ((matcher = DEF.matcher(code)).find()) {
+                defined = matcher.group(2);
+                SourceIndex.Kind kind = !scopes.isEmpty() && scopes.peek().kind == SourceIndex.Kind.CLASS
+                    ? SourceIndex.Kind.METHOD : SourceIndex.Kind.FUNCTION;
+                String signature = signature(lines, i);
+                scopes.push(scope(scopes, indent, kind, defined, number, signature));
+                awaitingDoc = scopes.peek();
+            } else if (scopes.isEmpty() && (matcher = CONSTANT.matcher(code)).find()) {
+                defined = matcher.group(1);
+                symbols.add(new SourceIndex.Symbol(defined, defined, SourceIndex.Kind.CONSTANT, "", number, number,
+                    code.strip(), ""));
+            } else if (awaitingDoc != null && awaitingDoc.doc.isEmpty() && (stripped.startsWith("\"\"\"") || stripped.startsWith("'''"))) {
+                String quote = stripped.substring(0, 3);
+                String rest = stripped.substring(3);
+                int close = rest.indexOf(quote);
+                awaitingDoc.doc = (close < 0 ? rest : rest.substring(0, close)).strip();
+                addMarker(markers, rest, number);
+                if (close < 0) {
+                    openQuote = quote;
+                    lastCodeLine = number;
+                    continue;
+                }
+                awaitingDoc = null;
+            } else {
+                awaitingDoc = null;
+            }
+
+            openQuote = unclosedTripleQuote(code);
+            brackets = Math.max(0, bracketBalance(plain));
+            addReferences(references, plain, defined, number);
+            lastCodeLine = number;
+        }
+        while (!scopes.isEmpty()) {
+            close(scopes.pop(), lastCodeLine, symbols);
+        }
+        symbols.sort((a, b) -> Integer.compare(a.line(), b.line()));
+
+        Map<String, int[]> referenceLines = new TreeMap<>();
+        references.forEach((name, numbers) -> referenceLines.put(name, numbers.stream().mapToInt(Integer::intValue).toArray()));
+        return new SourceIndex.FileEntry(path, size, modified, symbols, markers, referenceLines);
+    }
+
+    private static Scope scope(Deque<Scope> scopes, int indent, SourceIndex.Kind kind, String name, int line, String signature) {
+        String qualifiedName = scopes.isEmpty() ? name : scopes.peek().qualifiedName + "." + name;
+        return new Scope(indent, kind, name, qualifiedName, line, signature);
+    }
+
+    private static void close(Scope scope, int lastLine, List<SourceIndex.Symbol> symbols) {
+        String container = scope.qualifiedName.equals(scope.name) ? ""
+            : scope.qualifiedName.substring(0, scope.qualifiedName.length() - scope.name.length() - 1);
+        symbols.add(new SourceIndex.Symbol(scope.name, scope.qualifiedName, scope.kind, container, scope.line,
+            Math.max(scope.line, lastLine), scope.signature, scope.doc));
+    }
+
+    // The def line up to its closing colon, joined with the following lines if the parameters span several
+    private static String signature(List<String> lines, int start) {
+        StringBuilder signature = new StringBuilder();
+        for (int i = start; i < lines.size() && i < start + SIGNATURE_LINES; i++) {
+            String code = lines.get(i);
+            int comment = commentStart(code);
+            code = (comment < 0 ? code : code.substring(0, comment)).strip();
+            if (signature.length() > 0) {
+                signature.append(' ');
+            }
+            signature.append(code);
+            if (code.endsWith(":")) {
+                break;
+            }
+        }
+        String text = signature.toString();
+        return text.endsWith(":") ? text.substring(0, text.length() - 1) : text;
+    }
+
+    private static void addReferences(Map<String, Set<Integer>> references, String code, String defined, int line) {
+        for (Matcher identifiers = IDENTIFIER.matcher(code); identifiers.find(); ) {
+            String name = identifiers.group();
+            if (!KEYWORDS.contains(name) && !name.equals(defined)) {
+                references.computeIfAbsent(name, n -> new TreeSet<>()).add(line);
+            }
+        }
+    }
+
+    private static int bracketBalance(String code) {
+        int balance = 0;
+        for (int i = 0; i < code.length(); i++) {
+            switch (code.charAt(i)) {
+                case '(', '[', '{' -> balance++;
+                case ')', ']', '}' -> balance--;
+                default -> { }
+            }
+        }
+        return balance;
+    }
+
+    private static void addMarker(List<SourceIndex.Marker> markers, String text, int line) {
+        SourceIndex.Marker marker = marker(text, line);
+        if (marker != null) {
+            markers.add(marker);
+        }
+    }
+
+    private static SourceIndex.Marker marker(String text, int line) {
+        Matcher matcher = MARKER.matcher(text);
+        return matcher.find() ? new SourceIndex.Marker(matcher.group(1), line, matcher.group(2).strip()) : null;
+    }
+
+    private static int indent(String line) {
+        int indent = 0;
+        while (indent < line.length() && Character.isWhitespace(line.charAt(indent))) {
+            indent++;
+        }
+        return indent;
+    }
+
+    // Index of a '#' outside string literals, or -1
+    static int commentStart(String line) {
+        char quote = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quote != 0) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '#') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // The triple quote a line leaves open, e.g. a docstring that continues on the next lines
+    private static String unclosedTripleQuote(String code) {
+        for (String quote : new String[] {"\"\"\"", "'''"}) {
+            int count = 0;
+            for (int i = code.indexOf(quote); i >= 0; i = code.indexOf(quote, i + 3)) {
+                count++;
+            }
+            if (count % 2 == 1) {
+                return quote;
+            }
+        }
+        return null;
+    }
+
+    // Blanks out string literals so words inside them are not taken for identifiers; f-string fields are kept
+    private static String stripString(String code) {
+        StringBuilder out = new StringBuilder(code.length());
+        char quote = 0;
+        int depth = 0;
+        for (int i = 0; i < code.length(); i++) {
+            char c = code.charAt(i);
+            if (quote == 0) {
+                if (c == '"' || c == '\'') {
+                    quote = c;
+                    out.append(' ');
+                } else {
+                    out.append(c);
+                }
+            } else if (c == '\\') {
+                i++;
+                out.append(' ');
+            } else if (c == quote && depth == 0) {
+                quote = 0;
+                out.append(' ');
+            } else if (c == '{') {
+                depth++;
+                out.append(' ');
+            } else if (c == '}' && depth > 0) {
+                depth--;
+                out.append(' ');
+            } else {
+                out.append(depth > 0 ? c : ' ');
+            }
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,40 @@
+package agents;
+
+/**
+ * The refund policy: a full refund within 7 days of the purchase, a partial refund within 30 days,
+ * and no refund after that. The windows and explanations are the "refund" rules in /billing/rules.tsv
+ * (see {@link BillingRules}). The ticket tool applies it, so the model only has to pass on the result.
+ */
+public final class RefundPolicy {
+
+    public enum Eligibility {
+        FULL("Full refund"),
+        PARTIAL("Partial refund"),
+        NONE("No refund"),
+        UNKNOWN("Unknown");
+
+        private final String label;
+
+        Eligibility(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+    }
+
+    /** The eligibility and why, for passing on to the user. */
+    public record Decision(Eligibility eligibility, String explanation) {}
+
+    private RefundPolicy() {
+    }
+
+    /**
+     * Eligibility for a purchase made the given number of days ago; a negative number means the date is not known.
+     */
+    public static Decision evaluate(int daysSincePurchase) {
+        BillingRules.Verdict verdict = BillingRules.standard().refund(daysSincePurchase);
+        return new Decision(Eligibility.valueOf(verdict.verdict()), verdict.explanation());
+    }
+}
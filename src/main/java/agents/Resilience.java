@@ -0,0 +1,193 @@
+package agents;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.adk.models.BaseLlm;
+
+/**
+ * Settings and per endpoint state of the resilience layer: a deadline for each user turn ({@link ResilientRuntime}),
+ * and for each model call a timeout, a hedged duplicate request and a {@link CircuitBreaker} per model endpoint
+ * ({@link ResilientLlm}). The hedge is sent when the first call has not answered within the endpoint's recent
+ * 95th percentile time to first response, and at most for a fixed share of calls, so a slow provider gets a
+ * bounded amount of extra load.
+ */
+public class Resilience {
+
+    /**
+     * @param turnBudget time a user turn may take over all its agent hops before it is answered without the model
+     * @param callTimeout longest wait for the first response of a model call, and between streamed responses
+     * @param hedgeShare most hedged requests per model call; 0 disables hedging
+     * @param minHedgeDelay lower bound of the hedge delay
+     * @param breaker circuit breaker of each model endpoint
+     */
+    public record Settings(
+        Duration turnBudget,
+        Duration callTimeout,
+        double hedgeShare,
+        Duration minHedgeDelay,
+        CircuitBreaker.Settings breaker
+    ) {
+        public static final Settings DEFAULT = new Settings(
+            Duration.ofSeconds(60), Duration.ofSeconds(20), 0.1, Duration.ofMillis(200), CircuitBreaker.Settings.DEFAULT);
+    }
+
+    // Times to first response kept per endpoint, and how many are needed before hedging starts
+    private static final int LATENCY_WINDOW = 512;
+    private static final int MIN_LATENCY_SAMPLES = 20;
+
+    private static class Shared {
+        static final Resilience INSTANCE = fromSystemProperties();
+    }
+
+    private final boolean enabled;
+    private final Settings settings;
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    public Resilience(Settings settings) {
+        this(true, settings);
+    }
+
+    private Resilience(boolean enabled, Settings settings) {
+        this.enabled = enabled;
+        this.settings = settings;
+    }
+
+    /**
+     * The resilience settings and endpoints shared by every agent in the process.
+     */
+    public static Resilience shared() {
+        return Shared.INSTANCE;
+    }
+
+    /**
+     * Settings from -Dagents.resilience.turnBudgetMs, .callTimeoutMs, .hedgeShare, .minHedgeDelayMs,
+     * .breaker.window, .breaker.minCalls, .breaker.failureRate, .breaker.openMs and .breaker.trialCalls;
+     * -Dagents.resilience=false leaves models and runtimes unwrapped.
+     */
+    public static Resilience fromSystemProperties() {
+        Settings d = Settings.DEFAULT;
+        CircuitBreaker.Settings b = d.breaker();
+        Settings settings = new Settings(
+            Duration.ofMillis(Long.getLong("agents.resilience.turnBudgetMs", d.turnBudget().toMillis())),
+            Duration.ofMillis(Long.getLong("agents.resilience.callTimeoutMs", d.callTimeout().toMillis())),
+            Double.parseDouble(System.getProperty("agents.resilience.hedgeShare", String.valueOf(d.hedgeShare()))),
+            Duration.ofMillis(Long.getLong("agents.resilience.minHedgeDelayMs", d.minHedgeDelay().toMillis())),
+            new CircuitBreaker.Settings(
+                Integer.getInteger("agents.resilience.breaker.window", b.window()),
+                Integer.getInteger("agents.resilience.breaker.minCalls", b.minCalls()),
+                Double.parseDouble(System.getProperty("agents.resilience.breaker.failureRate", String.valueOf(b.failureRate()))),
+                Duration.ofMillis(Long.getLong("agents.resilience.breaker.openMs", b.openFor().toMillis())),
+                Integer.getInteger("agents.resilience.breaker.trialCalls", b.trialCalls()))
+        );
+        return new Resilience(Boolean.parseBoolean(System.getProperty("agents.resilience", "true")), settings);
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    public Settings settings() {
+        return settings;
+    }
+
+    /**
+     * Wraps the model an agent calls with the call timeout, hedging and the endpoint's circuit breaker.
+     */
+    public BaseLlm model(BaseLlm model) {
+        return enabled ? new ResilientLlm(model, this) : model;
+    }
+
+    /**
+     * Wraps a runtime with the turn deadline and answers from the documentation when the model fails;
+     * cached answers are used first when a cache is given.
+     */
+    public AgentRuntime runtime(AgentRuntime runtime, AnswerCache answers) {
+        return enabled ? new ResilientRuntime(runtime, this, answers) : runtime;
+    }
+
+    Endpoint endpoint(String model) {
+        return endpoints.computeIfAbsent(model, name -> new Endpoint(name, settings));
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new TreeMap<>();
+        endpoints.forEach((name, endpoint) -> stats.put(name, endpoint.stats()));
+        return stats;
+    }
+
+    /**
+     * One model endpoint: its circuit breaker, recent times to first response and hedging counters.
+     */
+    static final class Endpoint {
+        final CircuitBreaker breaker;
+        private final Settings settings;
+        private final long[] latencies = new long[LATENCY_WINDOW];
+        private int samples;
+        private int next;
+        private volatile long p95Nanos = -1;
+
+        final LongAdder calls = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final LongAdder timeouts = new LongAdder();
+        final LongAdder hedges = new LongAdder();
+        final LongAdder hedgeWins = new LongAdder();
+
+        Endpoint(String name, Settings settings) {
+            this.breaker = new CircuitBreaker(name, settings.breaker());
+            this.settings = settings;
+        }
+
+        synchronized void recordFirstResponse(long nanos) {
+            latencies[next] = nanos;
+            next = (next + 1) % latencies.length;
+            samples++;
+            // Sorting the window on every call would cost more than the call bookkeeping itself
+            if (samples >= MIN_LATENCY_SAMPLES && (samples - MIN_LATENCY_SAMPLES) % 16 == 0) {
+                long[] sorted = Arrays.copyOf(latencies, Math.min(samples, latencies.length));
+                Arrays.sort(sorted);
+                p95Nanos = sorted[(int) Math.ceil(sorted.length * 0.95) - 1];
+            }
+        }
+
+        /**
+         * When to send a hedged request, or -1 for no hedge: too few samples yet, or hedging is off.
+         */
+        long hedgeDelayNanos() {
+            long p95 = p95Nanos;
+            if (p95 < 0 || settings.hedgeShare() <= 0) {
+                return -1;
+            }
+            return Math.min(Math.max(p95, settings.minHedgeDelay().toNanos()), settings.callTimeout().toNanos());
+        }
+
+        /**
+         * Takes a hedge if hedges stay within their share of calls.
+         */
+        boolean tryHedge() {
+            if (hedges.sum() + 1 > settings.hedgeShare() * calls.sum()) {
+                return false;
+            }
+            hedges.increment();
+            return true;
+        }
+
+        Map<String, Object> stats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("calls", calls.sum());
+            stats.put("failures", failures.sum());
+            stats.put("timeouts", timeouts.sum());
+            stats.put("hedges", hedges.sum());
+            stats.put("hedgeWins", hedgeWins.sum());
+            long p95 = p95Nanos;
+            stats.put("firstResponseP95Ms", p95 < 0 ? -1 : p95 / 1_000_000);
+            stats.put("breaker", breaker.stats());
+            return stats;
+        }
+    }
+}
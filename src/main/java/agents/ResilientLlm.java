@@ -0,0 +1,109 @@
+package agents;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.adk.models.BaseLlm;
+import com.google.adk.models.BaseLlmConnection;
+import com.google.adk.models.LlmRequest;
+import com.google.adk.models.LlmResponse;
+
+import io.reactivex.rxjava3.core.Flowable;
+
+/**
+ * Bounds how long a model call can hang and how often a failing endpoint is called, see {@link Resilience}.
+ *
+ * A call fails with a {@link TimeoutException} when no response arrives within the call timeout, or the stream
+ * stalls for that long. When the call has not answered within the endpoint's hedge delay, the same request is
+ * sent once more and whichever call answers first is used; the other is cancelled. Every call first asks the
+ * endpoint's {@link CircuitBreaker}, which fails it at once while the endpoint keeps failing. Rejections by the
+ * {@link ModelScheduler} are local overload, not endpoint failures, and do not count towards the breaker.
+ */
+public class ResilientLlm extends BaseLlm {
+
+    private final BaseLlm delegate;
+    private final Resilience resilience;
+
+    public ResilientLlm(BaseLlm delegate, Resilience resilience) {
+        super(delegate.model());
+        this.delegate = delegate;
+        this.resilience = resilience;
+    }
+
+    @Override
+    public Flowable<LlmResponse> generateContent(LlmRequest llmRequest, boolean stream) {
+        return Flowable.defer(() -> {
+            Resilience.Endpoint endpoint = resilience.endpoint(model());
+            endpoint.calls.increment();
+            Flowable<LlmResponse> first = attempt(endpoint, llmRequest, stream, false);
+            long hedgeDelay = endpoint.hedgeDelayNanos();
+            if (hedgeDelay < 0) {
+                return first;
+            }
+            // Cancelled with its timer when the first call answers before the delay. A hedge that fails leaves
+            // the first call to finish on its own instead of failing the whole call.
+            Flowable<LlmResponse> hedge = Flowable.defer(() -> endpoint.tryHedge()
+                    ? attempt(endpoint, llmRequest, stream, true).onErrorResumeNext(error -> Flowable.never())
+                    : Flowable.<LlmResponse>never())
+                .delaySubscription(hedgeDelay, TimeUnit.NANOSECONDS);
+            return Flowable.ambArray(first, hedge);
+        });
+    }
+
+    @Override
+    public BaseLlmConnection connect(LlmRequest llmRequest) {
+        return delegate.connect(llmRequest);
+    }
+
+    private Flowable<LlmResponse> attempt(Resilience.Endpoint endpoint, LlmRequest llmRequest, boolean stream, boolean hedge) {
+        return Flowable.defer(() -> {
+            CircuitBreaker.Permit permit = endpoint.breaker.tryAcquire();
+            if (permit == null) {
+                return Flowable.error(new CircuitBreaker.OpenException(
+                    "Model " + model() + " is unavailable: its circuit breaker is open after repeated failures."));
+            }
+            long timeoutMillis = resilience.settings().callTimeout().toMillis();
+            long start = System.nanoTime();
+            AtomicBoolean responded = new AtomicBoolean();
+            AtomicBoolean ended = new AtomicBoolean();
+            return delegate.generateContent(llmRequest, stream)
+                .timeout(
+                    Flowable.timer(timeoutMillis, TimeUnit.MILLISECONDS),
+                    response -> Flowable.timer(timeoutMillis, TimeUnit.MILLISECONDS),
+                    Flowable.defer(() -> {
+                        endpoint.timeouts.increment();
+                        return Flowable.error(new TimeoutException(
+                            "Model " + model() + " did not respond within " + timeoutMillis + " ms."));
+                    }))
+                .doOnNext(response -> {
+                    if (responded.compareAndSet(false, true)) {
+                        endpoint.recordFirstResponse(System.nanoTime() - start);
+                        if (hedge) {
+                            endpoint.hedgeWins.increment();
+                        }
+                    }
+                })
+                .doOnComplete(() -> {
+                    if (ended.compareAndSet(false, true)) {
+                        permit.onSuccess();
+                    }
+                })
+                .doOnError(error -> {
+                    if (ended.compareAndSet(false, true)) {
+                        if (error instanceof ModelScheduler.OverloadedException) {
+                            permit.onIgnored();
+                        } else {
+                            endpoint.failures.increment();
+                            permit.onFailure();
+                        }
+                    }
+                })
+                .doOnCancel(() -> {
+                    if (ended.compareAndSet(false, true)) {
+                        permit.onIgnored();
+                    }
+                });
+        });
+    }
+}
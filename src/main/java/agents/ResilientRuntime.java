@@ -0,0 +1,153 @@
+package agents;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.adk.agents.RunConfig;
+import com.google.adk.events.Event;
+import com.google.adk.sessions.BaseSessionService;
+import com.google.adk.sessions.Session;
+import com.google.genai.types.Content;
+import com.google.genai.types.Part;
+
+import io.reactivex.rxjava3.core.Flowable;
+
+/**
+ * Gives every user turn one deadline for all its agent hops and answers without the model when the turn
+ * fails or runs out of time, so a slow or unavailable model cannot hold a caller indefinitely.
+ *
+ * When the turn budget is spent the turn is cancelled, which also cancels the model call or tool of whichever
+ * hop is running. If the turn ended without a complete reply, because of the deadline or an error such as a
+ * model timeout or an open {@link CircuitBreaker}, a degraded reply is emitted and appended to the session:
+ * a cached answer to a similar question if there is one, otherwise the documentation section that best
+ * matches the question, otherwise a request to try again later. Tenant quota rejections are passed through.
+ */
+public class ResilientRuntime implements AgentRuntime {
+
+    static final String AUTHOR = "fallback";
+    private static final int MAX_SECTION_CHARS = 1500;
+
+    private final AgentRuntime delegate;
+    private final Resilience resilience;
+    private final AnswerCache answers;
+
+    private final LongAdder turns = new LongAdder();
+    private final LongAdder deadlines = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder fromCache = new LongAdder();
+    private final LongAdder fromDocs = new LongAdder();
+
+    /**
+     * @param answers cached answers tried before the documentation, or null
+     */
+    public ResilientRuntime(AgentRuntime delegate, Resilience resilience, AnswerCache answers) {
+        this.delegate = delegate;
+        this.resilience = resilience;
+        this.answers = answers;
+    }
+
+    @Override
+    public String appName() {
+        return delegate.appName();
+    }
+
+    @Override
+    public BaseSessionService sessionService() {
+        return delegate.sessionService();
+    }
+
+    @Override
+    public Flowable<Event> runAsync(String userId, String sessionId, Content newMessage, RunConfig runConfig) {
+        return Flowable.defer(() -> {
+            turns.increment();
+            AtomicBoolean replied = new AtomicBoolean();
+            AtomicBoolean expired = new AtomicBoolean();
+            long budgetMillis = resilience.settings().turnBudget().toMillis();
+            Flowable<Long> deadline = Flowable.timer(budgetMillis, TimeUnit.MILLISECONDS).doOnNext(tick -> expired.set(true));
+            return delegate.runAsync(userId, sessionId, newMessage, runConfig)
+                .doOnNext(event -> {
+                    if (!event.partial().orElse(false) && EventPrinter.hasText(event)) {
+                        replied.set(true);
+                    }
+                })
+                .takeUntil(deadline)
+                .concatWith(Flowable.defer(() -> {
+                    if (!expired.get() || replied.get()) {
+                        return Flowable.<Event>empty();
+                    }
+                    deadlines.increment();
+                    return Flowable.just(degraded(userId, sessionId, newMessage, "took too long to answer"));
+                }))
+                .onErrorResumeNext(error -> {
+                    if (replied.get() || error instanceof TenantScheduler.QuotaExceededException) {
+                        return Flowable.error(error);
+                    }
+                    System.err.println("Turn failed, answering without the model: " + error);
+                    errors.increment();
+                    return Flowable.just(degraded(userId, sessionId, newMessage, "is unavailable right now"));
+                });
+        });
+    }
+
+    @Override
+    public void closeSession(String userId, String sessionId) {
+        delegate.closeSession(userId, sessionId);
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>(delegate.stats());
+        Map<String, Object> resilient = new LinkedHashMap<>();
+        resilient.put("turns", turns.sum());
+        resilient.put("deadlineExceeded", deadlines.sum());
+        resilient.put("failed", errors.sum());
+        resilient.put("answeredFromCache", fromCache.sum());
+        resilient.put("answeredFromDocs", fromDocs.sum());
+        resilient.put("models", resilience.stats());
+        stats.put("resilience", resilient);
+        return stats;
+    }
+
+    private Event degraded(String userId, String sessionId, Content message, String reason) {
+        Session session = sessionService().getSession(appName(), userId, sessionId, Optional.empty()).blockingGet();
+        Tenants tenants = Tenants.shared();
+        String text = session != null && tenants.configured()
+            ? Tenants.callAs(tenants.of(session), () -> fallbackText(TeamRunner.textOf(message), reason))
+            : fallbackText(TeamRunner.textOf(message), reason);
+        Event event = Event.builder()
+            .id(UUID.randomUUID().toString())
+            .invocationId(UUID.randomUUID().toString())
+            .author(AUTHOR)
+            .content(Content.builder().role("model").parts(List.of(Part.fromText(text))).build())
+            .timestamp(System.currentTimeMillis())
+            .build();
+        if (session != null) {
+            sessionService().appendEvent(session, event).blockingGet();
+        }
+        return event;
+    }
+
+    private String fallbackText(String question, String reason) {
+        String intro = "The assistant " + reason + ". ";
+        AnswerCache.Answer cached = answers == null ? null : answers.get(question);
+        if (cached != null) {
+            fromCache.increment();
+            return intro + "This is an earlier answer to a similar question:\n\n" + cached.text();
+        }
+        List<DocIndex.Hit> hits = TechnicalSpecialist.knowledgeBase().index().search(question, 1);
+        if (!hits.isEmpty() && hits.get(0).score() >= PrefetchingLlm.DEFAULT_MIN_SCORE) {
+            fromDocs.increment();
+            DocChunk chunk = hits.get(0).chunk();
+            String text = chunk.text().length() > MAX_SECTION_CHARS
+                ? chunk.text().substring(0, MAX_SECTION_CHARS) + " ..." : chunk.text();
+            return intro + "This section of the documentation may help:\n\n" + chunk.section() + "\n\n" + text;
+        }
+        return intro + "Please try again in a few minutes.";
+    }
+}
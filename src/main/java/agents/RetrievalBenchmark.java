@@ -0,0 +1,71 @@
+package agents;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Compares the full-document technical tools with searchDocs on the README example questions.
+ * For each question it reports the bytes the tool result adds to the next prompt and the
+ * average time spent producing it.
+ *
+ * Run with: mvn exec:java -Dexec.mainClass="agents.RetrievalBenchmark"
+ */
+public class RetrievalBenchmark {
+
+    private static final int ITERATIONS = 20_000;
+
+    private record Question(String text, String keywords, Supplier<Map<String, ?>> fullDump) {}
+
+    public static void main(String[] args) throws IOException {
+        List<Question> questions = List.of(
+            new Question("Why are my files corrupted?", "files corrupted", fullDocument("troubleshootingNotes.md")),
+            new Question("How is encryption handled?", "encryption", fullDocument("sourceCode.py"))
+        );
+
+        DocIndex index = TechnicalSpecialist.knowledgeBase().index();
+        System.out.printf("Index: %d chunks%n%n", index.size());
+        System.out.printf("%-30s %-12s %12s %14s%n", "question", "tool", "prompt bytes", "avg latency us");
+
+        for (Question question : questions) {
+            report(question.text(), "full dump", question.fullDump());
+            report(question.text(), "searchDocs", () -> TechnicalSpecialist.searchDocs(question.keywords(), 3));
+        }
+
+        System.out.println();
+        for (Question question : questions) {
+            System.out.println(question.text());
+            for (DocIndex.Hit hit : index.search(question.keywords(), 3)) {
+                System.out.printf("  %.2f  [%s] %s%n", hit.score(), hit.chunk().source(), hit.chunk().section());
+            }
+        }
+    }
+
+    // What the old per-document tools returned: the whole file on every call
+    private static Supplier<Map<String, ?>> fullDocument(String fileName) throws IOException {
+        String content = Files.readString(Path.of(System.getProperty("agents.knowledge.dir", "knowledge"), fileName), UTF_8);
+        return () -> Map.of("content", content);
+    }
+
+    private static void report(String question, String tool, Supplier<? extends Map<String, ?>> call) {
+        // Warm up so the JIT has compiled the tool before timing it
+        for (int i = 0; i < ITERATIONS; i++) {
+            call.get();
+        }
+
+        long start = System.nanoTime();
+        Map<String, ?> result = null;
+        for (int i = 0; i < ITERATIONS; i++) {
+            result = call.get();
+        }
+        double micros = (System.nanoTime() - start) / 1_000.0 / ITERATIONS;
+
+        int bytes = String.valueOf(result).getBytes(UTF_8).length;
+        System.out.printf("%-30s %-12s %12d %14.2f%n", question, tool, bytes, micros);
+    }
+}
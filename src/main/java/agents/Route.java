@@ -0,0 +1,10 @@
+package agents;
+
+/**
+ * Where a user message is sent. COORDINATOR means the LLM coordinator decides.
+ */
+public enum Route {
+    TECHNICAL,
+    BILLING,
+    COORDINATOR
+}
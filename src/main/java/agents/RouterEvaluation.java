@@ -0,0 +1,48 @@
+package agents;
+
+import java.util.List;
+
+/**
+ * Replays the scripted conversations in routing/evaluation.tsv through the fast-path router and
+ * reports routing accuracy and the number of coordinator model calls it saves.
+ * Turns that fall back to the coordinator are assumed to be delegated correctly.
+ *
+ * Run with: mvn exec:java -Dexec.mainClass="agents.RouterEvaluation"
+ */
+public class RouterEvaluation {
+
+    public static void main(String[] args) {
+        FastPathRouter router = FastPathRouter.withDefaultExamples();
+        List<List<IntentClassifier.Example>> conversations =
+            IntentClassifier.loadConversations("/routing/evaluation.tsv");
+
+        int turns = 0;
+        int local = 0;
+        int correct = 0;
+        for (int c = 0; c < conversations.size(); c++) {
+            String sessionId = "eval-" + c;
+            for (IntentClassifier.Example turn : conversations.get(c)) {
+                turns++;
+                Route route = router.route(sessionId, turn.text());
+                if (route == Route.COORDINATOR) {
+                    router.recordCoordinatorChoice(sessionId, turn.label());
+                    continue;
+                }
+                local++;
+                if (route == turn.label()) {
+                    correct++;
+                } else {
+                    System.out.printf("misrouted to %s: %s%n", route, turn.text());
+                }
+            }
+            router.endSession(sessionId);
+        }
+
+        System.out.printf("Conversations:         %d%n", conversations.size());
+        System.out.printf("Turns:                 %d%n", turns);
+        System.out.printf("Routed locally:        %d (%.1f%%)%n", local, 100.0 * local / turns);
+        System.out.printf("Local accuracy:        %.1f%%%n", local == 0 ? 0 : 100.0 * correct / local);
+        System.out.printf("Coordinator calls:     %d instead of %d%n", turns - local, turns);
+        System.out.printf("Router stats:          %s%n", router.stats());
+    }
+}
@@ -0,0 +1,83 @@
+package agents;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.adk.models.BaseLlm;
+import com.google.adk.models.BaseLlmConnection;
+import com.google.adk.models.LlmRequest;
+import com.google.adk.models.LlmResponse;
+
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Single;
+
+/**
+ * Sends each generateContent call through a {@link ModelScheduler} lane before it reaches the model.
+ * A call the provider rejects with 429 before anything was streamed is queued again, up to
+ * {@link #MAX_THROTTLED_RETRIES} times; the scheduler holds it until the rate limit recovers.
+ */
+public class ScheduledLlm extends BaseLlm {
+
+    static final int MAX_THROTTLED_RETRIES = 2;
+
+    private final BaseLlm delegate;
+    private final ModelScheduler scheduler;
+    private final ModelScheduler.Lane lane;
+
+    public ScheduledLlm(BaseLlm delegate, ModelScheduler scheduler, ModelScheduler.Lane lane) {
+        super(delegate.model());
+        this.delegate = delegate;
+        this.scheduler = scheduler;
+        this.lane = lane;
+    }
+
+    @Override
+    public Flowable<LlmResponse> generateContent(LlmRequest llmRequest, boolean stream) {
+        return Flowable.defer(() -> {
+            AtomicBoolean responded = new AtomicBoolean();
+            return Flowable.defer(() -> admitted().flatMapPublisher(call -> run(call, llmRequest, stream, responded)))
+                .retry((attempts, error) -> attempts <= MAX_THROTTLED_RETRIES && !responded.get() && ModelScheduler.isThrottled(error));
+        });
+    }
+
+    @Override
+    public BaseLlmConnection connect(LlmRequest llmRequest) {
+        return delegate.connect(llmRequest);
+    }
+
+    private Single<ModelScheduler.Call> admitted() {
+        return Single.create(emitter -> {
+            AtomicBoolean delivered = new AtomicBoolean();
+            ModelScheduler.Call call = scheduler.submit(model(), lane, admitted -> {
+                delivered.set(true);
+                // Starts the call, unless the caller went away before the grant arrived; then nobody will
+                emitter.onSuccess(admitted);
+                admitted.cancel();
+            }, emitter::tryOnError);
+            // The grant can be delivered before this runs, and must not be withdrawn while it is being started
+            emitter.setCancellable(() -> {
+                if (!delivered.get()) {
+                    call.cancel();
+                }
+            });
+        });
+    }
+
+    private Flowable<LlmResponse> run(ModelScheduler.Call call, LlmRequest llmRequest, boolean stream, AtomicBoolean responded) {
+        if (!call.start()) {
+            return Flowable.error(new ModelScheduler.OverloadedException("Model call was cancelled before it started."));
+        }
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        return delegate.generateContent(llmRequest, stream)
+            .doOnNext(response -> {
+                if (responded.compareAndSet(false, true)) {
+                    call.firstResponse();
+                }
+            })
+            .doOnError(failure::set)
+            // Frees the slot before the last signal goes downstream, so a retry or the next call never waits on it
+            .doOnTerminate(() -> call.finish(failure.get()))
+            // A caller that stops listening says nothing about the model, so the slot is freed without an outcome
+            .doOnCancel(call::abandon);
+    }
+}
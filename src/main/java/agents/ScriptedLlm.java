@@ -0,0 +1,256 @@
+package agents;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import com.google.adk.models.BaseLlm;
+import com.google.adk.models.BaseLlmConnection;
+import com.google.adk.models.LlmRequest;
+import com.google.adk.models.LlmResponse;
+import com.google.genai.types.Content;
+import com.google.genai.types.FunctionCall;
+import com.google.genai.types.FunctionResponse;
+import com.google.genai.types.Part;
+
+import io.reactivex.rxjava3.core.Flowable;
+
+/**
+ * Local, deterministic model that replays scripted responses instead of calling an API.
+ * Each request is matched against the rules in order and the first matching rule produces
+ * either text or a function call. Latency is simulated with non-blocking timers, so thousands
+ * of concurrent sessions can run against it without extra threads.
+ */
+public class ScriptedLlm extends BaseLlm {
+
+    /** What the model answers: plain text or a single function call. */
+    public record Reply(String text, String functionName, Map<String, Object> args) {
+
+        public static Reply text(String text) {
+            return new Reply(text, null, Map.of());
+        }
+
+        public static Reply call(String functionName, Map<String, Object> args) {
+            return new Reply(null, functionName, args);
+        }
+
+        public boolean isFunctionCall() {
+            return functionName != null;
+        }
+    }
+
+    private record Rule(Predicate<LlmRequest> when, Function<LlmRequest, Reply> reply) {}
+
+    private final List<Rule> rules;
+    private final Reply fallback;
+    private final Duration firstTokenDelay;
+    private final Duration tokenDelay;
+    private final LongAdder calls = new LongAdder();
+
+    private ScriptedLlm(Builder builder) {
+        super(builder.name);
+        this.rules = List.copyOf(builder.rules);
+        this.fallback = builder.fallback;
+        this.firstTokenDelay = builder.firstTokenDelay;
+        this.tokenDelay = builder.tokenDelay;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Flowable<LlmResponse> generateContent(LlmRequest llmRequest, boolean stream) {
+        return Flowable.defer(() -> {
+            calls.increment();
+            Reply reply = fallback;
+            for (Rule rule : rules) {
+                if (rule.when().test(llmRequest)) {
+                    reply = rule.reply().apply(llmRequest);
+                    break;
+                }
+            }
+            return respond(reply, stream);
+        });
+    }
+
+    @Override
+    public BaseLlmConnection connect(LlmRequest llmRequest) {
+        throw new UnsupportedOperationException("Live connections are not supported by the scripted model.");
+    }
+
+    /**
+     * Number of generateContent calls served so far.
+     */
+    public long calls() {
+        return calls.sum();
+    }
+
+    private Flowable<LlmResponse> respond(Reply reply, boolean stream) {
+        if (reply.isFunctionCall()) {
+            FunctionCall call = FunctionCall.builder().name(reply.functionName()).args(reply.args()).build();
+            Content content = Content.builder().role("model").parts(List.of(Part.builder().functionCall(call).build())).build();
+            return delayed(LlmResponse.builder().content(content).build(), firstTokenDelay.toNanos());
+        }
+
+        List<String> tokens = tokens(reply.text());
+        LlmResponse complete = textResponse(reply.text(), false);
+        if (!stream) {
+            return delayed(complete, firstTokenDelay.toNanos() + tokenDelay.toNanos() * (tokens.size() - 1));
+        }
+
+        // Streaming: one partial response per token, then the aggregated response like the real API
+        List<Flowable<LlmResponse>> chunks = new ArrayList<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            long delay = i == 0 ? firstTokenDelay.toNanos() : tokenDelay.toNanos();
+            chunks.add(delayed(textResponse(tokens.get(i), true), delay));
+        }
+        chunks.add(Flowable.just(complete));
+        return Flowable.concat(chunks);
+    }
+
+    private static LlmResponse textResponse(String text, boolean partial) {
+        Content content = Content.builder().role("model").parts(List.of(Part.fromText(text))).build();
+        return LlmResponse.builder().content(content).partial(partial).build();
+    }
+
+    private static Flowable<LlmResponse> delayed(LlmResponse response, long nanos) {
+        Flowable<LlmResponse> just = Flowable.just(response);
+        return nanos <= 0 ? just : just.delay(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    // Splits text into word-sized tokens, keeping the whitespace with the preceding word
+    static List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        int start = 0;
+        for (int i = 1; i <= text.length(); i++) {
+            if (i == text.length() || (Character.isWhitespace(text.charAt(i - 1)) && !Character.isWhitespace(text.charAt(i)))) {
+                tokens.add(text.substring(start, i));
+                start = i;
+            }
+        }
+        if (tokens.isEmpty()) {
+            tokens.add("");
+        }
+        return tokens;
+    }
+
+    // ---- Helpers for writing rules ----
+
+    /**
+     * Text of the most recent message typed by the user. ADK also sends other agents' turns with
+     * the user role ("For context: ..."), so those are skipped.
+     */
+    public static String lastUserText(LlmRequest request) {
+        List<String> texts = userTexts(request);
+        return texts.isEmpty() ? "" : texts.get(texts.size() - 1);
+    }
+
+    /**
+     * Every message typed by the user so far, oldest first.
+     */
+    public static List<String> userTexts(LlmRequest request) {
+        List<String> texts = new ArrayList<>();
+        for (Content content : request.contents()) {
+            if (!"user".equals(content.role().orElse(""))) {
+                continue;
+            }
+            for (Part part : content.parts().orElse(List.of())) {
+                String text = part.text().orElse("");
+                if (!text.isBlank() && !text.startsWith("For context:")) {
+                    texts.add(text);
+                }
+            }
+        }
+        return texts;
+    }
+
+    /**
+     * The function response in the latest content, if the request is the follow-up to a tool call.
+     */
+    public static Optional<FunctionResponse> lastFunctionResponse(LlmRequest request) {
+        List<Content> contents = request.contents();
+        if (contents.isEmpty()) {
+            return Optional.empty();
+        }
+        for (Part part : contents.get(contents.size() - 1).parts().orElse(List.of())) {
+            if (part.functionResponse().isPresent()) {
+                return part.functionResponse();
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * The system instruction text, which ADK prefixes with the agent's internal name.
+     */
+    public static String systemInstruction(LlmRequest request) {
+        StringBuilder text = new StringBuilder();
+        request.config()
+            .flatMap(config -> config.systemInstruction())
+            .flatMap(Content::parts)
+            .ifPresent(parts -> parts.forEach(part -> part.text().ifPresent(text::append)));
+        return text.toString();
+    }
+
+    public static Predicate<LlmRequest> forAgent(String agentName) {
+        // ADK introduces the agent as: Your internal name is <name>.
+        return request -> systemInstruction(request).contains("Your internal name is " + agentName + ".");
+    }
+
+    public static Predicate<LlmRequest> afterTool(String toolName) {
+        return request -> lastFunctionResponse(request).flatMap(FunctionResponse::name).filter(toolName::equals).isPresent();
+    }
+
+    public static Predicate<LlmRequest> userSays(String regex) {
+        Pattern pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
+        return request -> lastFunctionResponse(request).isEmpty() && pattern.matcher(lastUserText(request)).find();
+    }
+
+    public static class Builder {
+        private String name = "scripted";
+        private final List<Rule> rules = new ArrayList<>();
+        private Reply fallback = Reply.text("I'm sorry, I can't help with that.");
+        private Duration firstTokenDelay = Duration.ZERO;
+        private Duration tokenDelay = Duration.ZERO;
+
+        public Builder name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        public Builder when(Predicate<LlmRequest> condition, Reply reply) {
+            return when(condition, request -> reply);
+        }
+
+        public Builder when(Predicate<LlmRequest> condition, Function<LlmRequest, Reply> reply) {
+            rules.add(new Rule(condition, reply));
+            return this;
+        }
+
+        public Builder fallback(Reply fallback) {
+            this.fallback = fallback;
+            return this;
+        }
+
+        /**
+         * Simulated time to the first token and between subsequent tokens.
+         */
+        public Builder latency(Duration firstToken, Duration perToken) {
+            this.firstTokenDelay = firstToken;
+            this.tokenDelay = perToken;
+            return this;
+        }
+
+        public ScriptedLlm build() {
+            return new ScriptedLlm(this);
+        }
+    }
+}
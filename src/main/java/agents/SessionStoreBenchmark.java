@@ -0,0 +1,184 @@
+package agents;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import com.google.adk.events.Event;
+import com.google.adk.sessions.BaseSessionService;
+import com.google.adk.sessions.InMemorySessionService;
+import com.google.adk.sessions.Session;
+import com.google.genai.types.Content;
+import com.google.genai.types.Part;
+
+/**
+ * Compares PersistentSessionService with InMemorySessionService on a synthetic billing conversation:
+ * estimated prompt tokens per turn over 50 turns, heap per idle session, and the latency of resuming
+ * a session that is only on disk. Session logs are written to a temporary directory that is deleted afterwards.
+ *
+ * Run with: mvn exec:java -Dexec.mainClass="agents.SessionStoreBenchmark" -Dexec.args="--sessions 2000 --turns 50"
+ */
+public class SessionStoreBenchmark {
+
+    private static final String APP = "benchmark";
+    private static final String USER = "1234";
+
+    public static void main(String[] args) throws IOException {
+        int sessions = 2000;
+        int turns = 50;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--sessions" -> sessions = Integer.parseInt(args[i + 1]);
+                case "--turns" -> turns = Integer.parseInt(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        Path directory = Files.createTempDirectory("sessions-bench");
+        try {
+            promptTokens(directory.resolve("prompt"), turns);
+            memoryAndResume(directory.resolve("resume"), sessions, turns);
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    private static void promptTokens(Path directory, int turns) {
+        long[] inMemory = conversation(new InMemorySessionService(), turns);
+        long[] persistent;
+        try (PersistentSessionService service = persistent(directory)) {
+            persistent = conversation(service, turns);
+        }
+
+        System.out.printf("%-6s %18s %18s%n", "turn", "in-memory tokens", "compacted tokens");
+        for (int turn = 0; turn < turns; turn++) {
+            if (turn == 0 || (turn + 1) % 10 == 0) {
+                System.out.printf("%-6d %,18d %,18d%n", turn + 1, inMemory[turn], persistent[turn]);
+            }
+        }
+        System.out.printf("%-6s %,18d %,18d%n", "total", Arrays.stream(inMemory).sum(), Arrays.stream(persistent).sum());
+    }
+
+    private static void memoryAndResume(Path directory, int sessions, int turns) {
+        long heapBefore = usedHeap();
+        InMemorySessionService inMemory = new InMemorySessionService();
+        for (int i = 0; i < sessions; i++) {
+            fill(inMemory, "s" + i, turns);
+        }
+        long inMemoryHeap = usedHeap() - heapBefore;
+        inMemory = null;
+
+        heapBefore = usedHeap();
+        PersistentSessionService persistent = persistent(directory);
+        for (int i = 0; i < sessions; i++) {
+            fill(persistent, "s" + i, turns);
+        }
+        persistent.evictAll();
+        long persistentHeap = usedHeap() - heapBefore;
+
+        System.out.println();
+        System.out.printf("Heap per idle session:  in-memory %,d bytes, persistent %,d bytes%n",
+            inMemoryHeap / sessions, Math.max(0, persistentHeap) / sessions);
+
+        long[] cold = new long[sessions];
+        long[] warm = new long[sessions];
+        for (int i = 0; i < sessions; i++) {
+            long start = System.nanoTime();
+            persistent.getSession(APP, USER, "s" + i, Optional.empty()).blockingGet();
+            cold[i] = System.nanoTime() - start;
+            start = System.nanoTime();
+            persistent.getSession(APP, USER, "s" + i, Optional.empty()).blockingGet();
+            warm[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(cold);
+        Arrays.sort(warm);
+        System.out.printf("Resume from disk:       p50 %.2f ms, p99 %.2f ms%n", cold[sessions / 2] / 1e6, cold[(int) (sessions * 0.99)] / 1e6);
+        System.out.printf("Resume from memory:     p50 %.3f ms, p99 %.3f ms%n", warm[sessions / 2] / 1e6, warm[(int) (sessions * 0.99)] / 1e6);
+        System.out.println("Session store stats:    " + persistent.stats());
+        persistent.close();
+    }
+
+    private static PersistentSessionService persistent(Path directory) {
+        return new PersistentSessionService(directory, 100_000, Duration.ofHours(1), PersistentSessionService.Compaction.DEFAULT);
+    }
+
+    // Runs the conversation and returns the estimated prompt tokens the model would see at the start of each turn
+    private static long[] conversation(BaseSessionService service, int turns) {
+        String sessionId = UUID.randomUUID().toString();
+        service.createSession(APP, USER, null, sessionId).blockingGet();
+        long[] tokens = new long[turns];
+        for (int turn = 0; turn < turns; turn++) {
+            Session session = service.getSession(APP, USER, sessionId, Optional.empty()).blockingGet();
+            long chars = 0;
+            for (Event event : session.events()) {
+                chars += event.content().map(InstrumentedLlm::chars).orElse(0L);
+            }
+            tokens[turn] = Telemetry.estimateTokens(chars + userMessage(turn).length());
+            appendTurn(service, session, turn);
+        }
+        return tokens;
+    }
+
+    private static void fill(BaseSessionService service, String sessionId, int turns) {
+        service.createSession(APP, USER, null, sessionId).blockingGet();
+        for (int turn = 0; turn < turns; turn++) {
+            appendTurn(service, service.getSession(APP, USER, sessionId, Optional.empty()).blockingGet(), turn);
+        }
+    }
+
+    // A user message, a billing history lookup on every fifth turn, and the agent's answer
+    private static void appendTurn(BaseSessionService service, Session session, int turn) {
+        String invocationId = UUID.randomUUID().toString();
+        service.appendEvent(session, event(invocationId, "user", Part.fromText(userMessage(turn)))).blockingGet();
+        if (turn % 5 == 0) {
+            service.appendEvent(session, event(invocationId, BillingSpecialist.AGENT_NAME,
+                Part.fromFunctionCall("billingHistory", Map.of("userId", "1001-A")))).blockingGet();
+            service.appendEvent(session, event(invocationId, BillingSpecialist.AGENT_NAME,
+                Part.fromFunctionResponse("billingHistory", BillingHistory.billingHistory("1001-A", "", "", "", "")))).blockingGet();
+        }
+        service.appendEvent(session, event(invocationId, BillingSpecialist.AGENT_NAME, Part.fromText(
+            "You were billed $49.99 on 2025-10-27 for the Pro subscription renewal, which is the regular monthly charge for your plan. "
+          + "The payment of $15.50 on 2025-10-20 was for additional API usage above the included quota. "
+          + "Your outstanding balance is $0.00. Is there anything else I can help you with regarding turn " + turn + "?"
+        ))).blockingGet();
+    }
+
+    private static String userMessage(int turn) {
+        return "My ID is 1001-A. Can you explain the charge I asked about in message " + turn + " and whether it will repeat next month?";
+    }
+
+    private static Event event(String invocationId, String author, Part part) {
+        String role = "user".equals(author) ? "user" : "model";
+        return Event.builder()
+            .id(UUID.randomUUID().toString())
+            .invocationId(invocationId)
+            .author(author)
+            .content(Content.builder().role(role).parts(List.of(part)).build())
+            .timestamp(System.currentTimeMillis())
+            .build();
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -5,6 +5,7 @@ import java.util.Scanner;
 
 import com.google.adk.agents.BaseAgent;
 import com.google.adk.agents.LlmAgent;
+import com.google.adk.models.BaseLlm;
 import com.google.adk.events.Event;
 import com.google.adk.runner.InMemoryRunner;
 import com.google.adk.sessions.Session;
@@ -16,13 +17,34 @@ import io.reactivex.rxjava3.core.Flowable;
 
 public class SimpleAgent {
 
-    public static final BaseAgent ROOT_AGENT = initAgent();
+    public static final String AGENT_NAME = "agent-app";
+
+    /**
+     * The shared agent built with the configured model, see {@link AgentRegistry}.
+     */
+    public static BaseAgent rootAgent() {
+        return AgentRegistry.agent(AgentRegistry.SIMPLE);
+    }
+
+    /** ROOT_AGENT for the ADK dev UI, see {@link AgentTeam.Root}. */
+    public static final class Root {
+        public static final BaseAgent ROOT_AGENT = rootAgent();
+
+        private Root() {
+        }
+    }
 
     public static BaseAgent initAgent() {
+        return initAgent(Models.configured());
+    }
+
+    public static BaseAgent initAgent(BaseLlm model) {
         return LlmAgent.builder()
-            .name("agent-app")
+            .name(AGENT_NAME)
             .description("Multipurpose agent")
-            .model("gemini-2.5-flash")
+            .model(Resilience.shared().model(
+                ModelScheduler.shared().schedule(
+                    ContextBudget.shared().model(Telemetry.model(model, AGENT_NAME), "simple"), ModelScheduler.Lane.CHAT)))
             .instruction("""
                 You are a multipurpose agent
                 """)
@@ -30,13 +52,14 @@ public class SimpleAgent {
     }
 
     public static void main(String[] args) {
-        InMemoryRunner runner = new InMemoryRunner(ROOT_AGENT);
+        InMemoryRunner runner = new InMemoryRunner(rootAgent());
 
         Session session = runner
                 .sessionService()
                 .createSession(runner.appName(), "student")
                 .blockingGet();
 
+        EventPrinter printer = new EventPrinter(System.out);
         try (Scanner scanner = new Scanner(System.in, UTF_8)) {
             while (true) {
                 System.out.print("\nYou > ");
@@ -47,13 +70,13 @@ public class SimpleAgent {
 
                 Content userMsg = Content.fromParts(Part.fromText(userInput));
                 Flowable<Event> events =
-                    runner.runAsync(session.userId(), session.id(), userMsg);
+                    runner.runAsync(session.userId(), session.id(), userMsg, AgentRuntime.defaultRunConfig());
 
                 System.out.print("\nAgent > ");
-                events.blockingForEach(event -> {
-                    System.out.println(event.stringifyContent());
-                });
+                printer.printTurn(events);
             }
         }
+
+        System.out.println(printer.summary());
     }
 }
\ No newline at end of file
@@ -0,0 +1,389 @@
+package agents;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Symbols, markers and cross references of the Python files under a source directory, so tools can return the
+ * method or lines a question is about instead of whole files (see {@link SourceNavigator}).
+ *
+ * Each file is outlined by {@link PythonOutline}. The outlines are saved to an index file, so a restart loads them
+ * instead of parsing every file again; {@link #refresh()} then only walks the directory and parses the files whose
+ * size or modification time changed. The tools refresh at most once per -Dagents.source.refreshMs
+ * (default 2000). Like {@link KnowledgeBase}, a refresh builds a new {@link Snapshot} and swaps it in, so queries
+ * never wait for one.
+ */
+public class SourceIndex {
+
+    public enum Kind { CLASS, METHOD, FUNCTION, CONSTANT }
+
+    /** A definition; lines are numbered from 1 and endLine is the last line of its body. */
+    public record Symbol(String name, String qualifiedName, Kind kind, String container, int line, int endLine,
+                         String signature, String doc) {}
+
+    /** A TODO, FIXME, WARNING or similar note in a comment or docstring. */
+    public record Marker(String tag, int line, String text) {}
+
+    /** The outline of one file, with the size and modification time it was made from. */
+    public record FileEntry(String path, long size, long modified, List<Symbol> symbols, List<Marker> markers,
+                            Map<String, int[]> references) {
+
+        /** The innermost symbol whose lines contain the line, or null. */
+        public Symbol enclosing(int line) {
+            Symbol found = null;
+            for (Symbol symbol : symbols) {
+                if (symbol.line() > line) {
+                    break;
+                }
+                if (symbol.kind() != Kind.CONSTANT && line <= symbol.endLine()) {
+                    found = symbol;
+                }
+            }
+            return found;
+        }
+    }
+
+    /** A symbol and the file it is defined in. */
+    public record Definition(FileEntry file, Symbol symbol) {}
+
+    /** One version of the index. */
+    public record Snapshot(Map<String, FileEntry> files, Map<String, List<Definition>> byName, long symbols) {
+
+        static Snapshot of(Map<String, FileEntry> files) {
+            Map<String, List<Definition>> byName = new HashMap<>();
+            long symbols = 0;
+            for (FileEntry file : files.values()) {
+                for (Symbol symbol : file.symbols()) {
+                    byName.computeIfAbsent(symbol.name(), name -> new ArrayList<>()).add(new Definition(file, symbol));
+                    if (!symbol.qualifiedName().equals(symbol.name())) {
+                        byName.computeIfAbsent(symbol.qualifiedName(), name -> new ArrayList<>()).add(new Definition(file, symbol));
+                    }
+                    symbols++;
+                }
+            }
+            return new Snapshot(files, byName, symbols);
+        }
+
+        /** Definitions with the name or qualified name, e.g. "_encrypt" or "NebulaSyncClient._encrypt". */
+        public List<Definition> definitions(String name) {
+            return byName.getOrDefault(name, List.of());
+        }
+    }
+
+    static final int MAGIC = 0x53524358; // "SRCX"
+    static final int VERSION = 1;
+
+    // Larger files are generated or vendored code, not worth outlining
+    private static final long MAX_FILE_BYTES = 2 * 1024 * 1024;
+
+    private final Path root;
+    private final Path indexFile;
+    private final long refreshNanos;
+    private volatile Snapshot current = Snapshot.of(Map.of());
+    private volatile long refreshedNanos;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private final LongAdder parsed = new LongAdder();
+    private final LongAdder loaded = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+
+    public SourceIndex(Path root, Path indexFile, long refreshMillis) {
+        this.root = root.toAbsolutePath().normalize();
+        this.indexFile = indexFile;
+        this.refreshNanos = refreshMillis * 1_000_000;
+    }
+
+    /**
+     * Index of the directory, with its outlines kept under -Dagents.source.indexDir (default target/source-index),
+     * loaded from there and brought up to date with the directory. Problems with the saved index are reported
+     * and the files are parsed again.
+     */
+    public static SourceIndex open(Path root) {
+        Path directory = Path.of(System.getProperty("agents.source.indexDir", "target/source-index"));
+        String name = sha256Hex(root.toAbsolutePath().normalize().toString()).substring(0, 16) + ".idx";
+        return open(root, directory.resolve(name), Long.getLong("agents.source.refreshMs", 2000));
+    }
+
+    static SourceIndex open(Path root, Path indexFile, long refreshMillis) {
+        SourceIndex index = new SourceIndex(root, indexFile, refreshMillis);
+        index.load();
+        index.refresh();
+        return index;
+    }
+
+    public Path root() {
+        return root;
+    }
+
+    public Snapshot snapshot() {
+        return current;
+    }
+
+    /**
+     * The current snapshot, refreshed first if the last refresh is older than the refresh interval. While one
+     * caller refreshes, others get the snapshot as it is.
+     */
+    public Snapshot fresh() {
+        if (System.nanoTime() - refreshedNanos >= refreshNanos && refreshing.compareAndSet(false, true)) {
+            try {
+                refresh();
+            } finally {
+                refreshing.set(false);
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Parses files that are new or changed since the last refresh, drops deleted ones, and saves the index if
+     * anything changed. Unreadable files are left out and reported.
+     */
+    public synchronized void refresh() {
+        refreshes.increment();
+        Map<String, FileEntry> previous = current.files();
+        Map<String, FileEntry> files = new TreeMap<>();
+        boolean[] changed = {false};
+        if (Files.isDirectory(root)) {
+            try {
+                Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+                        String name = directory.getFileName() == null ? "" : directory.getFileName().toString();
+                        boolean skip = !directory.equals(root)
+                            && (name.startsWith(".") || name.equals("__pycache__") || name.equals("node_modules") || name.equals("venv"));
+                        return skip ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                        if (!attributes.isRegularFile() || !file.getFileName().toString().endsWith(".py")
+                            || attributes.size() > MAX_FILE_BYTES) {
+                            return FileVisitResult.CONTINUE;
+                        }
+                        String path = root.relativize(file).toString().replace('\\', '/');
+                        long modified = attributes.lastModifiedTime().toMillis();
+                        FileEntry entry = previous.get(path);
+                        if (entry == null || entry.size() != attributes.size() || entry.modified() != modified) {
+                            entry = parse(file, path, attributes.size(), modified);
+                            changed[0] = true;
+                        }
+                        if (entry != null) {
+                            files.put(path, entry);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        System.err.println("Cannot read " + file + ": " + e.getMessage());
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                System.err.println("Source index refresh failed, keeping the previous index: " + e);
+                refreshedNanos = System.nanoTime();
+                return;
+            }
+        }
+        if (changed[0] || files.size() != previous.size()) {
+            current = Snapshot.of(files);
+            save();
+        }
+        refreshedNanos = System.nanoTime();
+    }
+
+    /**
+     * The lines of a file of the index, numbered from 1 (index 0 is line 1).
+     */
+    public List<String> lines(String path) throws IOException {
+        return lines(root.resolve(path));
+    }
+
+    public Map<String, Object> stats() {
+        Snapshot snapshot = current;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("files", snapshot.files().size());
+        stats.put("symbols", snapshot.symbols());
+        stats.put("loadedFromIndex", loaded.sum());
+        stats.put("parsed", parsed.sum());
+        stats.put("refreshes", refreshes.sum());
+        return stats;
+    }
+
+    private FileEntry parse(Path file, String path, long size, long modified) {
+        try {
+            parsed.increment();
+            return PythonOutline.outline(path, size, modified, lines(file));
+        } catch (IOException e) {
+            System.err.println("Cannot read " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Malformed UTF-8 is replaced rather than failing the file
+    private static List<String> lines(Path file) throws IOException {
+        String text = new String(Files.readAllBytes(file), UTF_8);
+        List<String> lines = new ArrayList<>(Arrays.asList(text.split("\r?\n", -1)));
+        if (!lines.isEmpty() && lines.get(lines.size() - 1).isEmpty()) {
+            lines.remove(lines.size() - 1);
+        }
+        return lines;
+    }
+
+    private void load() {
+        if (!Files.exists(indexFile)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(root.toString())) {
+                System.err.println("Ignoring source index " + indexFile + ": written by another version or for another directory");
+                return;
+            }
+            int fileCount = in.readInt();
+            Map<String, FileEntry> files = new TreeMap<>();
+            for (int f = 0; f < fileCount; f++) {
+                FileEntry entry = readEntry(in);
+                files.put(entry.path(), entry);
+            }
+            current = Snapshot.of(files);
+            loaded.add(fileCount);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring unreadable source index " + indexFile + ": " + e);
+        }
+    }
+
+    // Written next to the final file and renamed over it, so a crash never leaves a half written index
+    private void save() {
+        Path temp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(indexFile.toAbsolutePath().getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(root.toString());
+                Map<String, FileEntry> files = current.files();
+                out.writeInt(files.size());
+                for (FileEntry entry : files.values()) {
+                    writeEntry(out, entry);
+                }
+            }
+            try {
+                Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot save source index " + indexFile + ": " + e);
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // Nothing more to do
+            }
+        }
+    }
+
+    private static void writeEntry(DataOutputStream out, FileEntry entry) throws IOException {
+        out.writeUTF(entry.path());
+        out.writeLong(entry.size());
+        out.writeLong(entry.modified());
+        out.writeInt(entry.symbols().size());
+        for (Symbol symbol : entry.symbols()) {
+            out.writeUTF(symbol.name());
+            out.writeUTF(symbol.qualifiedName());
+            out.writeByte(symbol.kind().ordinal());
+            out.writeUTF(symbol.container());
+            out.writeInt(symbol.line());
+            out.writeInt(symbol.endLine());
+            writeText(out, symbol.signature());
+            writeText(out, symbol.doc());
+        }
+        out.writeInt(entry.markers().size());
+        for (Marker marker : entry.markers()) {
+            out.writeUTF(marker.tag());
+            out.writeInt(marker.line());
+            writeText(out, marker.text());
+        }
+        out.writeInt(entry.references().size());
+        for (Map.Entry<String, int[]> reference : entry.references().entrySet()) {
+            out.writeUTF(reference.getKey());
+            int[] lines = reference.getValue();
+            out.writeInt(lines.length);
+            for (int line : lines) {
+                out.writeInt(line);
+            }
+        }
+    }
+
+    private static FileEntry readEntry(DataInputStream in) throws IOException {
+        String path = in.readUTF();
+        long size = in.readLong();
+        long modified = in.readLong();
+        int symbolCount = in.readInt();
+        List<Symbol> symbols = new ArrayList<>(symbolCount);
+        for (int s = 0; s < symbolCount; s++) {
+            symbols.add(new Symbol(in.readUTF(), in.readUTF(), Kind.values()[in.readByte()], in.readUTF(),
+                in.readInt(), in.readInt(), readText(in), readText(in)));
+        }
+        int markerCount = in.readInt();
+        List<Marker> markers = new ArrayList<>(markerCount);
+        for (int m = 0; m < markerCount; m++) {
+            markers.add(new Marker(in.readUTF(), in.readInt(), readText(in)));
+        }
+        int referenceCount = in.readInt();
+        Map<String, int[]> references = new TreeMap<>();
+        for (int r = 0; r < referenceCount; r++) {
+            String name = in.readUTF();
+            int[] lines = new int[in.readInt()];
+            for (int l = 0; l < lines.length; l++) {
+                lines[l] = in.readInt();
+            }
+            references.put(name, lines);
+        }
+        return new FileEntry(path, size, modified, symbols, markers, references);
+    }
+
+    // writeUTF is limited to 64 KB, which a long signature or marker could exceed
+    private static void writeText(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readText(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static String sha256Hex(String text) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(text.getBytes(UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package agents;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import com.google.adk.tools.Annotations.Schema;
+
+/**
+ * Tools that look up the client source in a {@link SourceIndex} and return only the lines asked about: a definition
+ * and where it is used, the methods of a class, or the lines matching a pattern, each with line numbers.
+ *
+ * The index covers -Dagents.source.dir (default the knowledge directory, -Dagents.knowledge.dir), or the knowledge
+ * directory of the session's tenant (see {@link Tenants}).
+ */
+public class SourceNavigator {
+
+    private static final int MAX_DEFINITIONS = 5;
+    private static final int MAX_DEFINITION_LINES = 60;
+    private static final int MAX_REFERENCES = 20;
+    private static final int MAX_MATCHES = 20;
+    private static final int MAX_CONTEXT_LINES = 5;
+    private static final int MAX_CLASSES = 50;
+    private static final int MAX_SUGGESTIONS = 10;
+
+    // Opened on first use: loads the saved index and parses what changed since
+    private static class Default {
+        static final SourceIndex INSTANCE = SourceIndex.open(Path.of(
+            System.getProperty("agents.source.dir", System.getProperty("agents.knowledge.dir", "knowledge"))));
+    }
+
+    static SourceIndex defaultIndex() {
+        return Default.INSTANCE;
+    }
+
+    /**
+     * The index the tools read: the current tenant's, see {@link Tenants#current()}, or the deployment's.
+     */
+    static SourceIndex index() {
+        return Tenants.current().map(Tenants.shared()::sourceIndex).orElseGet(SourceNavigator::defaultIndex);
+    }
+
+    @Schema(description = "Finds where a class, method, function or constant of the client source is defined and returns its code "
+                          + "with line numbers, the TODO/WARNING notes inside it and the lines that use it.")
+    public static Map<String, Object> findSymbol(
+        @Schema(name = "name", description = "The symbol name, e.g. '_encrypt', 'NebulaSyncClient' or 'NebulaSyncClient.upload_file'.")
+        String name) {
+
+        SourceIndex index = index();
+        SourceIndex.Snapshot snapshot = index.fresh();
+        String query = name == null ? "" : name.strip();
+        List<SourceIndex.Definition> definitions = snapshot.definitions(query);
+        if (definitions.isEmpty()) {
+            return notFound("No symbol named '" + query + "'.", snapshot, query);
+        }
+
+        Map<String, List<String>> files = new HashMap<>();
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (SourceIndex.Definition definition : definitions.subList(0, Math.min(definitions.size(), MAX_DEFINITIONS))) {
+            SourceIndex.Symbol symbol = definition.symbol();
+            String path = definition.file().path();
+            Map<String, Object> result = describe(path, symbol);
+            List<String> lines = lines(index, path, files);
+            int last = Math.min(symbol.endLine(), symbol.line() + MAX_DEFINITION_LINES - 1);
+            result.put("code", numbered(lines, symbol.line(), last));
+            if (last < symbol.endLine()) {
+                result.put("moreLines", symbol.endLine() - last);
+            }
+            List<Map<String, Object>> markers = markers(definition.file(), symbol.line(), symbol.endLine());
+            if (!markers.isEmpty()) {
+                result.put("notes", markers);
+            }
+            results.add(result);
+        }
+
+        // Uses of the simple name anywhere except on the definition lines themselves
+        String simpleName = definitions.get(0).symbol().name();
+        List<Map<String, Object>> references = new ArrayList<>();
+        int total = 0;
+        for (SourceIndex.FileEntry file : snapshot.files().values()) {
+            int[] referenceLines = file.references().get(simpleName);
+            if (referenceLines == null) {
+                continue;
+            }
+            for (int line : referenceLines) {
+                total++;
+                if (references.size() < MAX_REFERENCES) {
+                    List<String> lines = lines(index, file.path(), files);
+                    Map<String, Object> reference = new LinkedHashMap<>();
+                    reference.put("file", file.path());
+                    reference.put("line", line);
+                    SourceIndex.Symbol enclosing = file.enclosing(line);
+                    if (enclosing != null) {
+                        reference.put("in", enclosing.qualifiedName());
+                    }
+                    reference.put("text", line <= lines.size() ? lines.get(line - 1).strip() : "");
+                    references.add(reference);
+                }
+            }
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("definitions", results);
+        response.put("references", references);
+        if (total > references.size()) {
+            response.put("message", "Showing " + references.size() + " of " + total + " references.");
+        }
+        return response;
+    }
+
+    @Schema(description = "Lists the methods of a class of the client source with their signatures, line numbers and docstrings, "
+                          + "and the TODO/WARNING notes in the class. With an empty class name, lists the classes.")
+    public static Map<String, Object> listMethods(
+        @Schema(name = "className", description = "The class name, e.g. 'NebulaSyncClient', or an empty string to list all classes.")
+        String className) {
+
+        SourceIndex.Snapshot snapshot = index().fresh();
+        String query = className == null ? "" : className.strip();
+        Map<String, Object> response = new LinkedHashMap<>();
+        if (query.isEmpty()) {
+            List<Map<String, Object>> classes = new ArrayList<>();
+            int total = 0;
+            for (SourceIndex.FileEntry file : snapshot.files().values()) {
+                for (SourceIndex.Symbol symbol : file.symbols()) {
+                    if (symbol.kind() == SourceIndex.Kind.CLASS && total++ < MAX_CLASSES) {
+                        Map<String, Object> result = describe(file.path(), symbol);
+                        result.put("methods", methods(file, symbol).size());
+                        classes.add(result);
+                    }
+                }
+            }
+            response.put("classes", classes);
+            if (total > classes.size()) {
+                response.put("message", "Showing " + classes.size() + " of " + total + " classes; ask for one by name.");
+            }
+            return response;
+        }
+
+        List<Map<String, Object>> classes = new ArrayList<>();
+        for (SourceIndex.Definition definition : snapshot.definitions(query)) {
+            SourceIndex.Symbol symbol = definition.symbol();
+            if (symbol.kind() != SourceIndex.Kind.CLASS || classes.size() >= MAX_DEFINITIONS) {
+                continue;
+            }
+            Map<String, Object> result = describe(definition.file().path(), symbol);
+            List<Map<String, Object>> methods = new ArrayList<>();
+            for (SourceIndex.Symbol method : methods(definition.file(), symbol)) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("name", method.name());
+                entry.put("line", method.line());
+                entry.put("signature", method.signature());
+                if (!method.doc().isEmpty()) {
+                    entry.put("doc", method.doc());
+                }
+                methods.add(entry);
+            }
+            result.put("methods", methods);
+            List<Map<String, Object>> markers = markers(definition.file(), symbol.line(), symbol.endLine());
+            if (!markers.isEmpty()) {
+                result.put("notes", markers);
+            }
+            classes.add(result);
+        }
+        if (classes.isEmpty()) {
+            return notFound("No class named '" + query + "'.", snapshot, query);
+        }
+        response.put("classes", classes);
+        return response;
+    }
+
+    @Schema(description = "Searches the client source for lines matching a regular expression (case-insensitive) and returns each "
+                          + "match with surrounding lines, line numbers and the method it is in. Useful for TODO, WARNING or a "
+                          + "string such as an endpoint path.")
+    public static Map<String, Object> grepSource(
+        @Schema(name = "pattern", description = "A regular expression or plain text, e.g. 'TODO|WARNING' or '/files/'.")
+        String pattern,
+
+        @Schema(name = "contextLines", description = "Lines to show before and after each match, 0 to " + MAX_CONTEXT_LINES + ". Use 2 unless more is needed.")
+        int contextLines) {
+
+        String query = pattern == null ? "" : pattern;
+        if (query.isBlank()) {
+            return Map.of("matches", List.of(), "message", "The pattern is empty.");
+        }
+        Pattern regex;
+        try {
+            regex = Pattern.compile(query, Pattern.CASE_INSENSITIVE);
+        } catch (PatternSyntaxException e) {
+            regex = Pattern.compile(Pattern.quote(query), Pattern.CASE_INSENSITIVE);
+        }
+        int context = Math.max(0, Math.min(contextLines, MAX_CONTEXT_LINES));
+
+        SourceIndex index = index();
+        List<Map<String, Object>> matches = new ArrayList<>();
+        boolean more = false;
+        for (SourceIndex.FileEntry file : index.fresh().files().values()) {
+            List<String> lines = lines(index, file.path(), new HashMap<>());
+            for (int i = 0; i < lines.size() && !more; i++) {
+                if (!regex.matcher(lines.get(i)).find()) {
+                    continue;
+                }
+                if (matches.size() == MAX_MATCHES) {
+                    more = true;
+                    break;
+                }
+                int line = i + 1;
+                Map<String, Object> match = new LinkedHashMap<>();
+                match.put("file", file.path());
+                match.put("line", line);
+                SourceIndex.Symbol enclosing = file.enclosing(line);
+                if (enclosing != null) {
+                    match.put("in", enclosing.qualifiedName());
+                }
+                match.put("snippet", numbered(lines, Math.max(1, line - context), Math.min(lines.size(), line + context)));
+                matches.add(match);
+            }
+            if (more) {
+                break;
+            }
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("matches", matches);
+        if (more) {
+            response.put("message", "Only the first " + MAX_MATCHES + " matches are shown; use a more specific pattern.");
+        } else if (matches.isEmpty()) {
+            response.put("message", "No line of the source matched.");
+        }
+        return response;
+    }
+
+    private static Map<String, Object> describe(String path, SourceIndex.Symbol symbol) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("file", path);
+        result.put("kind", symbol.kind().name().toLowerCase(Locale.ROOT));
+        result.put("name", symbol.qualifiedName());
+        result.put("line", symbol.line());
+        result.put("endLine", symbol.endLine());
+        result.put("signature", symbol.signature());
+        if (!symbol.doc().isEmpty()) {
+            result.put("doc", symbol.doc());
+        }
+        return result;
+    }
+
+    private static List<SourceIndex.Symbol> methods(SourceIndex.FileEntry file, SourceIndex.Symbol owner) {
+        List<SourceIndex.Symbol> methods = new ArrayList<>();
+        for (SourceIndex.Symbol symbol : file.symbols()) {
+            if (symbol.kind() == SourceIndex.Kind.METHOD && symbol.container().equals(owner.qualifiedName())) {
+                methods.add(symbol);
+            }
+        }
+        return methods;
+    }
+
+    private static List<Map<String, Object>> markers(SourceIndex.FileEntry file, int from, int to) {
+        List<Map<String, Object>> markers = new ArrayList<>();
+        for (SourceIndex.Marker marker : file.markers()) {
+            // A note in the comment block just above a definition belongs to it
+            if (marker.line() >= from - 3 && marker.line() <= to) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("tag", marker.tag());
+                entry.put("line", marker.line());
+                entry.put("text", marker.text());
+                markers.add(entry);
+            }
+        }
+        return markers;
+    }
+
+    private static Map<String, Object> notFound(String message, SourceIndex.Snapshot snapshot, String query) {
+        String needle = query.toLowerCase(Locale.ROOT);
+        TreeSet<String> similar = new TreeSet<>();
+        if (!needle.isEmpty()) {
+            for (String name : snapshot.byName().keySet()) {
+                String candidate = name.toLowerCase(Locale.ROOT);
+                if (candidate.contains(needle) || candidate.length() >= 3 && needle.contains(candidate)) {
+                    similar.add(name);
+                }
+            }
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("message", similar.isEmpty() ? message + " Try grepSource." : message + " Similar names are listed.");
+        response.put("similar", similar.stream().limit(MAX_SUGGESTIONS).toList());
+        return response;
+    }
+
+    private static List<String> lines(SourceIndex index, String path, Map<String, List<String>> cache) {
+        return cache.computeIfAbsent(path, p -> {
+            try {
+                return index.lines(p);
+            } catch (IOException e) {
+                System.err.println("Cannot read " + p + ": " + e.getMessage());
+                return List.of();
+            }
+        });
+    }
+
+    private static String numbered(List<String> lines, int from, int to) {
+        StringBuilder text = new StringBuilder();
+        for (int line = from; line <= to && line <= lines.size(); line++) {
+            text.append(line).append(": ").append(lines.get(line - 1)).append('\n');
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,55 @@
+package agents;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One timed unit of work: a user turn, an agent hop, a model call, a tool invocation or the wait
+ * for admission to a model (see {@link ModelScheduler}).
+ * Fields that do not apply to a kind of span are -1. Token counts are estimated from the
+ * request and response text (about four characters per token).
+ */
+public record Span(
+    Kind kind,
+    String name,
+    long startMillis,
+    long durationNanos,
+    long firstTokenNanos,
+    long promptTokens,
+    long responseTokens,
+    long bytes,
+    boolean error
+) {
+
+    public enum Kind {
+        TURN, AGENT, MODEL, TOOL, QUEUE;
+
+        String label() {
+            return name().toLowerCase();
+        }
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("ts", startMillis);
+        map.put("kind", kind.label());
+        map.put("name", name);
+        map.put("durationMs", durationNanos / 1e6);
+        if (firstTokenNanos >= 0) {
+            map.put("firstTokenMs", firstTokenNanos / 1e6);
+        }
+        if (promptTokens >= 0) {
+            map.put("promptTokens", promptTokens);
+        }
+        if (responseTokens >= 0) {
+            map.put("responseTokens", responseTokens);
+        }
+        if (bytes >= 0) {
+            map.put("bytes", bytes);
+        }
+        if (error) {
+            map.put("error", true);
+        }
+        return map;
+    }
+}
@@ -0,0 +1,156 @@
+package agents;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.adk.runner.InMemoryRunner;
+
+/**
+ * Checks that reply text reaches an HTTP client while the model is still generating.
+ *
+ * Starts an {@link AgentServer} in this JVM with the simple agent on a scripted model that emits
+ * one token every --token-ms after --first-token-ms, sends messages with and without streaming, and
+ * reports the time to the first byte of the response, to the first reply text and to the end of the
+ * reply. Exits with status 1 if the p99 time to first text with streaming exceeds --bound-ms
+ * (by default the model's first-token delay plus 200 ms).
+ *
+ * Run with: mvn exec:java -Dagents.model=stub -Dexec.mainClass="agents.StreamingBenchmark" -Dexec.args="--first-token-ms 300 --token-ms 20"
+ *           (the benchmark's agent has its own model; agents.model=stub only keeps the default agents off Gemini)
+ */
+public class StreamingBenchmark {
+
+    private static final Pattern SESSION_ID = Pattern.compile("\"sessionId\":\\s*\"([^\"]+)\"");
+    private static final Pattern NON_EMPTY_TEXT = Pattern.compile("\"text\":\\s*\"[^\"]");
+
+    static final String REPLY =
+        "Nebula Sync keeps a local block cache and verifies every block against its hash before it is written. "
+      + "If verification fails the block is fetched again from another node, and after three failures the file "
+      + "is marked as corrupted in the dashboard. Check that all nodes run version 2.4 or newer and that the "
+      + "cache directory is on a healthy disk.";
+
+    public static void main(String[] args) throws Exception {
+        long firstTokenMs = 300;
+        long tokenMs = 20;
+        int requests = 20;
+        long boundMs = -1;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--first-token-ms" -> firstTokenMs = Long.parseLong(args[i + 1]);
+                case "--token-ms" -> tokenMs = Long.parseLong(args[i + 1]);
+                case "--requests" -> requests = Integer.parseInt(args[i + 1]);
+                case "--bound-ms" -> boundMs = Long.parseLong(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (boundMs < 0) {
+            boundMs = firstTokenMs + 200;
+        }
+
+        ScriptedLlm model = ScriptedLlm.builder()
+            .fallback(ScriptedLlm.Reply.text(REPLY))
+            .latency(Duration.ofMillis(firstTokenMs), Duration.ofMillis(tokenMs))
+            .build();
+        AgentServer server = new AgentServer(0, 4, Map.of(
+            "simple", AgentRuntime.of(new InMemoryRunner(SimpleAgent.initAgent(model)))));
+        server.start();
+
+        double streamingFirstTextP99;
+        try {
+            HttpClient client = HttpClient.newHttpClient();
+            String baseUrl = "http://localhost:" + server.port() + "/simple";
+            System.out.printf("Model: first token after %d ms, then one token every %d ms (%d tokens)%n%n",
+                firstTokenMs, tokenMs, ScriptedLlm.tokens(REPLY).size());
+            System.out.printf("%-10s %16s %16s %16s %16s%n", "stream", "first byte p50", "first text p50", "first text p99", "complete p50");
+
+            streamingFirstTextP99 = 0;
+            for (boolean stream : new boolean[] {false, true}) {
+                List<Long> firstByte = new ArrayList<>();
+                List<Long> firstText = new ArrayList<>();
+                List<Long> complete = new ArrayList<>();
+                for (int i = 0; i < requests; i++) {
+                    long[] timings = exchange(client, baseUrl, stream);
+                    firstByte.add(timings[0]);
+                    firstText.add(timings[1]);
+                    complete.add(timings[2]);
+                }
+                System.out.printf("%-10s %13.0f ms %13.0f ms %13.0f ms %13.0f ms%n", stream ? "on" : "off",
+                    percentile(firstByte, 0.5), percentile(firstText, 0.5), percentile(firstText, 0.99), percentile(complete, 0.5));
+                if (stream) {
+                    streamingFirstTextP99 = percentile(firstText, 0.99);
+                }
+            }
+        } finally {
+            server.stop();
+        }
+
+        boolean passed = streamingFirstTextP99 <= boundMs;
+        System.out.printf("%nFirst text with streaming p99 %.0f ms, bound %d ms: %s%n", streamingFirstTextP99, boundMs, passed ? "PASS" : "FAIL");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    // Nanoseconds from sending the message to the first response byte, the first reply text and the end of the stream
+    static long[] exchange(HttpClient client, String baseUrl, boolean stream) throws Exception {
+        HttpResponse<String> created = client.send(
+            HttpRequest.newBuilder(URI.create(baseUrl + "/sessions")).POST(HttpRequest.BodyPublishers.noBody()).build(),
+            HttpResponse.BodyHandlers.ofString());
+        Matcher matcher = SESSION_ID.matcher(created.body());
+        if (created.statusCode() != 201 || !matcher.find()) {
+            throw new IllegalStateException("Session was not created: " + created.statusCode());
+        }
+        String sessionUrl = baseUrl + "/sessions/" + matcher.group(1);
+
+        long sent = System.nanoTime();
+        long firstByte = -1;
+        long firstText = -1;
+        HttpResponse<InputStream> response = client.send(
+            HttpRequest.newBuilder(URI.create(sessionUrl + "/messages?stream=" + stream))
+                .POST(HttpRequest.BodyPublishers.ofString("Why are my files corrupted?", UTF_8))
+                .build(),
+            HttpResponse.BodyHandlers.ofInputStream());
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(response.body(), UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                long now = System.nanoTime();
+                if (firstByte < 0) {
+                    firstByte = now - sent;
+                }
+                if (firstText < 0 && line.startsWith("data:") && NON_EMPTY_TEXT.matcher(line).find()) {
+                    firstText = now - sent;
+                }
+                if (line.startsWith("event: error")) {
+                    throw new IllegalStateException("Server reported an error: " + reader.readLine());
+                }
+            }
+        }
+        long done = System.nanoTime() - sent;
+
+        client.send(HttpRequest.newBuilder(URI.create(sessionUrl)).DELETE().build(), HttpResponse.BodyHandlers.discarding());
+        if (firstText < 0) {
+            throw new IllegalStateException("The reply contained no text");
+        }
+        return new long[] {firstByte, firstText, done};
+    }
+
+    private static double percentile(List<Long> values, double p) {
+        List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        int index = (int) Math.ceil(p * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1))) / 1e6;
+    }
+}
@@ -0,0 +1,134 @@
+package agents;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.adk.agents.BaseAgent;
+import com.google.adk.agents.RunConfig;
+import com.google.adk.artifacts.BaseArtifactService;
+import com.google.adk.events.Event;
+import com.google.adk.runner.Runner;
+import com.google.adk.sessions.BaseSessionService;
+import com.google.genai.types.Content;
+import com.google.genai.types.Part;
+
+import io.reactivex.rxjava3.core.Flowable;
+
+/**
+ * Runs the agent team with the fast-path router in front of the coordinator.
+ * One runner per route shares the app name and services, so every route sees the same session.
+ * A single instance is safe to share between concurrent sessions.
+ */
+public class TeamRunner implements AgentRuntime {
+
+    private final String appName;
+    private final BaseSessionService sessionService;
+    private final Map<Route, Runner> runners = new EnumMap<>(Route.class);
+    private final Map<String, Route> authors = new HashMap<>();
+    private final FastPathRouter router;
+    private final AnswerCache answerCache;
+    private final String technicalAuthor;
+
+    public TeamRunner(
+        String appName,
+        BaseAgent coordinator,
+        BaseAgent technicalAgent,
+        BaseAgent billingAgent,
+        BaseArtifactService artifactService,
+        BaseSessionService sessionService,
+        FastPathRouter router,
+        AnswerCache answerCache) {
+
+        this.appName = appName;
+        this.sessionService = sessionService;
+        this.router = router;
+        this.answerCache = answerCache;
+        this.technicalAuthor = technicalAgent.name();
+        runners.put(Route.COORDINATOR, new Runner(coordinator, appName, artifactService, sessionService));
+        runners.put(Route.TECHNICAL, new Runner(technicalAgent, appName, artifactService, sessionService));
+        runners.put(Route.BILLING, new Runner(billingAgent, appName, artifactService, sessionService));
+        authors.put(technicalAgent.name(), Route.TECHNICAL);
+        authors.put(billingAgent.name(), Route.BILLING);
+    }
+
+    @Override
+    public String appName() {
+        return appName;
+    }
+
+    @Override
+    public BaseSessionService sessionService() {
+        return sessionService;
+    }
+
+    public FastPathRouter router() {
+        return router;
+    }
+
+    public AnswerCache answerCache() {
+        return answerCache;
+    }
+
+    @Override
+    public Flowable<Event> runAsync(String userId, String sessionId, Content newMessage, RunConfig runConfig) {
+        FastPathRouter.Decision decision = router.decide(sessionId, textOf(newMessage));
+        Route route = decision.route();
+        Runner runner = runners.get(route);
+
+        // Only standalone questions can be answered from the cache, follow-ups depend on earlier turns
+        if (route == Route.TECHNICAL && decision.confident()) {
+            return CachedAnswers.serve(answerCache, sessionService, appName, userId, sessionId, newMessage, technicalAuthor,
+                () -> runner.runAsync(userId, sessionId, newMessage, runConfig));
+        }
+
+        Flowable<Event> events = runner.runAsync(userId, sessionId, newMessage, runConfig);
+        if (route != Route.COORDINATOR) {
+            return events;
+        }
+
+        // Remember which specialist the coordinator delegated to, so follow-ups skip it
+        Route[] delegated = {Route.COORDINATOR};
+        return events
+            .doOnNext(event -> {
+                if (delegated[0] == Route.COORDINATOR) {
+                    delegated[0] = authors.getOrDefault(event.author(), Route.COORDINATOR);
+                }
+            })
+            .doOnComplete(() -> router.recordCoordinatorChoice(sessionId, delegated[0]));
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("routing", router.stats());
+        stats.put("answerCache", answerCache.stats());
+        if (sessionService instanceof PersistentSessionService persistent) {
+            stats.put("sessions", persistent.stats());
+        }
+        stats.put("modelScheduler", ModelScheduler.shared().stats());
+        stats.put("tickets", TicketOpener.stats());
+        stats.put("payments", PaymentMethod.stats());
+        if (ContextBudget.shared().enabled()) {
+            stats.put("contextBudget", ContextBudget.shared().stats());
+        }
+        PrefixCache.shared().ifPresent(cache -> stats.put("prefixCache", cache.stats()));
+        return stats;
+    }
+
+    @Override
+    public void closeSession(String userId, String sessionId) {
+        AgentRuntime.super.closeSession(userId, sessionId);
+        router.endSession(sessionId);
+    }
+
+    static String textOf(Content content) {
+        StringBuilder text = new StringBuilder();
+        for (Part part : content.parts().orElse(List.of())) {
+            part.text().ifPresent(t -> text.append(t).append(' '));
+        }
+        return text.toString().trim();
+    }
+}
@@ -5,234 +5,175 @@ import java.util.Scanner;
 
 import com.google.adk.agents.BaseAgent;
 import com.google.adk.agents.LlmAgent;
+import com.google.adk.models.BaseLlm;
 import com.google.adk.events.Event;
 import com.google.adk.runner.Runner;
 import com.google.adk.sessions.Session;
 import com.google.genai.types.Content;
 import com.google.genai.types.Part;
 import com.google.adk.tools.Annotations.Schema;
-import com.google.adk.tools.FunctionTool;
 import com.google.adk.artifacts.InMemoryArtifactService;
-import com.google.adk.sessions.InMemorySessionService;
 
 import io.reactivex.rxjava3.core.Flowable;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 public class TechnicalSpecialist {
 
-    public static final BaseAgent ROOT_AGENT = initAgent();
+    private static final int MAX_RESULTS = 8;
+
+    public static final String AGENT_NAME = "Technical specialist";
+
+    /**
+     * The shared agent built with the configured model, see {@link AgentRegistry}.
+     */
+    public static BaseAgent rootAgent() {
+        return AgentRegistry.agent(AgentRegistry.TECHNICAL);
+    }
+
+    /** ROOT_AGENT for the ADK dev UI, see {@link AgentTeam.Root}. */
+    public static final class Root {
+        public static final BaseAgent ROOT_AGENT = rootAgent();
+
+        private Root() {
+        }
+    }
 
     public static BaseAgent initAgent() {
+        return initAgent(Models.configured());
+    }
+
+    /**
+     * Builds the agent; -Dagents.technical.prefetch=true turns on speculative documentation prefetch,
+     * unless tenants are configured: the prefetch does not know whose documentation to search.
+     */
+    public static BaseAgent initAgent(BaseLlm model) {
+        return initAgent(model, Boolean.getBoolean("agents.technical.prefetch") && !Tenants.shared().configured());
+    }
+
+    public static BaseAgent initAgent(BaseLlm model, boolean prefetch) {
+        // Pinned documents are added after the request is fitted, so the budget counts them; the prefetched
+        // search is added before, so it is fitted with the rest of the conversation
+        Supplier<List<Content>> pinned = PrefixCache.shared().isPresent() ? TechnicalSpecialist::pinnedDocuments : List::of;
+        BaseLlm budgeted = ContextBudget.shared().model(
+            PrefixCachingLlm.wrap(Telemetry.model(model, AGENT_NAME), TechnicalSpecialist::pinnedDocuments), "technical", pinned);
+        BaseLlm agentModel = new CallOrderLlm(prefetch ? new PrefetchingLlm(budgeted, PrefetchingLlm.DEFAULT_MIN_SCORE) : budgeted);
         return LlmAgent.builder()
-            .name("Technical specialist")
+            .name(AGENT_NAME)
             .description("Technical specialist")
-            .model("gemini-2.5-flash")
+            .model(Resilience.shared().model(ModelScheduler.shared().schedule(agentModel, ModelScheduler.Lane.TECHNICAL)))
             .instruction(
                 "You are a technical specialist tasked with supporting customers. "
               + "Your answers must be backed by factual information from documentation. "
-              + "If the user has a problem, check troubleshooting notes. "
-              + "If the user is asking for general tips, check integration tips. "
-              + "If the user is asking about some implementation detail, refer to source code. "
+              + "Search the documentation with the searchDocs tool before answering. "
+              + "Results come from troubleshooting notes, integration tips and source code, each tagged with its source and section. "
+              + "If the question touches several topics, call searchDocs once per topic in the same response; the searches run in parallel. "
+              + "If the results don't answer the question, search again with different keywords or ask for more results. "
+              + "For questions about the client code, look up only the part you need: findSymbol for a class, method or constant, "
+              + "listMethods for the methods of a class, and grepSource for other text such as TODO or WARNING notes. "
               + "If the provided tools don't cover the user's request, say so or ask for clarification. "
               + "You must not guess."
             )
             .tools(
-                FunctionTool.create(TechnicalSpecialist.class, "troubleshootingNotes"),
-                FunctionTool.create(TechnicalSpecialist.class, "integrationTips"),
-                FunctionTool.create(TechnicalSpecialist.class, "sourceCode")
+                Telemetry.tool(new ConcurrentTool(new TenantScopedTool(AgentRegistry.functionTool(TechnicalSpecialist.class, "searchDocs")))),
+                Telemetry.tool(new ConcurrentTool(new TenantScopedTool(AgentRegistry.functionTool(SourceNavigator.class, "findSymbol")))),
+                Telemetry.tool(new ConcurrentTool(new TenantScopedTool(AgentRegistry.functionTool(SourceNavigator.class, "listMethods")))),
+                Telemetry.tool(new ConcurrentTool(new TenantScopedTool(AgentRegistry.functionTool(SourceNavigator.class, "grepSource"))))
             )
             .build();
     }
 
-    @Schema(description = "Get the contents of troubleshooting notes")
-    public static Map<String, String> troubleshootingNotes() {
-        return Map.of(
-            "content",
-                "1. Service Fails to Start\n"
-              + "\n"
-              + "Symptoms:\n"
-              + "\n"
-              + "nebula-sync.service stays in an “activating” state\n"
-              + "Logs show: Fatal: Cannot bind to port\n"
-              + "\n"
-              + "Common causes and fixes:\n"
-              + "\n"
-              + "The default port (4799) may be in use. Run lsof -i :4799, stop the conflicting process, or change the port in config.toml.\n"
-              + "The encryption key file may be missing. The file keys/node.key must exist and its permissions should be set to 600.\n"
-              + "The configuration file may be corrupted. Run nebula-sync --validate-config to confirm and correct issues.\n"
-              + "\n"
-              + "2. Nodes Are Not Replicating Files\n"
-              + "\n"
-              + "Symptoms:\n"
-              + "Files never appear on the secondary node\n"
-              + "The primary reports a successful upload, but replicas do not update\n"
-              + "\n"
-              + "Possible causes and fixes:\n"
-              + "If device clocks differ by more than 30 seconds, replication is blocked. Sync time using ntpdate pool.ntp.org or enable ntpd/chrony.\n"
-              + "The peer node may be unreachable. Test connectivity with nebula-sync ping <node-id>.\n"
-              + "Metadata might be inconsistent. Clear it with nebula-sync --reset-meta.\n"
-              + "\n"
-              + "3. High CPU Usage\n"
-              + "\n"
-              + "Symptoms:\n"
-              + "Replication threads reach 90% or higher CPU usage\n"
-              + "Happens primarily during large batch synchronization\n"
-              + "\n"
-              + "Fixes:\n"
-              + "Set compression mode to “adaptive” in the config to reduce CPU load.\n"
-              + "Reduce concurrent replication workers by setting replication_workers=2.\n"
-              + "Ensure that hardware AES acceleration is available; check with dmesg | grep aes.\n"
-              + "\n"
-              + "4. Files Seem Corrupted After Sync\n"
-              + "\n"
-              + "Symptoms:\n"
-              + "Downloaded files fail checksum validation\n"
-              + "Logs show: Block verification failed\n"
-              + "\n"
-              + "Causes and fixes:\n"
-              + "A node may be running an older hashing scheme. All nodes must run version 2.4 or newer.\n"
-              + "The cache directory might be on a failing disk. Run fsck or change cache_dir to an SSD-backed path such as /mnt/storage_ssd.\n"
-              + "\n"
-              + "5. Web Dashboard Will Not Load\n"
-              + "\n"
-              + "Symptoms:\n"
-              + "Browser displays a blank page\n"
-              + "System logs do not show an obvious error\n"
-              + "\n"
-              + "Fixes:\n"
-              + "The dashboard may have been built without frontend assets. Rebuild with make build-ui or reinstall the package.\n"
-              + "Remote UI access may be blocked by CORS settings. In the configuration file, enable allow_remote_ui=true.\n"
-              + "\n"
-              + "6. Initial Sync Is Very Slow\n"
-              + "\n"
-              + "Checklist:\n"
-              + "Make sure delta transfers are enabled (--enable-delta-transfer=true).\n"
-              + "Use a wired network during the first full synchronization.\n"
-              + "Check disk I/O speed using iostat -xm 1. If the device is above 70% utilization, sync will slow significantly.\n"
-              + "\n"
-              + "7. Quick Diagnostic Commands\n"
-        );
+    // Loaded on first use and reloaded when the files change, see KnowledgeBase.fromSystemProperties()
+    private static class Knowledge {
+        static final KnowledgeBase INSTANCE = KnowledgeBase.fromSystemProperties();
     }
 
-    @Schema(description = "Get integration tips")
-    public static Map<String, String> integrationTips() {
-        return Map.of(
-            "content",
-                "The most reliable way to integrate NebulaSync is to use its local API rather than writing directly to the storage directory on disk. "
-              + "Even though the encrypted blocks are stored locally, direct file writes will not trigger block assignment, metadata updates, or replication, "
-              + "so all new content should be uploaded through the file-upload endpoint or the official CLI. Replication should be treated as eventually "
-              + "consistent rather than immediate. If another system depends on a file being present on all nodes, it should poll the replication status "
-              + "or wait for a callback.\n"
-              + "\n"
-              + "NebulaSync can send outbound webhooks when files are added or when replication completes. This is useful when downstream systems must wait "
-              + "until data is everywhere before processing it. Systems using NebulaSync should monitor free disk space carefully — the service can accept "
-              + "files even when nearly full, so alerts should trigger before storage becomes critically low.\n"
-              + "\n"
-              + "Large files update more efficiently with delta transfers enabled, reducing bandwidth and speeding up replication. Nodes may be grouped by "
-              + "labels such as region or role to restrict replication.\n"
-              + "\n"
-              + "Health checks should be integrated into orchestration. The service exposes a machine-readable status, and the orchestrator can restart the "
-              + "process if health checks fail. On low-power devices, the cache should remove cold data to prevent storage exhaustion.\n"
-              + "\n"
-              + "Encryption keys should not be stored in configuration files. Use environment variables or a secret-management tool. Before production deployment, "
-              + "simulate network failures, add files, reconnect nodes, and verify checksums to ensure replication behaves correctly under real-world conditions.\n"
-        );
+    /**
+     * The knowledge base searchDocs reads: the current tenant's, see {@link Tenants#current()}, or the deployment's.
+     */
+    static KnowledgeBase knowledgeBase() {
+        return Tenants.current().map(Tenants.shared()::knowledgeBase).orElseGet(TechnicalSpecialist::defaultKnowledgeBase);
     }
 
-    @Schema(description = "Get project source code")
-    public static Map<String, String> sourceCode() {
-        return Map.of(
-            "content",
-            "import requests\n"
-            + "import time\n"
-            + "\n"
-            + "# TODO: This token is currently hard-coded.\n"
-            + "# It should probably be loaded from a secure place,\n"
-            + "# but right now it's just sitting here in plaintext.\n"
-            + "API_TOKEN = \"SUPER_SECRET_TOKEN_123\"\n"
-            + "\n"
-            + "class NebulaSyncClient:\n"
-            + "    def __init__(self, base_url):\n"
-            + "        self.base_url = base_url.rstrip(\"/\")\n"
-            + "        self.headers = {\"Authorization\": f\"Bearer {API_TOKEN}\"}\n"
-            + "\n"
-            + "    def _encrypt(self, data: bytes) -> bytes:\n"
-            + "        # WARNING: This is not real encryption.\n"
-            + "        # It just reverses the bytes.\n"
-            + "        # It's only here as a placeholder until real crypto is added.\n"
-            + "        return data[::-1]\n"
-            + "\n"
-            + "    def upload_file(self, local_path):\n"
-            + "        try:\n"
-            + "            with open(local_path, \"rb\") as f:\n"
-            + "                raw = f.read()\n"
-            + "\n"
-            + "            encrypted = self._encrypt(raw)\n"
-            + "\n"
-            + "            r = requests.post(\n"
-            + "                f\"{self.base_url}/files\",\n"
-            + "                headers=self.headers,\n"
-            + "                files={\"file\": (local_path, encrypted)}\n"
-            + "            )\n"
-            + "            if r.status_code == 200:\n"
-            + "                print(\"File uploaded\")\n"
-            + "                return r.json().get(\"file_id\")\n"
-            + "            else:\n"
-            + "                print(\"Upload failed:\", r.text)\n"
-            + "                return None\n"
-            + "        except Exception as e:\n"
-            + "            print(\"Upload error:\", e)\n"
-            + "            return None\n"
-            + "\n"
-            + "    def wait_for_replication(self, file_id):\n"
-            + "        for _ in range(30):\n"
-            + "            r = requests.get(\n"
-            + "                f\"{self.base_url}/replication-status/{file_id}\",\n"
-            + "                headers=self.headers,\n"
-            + "            )\n"
-            + "            if r.status_code == 200:\n"
-            + "                status = r.json()\n"
-            + "                if status.get(\"complete\"):\n"
-            + "                    print(\"Replication complete\")\n"
-            + "                    return True\n"
-            + "            time.sleep(2)\n"
-            + "        print(\"Timed out waiting for replication\")\n"
-            + "        return False\n"
-            + "\n"
-            + "    def download_file(self, file_id, out_path):\n"
-            + "        r = requests.get(\n"
-            + "            f\"{self.base_url}/files/{file_id}\",\n"
-            + "            headers=self.headers,\n"
-            + "        )\n"
-            + "        if r.status_code == 200:\n"
-            + "            encrypted = r.content\n"
-            + "            # This assumes the server returns “encrypted” data,\n"
-            + "            # but what if it doesn’t?\n"
-            + "            decrypted = self._encrypt(encrypted)\n"
-            + "            with open(out_path, \"wb\") as f:\n"
-            + "                f.write(decrypted)\n"
-            + "            print(\"Saved:\", out_path)\n"
-            + "        else:\n"
-            + "            print(\"Download failed:\", r.text)\n"
-            + "\n"
-            + "\n"
-            + "if __name__ == \"__main__\":\n"
-            + "    client = NebulaSyncClient(\"http://localhost:4799\")\n"
-            + "\n"
-            + "    fid = client.upload_file(\"example.txt\")\n"
-            + "    if fid:\n"
-            + "        client.wait_for_replication(fid)\n"
-            + "        client.download_file(fid, \"example_synced.txt\")\n"
-        );
+    static KnowledgeBase defaultKnowledgeBase() {
+        return Knowledge.INSTANCE;
+    }
+
+    // Sections pinned into the prompt prefix, rebuilt when the knowledge base changes
+    private record Pinned(String version, List<Content> documents) {}
+
+    private static final int PINNED_CHARS = Integer.getInteger("agents.prefixCache.pinnedChars", 65536);
+    private static volatile Pinned pinned;
+
+    /**
+     * The documentation pinned into the prompt prefix when prefix caching is on: the knowledge base's sections
+     * in order, up to -Dagents.prefixCache.pinnedChars characters (default 65536). Nothing is pinned when
+     * several tenants share the agent, as the prefix would be the same for all of them.
+     */
+    static List<Content> pinnedDocuments() {
+        if (Tenants.shared().configured()) {
+            return List.of();
+        }
+        KnowledgeBase.Snapshot snapshot = defaultKnowledgeBase().snapshot();
+        Pinned current = pinned;
+        if (current == null || !current.version().equals(snapshot.version())) {
+            List<Part> parts = new ArrayList<>();
+            parts.add(Part.fromText("Nebula documentation (the same sections searchDocs returns):"));
+            long chars = 0;
+            for (int i = 0; i < snapshot.index().size(); i++) {
+                DocChunk chunk = snapshot.index().chunk(i);
+                String text = "[" + chunk.source() + " / " + chunk.section() + "]\n" + chunk.text();
+                chars += text.length();
+                if (chars > PINNED_CHARS) {
+                    break;
+                }
+                parts.add(Part.fromText(text));
+            }
+            current = new Pinned(snapshot.version(),
+                parts.size() == 1 ? List.of() : List.of(Content.fromParts(parts.toArray(Part[]::new))));
+            pinned = current;
+        }
+        return current.documents();
+    }
+
+    // Answers cached from other versions of the documents are discarded
+    public static String docsVersion() {
+        return defaultKnowledgeBase().version();
+    }
+
+    @Schema(description = "Searches troubleshooting notes, integration tips and source code and returns the most relevant sections, "
+                          + "each tagged with its source document and section name.")
+    public static Map<String, Object> searchDocs(
+        @Schema(name = "query", description = "Keywords describing the problem or topic, e.g. 'files corrupted block verification'.")
+        String query,
+
+        @Schema(name = "k", description = "How many sections to return. Use 3 unless the results were not sufficient.")
+        int k) {
+
+        int limit = Math.max(1, Math.min(k, MAX_RESULTS));
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (DocIndex.Hit hit : knowledgeBase().index().search(query == null ? "" : query, limit)) {
+            results.add(hit.chunk().toMap());
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("results", results);
+        if (results.isEmpty()) {
+            response.put("message", "No documentation matched the query.");
+        }
+        return response;
     }
 
     public static void main(String[] args) {
         Runner runner = new Runner(
-            ROOT_AGENT,
+            rootAgent(),
             "technical agent",
             new InMemoryArtifactService(),
-            new InMemorySessionService()
+            PersistentSessionService.fromSystemProperties()
         );
 
         Session session = runner
@@ -240,6 +181,7 @@ public class TechnicalSpecialist {
                 .createSession(runner.appName(), "user")
                 .blockingGet();
 
+        EventPrinter printer = new EventPrinter(System.out);
         try (Scanner scanner = new Scanner(System.in, UTF_8)) {
             while (true) {
                 System.out.print("\nYou > ");
@@ -250,15 +192,13 @@ public class TechnicalSpecialist {
 
                 Content userMsg = Content.fromParts(Part.fromText(userInput));
                 Flowable<Event> events =
-                    runner.runAsync(session.userId(), session.id(), userMsg);
+                    runner.runAsync(session.userId(), session.id(), userMsg, AgentRuntime.defaultRunConfig());
 
                 System.out.print("\nAgent > ");
-                events.blockingForEach(event -> {
-                    if (event.functionCalls().isEmpty() && event.functionResponses().isEmpty()) {
-                        System.out.println(event.stringifyContent());
-                    }
-                });
+                printer.printTurn(events);
             }
         }
+
+        System.out.println(printer.summary());
     }
 }
@@ -0,0 +1,84 @@
+package agents;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.google.adk.models.BaseLlm;
+import com.google.adk.tools.BaseTool;
+
+/**
+ * Entry point of the instrumentation layer.
+ *
+ * Start the JVM with -Dagents.telemetry=true to record spans for every user turn, agent hop,
+ * model call and tool invocation in the in-process {@link Metrics} registry, and additionally with
+ * -Dagents.trace=trace.jsonl to append every span to a JSONL trace file. When telemetry is off the
+ * wrap methods return their argument unchanged, so nothing is measured or allocated per call.
+ */
+public final class Telemetry {
+
+    private static final String TRACE_FILE = System.getProperty("agents.trace");
+    private static final boolean ENABLED = Boolean.getBoolean("agents.telemetry") || TRACE_FILE != null;
+    private static final Metrics METRICS = new Metrics();
+    private static final BufferedWriter TRACE = ENABLED && TRACE_FILE != null ? openTrace(Path.of(TRACE_FILE)) : null;
+
+    private Telemetry() {
+    }
+
+    public static boolean enabled() {
+        return ENABLED;
+    }
+
+    public static Metrics metrics() {
+        return METRICS;
+    }
+
+    /**
+     * Wraps the model an agent calls so each call is recorded under the agent's name.
+     */
+    public static BaseLlm model(BaseLlm model, String agentName) {
+        return ENABLED ? new InstrumentedLlm(model, agentName) : model;
+    }
+
+    public static BaseTool tool(BaseTool tool) {
+        return ENABLED ? new InstrumentedTool(tool) : tool;
+    }
+
+    public static AgentRuntime runtime(AgentRuntime runtime) {
+        return ENABLED ? new InstrumentedRuntime(runtime) : runtime;
+    }
+
+    static void record(Span span) {
+        METRICS.record(span);
+        if (TRACE != null) {
+            String line = Json.write(span.toMap());
+            synchronized (TRACE) {
+                try {
+                    TRACE.write(line);
+                    TRACE.newLine();
+                    TRACE.flush();
+                } catch (IOException e) {
+                    System.err.println("Trace write error: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Rough token estimate used for both prompts and responses
+    static long estimateTokens(long chars) {
+        return (chars + 3) / 4;
+    }
+
+    private static BufferedWriter openTrace(Path file) {
+        try {
+            return Files.newBufferedWriter(file, UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.println("Cannot open trace file " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package agents;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.adk.agents.RunConfig;
+import com.google.adk.events.Event;
+import com.google.adk.sessions.BaseSessionService;
+import com.google.adk.sessions.Session;
+import com.google.genai.types.Content;
+
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Single;
+
+/**
+ * Runs each turn on the shared runtime once the {@link TenantScheduler} admits it for the session's tenant.
+ * The tenant is read from the session's state when the session is first used (see {@link Tenants#sessionState})
+ * and remembered until the session is closed. A turn's token usage is estimated from the characters of the user
+ * message and of the complete events it produces, including function calls and responses.
+ */
+public class TenantRuntime implements AgentRuntime {
+
+    private final AgentRuntime delegate;
+    private final Tenants tenants;
+    private final TenantScheduler scheduler;
+    private final Map<String, Tenants.Tenant> sessionTenants = new ConcurrentHashMap<>();
+
+    public TenantRuntime(AgentRuntime delegate, Tenants tenants, TenantScheduler scheduler) {
+        this.delegate = delegate;
+        this.tenants = tenants;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Wraps the runtime with the shared tenants and scheduler when -Dagents.tenants is set, otherwise returns it unchanged.
+     */
+    public static AgentRuntime wrap(AgentRuntime runtime) {
+        Tenants tenants = Tenants.shared();
+        return tenants.configured() ? new TenantRuntime(runtime, tenants, TenantScheduler.shared()) : runtime;
+    }
+
+    /**
+     * Creates a session of the tenant on the runtime's session service.
+     */
+    public static Session createSession(AgentRuntime runtime, String tenantId, String userId) {
+        return runtime.sessionService()
+            .createSession(runtime.appName(), userId, Tenants.sessionState(tenantId), null)
+            .blockingGet();
+    }
+
+    @Override
+    public String appName() {
+        return delegate.appName();
+    }
+
+    @Override
+    public BaseSessionService sessionService() {
+        return delegate.sessionService();
+    }
+
+    @Override
+    public Flowable<Event> runAsync(String userId, String sessionId, Content newMessage, RunConfig runConfig) {
+        return Flowable.defer(() -> {
+            Tenants.Tenant tenant = tenantOf(userId, sessionId);
+            long promptChars = InstrumentedLlm.chars(newMessage);
+            return admitted(tenant).flatMapPublisher(turn -> run(turn, userId, sessionId, newMessage, runConfig, promptChars));
+        });
+    }
+
+    @Override
+    public void closeSession(String userId, String sessionId) {
+        delegate.closeSession(userId, sessionId);
+        sessionTenants.remove(sessionId);
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>(delegate.stats());
+        stats.put("tenants", scheduler.stats());
+        return stats;
+    }
+
+    private Tenants.Tenant tenantOf(String userId, String sessionId) {
+        Tenants.Tenant tenant = sessionTenants.get(sessionId);
+        if (tenant == null) {
+            Session session = sessionService().getSession(appName(), userId, sessionId, Optional.empty()).blockingGet();
+            if (session == null) {
+                throw new IllegalArgumentException("Unknown session: " + sessionId);
+            }
+            tenant = tenants.of(session);
+            sessionTenants.put(sessionId, tenant);
+        }
+        return tenant;
+    }
+
+    private Single<TenantScheduler.Turn> admitted(Tenants.Tenant tenant) {
+        return Single.create(emitter -> {
+            TenantScheduler.Turn turn = scheduler.submit(tenant, emitter::onSuccess, emitter::tryOnError);
+            // Runs after onSuccess too, when the turn is already running and cancel() has no effect
+            emitter.setCancellable(turn::cancel);
+        });
+    }
+
+    private Flowable<Event> run(TenantScheduler.Turn turn, String userId, String sessionId, Content newMessage,
+                                RunConfig runConfig, long promptChars) {
+        if (!turn.start()) {
+            return Flowable.error(new TenantScheduler.QuotaExceededException("Turn was cancelled before it started."));
+        }
+        long[] responseChars = {0};
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        return delegate.runAsync(userId, sessionId, newMessage, runConfig)
+            .doOnNext(event -> {
+                // A streamed reply ends with a complete event that repeats its partial events
+                if (!event.partial().orElse(false)) {
+                    responseChars[0] += event.content().map(InstrumentedLlm::chars).orElse(0L);
+                }
+            })
+            .doOnError(failure::set)
+            .doFinally(() -> turn.finish(Telemetry.estimateTokens(promptChars),
+                Telemetry.estimateTokens(responseChars[0]), failure.get()));
+    }
+}
@@ -0,0 +1,439 @@
+package agents;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Admits user turns so that the tenants of a deployment share it fairly, whatever their traffic.
+ *
+ * There is one limit on the turns running at once across all tenants, and per tenant ({@link Tenants.Tenant})
+ * a limit on its own running turns, a token bucket for its token usage, and a queue. When a slot is free,
+ * the next turn comes from the tenant that has had the fewest turns admitted relative to its weight among those
+ * under their own limits (start time fair queuing): a tenant sending a hundred turns a second waits behind its
+ * own backlog, not in front of a tenant sending one. A tenant that was idle rejoins at the current virtual
+ * time instead of being owed for the time it did not use the deployment.
+ *
+ * Token usage is known only when a turn has finished, so the bucket is charged then and may go negative; the
+ * tenant's next turn waits until it has refilled. A tenant's queue is bounded and turns that wait longer than the
+ * queue timeout are rejected, so a noisy tenant sheds its own turns with {@link QuotaExceededException}.
+ */
+public class TenantScheduler {
+
+    /**
+     * Limits across tenants.
+     *
+     * @param maxConcurrent turns running at once across all tenants; 0 means no limit
+     * @param maxQueuedPerTenant turns a tenant can have waiting before new ones are rejected
+     * @param queueTimeout longest time a turn waits for admission
+     * @param fair false admits in arrival order across tenants (per tenant limits still apply), for comparison
+     */
+    public record Limits(int maxConcurrent, int maxQueuedPerTenant, Duration queueTimeout, boolean fair) {
+        public static final Limits DEFAULT = new Limits(64, 100, Duration.ofSeconds(30), true);
+    }
+
+    /** Thrown to a caller whose turn was not admitted. */
+    public static class QuotaExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public QuotaExceededException(String message) {
+            super(message);
+        }
+    }
+
+    private enum State { QUEUED, GRANTED, RUNNING, DONE, CANCELLED }
+
+    private static final ScheduledThreadPoolExecutor TIMER = timer();
+    // Turns admitted after waiting start here, not on the thread that finished the previous turn
+    private static final ExecutorService DISPATCH = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "tenant-dispatch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static class Shared {
+        static final TenantScheduler INSTANCE = fromSystemProperties();
+    }
+
+    private final Limits limits;
+    private final Map<String, TenantQueue> queues = new ConcurrentHashMap<>();
+    private final Metrics metrics = new Metrics();
+
+    // Guarded by this
+    private final Set<TenantQueue> backlogged = new LinkedHashSet<>();
+    private int inFlight;
+    private double virtualTime;
+    private long arrivals;
+    private boolean wakeupScheduled;
+
+    public TenantScheduler(Limits limits) {
+        this.limits = limits;
+    }
+
+    /**
+     * The scheduler shared by every app of the process, so a tenant's limits hold across apps.
+     */
+    public static TenantScheduler shared() {
+        return Shared.INSTANCE;
+    }
+
+    /**
+     * Scheduler configured with -Dagents.tenants.maxConcurrent, .maxQueued and .queueTimeoutMs.
+     */
+    public static TenantScheduler fromSystemProperties() {
+        Limits d = Limits.DEFAULT;
+        return new TenantScheduler(new Limits(
+            Integer.getInteger("agents.tenants.maxConcurrent", d.maxConcurrent()),
+            Integer.getInteger("agents.tenants.maxQueued", d.maxQueuedPerTenant()),
+            Duration.ofMillis(Long.getLong("agents.tenants.queueTimeoutMs", d.queueTimeout().toMillis())),
+            true));
+    }
+
+    /**
+     * Queues a turn of the tenant. onStart runs once the turn is admitted, on the calling thread if it is admitted
+     * immediately; the caller must then {@link Turn#start()} it and eventually {@link Turn#finish} it.
+     * onReject runs if the tenant's queue is full or the turn times out.
+     */
+    public Turn submit(Tenants.Tenant tenant, Consumer<Turn> onStart, Consumer<Throwable> onReject) {
+        TenantQueue queue = queues.computeIfAbsent(tenant.id(), id -> new TenantQueue(tenant));
+        Turn turn = new Turn(queue, onStart, onReject);
+        boolean full;
+        synchronized (this) {
+            full = queue.waiting.size() >= limits.maxQueuedPerTenant();
+            if (!full) {
+                turn.arrival = arrivals++;
+                if (queue.waiting.isEmpty()) {
+                    // An idle tenant starts at the current virtual time, without credit for the time it was idle
+                    queue.virtualTime = Math.max(queue.virtualTime, virtualTime);
+                    backlogged.add(queue);
+                }
+                queue.waiting.addLast(turn);
+                if (!limits.queueTimeout().isZero()) {
+                    turn.timeout = TIMER.schedule(() -> expire(turn), limits.queueTimeout().toNanos(), TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+        if (full) {
+            turn.state = State.CANCELLED;
+            reject(turn, "too many turns waiting", queue.rejected);
+            return turn;
+        }
+        // Admit inline if there is capacity, so an idle deployment adds no thread hop
+        for (Turn admitted : admit()) {
+            if (admitted == turn) {
+                turn.onStart.accept(turn);
+            } else {
+                DISPATCH.execute(() -> admitted.onStart.accept(admitted));
+            }
+        }
+        return turn;
+    }
+
+    /**
+     * Per tenant: turns running and waiting, admissions, rejections, tokens used and left, and percentiles
+     * of turn and queue times.
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> metricsByKey = metrics.snapshot();
+        Map<String, Object> tenants = new TreeMap<>();
+        queues.forEach((id, queue) -> {
+            Map<String, Object> stats = queue.stats();
+            stats.put("turns", metricsByKey.getOrDefault(Span.Kind.TURN.label() + ":" + id, Map.of()));
+            stats.put("queueTimes", metricsByKey.getOrDefault(Span.Kind.QUEUE.label() + ":" + id, Map.of()));
+            tenants.put(id, stats);
+        });
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (this) {
+            stats.put("maxConcurrent", limits.maxConcurrent());
+            stats.put("inFlight", inFlight);
+        }
+        stats.put("tenants", tenants);
+        return stats;
+    }
+
+    /** One user turn, from queueing to completion. */
+    public final class Turn {
+        private final TenantQueue queue;
+        private final Consumer<Turn> onStart;
+        private final Consumer<Throwable> onReject;
+        private final long queuedMillis = System.currentTimeMillis();
+        private final long queuedNanos = System.nanoTime();
+        private long arrival;
+        private long startedMillis;
+        private long startedNanos;
+        private State state = State.QUEUED;
+        private ScheduledFuture<?> timeout;
+
+        private Turn(TenantQueue queue, Consumer<Turn> onStart, Consumer<Throwable> onReject) {
+            this.queue = queue;
+            this.onStart = onStart;
+            this.onReject = onReject;
+        }
+
+        public Tenants.Tenant tenant() {
+            return queue.tenant;
+        }
+
+        /**
+         * Claims an admitted turn for running; false if it was cancelled in the meantime.
+         */
+        public boolean start() {
+            synchronized (TenantScheduler.this) {
+                if (state != State.GRANTED) {
+                    return false;
+                }
+                state = State.RUNNING;
+                startedMillis = System.currentTimeMillis();
+                startedNanos = System.nanoTime();
+                return true;
+            }
+        }
+
+        /**
+         * Releases the turn's slots and charges the tokens it used; error is null for a successful turn.
+         */
+        public void finish(long promptTokens, long responseTokens, Throwable error) {
+            TenantScheduler.this.finish(this, promptTokens, responseTokens, error);
+        }
+
+        /**
+         * Withdraws a turn that is still queued or admitted but not started. Running turns are not affected.
+         */
+        public void cancel() {
+            TenantScheduler.this.cancel(this);
+        }
+    }
+
+    private final class TenantQueue {
+        final Tenants.Tenant tenant;
+        final ArrayDeque<Turn> waiting = new ArrayDeque<>();
+        int inFlight;
+        double virtualTime;
+        double tokens;
+        long refilledNanos = System.nanoTime();
+
+        final LongAdder admitted = new LongAdder();
+        final LongAdder completed = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder timedOut = new LongAdder();
+        final LongAdder tokensUsed = new LongAdder();
+
+        TenantQueue(Tenants.Tenant tenant) {
+            this.tenant = tenant;
+            this.tokens = tenant.tokensPerMinute();
+        }
+
+        // Whether the tenant's own limits let its next turn start; called with the scheduler's lock held
+        boolean canStart(long now) {
+            if (tenant.maxConcurrent() > 0 && inFlight >= tenant.maxConcurrent()) {
+                return false;
+            }
+            return tenant.tokensPerMinute() <= 0 || refill(now) > 0;
+        }
+
+        double refill(long now) {
+            tokens = Math.min(tenant.tokensPerMinute(), tokens + (now - refilledNanos) * tenant.tokensPerMinute() / 60e9);
+            refilledNanos = now;
+            return tokens;
+        }
+
+        Map<String, Object> stats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            synchronized (TenantScheduler.this) {
+                stats.put("inFlight", inFlight);
+                stats.put("queued", waiting.size());
+                if (tenant.tokensPerMinute() > 0) {
+                    stats.put("tokensAvailable", Math.round(refill(System.nanoTime())));
+                }
+            }
+            stats.put("admitted", admitted.sum());
+            stats.put("completed", completed.sum());
+            stats.put("failed", failed.sum());
+            stats.put("rejected", rejected.sum());
+            stats.put("timedOut", timedOut.sum());
+            stats.put("tokensUsed", tokensUsed.sum());
+            return stats;
+        }
+    }
+
+    // Takes turns off the tenants' queues while a slot is free, the tenant with the lowest virtual time first
+    private List<Turn> admit() {
+        List<Turn> admittedTurns = new ArrayList<>();
+        synchronized (this) {
+            long now = System.nanoTime();
+            while (!backlogged.isEmpty() && (limits.maxConcurrent() <= 0 || inFlight < limits.maxConcurrent())) {
+                TenantQueue next = null;
+                for (TenantQueue queue : backlogged) {
+                    if (queue.canStart(now) && (next == null || before(queue, next))) {
+                        next = queue;
+                    }
+                }
+                if (next == null) {
+                    scheduleRefillWakeup();
+                    break;
+                }
+                Turn turn = next.waiting.pollFirst();
+                if (next.waiting.isEmpty()) {
+                    backlogged.remove(next);
+                }
+                virtualTime = Math.max(virtualTime, next.virtualTime);
+                next.virtualTime += 1.0 / next.tenant.weight();
+                turn.state = State.GRANTED;
+                if (turn.timeout != null) {
+                    turn.timeout.cancel(false);
+                }
+                next.inFlight++;
+                inFlight++;
+                next.admitted.increment();
+                admittedTurns.add(turn);
+            }
+        }
+        for (Turn turn : admittedTurns) {
+            recordQueueTime(turn, false);
+        }
+        return admittedTurns;
+    }
+
+    private boolean before(TenantQueue a, TenantQueue b) {
+        if (limits.fair() && a.virtualTime != b.virtualTime) {
+            return a.virtualTime < b.virtualTime;
+        }
+        return a.waiting.peekFirst().arrival < b.waiting.peekFirst().arrival;
+    }
+
+    // Wakes up when the first tenant that is only held back by its token bucket has tokens again
+    private void scheduleRefillWakeup() {
+        if (wakeupScheduled) {
+            return;
+        }
+        long nanos = Long.MAX_VALUE;
+        for (TenantQueue queue : backlogged) {
+            Tenants.Tenant tenant = queue.tenant;
+            if (tenant.tokensPerMinute() > 0 && queue.tokens <= 0
+                && (tenant.maxConcurrent() <= 0 || queue.inFlight < tenant.maxConcurrent())) {
+                nanos = Math.min(nanos, Math.round(Math.ceil((1 - queue.tokens) * 60e9 / tenant.tokensPerMinute())));
+            }
+        }
+        if (nanos == Long.MAX_VALUE) {
+            // Every waiting tenant is at its concurrency limit: a finishing turn dispatches the next one
+            return;
+        }
+        wakeupScheduled = true;
+        TIMER.schedule(() -> {
+            synchronized (this) {
+                wakeupScheduled = false;
+            }
+            dispatchLater();
+        }, Math.max(1, nanos), TimeUnit.NANOSECONDS);
+    }
+
+    private void finish(Turn turn, long promptTokens, long responseTokens, Throwable error) {
+        TenantQueue queue = turn.queue;
+        long tokens = promptTokens + responseTokens;
+        synchronized (this) {
+            if (turn.state != State.RUNNING) {
+                return;
+            }
+            turn.state = State.DONE;
+            queue.inFlight--;
+            inFlight--;
+            if (queue.tenant.tokensPerMinute() > 0) {
+                queue.refill(System.nanoTime());
+                queue.tokens -= tokens;
+            }
+        }
+        queue.tokensUsed.add(tokens);
+        (error == null ? queue.completed : queue.failed).increment();
+        record(new Span(Span.Kind.TURN, queue.tenant.id(), turn.startedMillis, System.nanoTime() - turn.startedNanos,
+            -1, promptTokens, responseTokens, -1, error != null));
+        dispatchLater();
+    }
+
+    private void cancel(Turn turn) {
+        TenantQueue queue = turn.queue;
+        synchronized (this) {
+            if (turn.state == State.QUEUED) {
+                dequeue(turn);
+            } else if (turn.state == State.GRANTED) {
+                queue.inFlight--;
+                inFlight--;
+            } else {
+                return;
+            }
+            turn.state = State.CANCELLED;
+        }
+        dispatchLater();
+    }
+
+    private void expire(Turn turn) {
+        synchronized (this) {
+            if (turn.state != State.QUEUED) {
+                return;
+            }
+            dequeue(turn);
+            turn.state = State.CANCELLED;
+        }
+        reject(turn, "no capacity within " + limits.queueTimeout().toMillis() + " ms", turn.queue.timedOut);
+    }
+
+    // Called with the lock held
+    private void dequeue(Turn turn) {
+        turn.queue.waiting.remove(turn);
+        if (turn.queue.waiting.isEmpty()) {
+            backlogged.remove(turn.queue);
+        }
+        if (turn.timeout != null) {
+            turn.timeout.cancel(false);
+        }
+    }
+
+    private void reject(Turn turn, String reason, LongAdder counter) {
+        counter.increment();
+        recordQueueTime(turn, true);
+        turn.onReject.accept(new QuotaExceededException("Turn of tenant " + turn.queue.tenant.id() + " was rejected: " + reason + "."));
+    }
+
+    private void dispatchLater() {
+        for (Turn turn : admit()) {
+            DISPATCH.execute(() -> turn.onStart.accept(turn));
+        }
+    }
+
+    private void recordQueueTime(Turn turn, boolean rejectedTurn) {
+        record(new Span(Span.Kind.QUEUE, turn.queue.tenant.id(), turn.queuedMillis,
+            System.nanoTime() - turn.queuedNanos, -1, -1, -1, -1, rejectedTurn));
+    }
+
+    private void record(Span span) {
+        metrics.record(span);
+        if (Telemetry.enabled()) {
+            Telemetry.record(new Span(span.kind(), "tenant/" + span.name(), span.startMillis(), span.durationNanos(),
+                span.firstTokenNanos(), span.promptTokens(), span.responseTokens(), span.bytes(), span.error()));
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor timer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "tenant-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+}
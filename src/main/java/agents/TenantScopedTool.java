@@ -0,0 +1,44 @@
+package agents;
+
+import java.util.Map;
+import java.util.Optional;
+
+import com.google.adk.tools.BaseTool;
+import com.google.adk.tools.ToolContext;
+import com.google.genai.types.FunctionDeclaration;
+
+import io.reactivex.rxjava3.core.Single;
+
+/**
+ * Runs a tool as the tenant of the session that called it, so the static tool methods read that tenant's
+ * documentation and billing data through {@link Tenants#current()}. The tool runs to completion on the
+ * subscribing thread; put it inside a {@link ConcurrentTool} to keep it off the thread handling the model response.
+ */
+public class TenantScopedTool extends BaseTool {
+
+    private final BaseTool delegate;
+    private final Tenants tenants;
+
+    public TenantScopedTool(BaseTool delegate) {
+        this(delegate, Tenants.shared());
+    }
+
+    public TenantScopedTool(BaseTool delegate, Tenants tenants) {
+        super(delegate.name(), delegate.description(), delegate.longRunning());
+        this.delegate = delegate;
+        this.tenants = tenants;
+    }
+
+    @Override
+    public Optional<FunctionDeclaration> declaration() {
+        return delegate.declaration();
+    }
+
+    @Override
+    public Single<Map<String, Object>> runAsync(Map<String, Object> args, ToolContext toolContext) {
+        return Single.fromCallable(() -> {
+            Tenants.Tenant tenant = tenants.of(toolContext == null ? null : toolContext.state());
+            return Tenants.callAs(tenant, () -> delegate.runAsync(args, toolContext).blockingGet());
+        });
+    }
+}
@@ -0,0 +1,234 @@
+package agents;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import com.google.adk.sessions.Session;
+
+/**
+ * The tenants served by one deployment: customer products that share the agent trees, runners and model
+ * connections, but each have their own documentation, billing data and quotas (see {@link TenantScheduler}).
+ *
+ * Configured with -Dagents.tenants=path/to/tenants.tsv, one tenant per line:
+ *   id  knowledgeDir  billingStore  maxConcurrent  tokensPerMinute  weight
+ * "-" as knowledgeDir or billingStore means the deployment's own (-Dagents.knowledge.dir, -Dagents.billing.store),
+ * 0 as maxConcurrent or tokensPerMinute means no limit. Without the property there is one tenant, "default",
+ * with the deployment's documentation and billing data and no limits.
+ *
+ * A session belongs to the tenant named in its state under {@link #STATE_KEY}, "default" if there is none.
+ * Tools read the tenant's data through {@link #current()}, which {@link TenantScopedTool} sets while a tool runs.
+ */
+public final class Tenants {
+
+    public static final String DEFAULT = "default";
+
+    /** Session state key holding the tenant id. */
+    public static final String STATE_KEY = "tenant";
+
+    /**
+     * One tenant.
+     *
+     * @param knowledgeDir documentation directory, null for the deployment's knowledge base
+     * @param billingStore billing store file, null for the deployment's billing data
+     * @param maxConcurrent turns of the tenant running at once; 0 means no limit
+     * @param tokensPerMinute token bucket rate (the bucket holds a minute's worth); 0 means no limit
+     * @param weight share of the deployment when tenants compete for it
+     */
+    public record Tenant(String id, Path knowledgeDir, Path billingStore, int maxConcurrent, long tokensPerMinute, int weight) {
+
+        public Tenant {
+            if (weight < 1) {
+                throw new IllegalArgumentException("Tenant " + id + ": weight must be at least 1");
+            }
+        }
+
+        /** A tenant with the deployment's data and no limits. */
+        public static Tenant unlimited(String id) {
+            return new Tenant(id, null, null, 0, 0, 1);
+        }
+    }
+
+    private static final ThreadLocal<Tenant> CURRENT = new ThreadLocal<>();
+
+    private final Map<String, Tenant> tenants = new LinkedHashMap<>();
+    private final boolean configured;
+    private final Map<Path, KnowledgeBase> knowledgeBases = new ConcurrentHashMap<>();
+    private final Map<Path, SourceIndex> sourceIndexes = new ConcurrentHashMap<>();
+    private final Map<Path, BillingStore> billingStores = new ConcurrentHashMap<>();
+
+    public Tenants(Collection<Tenant> tenants) {
+        this(tenants, true);
+    }
+
+    private Tenants(Collection<Tenant> tenants, boolean configured) {
+        for (Tenant tenant : tenants) {
+            if (this.tenants.putIfAbsent(tenant.id(), tenant) != null) {
+                throw new IllegalArgumentException("Duplicate tenant: " + tenant.id());
+            }
+        }
+        this.configured = configured;
+    }
+
+    private static class Shared {
+        static final Tenants INSTANCE = fromSystemProperties();
+    }
+
+    /**
+     * The tenants of this process.
+     */
+    public static Tenants shared() {
+        return Shared.INSTANCE;
+    }
+
+    public static Tenants fromSystemProperties() {
+        String file = System.getProperty("agents.tenants");
+        if (file == null || file.isBlank()) {
+            return new Tenants(List.of(Tenant.unlimited(DEFAULT)), false);
+        }
+        try {
+            return new Tenants(parse(Path.of(file)));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read tenants from " + file, e);
+        }
+    }
+
+    static List<Tenant> parse(Path file) throws IOException {
+        List<Tenant> tenants = new ArrayList<>();
+        List<String> lines = Files.readAllLines(file, UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            if (fields.length != 6) {
+                throw new IllegalArgumentException(file + ":" + (i + 1) + ": expected 6 fields, found " + fields.length);
+            }
+            try {
+                tenants.add(new Tenant(fields[0], path(fields[1]), path(fields[2]),
+                    Integer.parseInt(fields[3]), Long.parseLong(fields[4]), Integer.parseInt(fields[5])));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(file + ":" + (i + 1) + ": " + e.getMessage(), e);
+            }
+        }
+        return tenants;
+    }
+
+    private static Path path(String field) {
+        return "-".equals(field) ? null : Path.of(field);
+    }
+
+    /**
+     * True if the tenants come from -Dagents.tenants. Caches that are keyed on the question alone (answers,
+     * pinned documents, prefetched searches) would then mix tenants' documentation and stay off.
+     */
+    public boolean configured() {
+        return configured;
+    }
+
+    public Collection<Tenant> all() {
+        return tenants.values();
+    }
+
+    public Tenant get(String id) {
+        Tenant tenant = tenants.get(id);
+        if (tenant == null) {
+            throw new IllegalArgumentException("Unknown tenant: " + id);
+        }
+        return tenant;
+    }
+
+    public boolean contains(String id) {
+        return tenants.containsKey(id);
+    }
+
+    /**
+     * The tenant a session belongs to.
+     */
+    public Tenant of(Session session) {
+        return of(session.state());
+    }
+
+    /**
+     * The tenant named in session state.
+     */
+    public Tenant of(Map<String, Object> state) {
+        Object id = state == null ? null : state.get(STATE_KEY);
+        return get(id == null ? DEFAULT : id.toString());
+    }
+
+    /**
+     * Initial state of a session of the tenant.
+     */
+    public static ConcurrentHashMap<String, Object> sessionState(String tenantId) {
+        ConcurrentHashMap<String, Object> state = new ConcurrentHashMap<>();
+        state.put(STATE_KEY, tenantId);
+        return state;
+    }
+
+    /**
+     * The tenant's documentation, opened on first use; tenants with the same directory share it.
+     */
+    public KnowledgeBase knowledgeBase(Tenant tenant) {
+        if (tenant.knowledgeDir() == null) {
+            return TechnicalSpecialist.defaultKnowledgeBase();
+        }
+        return knowledgeBases.computeIfAbsent(tenant.knowledgeDir().toAbsolutePath(), KnowledgeBase::openOrEmpty);
+    }
+
+    /**
+     * The source index of the tenant's documentation directory, see {@link SourceNavigator}.
+     */
+    public SourceIndex sourceIndex(Tenant tenant) {
+        if (tenant.knowledgeDir() == null) {
+            return SourceNavigator.defaultIndex();
+        }
+        return sourceIndexes.computeIfAbsent(tenant.knowledgeDir().toAbsolutePath(), SourceIndex::open);
+    }
+
+    /**
+     * The tenant's billing data, opened on first use; tenants with the same file share it.
+     */
+    public BillingStore billingStore(Tenant tenant) {
+        if (tenant.billingStore() == null) {
+            return BillingHistory.defaultStore();
+        }
+        return billingStores.computeIfAbsent(tenant.billingStore().toAbsolutePath(), BillingHistory::open);
+    }
+
+    /**
+     * The tenant whose tool call runs on this thread, if any.
+     */
+    public static Optional<Tenant> current() {
+        return Optional.ofNullable(CURRENT.get());
+    }
+
+    /**
+     * Runs the action with the tenant as {@link #current()}.
+     */
+    public static <T> T callAs(Tenant tenant, Supplier<T> action) {
+        Tenant previous = CURRENT.get();
+        CURRENT.set(tenant);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package agents;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.adk.models.BaseLlm;
+import com.google.adk.models.BaseLlmConnection;
+import com.google.adk.models.LlmRequest;
+import com.google.adk.models.LlmResponse;
+
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.functions.Action;
+
+/**
+ * Stands in for a provider with a quota, in front of a local model such as {@link ScriptedLlm}.
+ * Calls above the requests-per-minute quota or above the concurrent call limit fail with a 429
+ * RESOURCE_EXHAUSTED error like the Gemini API returns, and every call in flight slows the others
+ * down by a fixed amount, so latency rises with load before the quota is reached.
+ */
+public class ThrottlingLlm extends BaseLlm {
+
+    private final BaseLlm delegate;
+    private final int requestsPerMinute;
+    private final int maxConcurrent;
+    private final long congestionMillis;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder throttled = new LongAdder();
+    private double tokens;
+    private long refilledNanos = System.nanoTime();
+
+    /**
+     * @param requestsPerMinute quota; the bucket holds one second's worth of requests
+     * @param maxConcurrent calls the provider serves at once
+     * @param congestionMillis extra latency per other call in flight
+     */
+    public ThrottlingLlm(BaseLlm delegate, int requestsPerMinute, int maxConcurrent, long congestionMillis) {
+        super(delegate.model());
+        this.delegate = delegate;
+        this.requestsPerMinute = requestsPerMinute;
+        this.maxConcurrent = maxConcurrent;
+        this.congestionMillis = congestionMillis;
+        this.tokens = burst();
+    }
+
+    @Override
+    public Flowable<LlmResponse> generateContent(LlmRequest llmRequest, boolean stream) {
+        return Flowable.defer(() -> {
+            if (!takeToken()) {
+                throttled.increment();
+                return Flowable.error(new RuntimeException("429 RESOURCE_EXHAUSTED: quota of " + requestsPerMinute + " requests per minute exceeded"));
+            }
+            int concurrent = inFlight.incrementAndGet();
+            if (concurrent > maxConcurrent) {
+                inFlight.decrementAndGet();
+                throttled.increment();
+                return Flowable.error(new RuntimeException("429 RESOURCE_EXHAUSTED: more than " + maxConcurrent + " concurrent requests"));
+            }
+            long delay = congestionMillis * (concurrent - 1);
+            Flowable<LlmResponse> responses = delay == 0
+                ? delegate.generateContent(llmRequest, stream)
+                : Flowable.timer(delay, TimeUnit.MILLISECONDS).concatMap(tick -> delegate.generateContent(llmRequest, stream));
+            // The call has left the provider once its last response is sent, before the caller sees it
+            AtomicBoolean left = new AtomicBoolean();
+            Action leave = () -> {
+                if (left.compareAndSet(false, true)) {
+                    inFlight.decrementAndGet();
+                }
+            };
+            return responses.doOnTerminate(leave).doOnCancel(leave);
+        });
+    }
+
+    @Override
+    public BaseLlmConnection connect(LlmRequest llmRequest) {
+        return delegate.connect(llmRequest);
+    }
+
+    /**
+     * Calls rejected with 429 so far.
+     */
+    public long throttled() {
+        return throttled.sum();
+    }
+
+    private synchronized boolean takeToken() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst(), tokens + (now - refilledNanos) * requestsPerMinute / 60e9);
+        refilledNanos = now;
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+
+    private double burst() {
+        return Math.max(1, requestsPerMinute / 60.0);
+    }
+}
@@ -0,0 +1,576 @@
+package agents;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Append-only ticket journal with a single writer thread and group commit.
+ *
+ * Submitters put tickets on a lock-free queue and get a future. The writer drains everything that
+ * is queued, writes it with one FileChannel write and, depending on the fsync policy, forces it to
+ * disk before completing the futures with the ticket ids. A ticket id is only returned once the
+ * ticket is as durable as the policy promises.
+ *
+ * Tickets are stored one per line as "#id [userId] time - message" in segment files
+ * (tickets-00000001.log, ...) that are rotated when they reach the configured size.
+ * On startup the segments are scanned to rebuild the id index and continue numbering.
+ *
+ * {@link #submitOnce} drops repeated tickets: a ticket with the same idempotency key (user id and
+ * normalized message) as one submitted within the dedupe window gets the earlier ticket's id and is
+ * not written again. Recent keys are kept in a bounded set that is refilled from the segments on
+ * startup, so a retry after a restart is still recognized.
+ */
+public class TicketJournal implements AutoCloseable {
+
+    public enum FsyncPolicy {
+        /** Force to disk after every batch before acknowledging it. */
+        BATCH,
+        /** Force at most once per interval; tickets are acknowledged after the force that covers them. */
+        INTERVAL,
+        /** Never force explicitly; tickets are acknowledged once written to the OS. */
+        NONE
+    }
+
+    /** A ticket as stored; created is null for tickets written before times were recorded. */
+    public record Ticket(long id, String userId, Instant created, String message) {}
+
+    /** The id of a submitted ticket, and whether it was a repeat of an earlier one. */
+    public record Receipt(long id, boolean duplicate) {}
+
+    // Where a ticket line starts, so it can be read back without scanning
+    private record Location(int segment, long offset) {}
+
+    private record Pending(String userId, String message, long createdMillis, CompletableFuture<Long> result) {}
+
+    // A ticket submitted within the dedupe window; the id completes when the ticket is written
+    private record Recent(String key, long createdMillis, CompletableFuture<Long> id) {}
+
+    private record Written(long id, CompletableFuture<Long> result) {}
+
+    private static final String SEGMENT_PREFIX = "tickets-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalNanos;
+    private final long maxSegmentBytes;
+    private final long dedupeWindowMillis;
+    private final int maxRecentKeys;
+
+    private final ConcurrentLinkedQueue<Pending> queue = new ConcurrentLinkedQueue<>();
+    private final Map<Long, Location> index = new ConcurrentHashMap<>();
+    private final Map<String, Recent> recent = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Recent> recentOrder = new ConcurrentLinkedQueue<>();
+    private final long startNanos = System.nanoTime();
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    // Owned by the writer thread after construction
+    private FileChannel channel;
+    private int segment;
+    private long nextId;
+    private long lastForce = System.nanoTime();
+    private final List<Written> unforced = new ArrayList<>();
+    private ByteBuffer writeBuffer = ByteBuffer.allocate(64 * 1024);
+    // End of the last complete line when a failed write may have left part of a batch behind it, otherwise -1
+    private long tornAt = -1;
+
+    public TicketJournal(Path directory, FsyncPolicy fsyncPolicy, Duration fsyncInterval, long maxSegmentBytes) throws IOException {
+        this(directory, fsyncPolicy, fsyncInterval, maxSegmentBytes, Duration.ZERO, 0);
+    }
+
+    /**
+     * A journal whose {@link #submitOnce} treats a ticket as a repeat if the same one was submitted within
+     * dedupeWindow, remembering at most maxRecentKeys tickets. A zero window turns deduplication off.
+     */
+    public TicketJournal(Path directory, FsyncPolicy fsyncPolicy, Duration fsyncInterval, long maxSegmentBytes,
+                         Duration dedupeWindow, int maxRecentKeys) throws IOException {
+        this.directory = directory;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalNanos = fsyncInterval.toNanos();
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.dedupeWindowMillis = dedupeWindow.toMillis();
+        this.maxRecentKeys = maxRecentKeys;
+
+        Files.createDirectories(directory);
+        rebuildIndex();
+        openSegment(Math.max(segment, 1));
+
+        this.writer = new Thread(this::writeLoop, "ticket-journal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Journal configured from system properties: agents.tickets.dir (default "tickets"),
+     * agents.tickets.fsync (batch, interval or none), agents.tickets.fsyncIntervalMs,
+     * agents.tickets.segmentBytes, agents.tickets.dedupeWindowMinutes (default 10, 0 for off)
+     * and agents.tickets.dedupeMaxKeys (default 100000).
+     */
+    public static TicketJournal fromSystemProperties() throws IOException {
+        return new TicketJournal(
+            Path.of(System.getProperty("agents.tickets.dir", "tickets")),
+            FsyncPolicy.valueOf(System.getProperty("agents.tickets.fsync", "batch").toUpperCase()),
+            Duration.ofMillis(Long.getLong("agents.tickets.fsyncIntervalMs", 10)),
+            Long.getLong("agents.tickets.segmentBytes", 64L * 1024 * 1024),
+            Duration.ofMinutes(Long.getLong("agents.tickets.dedupeWindowMinutes", 10)),
+            Integer.getInteger("agents.tickets.dedupeMaxKeys", 100_000)
+        );
+    }
+
+    /**
+     * Queues a ticket. The future completes with the ticket id once the ticket has been written
+     * according to the fsync policy, or exceptionally if writing failed.
+     */
+    public CompletableFuture<Long> submit(String userId, String message) {
+        submitted.increment();
+        CompletableFuture<Long> result = new CompletableFuture<>();
+        enqueue(userId, message, System.currentTimeMillis(), result);
+        return result;
+    }
+
+    /**
+     * Like {@link #submit}, but if the same ticket was submitted within the dedupe window the future completes
+     * with the earlier ticket's id and nothing is written. A ticket whose write failed can be submitted again.
+     */
+    public CompletableFuture<Receipt> submitOnce(String userId, String message) {
+        if (dedupeWindowMillis <= 0) {
+            return submit(userId, message).thenApply(id -> new Receipt(id, false));
+        }
+        submitted.increment();
+        String key = idempotencyKey(userId, message);
+        long now = System.currentTimeMillis();
+        while (true) {
+            Recent existing = recent.get(key);
+            if (existing != null && now - existing.createdMillis() < dedupeWindowMillis && !existing.id().isCompletedExceptionally()) {
+                duplicates.increment();
+                return existing.id().thenApply(id -> new Receipt(id, true));
+            }
+            // Concurrent submitters of the same ticket race here; exactly one of them writes it
+            Recent fresh = new Recent(key, now, new CompletableFuture<>());
+            boolean claimed = existing == null ? recent.putIfAbsent(key, fresh) == null : recent.replace(key, existing, fresh);
+            if (!claimed) {
+                continue;
+            }
+            recentOrder.offer(fresh);
+            evictRecent(now);
+            fresh.id().whenComplete((id, error) -> {
+                if (error != null) {
+                    recent.remove(key, fresh);
+                }
+            });
+            enqueue(userId, message, now, fresh.id());
+            return fresh.id().thenApply(id -> new Receipt(id, false));
+        }
+    }
+
+    /**
+     * Ticket counts since the journal was opened: submitted, written, duplicates dropped by
+     * {@link #submitOnce}, failed writes, the duplicate rate and tickets written per second.
+     */
+    public Map<String, Object> stats() {
+        long submittedCount = submitted.sum();
+        long duplicateCount = duplicates.sum();
+        long writtenCount = written.sum();
+        double seconds = Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("tickets", index.size());
+        stats.put("submitted", submittedCount);
+        stats.put("written", writtenCount);
+        stats.put("duplicates", duplicateCount);
+        stats.put("failed", failed.sum());
+        stats.put("duplicateRate", submittedCount == 0 ? 0.0 : (double) duplicateCount / submittedCount);
+        stats.put("writtenPerSecond", writtenCount / seconds);
+        stats.put("recentKeys", recent.size());
+        return stats;
+    }
+
+    /**
+     * Key under which repeats of a ticket are recognized: the user id and the message with case,
+     * punctuation and spacing ignored, hashed to 128 bits.
+     */
+    static String idempotencyKey(String userId, String message) {
+        String normalized = normalize(userId) + "\n" + normalize(message);
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(normalized.getBytes(UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder out = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (space && out.length() > 0) {
+                    out.append(' ');
+                }
+                out.append(Character.toLowerCase(c));
+                space = false;
+            } else {
+                space = true;
+            }
+        }
+        return out.toString();
+    }
+
+    private void enqueue(String userId, String message, long createdMillis, CompletableFuture<Long> result) {
+        if (closed) {
+            failed.increment();
+            result.completeExceptionally(new IllegalStateException("Ticket journal is closed."));
+            return;
+        }
+        Pending pending = new Pending(userId, message, createdMillis, result);
+        queue.offer(pending);
+        // close() may have run since the check, and the writer may already have failed what was left and stopped;
+        // whoever takes the entry off the queue completes it, so it is failed here only if the writer never saw it
+        if (closed && queue.remove(pending)) {
+            failed.increment();
+            result.completeExceptionally(new IllegalStateException("Ticket journal is closed."));
+            return;
+        }
+        LockSupport.unpark(writer);
+    }
+
+    // Drops keys that left the window, and the oldest keys while there are too many
+    private void evictRecent(long now) {
+        Recent oldest;
+        while ((oldest = recentOrder.peek()) != null
+                && (recent.size() > maxRecentKeys || now - oldest.createdMillis() >= dedupeWindowMillis)) {
+            if (recentOrder.remove(oldest)) {
+                recent.remove(oldest.key(), oldest);
+            }
+        }
+    }
+
+    /**
+     * Reads a ticket back from its segment.
+     */
+    public Optional<Ticket> find(long id) throws IOException {
+        Location location = index.get(id);
+        if (location == null) {
+            return Optional.empty();
+        }
+        try (FileChannel in = FileChannel.open(segmentPath(location.segment()), StandardOpenOption.READ)) {
+            // Reads until the end of the line, however many reads that takes and however long the ticket is
+            ByteBuffer buffer = ByteBuffer.allocate(4 * 1024);
+            int end = -1;
+            while (end < 0) {
+                if (!buffer.hasRemaining()) {
+                    buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer.flip());
+                }
+                int from = buffer.position();
+                if (in.read(buffer, location.offset() + from) < 0) {
+                    break;
+                }
+                for (int i = from; i < buffer.position() && end < 0; i++) {
+                    if (buffer.get(i) == '\n') {
+                        end = i;
+                    }
+                }
+            }
+            return Optional.ofNullable(parse(new String(buffer.array(), 0, end < 0 ? buffer.position() : end, UTF_8)));
+        }
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>();
+        while (true) {
+            Pending next;
+            while ((next = queue.poll()) != null) {
+                batch.add(next);
+            }
+
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+                batch.clear();
+            } else if (closed) {
+                break;
+            }
+
+            if (!unforced.isEmpty() && System.nanoTime() - lastForce >= fsyncIntervalNanos) {
+                force();
+            }
+            if (queue.isEmpty() && !closed) {
+                // Sleep until a submitter unparks us, or until the pending interval fsync is due
+                LockSupport.parkNanos(unforced.isEmpty() ? TimeUnit.SECONDS.toNanos(1) : fsyncIntervalNanos);
+            }
+        }
+
+        force();
+        Pending late;
+        while ((late = queue.poll()) != null) {
+            late.result().completeExceptionally(new IllegalStateException("Ticket journal is closed."));
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Ticket journal close error: " + e.getMessage());
+        }
+    }
+
+    private void writeBatch(List<Pending> batch) {
+        long firstId = nextId;
+        long start = -1;
+        try {
+            // Nothing is appended onto a partial line, it would corrupt the next ticket on replay
+            if (tornAt >= 0) {
+                channel.truncate(tornAt);
+                tornAt = -1;
+            }
+            if (channel.size() >= maxSegmentBytes) {
+                force();
+                channel.close();
+                openSegment(segment + 1);
+            }
+
+            // Encode the whole batch into one reusable buffer, so it is a single write
+            writeBuffer.clear();
+            long position = channel.size();
+            start = position;
+            List<Written> written = new ArrayList<>(batch.size());
+            for (Pending pending : batch) {
+                long id = nextId++;
+                byte[] line = format(id, pending.userId(), pending.createdMillis(), pending.message()).getBytes(UTF_8);
+                if (writeBuffer.remaining() < line.length) {
+                    ByteBuffer larger = ByteBuffer.allocate(Math.max(writeBuffer.capacity() * 2, writeBuffer.position() + line.length));
+                    writeBuffer.flip();
+                    writeBuffer = larger.put(writeBuffer);
+                }
+                writeBuffer.put(line);
+                index.put(id, new Location(segment, position));
+                position += line.length;
+                written.add(new Written(id, pending.result()));
+            }
+
+            writeBuffer.flip();
+            while (writeBuffer.hasRemaining()) {
+                channel.write(writeBuffer);
+            }
+
+            this.written.add(written.size());
+            if (fsyncPolicy == FsyncPolicy.NONE) {
+                written.forEach(w -> w.result().complete(w.id()));
+            } else {
+                unforced.addAll(written);
+            }
+            if (fsyncPolicy == FsyncPolicy.BATCH) {
+                force();
+            }
+        } catch (IOException e) {
+            System.err.println("Ticket journal write error: " + e.getMessage());
+            for (long id = firstId; id < nextId; id++) {
+                index.remove(id);
+            }
+            if (start >= 0) {
+                tornAt = start;
+                try {
+                    channel.truncate(start);
+                    tornAt = -1;
+                } catch (IOException truncateError) {
+                    System.err.println("Ticket journal truncate error, retried before the next write: " + truncateError.getMessage());
+                }
+            }
+            failed.add(batch.size());
+            for (Pending pending : batch) {
+                pending.result().completeExceptionally(e);
+            }
+        }
+    }
+
+    // Forces written tickets to disk and acknowledges them
+    private void force() {
+        if (unforced.isEmpty()) {
+            return;
+        }
+        try {
+            channel.force(false);
+            for (Written written : unforced) {
+                written.result().complete(written.id());
+            }
+        } catch (IOException e) {
+            System.err.println("Ticket journal fsync error: " + e.getMessage());
+            failed.add(unforced.size());
+            for (Written written : unforced) {
+                written.result().completeExceptionally(e);
+            }
+        }
+        unforced.clear();
+        lastForce = System.nanoTime();
+    }
+
+    private void openSegment(int number) throws IOException {
+        segment = number;
+        channel = FileChannel.open(segmentPath(number),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private Path segmentPath(int number) {
+        return directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    private void rebuildIndex() throws IOException {
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(directory)) {
+            segments = files
+                .filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                .filter(p -> p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                .sorted()
+                .toList();
+        }
+
+        nextId = 1;
+        long recentSince = System.currentTimeMillis() - dedupeWindowMillis;
+        for (Path path : segments) {
+            String name = path.getFileName().toString();
+            int number = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+            segment = Math.max(segment, number);
+
+            long size = Files.size(path);
+            long offset = 0;
+            try (BufferedReader reader = Files.newBufferedReader(path, UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    long end = offset + line.getBytes(UTF_8).length + 1;
+                    if (end > size) {
+                        // The last line has no line break: the process died while writing it, so it was never acknowledged
+                        truncate(path, offset);
+                        break;
+                    }
+                    Ticket ticket = parse(line);
+                    if (ticket != null) {
+                        index.put(ticket.id(), new Location(number, offset));
+                        nextId = Math.max(nextId, ticket.id() + 1);
+                        if (dedupeWindowMillis > 0 && ticket.created() != null && ticket.created().toEpochMilli() >= recentSince) {
+                            remember(ticket);
+                        }
+                    }
+                    offset = end;
+                }
+            }
+        }
+    }
+
+    private static void truncate(Path path, long size) throws IOException {
+        System.err.println("Ticket journal: dropping the partly written last line of " + path);
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            out.truncate(size);
+        }
+    }
+
+    // Segments are read in order, so a later ticket with the same key replaces an earlier one
+    private void remember(Ticket ticket) {
+        Recent entry = new Recent(idempotencyKey(ticket.userId(), ticket.message()), ticket.created().toEpochMilli(),
+            CompletableFuture.completedFuture(ticket.id()));
+        recent.put(entry.key(), entry);
+        recentOrder.offer(entry);
+        evictRecent(System.currentTimeMillis());
+    }
+
+    static String format(long id, String userId, long createdMillis, String message) {
+        // One ticket per line, so line breaks are escaped, and so is "]" in the user id, where it would end the id
+        return "#" + id + " [" + escape(userId).replace("]", "\\]") + "] " + Instant.ofEpochSecond(createdMillis / 1000)
+            + " - " + escape(message) + "\n";
+    }
+
+    private static String escape(String text) {
+        return text == null ? "" : text.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String unescape(String text) {
+        StringBuilder out = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                char next = text.charAt(++i);
+                out.append(next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    // Reads "#id [userId] time - message", and "#id [userId] - message" from journals written without times
+    static Ticket parse(String line) {
+        int space = line.indexOf(' ');
+        if (!line.startsWith("#") || space < 0 || space + 1 >= line.length() || line.charAt(space + 1) != '[') {
+            return null;
+        }
+        int close = closingBracket(line, space + 2);
+        int dash = close < 0 ? -1 : line.indexOf(" - ", close);
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            long id = Long.parseLong(line.substring(1, space));
+            Instant created = dash > close + 1 ? Instant.parse(line.substring(close + 2, dash)) : null;
+            return new Ticket(id, unescape(line.substring(space + 2, close)), created, unescape(line.substring(dash + 3)));
+        } catch (NumberFormatException | DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    // Index of the "] " that ends the user id, skipping escaped characters
+    private static int closingBracket(String line, int from) {
+        for (int i = from; i + 1 < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == ']' && line.charAt(i + 1) == ' ') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
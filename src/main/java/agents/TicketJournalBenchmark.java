@@ -0,0 +1,94 @@
+package agents;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Measures ticket throughput of the journal with 1, 16 and 256 concurrent submitters for each
+ * fsync policy. Every submitter waits for its ticket to be acknowledged before sending the next,
+ * as the submitTicket tool does, and with probability --duplicates resends its previous ticket, which
+ * the journal answers without writing. Journals are written to a temporary directory that is deleted afterwards.
+ *
+ * Run with: mvn exec:java -Dexec.mainClass="agents.TicketJournalBenchmark" -Dexec.args="--seconds 5 --duplicates 0.2"
+ */
+public class TicketJournalBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int seconds = 3;
+        int[] submitters = {1, 16, 256};
+        double duplicates = 0.2;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--seconds" -> seconds = Integer.parseInt(args[i + 1]);
+                case "--duplicates" -> duplicates = Double.parseDouble(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        System.out.printf("%-10s %12s %14s %14s %12s%n", "fsync", "submitters", "tickets/s", "written/s", "duplicates");
+        for (TicketJournal.FsyncPolicy policy : TicketJournal.FsyncPolicy.values()) {
+            for (int threads : submitters) {
+                run(policy, threads, Duration.ofSeconds(seconds), duplicates);
+            }
+        }
+    }
+
+    private static void run(TicketJournal.FsyncPolicy policy, int threads, Duration duration, double duplicates) throws Exception {
+        Path directory = Files.createTempDirectory("tickets-bench");
+        try {
+            AtomicLong acknowledged = new AtomicLong();
+            CountDownLatch done = new CountDownLatch(threads);
+            long start;
+            Map<String, Object> stats;
+            try (TicketJournal journal = new TicketJournal(directory, policy, Duration.ofMillis(10), 64L * 1024 * 1024,
+                    Duration.ofMinutes(10), 100_000)) {
+                long end = System.nanoTime() + duration.toNanos();
+                start = System.nanoTime();
+                for (int t = 0; t < threads; t++) {
+                    String userId = Integer.toString(1000 + t);
+                    SplittableRandom random = new SplittableRandom(t);
+                    Thread worker = new Thread(() -> {
+                        try {
+                            long order = 0;
+                            while (System.nanoTime() < end) {
+                                if (order == 0 || random.nextDouble() >= duplicates) {
+                                    order++;
+                                }
+                                journal.submitOnce(userId, "User " + userId + " is requesting a refund for order " + order
+                                    + " because they are not satisfied with the product.").join();
+                                acknowledged.incrementAndGet();
+                            }
+                        } finally {
+                            done.countDown();
+                        }
+                    });
+                    worker.start();
+                }
+                done.await();
+                stats = journal.stats();
+            }
+            double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%-10s %12d %,14.0f %,14.0f %11.1f%%%n", policy.name().toLowerCase(), threads,
+                acknowledged.get() / elapsedSeconds, ((Number) stats.get("written")).longValue() / elapsedSeconds,
+                100 * (double) stats.get("duplicateRate"));
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -1,59 +1,96 @@
 package agents;
 
-import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
-import java.nio.file.Files;
-import java.util.HashMap;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import com.google.adk.tools.Annotations.Schema;
 
 
 public class TicketOpener {
-    private static final String LOG_FILE_NAME = "tickets.log";
+    private static final long WRITE_TIMEOUT_SECONDS = 10;
 
-    @Schema(description = "Submits a new refund support ticket and sends user a mail with form to fill ."
-                          + "The refunds policy is as follows: "
-                          + "if made withing 7 days of purchase, the user is eligible for a full refund "
-                          + "if made withing 30 days of purchase, the user is eligible for a partial refund "
-                          + "if more than 30 days havepassed since the purchase, a refund cannot be made."
+    private static final ToolResult.Shape RESPONSE = ToolResult.Shape.builder()
+        .value("status").value("ticketId").value("refund").value("duplicate").value("confirmation")
+        .build();
+
+    private static volatile TicketJournal opened;
+
+    // Opened on first use; see TicketJournal.fromSystemProperties() for the settings
+    private static class Journal {
+        static final TicketJournal INSTANCE = open();
+
+        private static TicketJournal open() {
+            try {
+                TicketJournal journal = TicketJournal.fromSystemProperties();
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    try {
+                        journal.close();
+                    } catch (IOException e) {
+                        System.err.println("Ticket journal close error: " + e.getMessage());
+                    }
+                }));
+                opened = journal;
+                return journal;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot open ticket journal", e);
+            }
+        }
+    }
+
+    @Schema(description = "Submits a refund support ticket, sends the user a mail with a form to fill, and returns whether the user "
+                          + "is eligible for a full, partial or no refund under the refund policy. Submitting the same ticket again "
+                          + "returns the original ticket instead of opening a new one."
     )
-    public static Map<String, String> submitTicket (
+    public static Map<String, Object> submitTicket (
         @Schema(name = "userId", description = "The unique identifier for the user.")
         String userId,
 
         @Schema(name = "ticketMessage", description = "The contents of the ticket")
-        String ticketMessage) {
+        String ticketMessage,
+
+        @Schema(name = "daysSincePurchase", description = "How many days ago the purchase was made, e.g. 2 for 'two days ago' "
+                                                       + "or 0 for today. Use -1 if the user has not said.")
+        int daysSincePurchase) {
 
-        
-        Path filePath = Path.of(LOG_FILE_NAME);
-        String logEntry = String.format("[%s] - %s%n", userId, ticketMessage);
+        return submitTicket(Journal.INSTANCE, userId, ticketMessage, daysSincePurchase);
+    }
 
+    // The refund eligibility does not depend on the ticket being saved, so every response carries it
+    static Map<String, Object> submitTicket(TicketJournal journal, String userId, String ticketMessage, int daysSincePurchase) {
+        RefundPolicy.Decision refund = RefundPolicy.evaluate(daysSincePurchase);
         try {
-            // Write to the file, creating it if it doesn't exist, and appending to the end.
-            Files.writeString(
-                filePath, 
-                logEntry, 
-                StandardOpenOption.CREATE, 
-                StandardOpenOption.APPEND
-            );
+            // Returns once the journal has written the ticket according to its fsync policy,
+            // or straight away with the earlier ticket if this one was already submitted
+            TicketJournal.Receipt receipt = journal.submitOnce(userId, ticketMessage).get(WRITE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
 
             // Send the user a form to fill
 
             // Return a simple Map for the LLM to use in its final response
-            Map<String, String> result = new HashMap<>();
-            result.put("status", "SUCCESS");
-            result.put("confirmation", "Data successfully saved for user " + userId + ".");
-            return result;
-
-        } catch (IOException e) {
-            System.err.println("File write error: " + e.getMessage());
-            Map<String, String> result = new HashMap<>();
-            result.put("status", "ERROR");
-            result.put("confirmation", "A system error prevented saving the data: " + e.getMessage());
-            return result;
+            return RESPONSE.of("SUCCESS", Long.toString(receipt.id()), refund.eligibility().label(), receipt.duplicate() ? Boolean.TRUE : null,
+                "Data successfully saved for user " + userId + ". " + refund.explanation());
+
+        } catch (ExecutionException | TimeoutException | UncheckedIOException e) {
+            String message = e instanceof ExecutionException ? e.getCause().getMessage() : e.getMessage();
+            System.err.println("File write error: " + message);
+            return RESPONSE.of("ERROR", null, refund.eligibility().label(), null,
+                "A system error prevented saving the data: " + message + (message != null && message.endsWith(".") ? " " : ". ")
+                    + refund.explanation());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return RESPONSE.of("ERROR", null, refund.eligibility().label(), null,
+                "Saving the ticket was interrupted. " + refund.explanation());
         }
     }
 
+    /**
+     * Journal counters (see {@link TicketJournal#stats}), or nothing if no ticket was submitted yet.
+     */
+    public static Map<String, Object> stats() {
+        TicketJournal journal = opened;
+        return journal == null ? Map.of() : journal.stats();
+    }
 }
@@ -0,0 +1,296 @@
+package agents;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * An immutable tool result: one array of values laid out by a {@link Shape}, the ordered list of keys
+ * shared by every result of the same kind.
+ *
+ * It is a map, so ADK and the model see the same JSON object a hash map would give, but a result costs
+ * one small array instead of a table and an entry per key. Currency amounts are kept as cents and dates
+ * as {@link LocalDate}, and are only turned into text when the result is written: {@link #appendJson}
+ * and the Jackson serializer ADK uses format them into a reused buffer without creating strings.
+ * Keys whose value is null are left out.
+ */
+@JsonSerialize(using = ToolResult.Serializer.class)
+public final class ToolResult extends AbstractMap<String, Object> {
+
+    private enum Kind { VALUE, MONEY, DATE }
+
+    // Long enough for any long as cents ("-92233720368547758.08") and any four-digit-year date
+    private static final ThreadLocal<char[]> BUFFER = ThreadLocal.withInitial(() -> new char[24]);
+
+    /**
+     * The keys of a kind of result, in output order, and how each value is written. Create one per
+     * kind of result, in a static field, and build results with {@link #of}.
+     */
+    public static final class Shape {
+        private final String[] keys;
+        private final Kind[] kinds;
+
+        private Shape(String[] keys, Kind[] kinds) {
+            this.keys = keys;
+            this.kinds = kinds;
+        }
+
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        /**
+         * A result with the values in the order of the keys. Money values are cents as a long, date
+         * values are LocalDates, and null leaves the key out.
+         */
+        public ToolResult of(Object... values) {
+            if (values.length != keys.length) {
+                throw new IllegalArgumentException("Expected " + keys.length + " values, got " + values.length);
+            }
+            return new ToolResult(this, values);
+        }
+
+        int indexOf(Object key) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == key) {
+                    return i;
+                }
+            }
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i].equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    public static final class Builder {
+        private final List<String> keys = new ArrayList<>();
+        private final List<Kind> kinds = new ArrayList<>();
+
+        /** A string, number, boolean, list or nested result. */
+        public Builder value(String key) {
+            return add(key, Kind.VALUE);
+        }
+
+        /** An amount in cents, written as a decimal string such as "49.99". */
+        public Builder money(String key) {
+            return add(key, Kind.MONEY);
+        }
+
+        /** A LocalDate, written as YYYY-MM-DD. */
+        public Builder date(String key) {
+            return add(key, Kind.DATE);
+        }
+
+        public Shape build() {
+            return new Shape(keys.toArray(new String[0]), kinds.toArray(new Kind[0]));
+        }
+
+        private Builder add(String key, Kind kind) {
+            if (keys.contains(key)) {
+                throw new IllegalArgumentException("Duplicate key " + key);
+            }
+            keys.add(key);
+            kinds.add(kind);
+            return this;
+        }
+    }
+
+    private final Shape shape;
+    private final Object[] values;
+    private final int size;
+
+    private ToolResult(Shape shape, Object[] values) {
+        this.shape = shape;
+        this.values = values;
+        int present = 0;
+        for (Object value : values) {
+            if (value != null) {
+                present++;
+            }
+        }
+        this.size = present;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int index = shape.indexOf(key);
+        return index < 0 ? null : display(index);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        int index = shape.indexOf(key);
+        return index >= 0 && values[index] != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                return new Iterator<>() {
+                    private int next = skipAbsent(0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < values.length;
+                    }
+
+                    @Override
+                    public Map.Entry<String, Object> next() {
+                        if (next >= values.length) {
+                            throw new NoSuchElementException();
+                        }
+                        Map.Entry<String, Object> entry = new AbstractMap.SimpleImmutableEntry<>(shape.keys[next], display(next));
+                        next = skipAbsent(next + 1);
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Writes the result as a JSON object in the style of {@link Json#write}.
+     */
+    public void appendJson(StringBuilder out) {
+        out.append('{');
+        String separator = "";
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                continue;
+            }
+            out.append(separator);
+            Json.appendQuoted(out, shape.keys[i]);
+            out.append(": ");
+            if (shape.kinds[i] == Kind.VALUE) {
+                Json.append(out, values[i]);
+            } else {
+                char[] buffer = BUFFER.get();
+                out.append('"').append(buffer, 0, format(i, buffer)).append('"');
+            }
+            separator = ", ";
+        }
+        out.append('}');
+    }
+
+    /**
+     * Formats cents as a decimal amount with two fractional digits, e.g. 4999 as "49.99" and -5 as "-0.05".
+     */
+    public static String formatCents(long cents) {
+        char[] buffer = BUFFER.get();
+        return new String(buffer, 0, formatCents(cents, buffer));
+    }
+
+    // Values as a plain map would hold them, so callers that read the result see strings
+    private Object display(int index) {
+        Object value = values[index];
+        if (value == null || shape.kinds[index] == Kind.VALUE) {
+            return value;
+        }
+        char[] buffer = BUFFER.get();
+        return new String(buffer, 0, format(index, buffer));
+    }
+
+    private int format(int index, char[] buffer) {
+        return shape.kinds[index] == Kind.MONEY
+            ? formatCents((Long) values[index], buffer)
+            : formatDate((LocalDate) values[index], buffer);
+    }
+
+    private int skipAbsent(int index) {
+        while (index < values.length && values[index] == null) {
+            index++;
+        }
+        return index;
+    }
+
+    // Digits are written from the end of the buffer and then moved to the front
+    private static int formatCents(long cents, char[] buffer) {
+        int position = buffer.length;
+        long remaining = cents;
+        for (int digit = 0; digit < 3 || remaining != 0; digit++) {
+            if (digit == 2) {
+                buffer[--position] = '.';
+            }
+            buffer[--position] = (char) ('0' + Math.abs(remaining % 10));
+            remaining /= 10;
+        }
+        if (cents < 0) {
+            buffer[--position] = '-';
+        }
+        int length = buffer.length - position;
+        System.arraycopy(buffer, position, buffer, 0, length);
+        return length;
+    }
+
+    private static int formatDate(LocalDate date, char[] buffer) {
+        int year = date.getYear();
+        if (year < 0 || year > 9999) {
+            String text = date.toString();
+            text.getChars(0, text.length(), buffer, 0);
+            return text.length();
+        }
+        twoDigits(buffer, 0, year / 100);
+        twoDigits(buffer, 2, year % 100);
+        buffer[4] = '-';
+        twoDigits(buffer, 5, date.getMonthValue());
+        buffer[7] = '-';
+        twoDigits(buffer, 8, date.getDayOfMonth());
+        return 10;
+    }
+
+    private static void twoDigits(char[] buffer, int offset, int value) {
+        buffer[offset] = (char) ('0' + value / 10);
+        buffer[offset + 1] = (char) ('0' + value % 10);
+    }
+
+    /**
+     * Writes results straight to the generator when ADK serializes events and model requests.
+     */
+    public static final class Serializer extends JsonSerializer<ToolResult> {
+        @Override
+        public void serialize(ToolResult result, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            generator.writeStartObject();
+            for (int i = 0; i < result.values.length; i++) {
+                Object value = result.values[i];
+                if (value == null) {
+                    continue;
+                }
+                generator.writeFieldName(result.shape.keys[i]);
+                if (result.shape.kinds[i] == Kind.VALUE) {
+                    provider.defaultSerializeValue(value, generator);
+                } else {
+                    char[] buffer = BUFFER.get();
+                    generator.writeString(buffer, 0, result.format(i, buffer));
+                }
+            }
+            generator.writeEndObject();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package agents;
+
+import java.time.Duration;
+import java.util.List;
+
+import com.google.adk.artifacts.InMemoryArtifactService;
+import com.google.adk.events.Event;
+import com.google.adk.runner.Runner;
+import com.google.adk.sessions.InMemorySessionService;
+import com.google.adk.sessions.Session;
+import com.google.genai.types.Content;
+import com.google.genai.types.Part;
+
+/**
+ * Counts model round trips, tool calls and wall time per technical answer, with and without speculative
+ * documentation prefetch. Runs the technical specialist on the scripted model with the README example
+ * questions and a few other questions from the routing evaluation set.
+ *
+ * Run with: mvn exec:java -Dexec.mainClass="agents.ToolRoundTripBenchmark" -Dexec.args="--first-token-ms 300 --token-ms 15"
+ */
+public class ToolRoundTripBenchmark {
+
+    private static final List<String> QUESTIONS = List.of(
+        "Why are my files corrupted?",
+        "How is encryption handled?",
+        "nebula sync will not start, port already in use",
+        "How do I change the port?",
+        "My dashboard shows high CPU usage"
+    );
+
+    public static void main(String[] args) {
+        long firstTokenMs = 300;
+        long tokenMs = 15;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--first-token-ms" -> firstTokenMs = Long.parseLong(args[i + 1]);
+                case "--token-ms" -> tokenMs = Long.parseLong(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        System.out.printf("%-50s %-9s %12s %11s %10s%n", "question", "prefetch", "model calls", "tool calls", "wall ms");
+        for (boolean prefetch : new boolean[] {false, true}) {
+            ScriptedLlm model = DemoScript.create(Duration.ofMillis(firstTokenMs), Duration.ofMillis(tokenMs));
+            Runner runner = new Runner(
+                TechnicalSpecialist.initAgent(model, prefetch),
+                "technical agent",
+                new InMemoryArtifactService(),
+                new InMemorySessionService()
+            );
+
+            long totalCalls = 0;
+            long totalNanos = 0;
+            for (String question : QUESTIONS) {
+                Session session = runner.sessionService().createSession(runner.appName(), "user").blockingGet();
+                long callsBefore = model.calls();
+                long[] toolCalls = {0};
+                long start = System.nanoTime();
+                runner.runAsync(session.userId(), session.id(), Content.fromParts(Part.fromText(question)))
+                    .blockingForEach((Event event) -> toolCalls[0] += event.functionCalls().size());
+                long nanos = System.nanoTime() - start;
+                long calls = model.calls() - callsBefore;
+                totalCalls += calls;
+                totalNanos += nanos;
+                System.out.printf("%-50s %-9s %12d %11d %10.0f%n", question, prefetch ? "on" : "off", calls, toolCalls[0], nanos / 1e6);
+            }
+            System.out.printf("%-50s %-9s %12.1f %11s %10.0f%n", "mean per answer", prefetch ? "on" : "off",
+                (double) totalCalls / QUESTIONS.size(), "", totalNanos / 1e6 / QUESTIONS.size());
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package agents;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.google.adk.agents.BaseAgent;
+import com.google.adk.tools.FunctionTool;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The registry is static, so each test loads the project's classes again in a class loader of its own and
+ * starts with nothing built, whatever other tests in this JVM have done.
+ */
+class AgentRegistryTest {
+
+    private static final class Registry {
+        private final ClassLoader loader = isolatedLoader();
+        private final Method agent;
+        private final Method built;
+
+        Registry() throws Exception {
+            Class<?> registry = Class.forName("agents.AgentRegistry", true, loader);
+            agent = registry.getMethod("agent", String.class);
+            built = registry.getMethod("built", String.class);
+        }
+
+        BaseAgent agent(String name) throws Exception {
+            return (BaseAgent) agent.invoke(null, name);
+        }
+
+        boolean built(String name) throws Exception {
+            return (Boolean) built.invoke(null, name);
+        }
+
+        // What the ADK dev UI does with each compiled class: read a public static ROOT_AGENT field if there is one
+        Object rootAgentField(String className) throws Exception {
+            Class<?> type = Class.forName(className, false, loader);
+            assertTrue(Modifier.isStatic(type.getField("ROOT_AGENT").getModifiers()));
+            return type.getField("ROOT_AGENT").get(null);
+        }
+    }
+
+    @Test
+    void loadingTheAgentClassesBuildsNothing() throws Exception {
+        Registry registry = new Registry();
+
+        for (String name : List.of("AgentTeam", "TechnicalSpecialist", "BillingSpecialist", "SimpleAgent")) {
+            Class<?> type = Class.forName("agents." + name, true, registry.loader);
+            assertEquals(String.class, type.getField("AGENT_NAME").get(null).getClass());
+            assertThrows(NoSuchFieldException.class, () -> type.getField("ROOT_AGENT"));
+        }
+
+        for (String name : List.of(AgentRegistry.TEAM, AgentRegistry.TECHNICAL, AgentRegistry.BILLING, AgentRegistry.SIMPLE)) {
+            assertFalse(registry.built(name), name);
+        }
+    }
+
+    @Test
+    void rootAgentFieldsBuildTheirTreeWhenRead() throws Exception {
+        Registry registry = new Registry();
+
+        Object billing = registry.rootAgentField("agents.BillingSpecialist$Root");
+
+        assertTrue(registry.built(AgentRegistry.BILLING));
+        assertFalse(registry.built(AgentRegistry.TECHNICAL));
+        assertFalse(registry.built(AgentRegistry.TEAM));
+        assertSame(registry.agent(AgentRegistry.BILLING), billing);
+        assertEquals(BillingSpecialist.AGENT_NAME, ((BaseAgent) billing).name());
+
+        // The coordinator reuses the specialists that are already built
+        BaseAgent team = (BaseAgent) registry.rootAgentField("agents.AgentTeam$Root");
+        assertTrue(registry.built(AgentRegistry.TECHNICAL));
+        assertFalse(registry.built(AgentRegistry.SIMPLE));
+        assertSame(billing, team.findSubAgent(BillingSpecialist.AGENT_NAME));
+        assertSame(registry.agent(AgentRegistry.TECHNICAL), registry.rootAgentField("agents.TechnicalSpecialist$Root"));
+        assertSame(team, registry.agent(AgentRegistry.TEAM));
+    }
+
+    @Test
+    void threadsAskingAtOnceGetTheSameTree() throws Exception {
+        Registry registry = new Registry();
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<BaseAgent>> teams = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                teams.add(executor.submit(() -> {
+                    start.await();
+                    return registry.agent(AgentRegistry.TEAM);
+                }));
+            }
+            start.countDown();
+
+            BaseAgent first = teams.get(0).get(30, TimeUnit.SECONDS);
+            for (Future<BaseAgent> team : teams) {
+                assertSame(first, team.get(30, TimeUnit.SECONDS));
+            }
+            assertSame(registry.agent(AgentRegistry.TECHNICAL), first.findSubAgent(TechnicalSpecialist.AGENT_NAME));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void unknownNamesAreRejected() {
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class, () -> AgentRegistry.agent("sales"));
+        assertTrue(error.getMessage().contains("[team, technical, billing, simple]"), error.getMessage());
+        assertFalse(AgentRegistry.built("sales"));
+    }
+
+    @Test
+    void functionToolsAreCreatedOncePerMethod() {
+        FunctionTool tool = AgentRegistry.functionTool(PaymentMethod.class, "paymentMethod");
+
+        assertSame(tool, AgentRegistry.functionTool(PaymentMethod.class, "paymentMethod"));
+        assertEquals("paymentMethod", tool.name());
+    }
+
+    // Loads the project's own classes itself and everything else (ADK, JDK) from the test's class loader
+    private static ClassLoader isolatedLoader() {
+        URL classes = AgentRegistry.class.getProtectionDomain().getCodeSource().getLocation();
+        return new URLClassLoader(new URL[] {classes}, AgentRegistryTest.class.getClassLoader()) {
+            @Override
+            protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                if (!name.startsWith("agents.")) {
+                    return super.loadClass(name, resolve);
+                }
+                synchronized (getClassLoadingLock(name)) {
+                    Class<?> loaded = findLoadedClass(name);
+                    return loaded != null ? loaded : findClass(name);
+                }
+            }
+        };
+    }
+}
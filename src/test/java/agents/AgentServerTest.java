@@ -0,0 +1,170 @@
+package agents;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.adk.models.BaseLlm;
+import com.google.adk.models.BaseLlmConnection;
+import com.google.adk.models.LlmRequest;
+import com.google.adk.models.LlmResponse;
+import com.google.adk.runner.InMemoryRunner;
+import com.google.genai.types.Content;
+import com.google.genai.types.Part;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.reactivex.rxjava3.core.Flowable;
+
+class AgentServerTest {
+
+    private static final Pattern SESSION_ID = Pattern.compile("\"sessionId\": \"([^\"]+)\"");
+
+    /** Answers only when released, blocking the thread that subscribed, as the Gemini client does. */
+    private static final class BlockingLlm extends BaseLlm {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        BlockingLlm() {
+            super("blocking");
+        }
+
+        @Override
+        public Flowable<LlmResponse> generateContent(LlmRequest llmRequest, boolean stream) {
+            return Flowable.fromCallable(() -> {
+                started.countDown();
+                release.await();
+                return LlmResponse.builder().content(Content.fromParts(Part.fromText("Hello."))).build();
+            });
+        }
+
+        @Override
+        public BaseLlmConnection connect(LlmRequest llmRequest) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private AgentServer server;
+    private String baseUrl;
+
+    @AfterEach
+    void stopServer() {
+        server.stop();
+    }
+
+    private AgentRuntime runtime;
+
+    private void start(int threads) throws Exception {
+        start(threads, Duration.ofMinutes(30));
+    }
+
+    private void start(int threads, Duration idleTimeout) throws Exception {
+        start(threads, idleTimeout, ScriptedLlm.builder().fallback(ScriptedLlm.Reply.text("Hello.")).build());
+    }
+
+    private void start(int threads, Duration idleTimeout, BaseLlm model) throws Exception {
+        runtime = AgentRuntime.of(new InMemoryRunner(SimpleAgent.initAgent(model)));
+        server = new AgentServer(0, threads, Map.of("simple", runtime), idleTimeout);
+        server.start();
+        baseUrl = "http://localhost:" + server.port() + "/simple";
+    }
+
+    private String createSession(String query) throws Exception {
+        HttpResponse<String> response = client.send(
+            HttpRequest.newBuilder(URI.create(baseUrl + "/sessions" + query)).POST(HttpRequest.BodyPublishers.noBody()).build(),
+            HttpResponse.BodyHandlers.ofString());
+        assertEquals(201, response.statusCode(), response.body());
+        Matcher id = SESSION_ID.matcher(response.body());
+        assertTrue(id.find());
+        return id.group(1);
+    }
+
+    private HttpResponse<String> send(String sessionId, String message) throws Exception {
+        return client.send(
+            HttpRequest.newBuilder(URI.create(baseUrl + "/sessions/" + sessionId + "/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(message)).build(),
+            HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    void aClientThatDisconnectsWhileSendingDoesNotLeaveTheSessionBusy() throws Exception {
+        start(2);
+        String sessionId = createSession("?user=alice");
+
+        // Announces a longer body than it sends, so reading the message fails
+        try (Socket socket = new Socket("localhost", server.port())) {
+            OutputStream out = socket.getOutputStream();
+            out.write(("POST /simple/sessions/" + sessionId + "/messages HTTP/1.1\r\nHost: localhost\r\n"
+                + "Content-Length: 100\r\n\r\nHello").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+        Thread.sleep(200);
+
+        HttpResponse<String> response = send(sessionId, "Hello");
+        assertEquals(200, response.statusCode(), response.body());
+        assertTrue(response.body().contains("event: done"), response.body());
+    }
+
+    @Test
+    void queryParametersAreDecoded() throws Exception {
+        start(2);
+        String sessionId = createSession("?user=ops%40example.com");
+
+        assertNotNull(runtime.sessionService()
+            .getSession(runtime.appName(), "ops@example.com", sessionId, Optional.empty()).blockingGet());
+    }
+
+    @Test
+    void idleSessionsAreEnded() throws Exception {
+        start(2, Duration.ofMillis(100));
+        String idle = createSession("?user=alice");
+        Thread.sleep(300);
+
+        String fresh = createSession("?user=bob");
+
+        assertEquals(404, send(idle, "Hello").statusCode());
+        assertNull(runtime.sessionService().getSession(runtime.appName(), "alice", idle, Optional.empty()).blockingGet());
+        assertEquals(200, send(fresh, "Hello").statusCode());
+    }
+
+    @Test
+    void aBlockedModelCallDoesNotHoldAServerThread() throws Exception {
+        BlockingLlm model = new BlockingLlm();
+        start(1, Duration.ofMinutes(30), model);
+        String sessionId = createSession("?user=alice");
+
+        CompletableFuture<HttpResponse<String>> reply = client.sendAsync(
+            HttpRequest.newBuilder(URI.create(baseUrl + "/sessions/" + sessionId + "/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("Hello")).build(),
+            HttpResponse.BodyHandlers.ofString());
+        assertTrue(model.started.await(5, TimeUnit.SECONDS));
+
+        // The server's only thread is free while the model call is blocked
+        HttpResponse<String> stats = client.send(
+            HttpRequest.newBuilder(URI.create(baseUrl + "/stats")).timeout(Duration.ofSeconds(2)).build(),
+            HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, stats.statusCode());
+
+        model.release.countDown();
+        assertTrue(reply.get(5, TimeUnit.SECONDS).body().contains("event: done"));
+    }
+}
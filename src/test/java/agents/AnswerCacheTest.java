@@ -0,0 +1,111 @@
+package agents;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+class AnswerCacheTest {
+
+    private static final AnswerCache.Answer ANSWER = new AnswerCache.Answer("Run a repair.", List.of());
+
+    private final AtomicLong now = new AtomicLong();
+    private final AtomicReference<String> docsVersion = new AtomicReference<>("v1");
+    private final AnswerCache cache = new AnswerCache(2, Duration.ofMinutes(10), 0.6, docsVersion::get, now::get);
+
+    @Test
+    void questionsWithTheSameTermsShareAnEntry() {
+        cache.put("Why are my files corrupted?", ANSWER, 0);
+
+        assertEquals(ANSWER, cache.get("why are files corrupted"));
+        assertEquals(ANSWER, cache.get("Files corrupted, why?"));
+    }
+
+    @Test
+    void similarQuestionsHitAboveTheThreshold() {
+        cache.put("files corrupted after sync", ANSWER, 0);
+
+        assertNotNull(cache.get("files corrupted after the sync crash"));
+        assertNull(cache.get("files slow"));
+    }
+
+    @Test
+    void entriesExpireAfterTheTtl() {
+        cache.put("Why are my files corrupted?", ANSWER, 0);
+
+        now.set(Duration.ofMinutes(10).toNanos());
+        assertNotNull(cache.get("Why are my files corrupted?"));
+
+        now.incrementAndGet();
+        assertNull(cache.get("Why are my files corrupted?"));
+        assertEquals(0, cache.size());
+        assertEquals(1L, cache.stats().get("expirations"));
+    }
+
+    @Test
+    void anExpiredBestMatchFallsBackToTheNextSimilarEntry() {
+        AnswerCache.Answer older = new AnswerCache.Answer("Check the disk.", List.of());
+        cache.put("files corrupted sync crash disk", older, 0);
+        now.set(Duration.ofMinutes(5).toNanos());
+        cache.put("files corrupted sync crash repair log", ANSWER, 0);
+
+        now.set(Duration.ofMinutes(11).toNanos());
+
+        assertEquals(ANSWER, cache.get("files corrupted sync crash"));
+        assertEquals(1L, cache.stats().get("expirations"));
+    }
+
+    @Test
+    void changedDocumentsInvalidateOldEntries() {
+        cache.put("Why are my files corrupted?", ANSWER, 0);
+
+        docsVersion.set("v2");
+
+        assertNull(cache.get("Why are my files corrupted?"));
+        assertEquals(1L, cache.stats().get("invalidations"));
+
+        cache.put("Why are my files corrupted?", ANSWER, 0);
+        assertEquals(ANSWER, cache.get("Why are my files corrupted?"));
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedEntry() {
+        cache.put("files corrupted", ANSWER, 0);
+        cache.put("port in use", ANSWER, 0);
+        cache.get("files corrupted");
+
+        cache.put("encryption handled", ANSWER, 0);
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("files corrupted"));
+        assertNull(cache.get("port in use"));
+        assertEquals(1L, cache.stats().get("evictions"));
+    }
+
+    @Test
+    void countsSavedLatencyOnHits() {
+        cache.put("files corrupted", ANSWER, Duration.ofMillis(1500).toNanos());
+
+        cache.get("files corrupted");
+        cache.get("files corrupted");
+        cache.get("kubernetes");
+
+        assertEquals(2L, cache.stats().get("hits"));
+        assertEquals(1L, cache.stats().get("misses"));
+        assertEquals(3000L, cache.stats().get("latencySavedMs"));
+    }
+
+    @Test
+    void ignoresQuestionsWithoutTerms() {
+        cache.put("what is it?", ANSWER, 0);
+
+        assertEquals(0, cache.size());
+        assertNull(cache.get("what is it?"));
+    }
+}
@@ -0,0 +1,99 @@
+package agents;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.adk.JsonBaseModel;
+import com.google.adk.runner.InMemoryRunner;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BatchEvaluationTest {
+
+    @TempDir
+    Path directory;
+
+    private static final String CORPUS = """
+        {"id": "refund-1", "user": "1001-A", "turns": ["I want a refund", "It was yesterday"]}
+        {"id": "refund-2", "turns": ["Refund please"]}
+
+        {"id": "broken", "turns": [
+        {"id": "no-turns", "turns": []}
+        {"id": "billing-1", "turns": [{"text": "Why was I charged twice?"}]}
+        {"id": "technical-1", "turns": ["The sync client does not start"]}
+        """;
+
+    private final AgentRuntime runtime = AgentRuntime.of(new InMemoryRunner(SimpleAgent.initAgent(
+        ScriptedLlm.builder().name("evaluation-model").fallback(ScriptedLlm.Reply.text("Here is what I found.")).build()),
+        "evaluation"));
+
+    // Replays the corpus, or its first lines, into the output the way main does after resume
+    private Map<String, Object> run(Path output, String corpus, Set<String> done) throws Exception {
+        try (BufferedReader reader = new BufferedReader(new StringReader(corpus));
+             BufferedWriter writer = Files.newBufferedWriter(output, UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            return new BatchEvaluation(runtime, writer).run(reader, done, 4);
+        }
+    }
+
+    @Test
+    void anInterruptedRunResumesAndATornLastLineIsDropped() throws Exception {
+        Path output = directory.resolve("transcripts.jsonl");
+        Map<String, Object> first = run(output, String.join("\n", CORPUS.lines().limit(2).toList()), Set.of());
+        assertEquals(2L, first.get("conversations"));
+        String written = Files.readString(output, UTF_8);
+
+        // An interruption in the middle of a write leaves a transcript without its line break
+        Files.writeString(output, "{\"id\":\"billing-1\",\"status\":\"ok\",\"turns\":[{\"user\":\"Why", UTF_8, StandardOpenOption.APPEND);
+
+        Set<String> done = BatchEvaluation.resume(output);
+        assertEquals(Set.of("refund-1", "refund-2"), done);
+        assertEquals(written, Files.readString(output, UTF_8));
+
+        Map<String, Object> resumed = run(output, CORPUS, done);
+        assertEquals(2L, resumed.get("conversations"));
+        assertEquals(2L, resumed.get("skipped"));
+        assertEquals(2L, resumed.get("invalid"));
+        assertEquals(0L, resumed.get("failed"));
+
+        String transcripts = Files.readString(output, UTF_8);
+        assertTrue(transcripts.startsWith(written));
+        assertTrue(transcripts.endsWith("\n"));
+        List<String> ids = new ArrayList<>();
+        for (String line : transcripts.split("\n")) {
+            Map<?, ?> transcript = JsonBaseModel.getMapper().readValue(line, Map.class);
+            ids.add((String) transcript.get("id"));
+            assertEquals("ok", transcript.get("status"), line);
+            List<?> turns = (List<?>) transcript.get("turns");
+            assertEquals("Here is what I found.", ((Map<?, ?>) turns.get(turns.size() - 1)).get("reply"), line);
+        }
+        // Transcripts are in completion order, after the ones already written
+        assertEquals(4, ids.size());
+        assertEquals(Set.of("refund-1", "refund-2"), Set.copyOf(ids.subList(0, 2)));
+        assertEquals(Set.of("billing-1", "technical-1"), Set.copyOf(ids.subList(2, 4)));
+        assertEquals(Set.of("refund-1", "refund-2", "billing-1", "technical-1"), BatchEvaluation.resume(output));
+    }
+
+    @Test
+    void anUnreadableTranscriptRunsAgain() throws Exception {
+        Path output = directory.resolve("transcripts.jsonl");
+        assertEquals(Set.of(), BatchEvaluation.resume(output));
+
+        Files.writeString(output, "{\"id\":\"refund-1\",\"status\":\"ok\"}\nnot a transcript\n\n", UTF_8);
+
+        assertEquals(Set.of("refund-1"), BatchEvaluation.resume(output));
+        assertEquals("{\"id\":\"refund-1\",\"status\":\"ok\"}\nnot a transcript\n\n", Files.readString(output, UTF_8));
+    }
+}
@@ -0,0 +1,52 @@
+package agents;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.Test;
+
+class BillingRulesTest {
+
+    private final BillingRules rules = BillingRules.standard();
+
+    @Test
+    void refundVerdictsFollowThePolicyWindows() {
+        assertEquals("UNKNOWN", rules.refund(-1).verdict());
+        for (int days = 0; days <= 7; days++) {
+            assertEquals("FULL", rules.refund(days).verdict(), days + " days");
+        }
+        for (int days = 8; days <= 30; days++) {
+            assertEquals("PARTIAL", rules.refund(days).verdict(), days + " days");
+        }
+        assertEquals("NONE", rules.refund(31).verdict());
+        assertEquals("NONE", rules.refund(400).verdict());
+    }
+
+    @Test
+    void refundExplanationsReadWellForAnyNumberOfDays() {
+        assertEquals("The purchase was made today, within the 7-day window for a full refund.", rules.refund(0).explanation());
+        assertEquals("The purchase was made yesterday, within the 7-day window for a full refund.", rules.refund(1).explanation());
+        assertEquals("The purchase was made 2 days ago, within the 7-day window for a full refund.", rules.refund(2).explanation());
+        for (int days = 0; days <= 60; days++) {
+            String explanation = rules.refund(days).explanation();
+            assertFalse(explanation.matches(".*\\b[01] days.*"), explanation);
+        }
+    }
+
+    @Test
+    void balanceExplanationsReadWellForChargesMadeTodayOrYesterday() {
+        assertEquals("A balance of $49.99 is due from 1 unpaid charge(s); the oldest was made today and is not yet overdue.",
+            rules.evaluate("account", pending(0)).explanation());
+        assertEquals("A balance of $49.99 is due from 1 unpaid charge(s); the oldest was made yesterday and is not yet overdue.",
+            rules.evaluate("account", pending(1)).explanation());
+        assertEquals("A balance of $49.99 is due from 1 unpaid charge(s); the oldest is 5 days old and not yet overdue.",
+            rules.evaluate("account", pending(5)).explanation());
+        assertEquals("OVERDUE", rules.evaluate("account", pending(15)).verdict());
+    }
+
+    private static BillingRules.Facts pending(int oldestPendingDays) {
+        return new BillingRules.Facts(-1, 1, 4999, oldestPendingDays, 3, 4999, LocalDate.of(2025, 10, 1));
+    }
+}
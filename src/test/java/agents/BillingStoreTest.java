@@ -0,0 +1,104 @@
+package agents;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class BillingStoreTest {
+
+    private static final LocalDate START = LocalDate.of(2025, 1, 1);
+
+    // 25 transactions a day apart; every fifth is pending, the rest paid, 100 cents each
+    private static List<BillingStore.Transaction> transactions() {
+        List<BillingStore.Transaction> transactions = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            BillingStore.Status status = i % 5 == 0 ? BillingStore.Status.PENDING : BillingStore.Status.PAID;
+            transactions.add(new BillingStore.Transaction(START.plusDays(i), "Charge " + i, 100, status));
+        }
+        return transactions;
+    }
+
+    private final BillingStore store = BillingStore.of(Map.of(
+        "1001-A", transactions(),
+        "2002-B", List.of(new BillingStore.Transaction(START, "Plan", 4999, BillingStore.Status.REFUNDED))));
+
+    @Test
+    void pagesFollowTheCursorNewestFirstWithoutGapsOrRepeats() {
+        List<BillingStore.Transaction> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            BillingStore.Page page = store.query("1001-A", null, null, null, cursor, 10).orElseThrow();
+            seen.addAll(page.transactions());
+            cursor = page.nextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(3, pages);
+        assertEquals(25, seen.size());
+        for (int i = 0; i < seen.size(); i++) {
+            assertEquals(START.plusDays(24 - i), seen.get(i).date());
+        }
+    }
+
+    @Test
+    void lastFullPageHasNoCursor() {
+        BillingStore.Page page = store.query("1001-A", null, null, null, "15", 10).orElseThrow();
+
+        assertEquals(10, page.transactions().size());
+        assertNull(page.nextCursor());
+    }
+
+    @Test
+    void cursorsSkipRowsThatDoNotMatchTheFilters() {
+        BillingStore.Page first = store.query("1001-A", null, null, BillingStore.Status.PENDING, null, 2).orElseThrow();
+        BillingStore.Page second = store.query("1001-A", null, null, BillingStore.Status.PENDING, first.nextCursor(), 2)
+            .orElseThrow();
+        BillingStore.Page third = store.query("1001-A", null, null, BillingStore.Status.PENDING, second.nextCursor(), 2)
+            .orElseThrow();
+
+        assertEquals(List.of(START.plusDays(20), START.plusDays(15)), first.transactions().stream()
+            .map(BillingStore.Transaction::date).toList());
+        assertEquals(List.of(START.plusDays(10), START.plusDays(5)), second.transactions().stream()
+            .map(BillingStore.Transaction::date).toList());
+        assertEquals(List.of(START), third.transactions().stream().map(BillingStore.Transaction::date).toList());
+        assertNull(third.nextCursor());
+    }
+
+    @Test
+    void summaryCoversEveryMatchingTransactionNotJustThePage() {
+        BillingStore.Page page = store.query("1001-A", START.plusDays(10), START.plusDays(19), null, null, 3).orElseThrow();
+
+        assertEquals(3, page.transactions().size());
+        assertEquals(new BillingStore.Summary(10, 800, 200), page.summary());
+    }
+
+    @Test
+    void userIdsAreMatchedCaseInsensitively() {
+        assertTrue(store.query(" 1001-a ", null, null, null, null, 1).isPresent());
+        assertTrue(store.query("9999-Z", null, null, null, null, 1).isEmpty());
+        assertTrue(store.query("an id much longer than sixteen bytes", null, null, null, null, 1).isEmpty());
+    }
+
+    @Test
+    void rejectsMalformedCursors() {
+        assertThrows(IllegalArgumentException.class, () -> store.query("1001-A", null, null, null, "next", 10));
+    }
+
+    @Test
+    void keepsDescriptionsAndAmounts() {
+        BillingStore.Transaction only = store.query("2002-B", null, null, null, null, 10).orElseThrow().transactions().get(0);
+
+        assertEquals(new BillingStore.Transaction(START, "Plan", 4999, BillingStore.Status.REFUNDED), only);
+        assertEquals(2, store.userCount());
+        assertEquals(26, store.transactionCount());
+    }
+}
@@ -0,0 +1,119 @@
+package agents;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+class CircuitBreakerTest {
+
+    // Opens when half of four calls failed; trial calls are let through on the next call after opening
+    private final CircuitBreaker breaker = new CircuitBreaker("stub", new CircuitBreaker.Settings(4, 4, 0.5, Duration.ZERO, 2));
+
+    private CircuitBreaker.Permit acquire() {
+        CircuitBreaker.Permit permit = breaker.tryAcquire();
+        assertNotNull(permit, "the call was not let through");
+        return permit;
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            acquire().onFailure();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    }
+
+    @Test
+    void opensOnceTheFailureRateIsReached() {
+        acquire().onSuccess();
+        acquire().onSuccess();
+        acquire().onFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+
+        acquire().onFailure();
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertEquals(1L, breaker.stats().get("opened"));
+    }
+
+    @Test
+    void failsFastWhileOpen() {
+        CircuitBreaker slow = new CircuitBreaker("stub", new CircuitBreaker.Settings(4, 1, 0.5, Duration.ofMinutes(1), 1));
+        slow.tryAcquire().onFailure();
+
+        assertNull(slow.tryAcquire());
+        assertEquals(1L, slow.stats().get("rejected"));
+    }
+
+    @Test
+    void successfulTrialsClose() {
+        open();
+
+        CircuitBreaker.Permit first = acquire();
+        CircuitBreaker.Permit second = acquire();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertNull(breaker.tryAcquire());
+
+        first.onSuccess();
+        second.onSuccess();
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(0, breaker.stats().get("callsInWindow"));
+    }
+
+    @Test
+    void aFailedTrialOpensAgain() {
+        open();
+
+        acquire().onFailure();
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertEquals(2L, breaker.stats().get("opened"));
+    }
+
+    @Test
+    void callsLetThroughBeforeOpeningDoNotDecideTheTrials() {
+        CircuitBreaker.Permit lateSuccess = acquire();
+        CircuitBreaker.Permit lateFailure = acquire();
+        open();
+        CircuitBreaker.Permit trial = acquire();
+
+        lateSuccess.onSuccess();
+        lateFailure.onFailure();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+
+        trial.onSuccess();
+        acquire().onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void trialsOfAnEarlierHalfOpenStateDoNotCount() {
+        open();
+        CircuitBreaker.Permit staleTrial = acquire();
+        acquire().onFailure();
+        CircuitBreaker.Permit trial = acquire();
+
+        staleTrial.onFailure();
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        trial.onSuccess();
+        acquire().onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void anIgnoredTrialGivesBackItsSlot() {
+        open();
+        CircuitBreaker.Permit first = acquire();
+        acquire();
+        assertNull(breaker.tryAcquire());
+
+        first.onIgnored();
+
+        assertNotNull(breaker.tryAcquire());
+    }
+}
@@ -0,0 +1,139 @@
+package agents;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.adk.agents.LlmAgent;
+import com.google.adk.models.BaseLlm;
+import com.google.adk.models.BaseLlmConnection;
+import com.google.adk.models.LlmRequest;
+import com.google.adk.models.LlmResponse;
+import com.google.adk.runner.InMemoryRunner;
+import com.google.adk.sessions.Session;
+import com.google.adk.tools.BaseTool;
+import com.google.adk.tools.ToolContext;
+import com.google.genai.types.Content;
+import com.google.genai.types.FunctionDeclaration;
+import com.google.genai.types.Part;
+
+import org.junit.jupiter.api.Test;
+
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Single;
+
+class ConcurrentToolTest {
+
+    /** Blocks its thread like the file-backed tools do, and counts how many calls overlap. */
+    private static final class BlockingTool extends BaseTool {
+        private final long sleepMs;
+        private final AtomicInteger running;
+        private final AtomicInteger mostRunning;
+
+        BlockingTool(String name, long sleepMs, AtomicInteger running, AtomicInteger mostRunning) {
+            super(name, "Looks up " + name + ".");
+            this.sleepMs = sleepMs;
+            this.running = running;
+            this.mostRunning = mostRunning;
+        }
+
+        @Override
+        public Optional<FunctionDeclaration> declaration() {
+            return Optional.of(FunctionDeclaration.builder().name(name()).description(description()).build());
+        }
+
+        @Override
+        public Single<Map<String, Object>> runAsync(Map<String, Object> args, ToolContext toolContext) {
+            return Single.fromCallable(() -> {
+                mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(sleepMs);
+                } finally {
+                    running.decrementAndGet();
+                }
+                return Map.<String, Object>of("status", "ok", "tool", name());
+            });
+        }
+    }
+
+    /** Asks for every tool in one response, then answers; keeps the requests it was sent. */
+    private static final class ParallelCallsLlm extends BaseLlm {
+        private final List<String> tools;
+        final List<LlmRequest> requests = new ArrayList<>();
+
+        ParallelCallsLlm(List<String> tools) {
+            super("parallel-calls");
+            this.tools = tools;
+        }
+
+        @Override
+        public Flowable<LlmResponse> generateContent(LlmRequest llmRequest, boolean stream) {
+            requests.add(llmRequest);
+            List<Part> parts = new ArrayList<>();
+            if (ScriptedLlm.lastFunctionResponse(llmRequest).isEmpty()) {
+                tools.forEach(tool -> parts.add(Part.fromFunctionCall(tool, Map.of())));
+            } else {
+                parts.add(Part.fromText("Done."));
+            }
+            return Flowable.just(LlmResponse.builder().content(Content.builder().role("model").parts(parts).build()).build());
+        }
+
+        @Override
+        public BaseLlmConnection connect(LlmRequest llmRequest) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @Test
+    void callsOfOneResponseRunTogetherAndAnswerInTheirOrder() {
+        List<String> names = List.of("troubleshootingNotes", "integrationTips", "sourceCode");
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger mostRunning = new AtomicInteger();
+        // The first call takes longest, so the calls finish in the reverse of the order they were made
+        List<BaseTool> tools = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            tools.add(new ConcurrentTool(new BlockingTool(names.get(i), 200L * (names.size() - i), running, mostRunning)));
+        }
+        ParallelCallsLlm model = new ParallelCallsLlm(names);
+        InMemoryRunner runner = new InMemoryRunner(LlmAgent.builder()
+            .name("parallel").description("Answers with tools.").model(new CallOrderLlm(model)).instruction("Use the tools.").tools(tools).build());
+        Session session = runner.sessionService().createSession(runner.appName(), "alice").blockingGet();
+
+        long start = System.nanoTime();
+        runner.runAsync("alice", session.id(), Content.fromParts(Part.fromText("Why is sync slow?"))).blockingSubscribe();
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(names.size(), mostRunning.get());
+        assertTrue(elapsedMs < 1200, "took " + elapsedMs + " ms, the calls one after another take 1200 ms");
+
+        // The follow-up request carries one response per call, in the order the model asked for them
+        List<String> answered = new ArrayList<>();
+        LlmRequest followUp = model.requests.get(1);
+        followUp.contents().get(followUp.contents().size() - 1).parts().orElse(List.of()).forEach(part ->
+            part.functionResponse().ifPresent(response -> answered.add(String.valueOf(response.response().orElseThrow().get("tool")))));
+        assertEquals(names, answered);
+    }
+
+    @Test
+    void callsRunOnTheToolPool() {
+        Map<String, Object> threads = new ConcurrentHashMap<>();
+        BaseTool tool = new ConcurrentTool(new BaseTool("recordThread", "Records its thread.") {
+            @Override
+            public Single<Map<String, Object>> runAsync(Map<String, Object> args, ToolContext toolContext) {
+                return Single.fromCallable(() -> {
+                    threads.put("thread", Thread.currentThread().getName());
+                    return Map.of("status", "ok");
+                });
+            }
+        });
+
+        assertEquals("ok", tool.runAsync(Map.of(), null).blockingGet().get("status"));
+        assertEquals("agent-tools", threads.get("thread"));
+    }
+}
@@ -0,0 +1,160 @@
+package agents;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.adk.models.LlmRequest;
+import com.google.genai.types.Content;
+import com.google.genai.types.GenerateContentConfig;
+import com.google.genai.types.Part;
+
+import org.junit.jupiter.api.Test;
+
+class ContextBudgetTest {
+
+    private static final String AGENT = "simple";
+
+    private static ContextBudget budget(int maxTokens, int maxPartTokens, int historyPartTokens) {
+        return new ContextBudget(new ContextBudget.Settings(maxTokens, maxPartTokens, historyPartTokens, false), Map.of());
+    }
+
+    private static Content user(String text) {
+        return Content.builder().role("user").parts(List.of(Part.fromText(text))).build();
+    }
+
+    private static Content model(String text) {
+        return Content.builder().role("model").parts(List.of(Part.fromText(text))).build();
+    }
+
+    private static LlmRequest request(String instruction, List<Content> contents) {
+        return LlmRequest.builder()
+            .config(GenerateContentConfig.builder().systemInstruction(Content.fromParts(Part.fromText(instruction))).build())
+            .contents(contents)
+            .build();
+    }
+
+    // Text of about the given number of estimated tokens, one short word each
+    private static String words(String prefix, int tokens) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < tokens; i++) {
+            text.append(prefix).append(Character.toString('a' + i % 26)).append(' ');
+        }
+        return text.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> stats(ContextBudget budget) {
+        return (Map<String, Object>) budget.stats().get(AGENT);
+    }
+
+    @Test
+    void estimatesWordsNumbersAndPunctuation() {
+        assertEquals(1, ContextBudget.estimateTokens("hello"));
+        assertEquals(4, ContextBudget.estimateTokens("internationalization"));
+        assertEquals(2, ContextBudget.estimateTokens("12345"));
+        assertEquals(4, ContextBudget.estimateTokens("a, b."));
+        assertEquals(0, ContextBudget.estimateTokens(" \n\t"));
+    }
+
+    @Test
+    void summariesKeepTheFirstSentenceAndTheBestMatches() {
+        String text = "Nebula Sync keeps a block cache. The dashboard shows sync progress. "
+            + "Corrupted files are fetched again from another node. Release notes are published monthly.";
+
+        String summary = ContextBudget.summarize(text, 30, Set.copyOf(DocIndex.tokenize("why are files corrupted")));
+
+        assertEquals("Nebula Sync keeps a block cache. [...] Corrupted files are fetched again from another node. [...]", summary);
+        assertTrue(ContextBudget.estimateTokens(summary) <= 30);
+    }
+
+    @Test
+    void describesWhatWasCut() {
+        ContextBudget.Report report = new ContextBudget.Report(900, 400, 2, List.of("searchDocs", "searchDocs", "text"));
+
+        assertEquals("Context budget technical: 900 -> 400 of 500 tokens, left out 2 earlier turns, shortened searchDocs x2, text",
+            ContextBudget.describe("technical", 500, report));
+    }
+
+    @Test
+    void aRequestUnderTheCeilingIsSentAsItIs() {
+        ContextBudget budget = budget(1000, 500, 100);
+        LlmRequest request = request("Answer briefly.", List.of(user("Hello"), model("Hi, how can I help?"), user("Why are my files corrupted?")));
+
+        assertSame(request, budget.fit(request, AGENT));
+        assertEquals(0L, stats(budget).get("trimmed"));
+    }
+
+    @Test
+    void earlierTurnsAreLeftOutWithANote() {
+        ContextBudget budget = budget(600, 1500, 300);
+        List<Content> contents = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            contents.add(user("Question " + i + " " + words("ask", 100)));
+            contents.add(model(words("answer", 100)));
+        }
+        contents.add(user("Why are my files corrupted?"));
+
+        LlmRequest fitted = budget.fit(request("Answer briefly.", contents), AGENT);
+
+        List<Content> kept = fitted.contents();
+        assertTrue(ContextBudget.estimate(fitted) <= 600);
+        assertTrue(kept.get(0).parts().orElseThrow().get(0).text().orElseThrow().startsWith("For context:"));
+        assertEquals("Why are my files corrupted?", kept.get(kept.size() - 1).parts().orElseThrow().get(0).text().orElseThrow());
+        assertTrue((long) stats(budget).get("droppedTurns") > 0);
+        assertEquals(0L, stats(budget).get("overBudget"));
+    }
+
+    @Test
+    void longToolResultsAreShortenedToThePartLimit() {
+        ContextBudget budget = budget(100_000, 200, 100);
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            results.add(Map.of("section", "Section " + i, "text", words("result", 20)));
+        }
+        Content response = Content.builder().role("user")
+            .parts(List.of(Part.fromFunctionResponse("searchDocs", Map.of("results", results)))).build();
+        LlmRequest request = request("Answer briefly.", List.of(user("Why are my files corrupted?"), response));
+
+        LlmRequest fitted = budget.fit(request, AGENT);
+
+        Content shortened = fitted.contents().get(1);
+        // The part limit, and the note saying how many results were left out
+        assertTrue(ContextBudget.estimate(shortened) <= 200 + 50);
+        Map<String, Object> kept = shortened.parts().orElseThrow().get(0).functionResponse().orElseThrow().response().orElseThrow();
+        assertTrue(String.valueOf(kept.get("contextNote")).startsWith("Showing "));
+        assertEquals(1L, stats(budget).get("shortenedParts"));
+    }
+
+    @Test
+    void aFixedPromptOverTheCeilingIsSentAsItIs() {
+        ContextBudget budget = budget(10, 500, 100);
+        LlmRequest request = request(words("rule", 50), List.of());
+
+        assertSame(request, budget.fit(request, AGENT));
+        assertEquals(1L, stats(budget).get("overBudget"));
+    }
+
+    @Test
+    void pinnedDocumentsCountTowardsTheCeiling() {
+        ContextBudget budget = budget(600, 1500, 300);
+        List<Content> contents = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            contents.add(user("Question " + i + " " + words("ask", 50)));
+            contents.add(model(words("answer", 50)));
+        }
+        contents.add(user("Why are my files corrupted?"));
+        LlmRequest request = request("Answer briefly.", contents);
+
+        assertSame(request, budget.fit(request, AGENT, 0));
+        LlmRequest fitted = budget.fit(request, AGENT, 400);
+
+        assertTrue(ContextBudget.estimate(fitted) + 400 <= 600);
+        assertTrue(fitted.contents().size() < contents.size());
+    }
+}
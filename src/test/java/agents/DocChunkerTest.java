@@ -0,0 +1,182 @@
+package agents;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DocChunkerTest {
+
+    private static final List<String> TRICKY_DOCUMENTS = List.of(
+        "",
+        "\n\n",
+        "no heading and no trailing newline",
+        "1. Heading only\n\n2. Second\nbody of the second",
+        "Intro before any heading\n1. First\n  body\n\n2. Empty\n   \n3. Last\nlast body",
+        "1. Windows line endings\r\nbody one\r\n\r\n2. Next\r\nbody two\r\n",
+        "1. Überschrift mit Umlauten\nKörper — café, naïve, 東京, emoji 🚀\n\n2. Second\n2.5 is not a heading\n",
+        "first paragraph\n   \nsecond paragraph\n\n\n\nthird\nparagraph\n \t \nfourth",
+        "  indented paragraph  \n\n\ttabbed paragraph\n",
+        "\"\"\"Module docstring.\"\"\"\nimport os\n\nclass Outer:\n    def __init__(self):\n        pass\n\n"
+            + "    def run(self):\n        return 1\n\ndef helper():\n    pass\n\nclass Second:\n    def go(self):\n        "
+            + "# déjà vu\n        pass\n\nif __name__ == \"__main__\":\n    Outer().run()\n",
+        "def free_function():\n    pass\n\n\n\nclass NoMethods:\n    pass");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void knowledgeFilesAreSplitWhereTheStringSplitterSplitThem() throws IOException {
+        assertSameSplitAsBefore("troubleshootingNotes.md", DocChunker.Format.NUMBERED_HEADINGS, DocChunkerTest::oldNumberedHeadings);
+        assertSameSplitAsBefore("integrationTips.md", DocChunker.Format.PARAGRAPHS, DocChunkerTest::oldParagraphs);
+        assertSameSplitAsBefore("sourceCode.py", DocChunker.Format.PYTHON, DocChunkerTest::oldPythonDefinitions);
+    }
+
+    @Test
+    void edgeCasesAreSplitWhereTheStringSplitterSplitThem() throws IOException {
+        int n = 0;
+        for (String document : TRICKY_DOCUMENTS) {
+            Path file = directory.resolve("doc" + n++);
+            Files.writeString(file, document);
+            ByteBuffer mapped = map(file);
+
+            assertEquals(oldNumberedHeadings("doc", document), chunks(mapped, DocChunker.Format.NUMBERED_HEADINGS), document);
+            assertEquals(oldParagraphs("doc", document), chunks(mapped, DocChunker.Format.PARAGRAPHS), document);
+            assertEquals(oldPythonDefinitions("doc", document), chunks(mapped, DocChunker.Format.PYTHON), document);
+        }
+    }
+
+    @Test
+    void sectionsAreByteRangesOfTheEncodedDocument() throws IOException {
+        String document = "1. Café\nprix: 5 €\n\n2. 東京\n遅延\n";
+        Path file = directory.resolve("doc.md");
+        Files.writeString(file, document);
+
+        List<DocChunker.Section> sections = DocChunker.sections(map(file), DocChunker.Format.NUMBERED_HEADINGS);
+
+        int second = "1. Café\nprix: 5 €\n\n".getBytes(UTF_8).length;
+        assertEquals(List.of(
+            new DocChunker.Section("1. Café", 0, second),
+            new DocChunker.Section("2. 東京", second, document.getBytes(UTF_8).length)),
+            sections);
+    }
+
+    private static void assertSameSplitAsBefore(String name, DocChunker.Format format,
+            BiFunction<String, String, List<DocChunk>> oldSplitter) throws IOException {
+        Path file = Path.of("knowledge", name);
+        List<DocChunk> expected = oldSplitter.apply("doc", Files.readString(file));
+
+        assertFalse(expected.isEmpty(), name);
+        assertEquals(expected, chunks(map(file), format), name);
+    }
+
+    private static List<DocChunk> chunks(ByteBuffer document, DocChunker.Format format) {
+        List<DocChunk> chunks = new ArrayList<>();
+        for (DocChunker.Section section : DocChunker.sections(document, format)) {
+            chunks.add(DocChunker.chunk("doc", format, section, document));
+        }
+        return chunks;
+    }
+
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    // The splitters as they were before documents were memory-mapped, kept as the reference
+
+    private static final Pattern NUMBERED_HEADING = Pattern.compile("^\\d+\\.\\s+\\S.*$");
+    private static final Pattern PYTHON_CLASS = Pattern.compile("^class\\s+(\\w+)");
+    private static final Pattern PYTHON_METHOD = Pattern.compile("^\\s+def\\s+(\\w+)");
+    private static final Pattern PYTHON_MAIN = Pattern.compile("^if\\s+__name__\\s*==");
+
+    private static List<DocChunk> oldNumberedHeadings(String source, String document) {
+        List<DocChunk> chunks = new ArrayList<>();
+        String heading = null;
+        StringBuilder body = new StringBuilder();
+
+        for (String line : document.split("\n", -1)) {
+            if (NUMBERED_HEADING.matcher(line).matches()) {
+                addSection(chunks, source, heading, body);
+                heading = line.trim();
+                body.setLength(0);
+            } else {
+                body.append(line).append('\n');
+            }
+        }
+        addSection(chunks, source, heading, body);
+        return chunks;
+    }
+
+    private static List<DocChunk> oldParagraphs(String source, String document) {
+        List<DocChunk> chunks = new ArrayList<>();
+        int number = 1;
+        for (String paragraph : document.split("\n\\s*\n")) {
+            if (!paragraph.isBlank()) {
+                chunks.add(new DocChunk(source, "paragraph " + number++, paragraph.trim()));
+            }
+        }
+        return chunks;
+    }
+
+    private static List<DocChunk> oldPythonDefinitions(String source, String code) {
+        List<DocChunk> chunks = new ArrayList<>();
+        String currentClass = null;
+        String section = "module header";
+        StringBuilder body = new StringBuilder();
+
+        for (String line : code.split("\n", -1)) {
+            Matcher classMatch = PYTHON_CLASS.matcher(line);
+            Matcher methodMatch = PYTHON_METHOD.matcher(line);
+            String next = null;
+
+            if (classMatch.find()) {
+                currentClass = classMatch.group(1);
+                next = "class " + currentClass;
+            } else if (methodMatch.find()) {
+                next = currentClass == null ? methodMatch.group(1) : currentClass + "." + methodMatch.group(1);
+            } else if (PYTHON_MAIN.matcher(line).find()) {
+                currentClass = null;
+                next = "__main__";
+            }
+
+            if (next != null) {
+                addCode(chunks, source, section, body);
+                section = next;
+                body.setLength(0);
+            }
+            body.append(line).append('\n');
+        }
+        addCode(chunks, source, section, body);
+        return chunks;
+    }
+
+    private static void addSection(List<DocChunk> chunks, String source, String heading, StringBuilder body) {
+        if (heading == null || body.toString().isBlank()) {
+            return;
+        }
+        chunks.add(new DocChunk(source, heading, heading + "\n" + body.toString().strip()));
+    }
+
+    private static void addCode(List<DocChunk> chunks, String source, String section, StringBuilder body) {
+        if (body.toString().isBlank()) {
+            return;
+        }
+        chunks.add(new DocChunk(source, section, body.toString().stripTrailing()));
+    }
+}
@@ -0,0 +1,66 @@
+package agents;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class DocIndexTest {
+
+    private static final List<DocChunk> CHUNKS = List.of(
+        new DocChunk("troubleshooting.md", "Corrupted files", "Files get corrupted when the sync is interrupted. Run a repair."),
+        new DocChunk("troubleshooting.md", "Port in use", "If the port is already in use, change the port in config.yaml."),
+        new DocChunk("integration.md", "Encryption", "Files are encrypted with AES before they leave the device."),
+        new DocChunk("integration.md", "Proxy", "The proxy port is set under network.proxy_port; the port must be free.")
+    );
+
+    private final DocIndex index = new DocIndex(CHUNKS);
+
+    @Test
+    void ranksTheChunkWithTheMostMatchingTermsFirst() {
+        List<DocIndex.Hit> hits = index.search("port already in use", 4);
+
+        assertEquals("Port in use", hits.get(0).chunk().section());
+        assertEquals("Proxy", hits.get(1).chunk().section());
+        assertEquals(2, hits.size());
+        assertTrue(hits.get(0).score() > hits.get(1).score());
+    }
+
+    @Test
+    void matchesInflectedFormsOfAWord() {
+        List<DocIndex.Hit> hits = index.search("How is encryption handled?", 3);
+
+        assertEquals("Encryption", hits.get(0).chunk().section());
+    }
+
+    @Test
+    void returnsAtMostKHits() {
+        assertEquals(1, index.search("port", 1).size());
+        assertEquals(0, index.search("port", 0).size());
+    }
+
+    @Test
+    void returnsNothingForStopWordsOrUnknownTerms() {
+        assertTrue(index.search("what is the", 3).isEmpty());
+        assertTrue(index.search("kubernetes", 3).isEmpty());
+    }
+
+    @Test
+    void breaksTiesByChunkOrder() {
+        DocIndex twins = new DocIndex(List.of(
+            new DocChunk("a.md", "First", "repair"),
+            new DocChunk("a.md", "Second", "repair")));
+
+        List<DocIndex.Hit> hits = twins.search("repair", 2);
+
+        assertEquals("First", hits.get(0).chunk().section());
+        assertEquals("Second", hits.get(1).chunk().section());
+    }
+
+    @Test
+    void tokenizeDropsStopWordsAndStripsSuffixes() {
+        assertEquals(List.of("encrypt", "handl", "config"), DocIndex.tokenize("Is encryption handled by _config?"));
+    }
+}
@@ -0,0 +1,101 @@
+package agents;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class IntentClassifierTest {
+
+    private static final List<IntentClassifier.Example> EXAMPLES = List.of(
+        new IntentClassifier.Example(Route.TECHNICAL, "Why are my files corrupted?"),
+        new IntentClassifier.Example(Route.TECHNICAL, "The sync service fails to start"),
+        new IntentClassifier.Example(Route.TECHNICAL, "How is encryption handled?"),
+        new IntentClassifier.Example(Route.BILLING, "I want to get a refund"),
+        new IntentClassifier.Example(Route.BILLING, "Why was I charged twice this month?"),
+        new IntentClassifier.Example(Route.BILLING, "Update my payment method")
+    );
+
+    private final IntentClassifier classifier = new IntentClassifier(EXAMPLES);
+
+    @Test
+    void classifiesByTheTermsOfTheExamples() {
+        assertEquals(Route.TECHNICAL, classifier.classify("my files are corrupted after sync").label());
+        assertEquals(Route.BILLING, classifier.classify("I was charged, I want a refund").label());
+    }
+
+    @Test
+    void givesNoConfidenceToMessagesWithoutKnownTerms() {
+        IntentClassifier.Prediction prediction = classifier.classify("My ID is 1234");
+
+        assertEquals(Route.COORDINATOR, prediction.label());
+        assertEquals(0.0, prediction.confidence(), 0.0);
+    }
+
+    @Test
+    void confidenceIsAProbability() {
+        IntentClassifier.Prediction prediction = classifier.classify("refund");
+
+        assertTrue(prediction.confidence() > 0.5 && prediction.confidence() <= 1.0);
+    }
+
+    @Test
+    void bundledExamplesRouteTheDemoQuestions() {
+        FastPathRouter router = FastPathRouter.withDefaultExamples();
+
+        assertEquals(Route.TECHNICAL, router.route("a", "Why are my files corrupted?"));
+        assertEquals(Route.BILLING, router.route("b", "I want to get a refund"));
+    }
+
+    @Test
+    void followUpsStayWithTheCurrentSpecialist() {
+        FastPathRouter router = new FastPathRouter(classifier, 0.6, 0.99);
+
+        FastPathRouter.Decision first = router.decide("s", "I want to get a refund");
+        FastPathRouter.Decision followUp = router.decide("s", "My ID is 1234");
+
+        assertEquals(new FastPathRouter.Decision(Route.BILLING, true), first);
+        assertEquals(new FastPathRouter.Decision(Route.BILLING, false), followUp);
+        assertEquals(2, router.savedModelCalls());
+    }
+
+    @Test
+    void switchingSpecialistNeedsTheHigherThreshold() {
+        FastPathRouter router = new FastPathRouter(classifier, 0.6, 1.01);
+
+        router.decide("s", "I want to get a refund");
+        FastPathRouter.Decision decision = router.decide("s", "my files are corrupted");
+
+        assertEquals(Route.BILLING, decision.route());
+        assertFalse(decision.confident());
+    }
+
+    @Test
+    void unclearFirstMessagesGoToTheCoordinator() {
+        FastPathRouter router = new FastPathRouter(classifier, 0.6, 0.99);
+
+        assertEquals(Route.COORDINATOR, router.route("s", "hello there"));
+
+        router.recordCoordinatorChoice("s", Route.TECHNICAL);
+        assertEquals(Route.TECHNICAL, router.route("s", "hello again"));
+
+        router.endSession("s");
+        assertEquals(Route.COORDINATOR, router.route("s", "hello again"));
+    }
+
+    @Test
+    void idleSessionsForgetTheirSpecialist() throws InterruptedException {
+        FastPathRouter router = new FastPathRouter(classifier, 0.6, 0.99, Duration.ofMillis(20));
+
+        router.route("idle", "I want to get a refund");
+        Thread.sleep(50);
+
+        assertEquals(Route.COORDINATOR, router.route("other", "hello there"));
+        assertEquals(0, router.stats().get("stickySessions"));
+        assertEquals(Route.COORDINATOR, router.route("idle", "My ID is 1234"));
+    }
+}
@@ -0,0 +1,171 @@
+package agents;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class KnowledgeBaseTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void indexesEveryFileUnderItsSourceTag() throws IOException {
+        Files.writeString(directory.resolve("notes.md"), "1. Port in use\nChange the port in config.yaml.\n");
+        Files.writeString(directory.resolve("tips.md"), "Files are encrypted with AES.\n\nThe proxy port is set in config.yaml.\n");
+        Files.writeString(directory.resolve("code.py"), "class Sync:\n    def run(self):\n        pass\n");
+        Files.writeString(directory.resolve(".hidden"), "1. Ignored\nbody\n");
+        Files.writeString(directory.resolve("notes.md~"), "1. Ignored\nbody\n");
+
+        try (KnowledgeBase knowledgeBase = KnowledgeBase.open(directory)) {
+            KnowledgeBase.Snapshot snapshot = knowledgeBase.snapshot();
+
+            assertEquals(3, snapshot.documents());
+            assertEquals(List.of(
+                new DocChunk("code", "class Sync", "class Sync:"),
+                new DocChunk("code", "Sync.run", "    def run(self):\n        pass"),
+                new DocChunk("notes", "1. Port in use", "1. Port in use\nChange the port in config.yaml."),
+                new DocChunk("tips", "paragraph 1", "Files are encrypted with AES."),
+                new DocChunk("tips", "paragraph 2", "The proxy port is set in config.yaml.")),
+                chunks(snapshot));
+            assertEquals("1. Port in use", snapshot.index().search("port in use", 1).get(0).chunk().section());
+        }
+    }
+
+    @Test
+    void theVersionChangesWithTheContentNotTheFileTime() throws IOException {
+        Path notes = directory.resolve("notes.md");
+        Files.writeString(notes, "1. Port in use\nChange the port.\n");
+
+        try (KnowledgeBase knowledgeBase = KnowledgeBase.open(directory)) {
+            String first = knowledgeBase.version();
+
+            Files.writeString(notes, "1. Port in use\nChange the port.\n");
+            knowledgeBase.reload();
+            assertEquals(first, knowledgeBase.version());
+
+            replace(notes, "1. Port in use\nStop the other service.\n");
+            knowledgeBase.reload();
+            assertNotEquals(first, knowledgeBase.version());
+            assertEquals("1. Port in use\nStop the other service.", knowledgeBase.index().chunk(0).text());
+        }
+    }
+
+    @Test
+    void readersSeeOneWholeSnapshotWhileReloadsSwapThemIn() throws Exception {
+        // Generation g has g + 1 files of g + 1 sections each, and every section names its generation
+        writeGeneration(0);
+        try (KnowledgeBase knowledgeBase = KnowledgeBase.open(directory)) {
+            AtomicBoolean done = new AtomicBoolean();
+            AtomicInteger reads = new AtomicInteger();
+            ConcurrentLinkedQueue<String> errors = new ConcurrentLinkedQueue<>();
+
+            List<Thread> readers = new ArrayList<>();
+            for (int r = 0; r < 4; r++) {
+                Thread reader = new Thread(() -> {
+                    while (!done.get()) {
+                        KnowledgeBase.Snapshot snapshot = knowledgeBase.snapshot();
+                        DocIndex index = snapshot.index();
+                        int generation = snapshot.documents() - 1;
+                        if (index.size() != (generation + 1) * (generation + 1)) {
+                            errors.add("generation " + generation + " has " + index.size() + " sections");
+                        }
+                        for (int i = 0; i < index.size(); i++) {
+                            if (!index.chunk(i).text().contains("generation" + generation + " ")) {
+                                errors.add("generation " + generation + " returned " + index.chunk(i));
+                            }
+                        }
+                        for (DocIndex.Hit hit : index.search("generation" + generation + " sync", 3)) {
+                            if (!hit.chunk().text().contains("generation" + generation + " ")) {
+                                errors.add("generation " + generation + " found " + hit.chunk());
+                            }
+                        }
+                        reads.incrementAndGet();
+                    }
+                });
+                reader.start();
+                readers.add(reader);
+            }
+
+            for (int generation = 1; generation <= 6; generation++) {
+                writeGeneration(generation);
+                knowledgeBase.reload();
+            }
+            done.set(true);
+            for (Thread reader : readers) {
+                reader.join();
+            }
+
+            assertTrue(errors.isEmpty(), String.valueOf(errors.peek()));
+            assertTrue(reads.get() > 0);
+            assertEquals(7, knowledgeBase.snapshot().documents());
+        }
+    }
+
+    @Test
+    void theWatcherReloadsAfterAFileIsReplaced() throws Exception {
+        Path notes = directory.resolve("notes.md");
+        Files.writeString(notes, "1. Port in use\nChange the port.\n");
+
+        try (KnowledgeBase knowledgeBase = KnowledgeBase.open(directory)) {
+            knowledgeBase.watch();
+            String first = knowledgeBase.version();
+
+            Files.writeString(directory.resolve("new.md"), "1. Sync stalls\nRestart the agent.\n");
+
+            long deadline = System.nanoTime() + 10_000_000_000L;
+            while (knowledgeBase.version().equals(first) && System.nanoTime() < deadline) {
+                Thread.sleep(20);
+            }
+            assertEquals(2, knowledgeBase.snapshot().documents());
+            assertEquals("1. Sync stalls", knowledgeBase.index().search("sync stalls", 1).get(0).chunk().section());
+        }
+    }
+
+    @Test
+    void aDirectoryThatCannotBeReadGivesAnEmptyKnowledgeBase() throws IOException {
+        try (KnowledgeBase knowledgeBase = KnowledgeBase.openOrEmpty(directory.resolve("missing"))) {
+            assertEquals(0, knowledgeBase.index().size());
+            assertEquals("empty", knowledgeBase.version());
+        }
+    }
+
+    private void writeGeneration(int generation) throws IOException {
+        // Each file is replaced by a rename, as the class documentation asks, so mapped readers are never torn
+        for (int d = 0; d <= generation; d++) {
+            StringBuilder document = new StringBuilder();
+            for (int s = 0; s <= generation; s++) {
+                document.append(s + 1).append(". Section ").append(s).append('\n')
+                    .append("generation").append(generation).append(" sync note ").append(s).append(" of document ").append(d).append("\n\n");
+            }
+            replace(directory.resolve("doc" + d + ".md"), document.toString());
+        }
+    }
+
+    private void replace(Path file, String content) throws IOException {
+        Path temporary = directory.resolve(file.getFileName() + ".tmp");
+        Files.writeString(temporary, content);
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static List<DocChunk> chunks(KnowledgeBase.Snapshot snapshot) {
+        List<DocChunk> chunks = new ArrayList<>();
+        for (int i = 0; i < snapshot.index().size(); i++) {
+            chunks.add(snapshot.index().chunk(i));
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,77 @@
+package agents;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.adk.runner.InMemoryRunner;
+import com.google.adk.sessions.Session;
+import com.google.genai.types.Content;
+import com.google.genai.types.Part;
+
+import org.junit.jupiter.api.Test;
+
+class LazyRuntimeTest {
+
+    private final AtomicInteger builds = new AtomicInteger();
+
+    // Builds a real agent tree, slowly enough that concurrent first calls overlap
+    private final LazyRuntime runtime = new LazyRuntime(() -> {
+        builds.incrementAndGet();
+        try {
+            Thread.sleep(200);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ScriptedLlm model = ScriptedLlm.builder().name("lazy-runtime-model").fallback(ScriptedLlm.Reply.text("Hello")).build();
+        return AgentRuntime.of(new InMemoryRunner(SimpleAgent.initAgent(model), "lazy app"));
+    });
+
+    @Test
+    void nothingIsBuiltUntilTheRuntimeIsUsed() {
+        assertEquals(Map.of(), runtime.stats());
+        assertEquals(0, builds.get());
+
+        assertEquals("lazy app", runtime.appName());
+        assertEquals(1, builds.get());
+
+        Session session = runtime.sessionService().createSession("lazy app", "user").blockingGet();
+        runtime.runAsync("user", session.id(), Content.fromParts(Part.fromText("Hi"))).blockingSubscribe();
+        runtime.closeSession("user", session.id());
+        assertEquals(1, builds.get());
+    }
+
+    @Test
+    void threadsUsingItAtOnceShareOneBuild() throws Exception {
+        int threads = 16;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Object>> services = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                services.add(executor.submit(() -> {
+                    start.await();
+                    return runtime.sessionService();
+                }));
+            }
+            start.countDown();
+
+            Object first = services.get(0).get(30, TimeUnit.SECONDS);
+            for (Future<Object> service : services) {
+                assertSame(first, service.get(30, TimeUnit.SECONDS));
+            }
+            assertEquals(1, builds.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package agents;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.google.adk.models.LlmRequest;
+import com.google.adk.models.LlmResponse;
+import com.google.genai.types.Content;
+import com.google.genai.types.Part;
+
+import io.reactivex.rxjava3.core.Flowable;
+import org.junit.jupiter.api.Test;
+
+class ModelSchedulerTest {
+
+    private static final String MODEL = "stub";
+
+    private final BlockingQueue<ModelScheduler.Call> started = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Throwable> rejected = new LinkedBlockingQueue<>();
+
+    private static ModelScheduler scheduler(int maxConcurrency, int maxQueued, Duration queueTimeout) {
+        return new ModelScheduler(new ModelScheduler.Limits(0, 10, 1, maxConcurrency, Duration.ZERO, maxQueued, queueTimeout));
+    }
+
+    private ModelScheduler.Call submit(ModelScheduler scheduler, ModelScheduler.Lane lane) {
+        return scheduler.submit(MODEL, lane, started::add, rejected::add);
+    }
+
+    // Takes the next admitted call and claims it for running
+    private ModelScheduler.Call nextStarted() throws InterruptedException {
+        ModelScheduler.Call call = started.poll(5, TimeUnit.SECONDS);
+        assertTrue(call != null && call.start(), "no call was admitted");
+        return call;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> modelStats(ModelScheduler scheduler) {
+        return (Map<String, Object>) ((Map<String, Object>) scheduler.stats().get("models")).get(MODEL);
+    }
+
+    @Test
+    void waitingCallsStartHighestLaneFirstAndInArrivalOrderWithinALane() throws Exception {
+        ModelScheduler scheduler = scheduler(1, 100, Duration.ofSeconds(30));
+        ModelScheduler.Call running = submit(scheduler, ModelScheduler.Lane.CHAT);
+        nextStarted();
+
+        ModelScheduler.Call chat = submit(scheduler, ModelScheduler.Lane.CHAT);
+        ModelScheduler.Call technical = submit(scheduler, ModelScheduler.Lane.TECHNICAL);
+        ModelScheduler.Call firstRouting = submit(scheduler, ModelScheduler.Lane.ROUTING);
+        ModelScheduler.Call secondRouting = submit(scheduler, ModelScheduler.Lane.ROUTING);
+        assertTrue(started.isEmpty());
+
+        running.finish(null);
+        for (ModelScheduler.Call expected : List.of(firstRouting, secondRouting, technical, chat)) {
+            ModelScheduler.Call next = nextStarted();
+            assertEquals(expected, next);
+            assertTrue(started.isEmpty(), "only one call runs at a time");
+            next.finish(null);
+        }
+    }
+
+    @Test
+    void aThrottledAnswerHalvesTheLimit() throws Exception {
+        ModelScheduler scheduler = scheduler(8, 100, Duration.ofSeconds(30));
+        ModelScheduler.Call call = submit(scheduler, ModelScheduler.Lane.CHAT);
+        nextStarted();
+
+        call.finish(new RuntimeException("429 RESOURCE_EXHAUSTED: quota exceeded"));
+
+        assertEquals(4.0, modelStats(scheduler).get("limit"));
+        assertEquals(1L, modelStats(scheduler).get("throttled"));
+    }
+
+    @Test
+    void otherFailuresLeaveTheLimitAlone() throws Exception {
+        ModelScheduler scheduler = scheduler(8, 100, Duration.ofSeconds(30));
+        ModelScheduler.Call call = submit(scheduler, ModelScheduler.Lane.CHAT);
+        nextStarted();
+
+        call.finish(new RuntimeException("500 INTERNAL"));
+
+        assertEquals(8.0, modelStats(scheduler).get("limit"));
+        assertEquals(1L, modelStats(scheduler).get("failed"));
+    }
+
+    @Test
+    void anAbandonedCallFreesItsSlotWithoutAnOutcome() throws Exception {
+        ModelScheduler scheduler = scheduler(8, 100, Duration.ofSeconds(30));
+        submit(scheduler, ModelScheduler.Lane.CHAT);
+        nextStarted().finish(new RuntimeException("429 RESOURCE_EXHAUSTED: quota exceeded"));
+        ModelScheduler.Call call = submit(scheduler, ModelScheduler.Lane.CHAT);
+        nextStarted();
+
+        call.abandon();
+
+        assertEquals(4.0, modelStats(scheduler).get("limit"));
+        assertEquals(0, modelStats(scheduler).get("inFlight"));
+        assertEquals(0L, modelStats(scheduler).get("completed"));
+        assertEquals(1L, modelStats(scheduler).get("abandoned"));
+    }
+
+    @Test
+    void aFullQueueShedsTheNewestCallOfALowerLane() throws Exception {
+        ModelScheduler scheduler = scheduler(1, 2, Duration.ofSeconds(30));
+        ModelScheduler.Call running = submit(scheduler, ModelScheduler.Lane.ROUTING);
+        nextStarted();
+        ModelScheduler.Call olderChat = submit(scheduler, ModelScheduler.Lane.CHAT);
+        submit(scheduler, ModelScheduler.Lane.CHAT);
+
+        ModelScheduler.Call routing = submit(scheduler, ModelScheduler.Lane.ROUTING);
+
+        Throwable shed = rejected.poll(5, TimeUnit.SECONDS);
+        assertInstanceOf(ModelScheduler.OverloadedException.class, shed);
+        assertTrue(shed.getMessage().contains("queue is full"));
+        assertEquals(1L, modelStats(scheduler).get("rejected"));
+
+        running.finish(null);
+        ModelScheduler.Call next = nextStarted();
+        assertEquals(routing, next);
+        next.finish(null);
+        next = nextStarted();
+        assertEquals(olderChat, next);
+        next.finish(null);
+        assertNull(started.poll(200, TimeUnit.MILLISECONDS));
+        assertNull(rejected.poll());
+    }
+
+    @Test
+    void aFullQueueRejectsANewCallWithNothingBelowIt() throws Exception {
+        ModelScheduler scheduler = scheduler(1, 1, Duration.ofSeconds(30));
+        submit(scheduler, ModelScheduler.Lane.CHAT);
+        nextStarted();
+        submit(scheduler, ModelScheduler.Lane.CHAT);
+
+        submit(scheduler, ModelScheduler.Lane.CHAT);
+
+        assertInstanceOf(ModelScheduler.OverloadedException.class, rejected.poll(5, TimeUnit.SECONDS));
+        assertEquals(Map.of("routing", 0, "billing", 0, "technical", 0, "chat", 1), modelStats(scheduler).get("queued"));
+    }
+
+    @Test
+    void callsThatWaitLongerThanTheQueueTimeoutAreRejected() throws Exception {
+        ModelScheduler scheduler = scheduler(1, 100, Duration.ofMillis(100));
+        submit(scheduler, ModelScheduler.Lane.CHAT);
+        nextStarted();
+
+        long start = System.nanoTime();
+        submit(scheduler, ModelScheduler.Lane.CHAT);
+        Throwable timedOut = rejected.poll(5, TimeUnit.SECONDS);
+
+        assertInstanceOf(ModelScheduler.OverloadedException.class, timedOut);
+        assertTrue(timedOut.getMessage().contains("no capacity within 100 ms"));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(1L, modelStats(scheduler).get("timedOut"));
+    }
+
+    @Test
+    void callsThrottledByTheProviderAreQueuedAgainUntilTheyGoThrough() {
+        ScriptedLlm scripted = ScriptedLlm.builder()
+            .name(MODEL)
+            .fallback(ScriptedLlm.Reply.text("ok"))
+            .latency(Duration.ofMillis(100), Duration.ZERO)
+            .build();
+        // The provider serves one call at a time; the scheduler starts with two and halves to one on the 429
+        ThrottlingLlm provider = new ThrottlingLlm(scripted, 60_000, 1, 0);
+        ModelScheduler scheduler = scheduler(2, 100, Duration.ofSeconds(30));
+        ScheduledLlm model = new ScheduledLlm(provider, scheduler, ModelScheduler.Lane.CHAT);
+        LlmRequest request = LlmRequest.builder().contents(List.of(Content.fromParts(Part.fromText("hello")))).build();
+
+        List<LlmResponse> responses = Flowable.merge(
+                model.generateContent(request, false),
+                model.generateContent(request, false))
+            .toList()
+            .blockingGet();
+
+        // A retry can reach the provider just before the other call has left it, so there may be more than one 429
+        assertEquals(2, responses.size());
+        assertTrue(provider.throttled() >= 1);
+        assertEquals(provider.throttled(), modelStats(scheduler).get("throttled"));
+        assertEquals(2L, modelStats(scheduler).get("completed"));
+    }
+}
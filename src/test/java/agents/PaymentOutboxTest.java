@@ -0,0 +1,228 @@
+package agents;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PaymentOutboxTest {
+
+    @TempDir
+    Path directory;
+
+    // Applies every update, after failing the first failuresLeft calls and waiting for the gate to open
+    private static final class Processor implements PaymentProcessor {
+        final BlockingQueue<List<PaymentOutbox.Update>> calls = new LinkedBlockingQueue<>();
+        final List<Long> callNanos = new ArrayList<>();
+        final AtomicInteger failuresLeft = new AtomicInteger();
+        volatile CountDownLatch gate = new CountDownLatch(0);
+
+        @Override
+        public Map<Long, Outcome> apply(List<PaymentOutbox.Update> batch) throws IOException {
+            synchronized (callNanos) {
+                callNanos.add(System.nanoTime());
+            }
+            calls.add(List.copyOf(batch));
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Payment processor call interrupted");
+            }
+            if (failuresLeft.getAndDecrement() > 0) {
+                throw new IOException("503 Service Unavailable");
+            }
+            Map<Long, Outcome> outcomes = new HashMap<>();
+            for (PaymentOutbox.Update update : batch) {
+                outcomes.put(update.id(), Outcome.applied("Updated to " + update.methodType() + "."));
+            }
+            return outcomes;
+        }
+    }
+
+    private final Processor processor = new Processor();
+
+    private PaymentOutbox open(int maxAttempts, Duration initialBackoff) throws IOException {
+        return new PaymentOutbox(new PaymentOutbox.Settings(directory, true, 100, Duration.ZERO, 2, maxAttempts,
+            initialBackoff, Duration.ofSeconds(1), 1024 * 1024), processor);
+    }
+
+    private static PaymentOutbox.Status await(PaymentOutbox.Accepted accepted) throws Exception {
+        return accepted.outcome().get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void concurrentUpdatesOfAUserCoalesceIntoTheLatest() throws Exception {
+        processor.gate = new CountDownLatch(1);
+        try (PaymentOutbox outbox = open(3, Duration.ofMillis(10))) {
+            PaymentOutbox.Accepted first = outbox.submit("1001-A", "Visa", "4242");
+            assertNotNull(processor.calls.poll(5, TimeUnit.SECONDS));
+
+            // While the first update is with the processor, the same user submits many more, spelled differently
+            ExecutorService callers = Executors.newFixedThreadPool(8);
+            List<Future<PaymentOutbox.Accepted>> submitted = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                String userId = i % 2 == 0 ? "1001-A" : " 1001-a ";
+                String token = Integer.toString(1000 + i);
+                submitted.add(callers.submit(() -> outbox.submit(userId, "Visa", token)));
+            }
+            List<PaymentOutbox.Accepted> later = new ArrayList<>();
+            for (Future<PaymentOutbox.Accepted> accepted : submitted) {
+                later.add(accepted.get(10, TimeUnit.SECONDS));
+            }
+            callers.shutdown();
+            processor.gate.countDown();
+
+            assertEquals(PaymentOutbox.State.APPLIED, await(first).state());
+            long newest = later.stream().mapToLong(PaymentOutbox.Accepted::id).max().orElseThrow();
+            for (PaymentOutbox.Accepted accepted : later) {
+                PaymentOutbox.State expected = accepted.id() == newest ? PaymentOutbox.State.APPLIED : PaymentOutbox.State.SUPERSEDED;
+                assertEquals(expected, await(accepted).state());
+            }
+            List<PaymentOutbox.Update> second = processor.calls.poll(5, TimeUnit.SECONDS);
+            assertEquals(newest, second.get(0).id());
+            assertEquals(1, second.size());
+            assertTrue(processor.calls.isEmpty());
+            assertEquals(newest, outbox.status("1001-a").orElseThrow().id());
+            assertEquals(31L, outbox.stats().get("superseded"));
+        }
+    }
+
+    @Test
+    void aBatchHoldsOneUpdatePerUser() throws Exception {
+        processor.gate = new CountDownLatch(1);
+        try (PaymentOutbox outbox = open(3, Duration.ofMillis(10))) {
+            outbox.submit("0000-Z", "Visa", "0000");
+            processor.calls.poll(5, TimeUnit.SECONDS);
+            List<PaymentOutbox.Accepted> accepted = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                accepted.add(outbox.submit("user-" + (i % 5), "Visa", Integer.toString(1000 + i)));
+            }
+            processor.gate.countDown();
+            for (PaymentOutbox.Accepted update : accepted) {
+                await(update);
+            }
+
+            List<PaymentOutbox.Update> batch;
+            while ((batch = processor.calls.poll()) != null) {
+                Set<String> users = new HashSet<>();
+                for (PaymentOutbox.Update update : batch) {
+                    assertTrue(users.add(update.userId()), "two updates of " + update.userId() + " in one batch");
+                }
+            }
+            for (int i = 0; i < 5; i++) {
+                assertEquals(PaymentOutbox.State.APPLIED, outbox.status("user-" + i).orElseThrow().state());
+            }
+        }
+    }
+
+    @Test
+    void failedCallsAreResentWithGrowingBackoff() throws Exception {
+        processor.failuresLeft.set(2);
+        try (PaymentOutbox outbox = open(5, Duration.ofMillis(100))) {
+            PaymentOutbox.Status status = await(outbox.submit("1001-A", "Visa", "4242"));
+
+            assertEquals(PaymentOutbox.State.APPLIED, status.state());
+            assertEquals(3, status.attempts());
+            assertEquals(2L, outbox.stats().get("resent"));
+        }
+        // Half to all of 100 ms before the first resend, of 200 ms before the second
+        synchronized (processor.callNanos) {
+            assertEquals(3, processor.callNanos.size());
+            assertTrue(processor.callNanos.get(1) - processor.callNanos.get(0) >= TimeUnit.MILLISECONDS.toNanos(50));
+            assertTrue(processor.callNanos.get(2) - processor.callNanos.get(1) >= TimeUnit.MILLISECONDS.toNanos(100));
+        }
+    }
+
+    @Test
+    void anUpdateFailsAfterTheLastAttempt() throws Exception {
+        processor.failuresLeft.set(Integer.MAX_VALUE);
+        try (PaymentOutbox outbox = open(3, Duration.ofMillis(5))) {
+            PaymentOutbox.Status status = await(outbox.submit("1001-A", "Visa", "4242"));
+
+            assertEquals(PaymentOutbox.State.FAILED, status.state());
+            assertEquals(3, status.attempts());
+            assertTrue(status.message().contains("after 3 attempts: 503 Service Unavailable"));
+        }
+    }
+
+    @Test
+    void unsentUpdatesAreSentAfterARestartAndATornLastLineIsDropped() throws Exception {
+        processor.failuresLeft.set(Integer.MAX_VALUE);
+        try (PaymentOutbox outbox = open(5, Duration.ofMinutes(1))) {
+            outbox.submit("1001-A", "Visa", "4242");
+            outbox.submit("2002-B", "Amex", "0005");
+            processor.calls.poll(5, TimeUnit.SECONDS);
+        }
+        // A crash in the middle of a write leaves a line without its line break
+        Path log = directory.resolve("outbox.log");
+        Files.writeString(log, "U\t3\t1700000000000\t3003-C\tVisa\t12", UTF_8, StandardOpenOption.APPEND);
+
+        processor.failuresLeft.set(0);
+        processor.calls.clear();
+        try (PaymentOutbox outbox = open(5, Duration.ofMillis(10))) {
+            assertFalse(outbox.status("3003-C").isPresent());
+            PaymentOutbox.Accepted next = outbox.submit("3003-C", "Visa", "9999");
+            assertEquals(3, next.id());
+            await(next);
+
+            assertEquals(PaymentOutbox.State.APPLIED, awaitStatus(outbox, "1001-A").state());
+            assertEquals(PaymentOutbox.State.APPLIED, awaitStatus(outbox, "2002-B").state());
+        }
+        for (String line : Files.readAllLines(log, UTF_8)) {
+            assertEquals(6, line.split("\t", -1).length, line);
+        }
+    }
+
+    @Test
+    void refusesCardNumbers() throws Exception {
+        try (PaymentOutbox outbox = open(3, Duration.ofMillis(10))) {
+            assertThrows(IllegalArgumentException.class, () -> outbox.submit("1001-A", "Visa", "4111 1111 1111 1111"));
+            assertEquals(0L, outbox.stats().get("accepted"));
+        }
+        assertFalse(Files.readString(directory.resolve("outbox.log"), UTF_8).contains("4111"));
+
+        assertTrue(PaymentOutbox.looksLikeCardNumber("4111-1111-1111-1111"));
+        assertTrue(PaymentOutbox.looksLikeCardNumber("card 4111111111111111"));
+        assertFalse(PaymentOutbox.looksLikeCardNumber("4242"));
+        assertFalse(PaymentOutbox.looksLikeCardNumber("tok_1Nv2x8"));
+        assertFalse(PaymentOutbox.looksLikeCardNumber("1234 5678"));
+    }
+
+    // Waits for a recovered update, which has no Accepted to wait on
+    private static PaymentOutbox.Status awaitStatus(PaymentOutbox outbox, String userId) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        PaymentOutbox.Status status = outbox.status(userId).orElseThrow();
+        while (!status.state().finished() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            status = outbox.status(userId).orElseThrow();
+        }
+        return status;
+    }
+}
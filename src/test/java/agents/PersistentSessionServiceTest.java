@@ -0,0 +1,223 @@
+package agents;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import com.google.adk.events.Event;
+import com.google.adk.events.EventActions;
+import com.google.adk.sessions.Session;
+import com.google.genai.types.Content;
+import com.google.genai.types.Part;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PersistentSessionServiceTest {
+
+    private static final String APP = "team";
+    private static final String USER = "1001-A";
+
+    @TempDir
+    Path directory;
+
+    private PersistentSessionService open(int maxHot, Duration idleTimeout, PersistentSessionService.Compaction compaction) {
+        return new PersistentSessionService(directory, maxHot, idleTimeout, compaction);
+    }
+
+    private PersistentSessionService open() {
+        return open(100, Duration.ofMinutes(30), PersistentSessionService.Compaction.NONE);
+    }
+
+    private static Event event(String author, String text) {
+        return Event.builder()
+            .id(UUID.randomUUID().toString())
+            .invocationId(UUID.randomUUID().toString())
+            .author(author)
+            .content(Content.builder().role("user".equals(author) ? "user" : "model").parts(List.of(Part.fromText(text))).build())
+            .timestamp(System.currentTimeMillis())
+            .build();
+    }
+
+    // One user message and one answer per turn
+    private static void turns(PersistentSessionService sessions, Session session, int from, int to) {
+        for (int i = from; i < to; i++) {
+            sessions.appendEvent(session, event("user", "Question " + i)).blockingGet();
+            sessions.appendEvent(session, event("agent", "Answer " + i)).blockingGet();
+        }
+    }
+
+    private static Session get(PersistentSessionService sessions, String sessionId) {
+        return sessions.getSession(APP, USER, sessionId, Optional.empty()).blockingGet();
+    }
+
+    private static List<String> texts(Session session) {
+        return session.events().stream().map(event -> event.content().map(TeamRunner::textOf).orElse("")).toList();
+    }
+
+    private Path log(String sessionId) {
+        return directory.resolve(APP).resolve(USER).resolve(sessionId + ".log");
+    }
+
+    @Test
+    void namesCannotLeaveTheSessionDirectory() {
+        assertEquals("%2E%2E", PersistentSessionService.fileName(".."));
+        assertEquals("%2E", PersistentSessionService.fileName("."));
+        assertEquals("a%2Fb%5Cc", PersistentSessionService.fileName("a/b\\c"));
+        assertFalse(PersistentSessionService.fileName("../../etc/passwd").contains("/"));
+        assertEquals("user-1234", PersistentSessionService.fileName("user-1234"));
+    }
+
+    @Test
+    void aSessionIsLoadedBackByANewInstance() {
+        String id;
+        try (PersistentSessionService sessions = open()) {
+            Session session = sessions.createSession(APP, USER, new ConcurrentHashMap<>(Map.of("plan", "annual")), null).blockingGet();
+            id = session.id();
+            turns(sessions, session, 0, 2);
+            Event withState = event("agent", "Noted.").toBuilder()
+                .actions(EventActions.builder().stateDelta(new ConcurrentHashMap<>(Map.of("refund", "pending"))).build())
+                .build();
+            sessions.appendEvent(session, withState).blockingGet();
+        }
+
+        try (PersistentSessionService sessions = open()) {
+            Session session = get(sessions, id);
+            assertEquals(List.of("Question 0", "Answer 0", "Question 1", "Answer 1", "Noted."), texts(session));
+            assertEquals("annual", session.state().get("plan"));
+            assertEquals("pending", session.state().get("refund"));
+            assertEquals(1L, sessions.stats().get("loads"));
+            assertNull(get(sessions, "no-such-session"));
+        }
+    }
+
+    @Test
+    void theLeastRecentlyUsedSessionLeavesMemoryAndIsLoadedAgain() {
+        try (PersistentSessionService sessions = open(2, Duration.ofMinutes(30), PersistentSessionService.Compaction.NONE)) {
+            Session first = sessions.createSession(APP, USER, null, "first").blockingGet();
+            turns(sessions, first, 0, 1);
+            sessions.createSession(APP, USER, null, "second").blockingGet();
+            get(sessions, "first");
+
+            sessions.createSession(APP, USER, null, "third").blockingGet();
+
+            assertEquals(2, sessions.stats().get("hotSessions"));
+            assertEquals(1L, sessions.stats().get("evictions"));
+            assertEquals(0L, sessions.stats().get("loads"));
+            // "second" was used least recently, so "first" is still hot
+            assertEquals(List.of("Question 0", "Answer 0"), texts(get(sessions, "first")));
+            assertEquals(0L, sessions.stats().get("loads"));
+            assertTrue(get(sessions, "second").events().isEmpty());
+            assertEquals(1L, sessions.stats().get("loads"));
+        }
+    }
+
+    @Test
+    void idleSessionsLeaveMemory() throws Exception {
+        try (PersistentSessionService sessions = open(100, Duration.ofMillis(100), PersistentSessionService.Compaction.NONE)) {
+            Session session = sessions.createSession(APP, USER, null, "idle").blockingGet();
+            turns(sessions, session, 0, 1);
+
+            // The sweep runs at most once a second
+            long deadline = System.currentTimeMillis() + 5000;
+            while ((int) sessions.stats().get("hotSessions") > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+
+            assertEquals(0, sessions.stats().get("hotSessions"));
+            assertEquals(List.of("Question 0", "Answer 0"), texts(get(sessions, "idle")));
+            assertEquals(1L, sessions.stats().get("loads"));
+        }
+    }
+
+    @Test
+    void longSessionsAreCompactedFromAUserMessageAndTheLogIsRewritten() throws Exception {
+        PersistentSessionService.Compaction compaction = new PersistentSessionService.Compaction(8, 5, 2000);
+        try (PersistentSessionService sessions = open(100, Duration.ofMinutes(30), compaction)) {
+            Session session = sessions.createSession(APP, USER, null, "long").blockingGet();
+            turns(sessions, session, 0, 5);
+
+            List<String> compacted = texts(get(sessions, "long"));
+
+            // Five events would start with an answer, so the kept part starts at the next question
+            assertEquals(5, compacted.size());
+            assertTrue(compacted.get(0).startsWith(PersistentSessionService.SUMMARY_PREFIX), compacted.get(0));
+            assertTrue(compacted.get(0).contains("user: Question 0\nagent: Answer 0\n"), compacted.get(0));
+            assertTrue(compacted.get(0).contains("agent: Answer 2"), compacted.get(0));
+            assertEquals(List.of("Question 3", "Answer 3", "Question 4", "Answer 4"), compacted.subList(1, 5));
+            assertEquals(1L, sessions.stats().get("compactions"));
+
+            // The snapshot line and the five kept events; later events are appended to the new log
+            assertEquals(6, Files.readAllLines(log("long"), UTF_8).size());
+            turns(sessions, get(sessions, "long"), 5, 6);
+            assertEquals(8, Files.readAllLines(log("long"), UTF_8).size());
+        }
+
+        try (PersistentSessionService sessions = open(100, Duration.ofMinutes(30), compaction)) {
+            List<String> reloaded = texts(get(sessions, "long"));
+            assertEquals(7, reloaded.size());
+            assertTrue(reloaded.get(0).startsWith(PersistentSessionService.SUMMARY_PREFIX));
+            assertEquals(List.of("Question 3", "Answer 3", "Question 4", "Answer 4", "Question 5", "Answer 5"),
+                reloaded.subList(1, 7));
+        }
+    }
+
+    @Test
+    void aSummaryIsCarriedIntoTheNextOne() {
+        PersistentSessionService.Compaction compaction = new PersistentSessionService.Compaction(6, 3, 2000);
+        try (PersistentSessionService sessions = open(100, Duration.ofMinutes(30), compaction)) {
+            Session session = sessions.createSession(APP, USER, null, "twice").blockingGet();
+            turns(sessions, session, 0, 4);
+            get(sessions, "twice");
+            turns(sessions, get(sessions, "twice"), 4, 8);
+
+            List<String> compacted = texts(get(sessions, "twice"));
+
+            assertEquals(2L, sessions.stats().get("compactions"));
+            String summary = compacted.get(0);
+            assertEquals(1, summary.split(PersistentSessionService.SUMMARY_PREFIX, -1).length - 1, summary);
+            assertTrue(summary.contains("user: Question 0") && summary.contains("agent: Answer 6"), summary);
+        }
+    }
+
+    @Test
+    void aTurnEvictedWhileRunningKeepsAppendingToItsSession() {
+        try (PersistentSessionService sessions = open()) {
+            Session session = sessions.createSession(APP, USER, null, "running").blockingGet();
+            sessions.appendEvent(session, event("user", "Question 0")).blockingGet();
+
+            sessions.evictAll();
+            sessions.appendEvent(session, event("agent", "Answer 0")).blockingGet();
+
+            assertEquals(List.of("Question 0", "Answer 0"), texts(get(sessions, "running")));
+            assertEquals(1L, sessions.stats().get("loads"));
+        }
+    }
+
+    @Test
+    void deletedSessionsAreGoneFromMemoryAndDisk() throws Exception {
+        try (PersistentSessionService sessions = open()) {
+            Session session = sessions.createSession(APP, USER, null, "deleted").blockingGet();
+            turns(sessions, session, 0, 1);
+
+            sessions.deleteSession(APP, USER, "deleted").blockingAwait();
+
+            assertNull(get(sessions, "deleted"));
+            try (Stream<Path> files = Files.list(log("deleted").getParent())) {
+                assertEquals(0, files.count());
+            }
+        }
+    }
+}
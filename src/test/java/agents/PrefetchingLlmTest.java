@@ -0,0 +1,113 @@
+package agents;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import com.google.adk.models.BaseLlm;
+import com.google.adk.models.BaseLlmConnection;
+import com.google.adk.models.LlmRequest;
+import com.google.adk.models.LlmResponse;
+import com.google.adk.runner.InMemoryRunner;
+import com.google.adk.sessions.Session;
+import com.google.genai.types.Content;
+import com.google.genai.types.FunctionCall;
+import com.google.genai.types.Part;
+
+import org.junit.jupiter.api.Test;
+
+import io.reactivex.rxjava3.core.Flowable;
+
+class PrefetchingLlmTest {
+
+    private static final String QUESTION = "Why are my files corrupted?";
+
+    private final PrefetchingLlm prefetching = new PrefetchingLlm(
+        ScriptedLlm.builder().fallback(ScriptedLlm.Reply.text("Done.")).build(), PrefetchingLlm.DEFAULT_MIN_SCORE);
+
+    private static LlmRequest question(String text) {
+        return LlmRequest.builder().contents(List.of(Content.builder().role("user").parts(List.of(Part.fromText(text))).build())).build();
+    }
+
+    private static List<FunctionCall> searches(LlmRequest request) {
+        List<FunctionCall> calls = new ArrayList<>();
+        request.contents().forEach(content -> content.parts().orElse(List.of()).forEach(part -> part.functionCall()
+            .filter(call -> "searchDocs".equals(call.name().orElse(""))).ifPresent(calls::add)));
+        return calls;
+    }
+
+    /** Ignores the prefetched sections and searches for something else, then answers; keeps its requests. */
+    private static final class SearchesAgainLlm extends BaseLlm {
+        final List<LlmRequest> requests = new ArrayList<>();
+
+        SearchesAgainLlm() {
+            super("searches-again");
+        }
+
+        @Override
+        public Flowable<LlmResponse> generateContent(LlmRequest llmRequest, boolean stream) {
+            requests.add(llmRequest);
+            Part part = requests.size() == 1
+                ? Part.fromFunctionCall("searchDocs", Map.of("query", "sync port already in use", "k", 3))
+                : Part.fromText("Change the port in the settings.");
+            return Flowable.just(LlmResponse.builder().content(Content.builder().role("model").parts(List.of(part)).build()).build());
+        }
+
+        @Override
+        public BaseLlmConnection connect(LlmRequest llmRequest) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @Test
+    void aMatchingQuestionGetsTheSearchAttached() {
+        LlmRequest request = prefetching.withPrefetch(question(QUESTION));
+
+        assertEquals(3, request.contents().size());
+        assertEquals(QUESTION, searches(request).get(0).args().orElseThrow().get("query"));
+        Map<String, Object> result = request.contents().get(2).parts().orElseThrow().get(0)
+            .functionResponse().orElseThrow().response().orElseThrow();
+        assertEquals(TechnicalSpecialist.searchDocs(QUESTION, PrefetchingLlm.PREFETCH_RESULTS), result);
+    }
+
+    @Test
+    void questionsTheDocumentsDoNotCoverAreSentUnchanged() {
+        LlmRequest request = question("What is the weather on Mars?");
+
+        assertSame(request, prefetching.withPrefetch(request));
+    }
+
+    @Test
+    void followUpsToAToolCallAreSentUnchanged() {
+        List<Content> contents = new ArrayList<>(question(QUESTION).contents());
+        contents.add(Content.builder().role("model").parts(List.of(Part.fromFunctionCall("searchDocs", Map.of("query", "corrupted")))).build());
+        contents.add(Content.builder().role("user").parts(List.of(Part.fromFunctionResponse("searchDocs", Map.of("results", List.of())))).build());
+        LlmRequest request = LlmRequest.builder().contents(contents).build();
+
+        assertSame(request, prefetching.withPrefetch(request));
+    }
+
+    @Test
+    void aPrefetchTheModelDidNotUseIsDiscarded() {
+        SearchesAgainLlm model = new SearchesAgainLlm();
+        InMemoryRunner runner = new InMemoryRunner(TechnicalSpecialist.initAgent(model, true));
+        Session session = runner.sessionService().createSession(runner.appName(), "alice").blockingGet();
+
+        runner.runAsync("alice", session.id(), Content.fromParts(Part.fromText(QUESTION))).blockingSubscribe();
+
+        assertEquals(2, model.requests.size());
+        assertEquals(QUESTION, searches(model.requests.get(0)).get(0).args().orElseThrow().get("query"));
+        // The follow-up carries only the model's own search, and the session never held the prefetched one
+        List<FunctionCall> followUp = searches(model.requests.get(1));
+        assertEquals(1, followUp.size());
+        assertEquals("sync port already in use", followUp.get(0).args().orElseThrow().get("query"));
+        Session stored = runner.sessionService().getSession(runner.appName(), "alice", session.id(), Optional.empty()).blockingGet();
+        assertTrue(stored.events().stream().flatMap(event -> event.functionCalls().stream())
+            .noneMatch(call -> QUESTION.equals(call.args().orElseThrow().get("query"))));
+    }
+}
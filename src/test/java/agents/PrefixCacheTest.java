@@ -0,0 +1,93 @@
+package agents;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import com.google.adk.agents.BaseAgent;
+import com.google.adk.artifacts.InMemoryArtifactService;
+import com.google.adk.models.BaseLlm;
+import com.google.adk.runner.Runner;
+import com.google.adk.sessions.InMemorySessionService;
+import com.google.adk.sessions.Session;
+import com.google.genai.types.Content;
+import com.google.genai.types.Part;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Prompt prefix bytes with the prefix sent inline on every model call and with it cached. Runs the technical
+ * specialist (with the documentation pinned) and the billing specialist on the scripted model behind
+ * {@link CachedContentStandIn}, which counts the instruction and tool declaration bytes each request carries
+ * and the bytes uploaded to its cache.
+ */
+class PrefixCacheTest {
+
+    private static final List<List<String>> TECHNICAL = List.of(
+        List.of("Why are my files corrupted?"),
+        List.of("How is encryption handled?"),
+        List.of("nebula sync will not start, port already in use"),
+        List.of("How do I change the port?"),
+        List.of("My dashboard shows high CPU usage")
+    );
+
+    private static final List<List<String>> BILLING = List.of(
+        List.of("I want a refund", "My ID is 1001-A, I am not satisfied with the product.", "I made the purchase two days ago"),
+        List.of("My ID is 2002-B, can you show my billing history?")
+    );
+
+    @TempDir
+    static Path tickets;
+
+    @BeforeAll
+    static void configure() {
+        System.setProperty("agents.tickets.dir", tickets.toString());
+    }
+
+    @Test
+    void theTechnicalPrefixIsUploadedOnceInsteadOfSentOnEveryCall() {
+        assertUploadedOnce(AgentRegistry.TECHNICAL);
+    }
+
+    @Test
+    void theBillingPrefixIsUploadedOnceInsteadOfSentOnEveryCall() {
+        assertUploadedOnce(AgentRegistry.BILLING);
+    }
+
+    private static void assertUploadedOnce(String agent) {
+        CachedContentStandIn inline = run(agent, false);
+        CachedContentStandIn cached = run(agent, true);
+
+        assertEquals(inline.requests(), cached.requests());
+        assertTrue(inline.requests() > 1);
+        assertEquals(0, inline.uploadedBytes());
+        assertEquals(0, cached.prefixBytesSent());
+        // Every call carries the same prefix, so the one upload is what each inline call sent
+        assertEquals(inline.prefixBytesSent(), cached.uploadedBytes() * inline.requests());
+    }
+
+    private static CachedContentStandIn run(String agent, boolean cached) {
+        CachedContentStandIn standIn = new CachedContentStandIn();
+        PrefixCache cache = new PrefixCache(cached ? standIn : PrefixCache.NONE, Duration.ofHours(1));
+        BaseLlm scripted = DemoScript.create(Duration.ZERO, Duration.ZERO);
+        boolean technical = agent.equals(AgentRegistry.TECHNICAL);
+        BaseLlm model = new PrefixCachingLlm(standIn.wrap(scripted), cache,
+            technical ? TechnicalSpecialist::pinnedDocuments : List::of);
+        BaseAgent root = technical ? TechnicalSpecialist.initAgent(model, false) : BillingSpecialist.initAgent(model);
+        Runner runner = new Runner(root, "prefix test", new InMemoryArtifactService(), new InMemorySessionService());
+
+        for (List<String> conversation : technical ? TECHNICAL : BILLING) {
+            Session session = runner.sessionService().createSession(runner.appName(), "user").blockingGet();
+            for (String message : conversation) {
+                runner.runAsync(session.userId(), session.id(), Content.fromParts(Part.fromText(message)))
+                    .blockingForEach(event -> { });
+            }
+        }
+        return standIn;
+    }
+}
@@ -0,0 +1,129 @@
+package agents;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class PythonOutlineTest {
+
+    // Line numbers are in the comments on the right
+    static final List<String> CLIENT = List.of(
+        "\"\"\"Sync client.\"\"\"",                                   // 1
+        "import base64",                                               // 2
+        "",                                                            // 3
+        "MAX_RETRIES = 3",                                             // 4
+        "API_URL: str = \"https://example.com/files\"",               // 5
+        "",                                                            // 6
+        "",                                                            // 7
+        "class NebulaSyncClient(BaseClient):",                         // 8
+        "    \"\"\"Uploads files to Nebula.\"\"\"",                    // 9
+        "",                                                            // 10
+        "    # TODO: rotate the key",                                  // 11
+        "    #   before every release",                                // 12
+        "    class Config:",                                           // 13
+        "        timeout = 30",                                        // 14
+        "",                                                            // 15
+        "        def load(self):",                                     // 16
+        "            return self.timeout",                             // 17
+        "",                                                            // 18
+        "    @retry(",                                                 // 19
+        "        times=MAX_RETRIES,",                                  // 20
+        "    )",                                                       // 21
+        "    @staticmethod",                                           // 22
+        "    def _encrypt(data):",                                     // 23
+        "        # WARNING: not constant time",                        // 24
+        "        return base64.b64encode(data)",                       // 25
+        "",                                                            // 26
+        "    async def upload_file(self,",                             // 27
+        "                          path: str,  # local path",          // 28
+        "                          retries: int = MAX_RETRIES) -> bool:", // 29
+        "        \"\"\"",                                              // 30
+        "        Sends one file.",                                     // 31
+        "        FIXME: no resume",                                    // 32
+        "        \"\"\"",                                              // 33
+        "        data = self._encrypt(open(path).read())",             // 34
+        "        return True",                                         // 35
+        "",                                                            // 36
+        "",                                                            // 37
+        "def main():",                                                 // 38
+        "    def helper():",                                           // 39
+        "        return NebulaSyncClient()",                           // 40
+        "    return helper()");                                        // 41
+
+    private static final SourceIndex.FileEntry OUTLINE = PythonOutline.outline("sync/client.py", 1234, 5678, CLIENT);
+
+    @Test
+    void outlinesNestedClassesMethodsFunctionsAndConstants() {
+        assertEquals(List.of(
+            new SourceIndex.Symbol("MAX_RETRIES", "MAX_RETRIES", SourceIndex.Kind.CONSTANT, "", 4, 4, "MAX_RETRIES = 3", ""),
+            new SourceIndex.Symbol("API_URL", "API_URL", SourceIndex.Kind.CONSTANT, "", 5, 5,
+                "API_URL: str = \"https://example.com/files\"", ""),
+            new SourceIndex.Symbol("NebulaSyncClient", "NebulaSyncClient", SourceIndex.Kind.CLASS, "", 8, 35,
+                "class NebulaSyncClient(BaseClient):", "Uploads files to Nebula."),
+            new SourceIndex.Symbol("Config", "NebulaSyncClient.Config", SourceIndex.Kind.CLASS, "NebulaSyncClient", 13, 17,
+                "class Config:", ""),
+            new SourceIndex.Symbol("load", "NebulaSyncClient.Config.load", SourceIndex.Kind.METHOD, "NebulaSyncClient.Config",
+                16, 17, "def load(self)", ""),
+            new SourceIndex.Symbol("_encrypt", "NebulaSyncClient._encrypt", SourceIndex.Kind.METHOD, "NebulaSyncClient",
+                23, 25, "def _encrypt(data)", ""),
+            new SourceIndex.Symbol("upload_file", "NebulaSyncClient.upload_file", SourceIndex.Kind.METHOD, "NebulaSyncClient",
+                27, 35, "async def upload_file(self, path: str, retries: int = MAX_RETRIES) -> bool", "Sends one file."),
+            new SourceIndex.Symbol("main", "main", SourceIndex.Kind.FUNCTION, "", 38, 41, "def main()", ""),
+            new SourceIndex.Symbol("helper", "main.helper", SourceIndex.Kind.FUNCTION, "main", 39, 40, "def helper()", "")),
+            OUTLINE.symbols());
+        assertEquals("sync/client.py", OUTLINE.path());
+        assertEquals(1234, OUTLINE.size());
+        assertEquals(5678, OUTLINE.modified());
+    }
+
+    @Test
+    void decoratorsBelongToTheClassAndAreUsesOfTheirNames() {
+        // The decorator lines close the previous method without starting a symbol of their own
+        assertEquals("NebulaSyncClient", OUTLINE.enclosing(20).qualifiedName());
+        assertEquals("NebulaSyncClient", OUTLINE.enclosing(22).qualifiedName());
+        assertEquals("NebulaSyncClient._encrypt", OUTLINE.enclosing(25).qualifiedName());
+        assertArrayEquals(new int[] {19}, OUTLINE.references().get("retry"));
+        assertArrayEquals(new int[] {22}, OUTLINE.references().get("staticmethod"));
+        assertArrayEquals(new int[] {20, 29}, OUTLINE.references().get("MAX_RETRIES"));
+    }
+
+    @Test
+    void aMultiLineSignatureIsPartOfItsDefinition() {
+        assertEquals("NebulaSyncClient.upload_file", OUTLINE.enclosing(28).qualifiedName());
+        assertEquals("NebulaSyncClient.upload_file", OUTLINE.enclosing(29).qualifiedName());
+        assertArrayEquals(new int[] {28, 34}, OUTLINE.references().get("path"));
+        assertArrayEquals(new int[] {34}, OUTLINE.references().get("_encrypt"));
+    }
+
+    @Test
+    void findsMarkersInCommentsAndDocstrings() {
+        assertEquals(List.of(
+            new SourceIndex.Marker("TODO", 11, "rotate the key before every release"),
+            new SourceIndex.Marker("WARNING", 24, "not constant time"),
+            new SourceIndex.Marker("FIXME", 32, "no resume")), OUTLINE.markers());
+    }
+
+    @Test
+    void referencesLeaveOutDefinitionsKeywordsAndStrings() {
+        assertArrayEquals(new int[] {40}, OUTLINE.references().get("NebulaSyncClient"));
+        assertArrayEquals(new int[] {41}, OUTLINE.references().get("helper"));
+        assertFalse(OUTLINE.references().containsKey("self"));
+        assertFalse(OUTLINE.references().containsKey("return"));
+        assertFalse(OUTLINE.references().containsKey("example"));
+        assertFalse(OUTLINE.references().containsKey("Sends"));
+        assertNull(OUTLINE.enclosing(4));
+        assertNull(OUTLINE.enclosing(2));
+    }
+
+    @Test
+    void commentsStartOutsideStrings() {
+        assertEquals(13, PythonOutline.commentStart("x = \"a # b\"  # real"));
+        assertEquals(-1, PythonOutline.commentStart("x = 'it\\'s # not a comment'"));
+        assertEquals(0, PythonOutline.commentStart("# comment"));
+    }
+}
@@ -0,0 +1,188 @@
+package agents;
+
+import static agents.ScriptedLlm.afterTool;
+import static agents.ScriptedLlm.forAgent;
+import static agents.ScriptedLlm.lastFunctionResponse;
+import static agents.ScriptedLlm.userTexts;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+import com.google.adk.artifacts.InMemoryArtifactService;
+import com.google.adk.events.Event;
+import com.google.adk.models.BaseLlm;
+import com.google.adk.models.BaseLlmConnection;
+import com.google.adk.models.LlmRequest;
+import com.google.adk.models.LlmResponse;
+import com.google.adk.runner.Runner;
+import com.google.adk.sessions.InMemorySessionService;
+import com.google.adk.sessions.Session;
+import com.google.genai.types.Content;
+import com.google.genai.types.FunctionResponse;
+import com.google.genai.types.Part;
+
+import io.reactivex.rxjava3.core.Flowable;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * The billing specialist resolving refunds on scripted models, working the refund out itself (ask for the
+ * purchase date, read the billing history, open the ticket) and with the billingVerdict tool (one call gives
+ * eligibility and explanation, the ticket follows). The user only answers what they are asked. Tokens are
+ * estimated from the characters sent and received, at four characters per token.
+ */
+class RefundResolutionTest {
+
+    // Each conversation lists what the user says, in order, as long as the agent keeps asking
+    private static final List<List<String>> CONVERSATIONS = List.of(
+        List.of("I want a refund", "My ID is 1001-A, I am not satisfied with the product.", "I made the purchase two days ago"),
+        List.of("My ID is 2002-B and I want my money back for the last renewal", "It was five weeks ago"),
+        List.of("Refund please, user 1001-A, it arrived broken", "Yesterday")
+    );
+
+    private record Resolution(String refund, int turns, long calls, long tokens) {}
+
+    @TempDir
+    static Path tickets;
+
+    @BeforeAll
+    static void configure() {
+        // The verdicts depend on the date; replay the mock billing data as of the week it was written
+        System.setProperty("agents.billing.today", "2025-11-03");
+        System.setProperty("agents.tickets.dir", tickets.toString());
+    }
+
+    @Test
+    void theVerdictToolResolvesRefundsInFewerTurnsAndModelCalls() {
+        List<Resolution> baseline = resolveAll(baselineScript());
+        List<Resolution> rules = resolveAll(rulesScript());
+
+        for (int i = 0; i < CONVERSATIONS.size(); i++) {
+            String conversation = CONVERSATIONS.get(i).get(0);
+            assertNotNull(baseline.get(i).refund(), conversation);
+            assertEquals(baseline.get(i).refund(), rules.get(i).refund(), conversation);
+            assertTrue(rules.get(i).turns() < baseline.get(i).turns(), conversation);
+            assertTrue(rules.get(i).calls() < baseline.get(i).calls(), conversation);
+            assertTrue(rules.get(i).tokens() < baseline.get(i).tokens(), conversation);
+        }
+        assertEquals(List.of("Full refund", "No refund", "Full refund"), rules.stream().map(Resolution::refund).toList());
+    }
+
+    private static List<Resolution> resolveAll(ScriptedLlm script) {
+        CountingLlm model = new CountingLlm(script);
+        Runner runner = new Runner(BillingSpecialist.initAgent(model), "refund test",
+            new InMemoryArtifactService(), new InMemorySessionService());
+        return CONVERSATIONS.stream().map(conversation -> resolve(runner, model, conversation)).toList();
+    }
+
+    private static Resolution resolve(Runner runner, CountingLlm model, List<String> conversation) {
+        Session session = runner.sessionService().createSession(runner.appName(), "user").blockingGet();
+        long callsBefore = model.calls.sum();
+        long tokensBefore = model.tokens.sum();
+        String[] refund = {null};
+        int turns = 0;
+        while (refund[0] == null && turns < conversation.size()) {
+            runner.runAsync(session.userId(), session.id(), Content.fromParts(Part.fromText(conversation.get(turns++))))
+                .blockingForEach((Event event) -> {
+                    for (FunctionResponse response : event.functionResponses()) {
+                        if (response.name().orElse("").equals("submitTicket")) {
+                            refund[0] = String.valueOf(response.response().orElse(Map.of()).get("refund"));
+                        }
+                    }
+                });
+        }
+        return new Resolution(refund[0], turns, model.calls.sum() - callsBefore, model.tokens.sum() - tokensBefore);
+    }
+
+    // The refund flow as the model runs it without the verdict tool
+    private static ScriptedLlm baselineScript() {
+        Predicate<LlmRequest> billing = forAgent(BillingSpecialist.AGENT_NAME);
+        return ScriptedLlm.builder()
+            .name("scripted-refund-baseline")
+            .when(afterTool("submitTicket"), RefundResolutionTest::confirmTicket)
+            .when(afterTool("billingHistory"), request -> ScriptedLlm.Reply.call("submitTicket", Map.of(
+                "userId", DemoScript.userId(request),
+                "ticketMessage", ticketMessage(request),
+                "daysSincePurchase", DemoScript.daysSincePurchase(request))))
+            .when(billing.and(hasUserId()).and(request -> DemoScript.daysSincePurchase(request) >= 0),
+                request -> ScriptedLlm.Reply.call("billingHistory", Map.of(
+                    "userId", DemoScript.userId(request), "fromDate", "", "toDate", "", "status", "", "cursor", "")))
+            .when(billing.and(hasUserId()), ScriptedLlm.Reply.text("Thank you. When did you make the purchase?"))
+            .fallback(ScriptedLlm.Reply.text("I can help with that. What is your user ID and why would you like a refund?"))
+            .build();
+    }
+
+    // The refund flow with billingVerdict: the purchase date is optional, the latest charge stands in for it
+    private static ScriptedLlm rulesScript() {
+        Predicate<LlmRequest> billing = forAgent(BillingSpecialist.AGENT_NAME);
+        return ScriptedLlm.builder()
+            .name("scripted-refund-rules")
+            .when(afterTool("submitTicket"), RefundResolutionTest::confirmTicket)
+            .when(afterTool("billingVerdict"), request -> ScriptedLlm.Reply.call("submitTicket", Map.of(
+                "userId", DemoScript.userId(request),
+                "ticketMessage", ticketMessage(request),
+                "daysSincePurchase", toolResult(request).get("daysSincePurchase") instanceof Number days ? days.intValue() : -1)))
+            .when(billing.and(hasUserId()), request -> ScriptedLlm.Reply.call("billingVerdict", Map.of(
+                "userId", DemoScript.userId(request),
+                "daysSincePurchase", DemoScript.daysSincePurchase(request))))
+            .fallback(ScriptedLlm.Reply.text("I can help with that. What is your user ID and why would you like a refund?"))
+            .build();
+    }
+
+    private static Predicate<LlmRequest> hasUserId() {
+        return request -> !DemoScript.userId(request).isEmpty();
+    }
+
+    private static String ticketMessage(LlmRequest request) {
+        return "User " + DemoScript.userId(request) + " is requesting a refund: " + String.join(" ", userTexts(request));
+    }
+
+    private static Map<String, Object> toolResult(LlmRequest request) {
+        return lastFunctionResponse(request).flatMap(FunctionResponse::response).orElse(Map.of());
+    }
+
+    private static ScriptedLlm.Reply confirmTicket(LlmRequest request) {
+        Map<String, Object> response = toolResult(request);
+        return ScriptedLlm.Reply.text(response.get("confirmation") + " Your ticket #" + response.get("ticketId")
+            + " has been opened and you will receive an email with a form to fill out.");
+    }
+
+    // Counts calls and the estimated tokens of each request and its complete response
+    private static class CountingLlm extends BaseLlm {
+
+        private final BaseLlm delegate;
+        final LongAdder calls = new LongAdder();
+        final LongAdder tokens = new LongAdder();
+
+        CountingLlm(BaseLlm delegate) {
+            super(delegate.model());
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Flowable<LlmResponse> generateContent(LlmRequest llmRequest, boolean stream) {
+            return Flowable.defer(() -> {
+                calls.increment();
+                tokens.add(Telemetry.estimateTokens(InstrumentedLlm.promptChars(llmRequest)));
+                return delegate.generateContent(llmRequest, stream)
+                    .doOnNext(response -> {
+                        if (!response.partial().orElse(false)) {
+                            tokens.add(Telemetry.estimateTokens(response.content().map(InstrumentedLlm::chars).orElse(0L)));
+                        }
+                    });
+            });
+        }
+
+        @Override
+        public BaseLlmConnection connect(LlmRequest llmRequest) {
+            return delegate.connect(llmRequest);
+        }
+    }
+}
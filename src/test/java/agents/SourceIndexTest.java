@@ -0,0 +1,135 @@
+package agents;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SourceIndexTest {
+
+    @TempDir
+    Path directory;
+
+    private Path root;
+    private Path indexFile;
+
+    @BeforeEach
+    void writeSource() throws IOException {
+        root = directory.resolve("src");
+        indexFile = directory.resolve("index").resolve("src.idx");
+        write("sync/client.py", String.join("\n", PythonOutlineTest.CLIENT) + "\n");
+        write("util.py", "def checksum(data):\n    return sum(data)\n");
+        write("retry.py", "# NOTE: shared by every client\nDELAYS = [1, 2, 4]\n");
+        // Not outlined: hidden and generated directories, and other files
+        write(".venv/lib/site.py", "def hidden():\n    pass\n");
+        write("__pycache__/util.py", "def cached():\n    pass\n");
+        write("README.md", "def not_python():\n");
+    }
+
+    @Test
+    void aRestartLoadsTheSavedIndexInsteadOfParsing() {
+        SourceIndex first = SourceIndex.open(root, indexFile, 0);
+        assertEquals(Set.of("sync/client.py", "util.py", "retry.py"), first.snapshot().files().keySet());
+        assertEquals(3L, first.stats().get("parsed"));
+        assertTrue(Files.exists(indexFile));
+
+        SourceIndex restarted = SourceIndex.open(root, indexFile, 0);
+
+        assertEquals(Map.of("files", 3, "symbols", 11L, "loadedFromIndex", 3L, "parsed", 0L, "refreshes", 1L), restarted.stats());
+        for (String path : first.snapshot().files().keySet()) {
+            assertSameOutline(first.snapshot().files().get(path), restarted.snapshot().files().get(path));
+        }
+        SourceIndex.Definition encrypt = restarted.snapshot().definitions("NebulaSyncClient._encrypt").get(0);
+        assertEquals("sync/client.py", encrypt.file().path());
+        assertEquals(23, encrypt.symbol().line());
+        assertEquals(List.of(encrypt), restarted.snapshot().definitions("_encrypt"));
+    }
+
+    @Test
+    void aRefreshParsesOnlyTheFilesThatChanged() throws IOException {
+        SourceIndex index = SourceIndex.open(root, indexFile, 0);
+        SourceIndex.Snapshot before = index.snapshot();
+
+        Path util = write("util.py", "def checksum(data):\n    return sum(data) % 256\n\n\ndef crc(data):\n    return 0\n");
+        Files.setLastModifiedTime(util, FileTime.fromMillis(before.files().get("util.py").modified() + 10_000));
+        write("sync/server.py", "class Server:\n    def serve(self):\n        return checksum(b'')\n");
+        Files.delete(root.resolve("retry.py"));
+        index.refresh();
+
+        SourceIndex.Snapshot after = index.snapshot();
+        assertEquals(5L, index.stats().get("parsed"));
+        assertEquals(Set.of("sync/client.py", "sync/server.py", "util.py"), after.files().keySet());
+        assertSame(before.files().get("sync/client.py"), after.files().get("sync/client.py"));
+        assertNotSame(before.files().get("util.py"), after.files().get("util.py"));
+        assertEquals(6, after.definitions("crc").get(0).symbol().endLine());
+        assertEquals(List.of(), after.definitions("DELAYS"));
+        assertArrayEquals(new int[] {3}, after.files().get("sync/server.py").references().get("checksum"));
+
+        // Nothing changed since: the refresh keeps the snapshot, and the saved index has the new outlines
+        index.refresh();
+        assertSame(after, index.snapshot());
+        SourceIndex restarted = SourceIndex.open(root, indexFile, 0);
+        assertEquals(0L, restarted.stats().get("parsed"));
+        assertEquals(Set.of("sync/client.py", "sync/server.py", "util.py"), restarted.snapshot().files().keySet());
+        assertEquals("Server.serve", restarted.snapshot().definitions("serve").get(0).symbol().qualifiedName());
+    }
+
+    @Test
+    void freshRefreshesAtMostOncePerInterval() throws IOException {
+        SourceIndex index = SourceIndex.open(root, indexFile, 60_000);
+        write("late.py", "def late():\n    pass\n");
+
+        assertEquals(List.of(), index.fresh().definitions("late"));
+        index.refresh();
+        assertEquals(1, index.fresh().definitions("late").size());
+    }
+
+    @Test
+    void aDamagedOrForeignIndexIsIgnoredAndTheFilesParsedAgain() throws IOException {
+        SourceIndex.open(root, indexFile, 0);
+        byte[] saved = Files.readAllBytes(indexFile);
+
+        Files.write(indexFile, Arrays.copyOf(saved, saved.length / 2));
+        SourceIndex truncated = SourceIndex.open(root, indexFile, 0);
+        assertEquals(0L, truncated.stats().get("loadedFromIndex"));
+        assertEquals(3L, truncated.stats().get("parsed"));
+
+        Path other = Files.createDirectories(directory.resolve("other"));
+        SourceIndex foreign = SourceIndex.open(other, indexFile, 0);
+        assertEquals(0L, foreign.stats().get("loadedFromIndex"));
+        assertEquals(0, foreign.stats().get("files"));
+
+        Files.writeString(indexFile, "not an index");
+        assertEquals(3, SourceIndex.open(root, indexFile, 0).stats().get("files"));
+    }
+
+    private Path write(String path, String text) throws IOException {
+        Path file = root.resolve(path);
+        Files.createDirectories(file.getParent());
+        return Files.writeString(file, text);
+    }
+
+    private static void assertSameOutline(SourceIndex.FileEntry expected, SourceIndex.FileEntry actual) {
+        assertEquals(expected.path(), actual.path());
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.modified(), actual.modified());
+        assertEquals(expected.symbols(), actual.symbols());
+        assertEquals(expected.markers(), actual.markers());
+        assertEquals(expected.references().keySet(), actual.references().keySet());
+        expected.references().forEach((name, lines) -> assertArrayEquals(lines, actual.references().get(name), name));
+    }
+}
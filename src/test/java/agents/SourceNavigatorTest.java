@@ -0,0 +1,142 @@
+package agents;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SourceNavigatorTest {
+
+    @TempDir
+    Path directory;
+
+    private Tenants.Tenant tenant;
+
+    @BeforeEach
+    void writeSource() throws IOException {
+        Files.writeString(directory.resolve("client.py"), String.join("\n", PythonOutlineTest.CLIENT) + "\n");
+        Files.writeString(directory.resolve("uses.py"), """
+            from client import NebulaSyncClient
+
+
+            def upload_all(client, paths):
+                for path in paths:
+                    client.upload_file(path)
+                return client._encrypt(b"done")
+            """);
+        tenant = new Tenants.Tenant("navigator", directory, null, 0, 0, 1);
+    }
+
+    // The tools read the index of the current tenant's knowledge directory
+    private <T> T asTenant(Supplier<T> tool) {
+        return Tenants.callAs(tenant, tool);
+    }
+
+    @Test
+    void findSymbolReturnsTheDefinitionItsNotesAndItsUses() {
+        Map<String, Object> found = asTenant(() -> SourceNavigator.findSymbol(" NebulaSyncClient._encrypt "));
+
+        assertEquals(Map.of(
+            "definitions", List.of(Map.of(
+                "file", "client.py",
+                "kind", "method",
+                "name", "NebulaSyncClient._encrypt",
+                "line", 23,
+                "endLine", 25,
+                "signature", "def _encrypt(data)",
+                "code", """
+                    23:     def _encrypt(data):
+                    24:         # WARNING: not constant time
+                    25:         return base64.b64encode(data)
+                    """,
+                "notes", List.of(Map.of("tag", "WARNING", "line", 24, "text", "not constant time")))),
+            "references", List.of(
+                Map.of("file", "client.py", "line", 34, "in", "NebulaSyncClient.upload_file",
+                    "text", "data = self._encrypt(open(path).read())"),
+                Map.of("file", "uses.py", "line", 7, "in", "upload_all", "text", "return client._encrypt(b\"done\")"))),
+            found);
+    }
+
+    @Test
+    void findSymbolSuggestsSimilarNames() {
+        assertEquals(Map.of(
+            "message", "No symbol named 'encrypt'. Similar names are listed.",
+            "similar", List.of("NebulaSyncClient._encrypt", "_encrypt")),
+            asTenant(() -> SourceNavigator.findSymbol("encrypt")));
+        assertEquals(Map.of("message", "No symbol named 'zzz'. Try grepSource.", "similar", List.of()),
+            asTenant(() -> SourceNavigator.findSymbol("zzz")));
+    }
+
+    @Test
+    void listMethodsReturnsTheMethodsOfAClassAndItsNotes() {
+        Map<String, Object> listed = asTenant(() -> SourceNavigator.listMethods("NebulaSyncClient"));
+
+        assertEquals(Map.of("classes", List.of(Map.of(
+            "file", "client.py",
+            "kind", "class",
+            "name", "NebulaSyncClient",
+            "line", 8,
+            "endLine", 35,
+            "signature", "class NebulaSyncClient(BaseClient):",
+            "doc", "Uploads files to Nebula.",
+            "methods", List.of(
+                Map.of("name", "_encrypt", "line", 23, "signature", "def _encrypt(data)"),
+                Map.of("name", "upload_file", "line", 27,
+                    "signature", "async def upload_file(self, path: str, retries: int = MAX_RETRIES) -> bool",
+                    "doc", "Sends one file.")),
+            "notes", List.of(
+                Map.of("tag", "TODO", "line", 11, "text", "rotate the key before every release"),
+                Map.of("tag", "WARNING", "line", 24, "text", "not constant time"),
+                Map.of("tag", "FIXME", "line", 32, "text", "no resume"))))), listed);
+    }
+
+    @Test
+    void listMethodsWithoutANameListsTheClasses() {
+        Map<String, Object> listed = asTenant(() -> SourceNavigator.listMethods(""));
+
+        assertEquals(Map.of("classes", List.of(
+            Map.of("file", "client.py", "kind", "class", "name", "NebulaSyncClient", "line", 8, "endLine", 35,
+                "signature", "class NebulaSyncClient(BaseClient):", "doc", "Uploads files to Nebula.", "methods", 2),
+            Map.of("file", "client.py", "kind", "class", "name", "NebulaSyncClient.Config", "line", 13, "endLine", 17,
+                "signature", "class Config:", "methods", 1))), listed);
+        assertEquals(Map.of("message", "No class named 'main'. Similar names are listed.", "similar", List.of("main", "main.helper")),
+            asTenant(() -> SourceNavigator.listMethods("main")));
+    }
+
+    @Test
+    void grepSourceReturnsMatchesWithTheirContextAndMethod() {
+        Map<String, Object> matches = asTenant(() -> SourceNavigator.grepSource("fixme|WARNING", 1));
+
+        assertEquals(Map.of("matches", List.of(
+            Map.of("file", "client.py", "line", 24, "in", "NebulaSyncClient._encrypt", "snippet", """
+                23:     def _encrypt(data):
+                24:         # WARNING: not constant time
+                25:         return base64.b64encode(data)
+                """),
+            Map.of("file", "client.py", "line", 32, "in", "NebulaSyncClient.upload_file", "snippet", """
+                31:         Sends one file.
+                32:         FIXME: no resume
+                33:         \"""
+                """))), matches);
+    }
+
+    @Test
+    void grepSourceTakesAnInvalidPatternAsPlainText() {
+        Map<String, Object> matches = asTenant(() -> SourceNavigator.grepSource("open(", 0));
+
+        assertEquals(Map.of("matches", List.of(Map.of("file", "client.py", "line", 34, "in", "NebulaSyncClient.upload_file",
+            "snippet", "34:         data = self._encrypt(open(path).read())\n"))), matches);
+        assertEquals(Map.of("matches", List.of(), "message", "No line of the source matched."),
+            asTenant(() -> SourceNavigator.grepSource("upload_everything", 2)));
+        assertEquals(Map.of("matches", List.of(), "message", "The pattern is empty."),
+            asTenant(() -> SourceNavigator.grepSource(" ", 2)));
+    }
+}
@@ -0,0 +1,64 @@
+package agents;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.adk.runner.InMemoryRunner;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class StreamingTest {
+
+    private static final long FIRST_TOKEN_MS = 200;
+    private static final long TOKEN_MS = 20;
+    private static final long BOUND_MS = FIRST_TOKEN_MS + 200;
+
+    private AgentServer server;
+    private String baseUrl;
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    void startServer() throws Exception {
+        ScriptedLlm model = ScriptedLlm.builder()
+            .fallback(ScriptedLlm.Reply.text(StreamingBenchmark.REPLY))
+            .latency(Duration.ofMillis(FIRST_TOKEN_MS), Duration.ofMillis(TOKEN_MS))
+            .build();
+        server = new AgentServer(0, 4, Map.of(
+            "simple", AgentRuntime.of(new InMemoryRunner(SimpleAgent.initAgent(model)))));
+        server.start();
+        baseUrl = "http://localhost:" + server.port() + "/simple";
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    void streamedTextReachesTheClientWithinTheBound() throws Exception {
+        // The first exchange pays for class loading and is not measured
+        StreamingBenchmark.exchange(client, baseUrl, true);
+
+        for (int i = 0; i < 5; i++) {
+            long[] timings = StreamingBenchmark.exchange(client, baseUrl, true);
+            long firstTextMs = TimeUnit.NANOSECONDS.toMillis(timings[1]);
+            assertTrue(firstTextMs <= BOUND_MS, "first text after " + firstTextMs + " ms, bound " + BOUND_MS + " ms");
+            assertTrue(timings[1] < timings[2] / 2, "text arrived only with the end of the reply");
+        }
+    }
+
+    @Test
+    void withoutStreamingTextWaitsForTheWholeReply() throws Exception {
+        StreamingBenchmark.exchange(client, baseUrl, false);
+
+        long[] timings = StreamingBenchmark.exchange(client, baseUrl, false);
+        long minimumMs = FIRST_TOKEN_MS + TOKEN_MS * (ScriptedLlm.tokens(StreamingBenchmark.REPLY).size() - 1);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(timings[1]) >= minimumMs);
+    }
+}
@@ -0,0 +1,136 @@
+package agents;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.adk.models.BaseLlm;
+import com.google.adk.models.BaseLlmConnection;
+import com.google.adk.models.LlmRequest;
+import com.google.adk.models.LlmResponse;
+import com.google.adk.runner.InMemoryRunner;
+import com.google.adk.sessions.Session;
+import com.google.adk.tools.BaseTool;
+import com.google.adk.tools.ToolContext;
+import com.google.genai.types.Content;
+import com.google.genai.types.Part;
+
+import org.junit.jupiter.api.Test;
+
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Single;
+
+// Spans go to the process-wide registry, so every test records under names of its own
+class TelemetryTest {
+
+    private static final LlmRequest REQUEST = LlmRequest.builder()
+        .contents(List.of(Content.fromParts(Part.fromText("Why are my files corrupted?")))).build();
+
+    /** Answers after a delay, or fails when the argument says so. */
+    private static final class SlowTool extends BaseTool {
+
+        SlowTool(String name) {
+            super(name, "Looks something up.");
+        }
+
+        @Override
+        public Single<Map<String, Object>> runAsync(Map<String, Object> args, ToolContext toolContext) {
+            if (Boolean.TRUE.equals(args.get("fail"))) {
+                return Single.error(new IllegalStateException("lookup failed"));
+            }
+            return Single.timer(30, TimeUnit.MILLISECONDS).map(tick -> Map.of("status", "ok"));
+        }
+    }
+
+    private static final class FailingLlm extends BaseLlm {
+
+        FailingLlm() {
+            super("failing");
+        }
+
+        @Override
+        public Flowable<LlmResponse> generateContent(LlmRequest llmRequest, boolean stream) {
+            return Flowable.error(new IllegalStateException("quota exceeded"));
+        }
+
+        @Override
+        public BaseLlmConnection connect(LlmRequest llmRequest) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    // Spans are recorded in doFinally, which can run just after the caller has seen the end of the stream
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> stat(String key, long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        Map<String, Object> stat = (Map<String, Object>) Telemetry.metrics().snapshot().get(key);
+        while ((stat == null || (long) stat.get("count") < count) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            stat = (Map<String, Object>) Telemetry.metrics().snapshot().get(key);
+        }
+        assertTrue(stat != null, "no spans recorded under " + key);
+        return stat;
+    }
+
+    @Test
+    void modelCallsAreCountedWithLatencyFirstTokenAndTokens() throws Exception {
+        BaseLlm model = new InstrumentedLlm(ScriptedLlm.builder()
+            .fallback(ScriptedLlm.Reply.text("Run a repair from the settings page."))
+            .latency(Duration.ofMillis(40), Duration.ofMillis(5))
+            .build(), "telemetry-model");
+        BaseLlm failing = new InstrumentedLlm(new FailingLlm(), "telemetry-model");
+
+        for (int i = 0; i < 3; i++) {
+            model.generateContent(REQUEST, true).blockingSubscribe();
+        }
+        assertThrows(IllegalStateException.class, () -> failing.generateContent(REQUEST, false).blockingSubscribe());
+
+        Map<String, Object> stat = stat("model:telemetry-model", 4);
+        assertEquals(4L, stat.get("count"));
+        assertEquals(1L, stat.get("errors"));
+        assertTrue((double) stat.get("maxMs") >= 40, stat.toString());
+        assertTrue((double) stat.get("meanFirstTokenMs") >= 40 * 3 / 4.0, stat.toString());
+        // "Why are my files corrupted?" is 27 characters, about 7 tokens per call
+        assertEquals(4 * Telemetry.estimateTokens(27), stat.get("promptTokens"));
+        assertEquals(3 * Telemetry.estimateTokens("Run a repair from the settings page.".length()), stat.get("responseTokens"));
+    }
+
+    @Test
+    void toolCallsAreCountedWithLatencyErrorsAndResultSize() throws Exception {
+        BaseTool tool = new InstrumentedTool(new SlowTool("telemetryLookup"));
+
+        tool.runAsync(Map.of(), null).blockingGet();
+        tool.runAsync(Map.of(), null).blockingGet();
+        assertThrows(IllegalStateException.class, () -> tool.runAsync(Map.of("fail", true), null).blockingGet());
+
+        Map<String, Object> stat = stat("tool:telemetryLookup", 3);
+        assertEquals(3L, stat.get("count"));
+        assertEquals(1L, stat.get("errors"));
+        assertTrue((double) stat.get("p50Ms") >= 30, stat.toString());
+        assertEquals(2L * Json.utf8Length(Map.of("status", "ok")), stat.get("bytes"));
+    }
+
+    @Test
+    void turnsAndAgentHopsAreRecordedPerMessage() throws Exception {
+        ScriptedLlm model = ScriptedLlm.builder().name("telemetry-turns")
+            .fallback(ScriptedLlm.Reply.text("Hello.")).build();
+        AgentRuntime runtime = new InstrumentedRuntime(AgentRuntime.of(
+            new InMemoryRunner(SimpleAgent.initAgent(model), "telemetry-app")));
+        Session session = runtime.sessionService().createSession(runtime.appName(), "alice").blockingGet();
+
+        for (int i = 0; i < 2; i++) {
+            runtime.runAsync("alice", session.id(), Content.fromParts(Part.fromText("Hi"))).blockingSubscribe();
+        }
+
+        Map<String, Object> turns = stat("turn:telemetry-app", 2);
+        assertEquals(2L, turns.get("count"));
+        assertEquals(0L, turns.get("errors"));
+        assertTrue(turns.containsKey("meanFirstTokenMs"), turns.toString());
+        assertTrue((long) stat("agent:" + SimpleAgent.AGENT_NAME, 2).get("count") >= 2);
+    }
+}
@@ -0,0 +1,166 @@
+package agents;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.google.adk.agents.RunConfig;
+import com.google.adk.events.Event;
+import com.google.adk.sessions.BaseSessionService;
+import com.google.adk.sessions.InMemorySessionService;
+import com.google.adk.sessions.Session;
+import com.google.genai.types.Content;
+import com.google.genai.types.Part;
+
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.processors.PublishProcessor;
+import io.reactivex.rxjava3.subscribers.TestSubscriber;
+import org.junit.jupiter.api.Test;
+
+class TenantRuntimeTest {
+
+    private record Running(String sessionId, PublishProcessor<Event> events) {
+        void reply(String text) {
+            events.onNext(Event.builder()
+                .id(UUID.randomUUID().toString())
+                .invocationId(UUID.randomUUID().toString())
+                .author("agent")
+                .content(Content.builder().role("model").parts(List.of(Part.fromText(text))).build())
+                .build());
+            events.onComplete();
+        }
+    }
+
+    // A runtime whose turns run until the test replies to them
+    private static final class ControlledRuntime implements AgentRuntime {
+        final InMemorySessionService sessions = new InMemorySessionService();
+        final BlockingQueue<Running> running = new LinkedBlockingQueue<>();
+
+        @Override
+        public String appName() {
+            return "tenant app";
+        }
+
+        @Override
+        public BaseSessionService sessionService() {
+            return sessions;
+        }
+
+        @Override
+        public Flowable<Event> runAsync(String userId, String sessionId, Content newMessage, RunConfig runConfig) {
+            PublishProcessor<Event> events = PublishProcessor.create();
+            return events.doOnSubscribe(subscription -> running.add(new Running(sessionId, events)));
+        }
+    }
+
+    private static final Tenants.Tenant BUSY = new Tenants.Tenant("busy", null, null, 1, 0, 1);
+    private static final Tenants.Tenant QUIET = Tenants.Tenant.unlimited("quiet");
+
+    private final ControlledRuntime delegate = new ControlledRuntime();
+    private final TenantRuntime runtime = new TenantRuntime(delegate, new Tenants(List.of(BUSY, QUIET)),
+        new TenantScheduler(new TenantScheduler.Limits(4, 10, Duration.ofSeconds(10), true)));
+
+    private TestSubscriber<Event> send(Session session, String text) {
+        return runtime.runAsync(session.userId(), session.id(), Content.fromParts(Part.fromText(text))).test();
+    }
+
+    private Running nextRunning() throws InterruptedException {
+        Running turn = delegate.running.poll(5, TimeUnit.SECONDS);
+        assertNotNull(turn, "no turn was started");
+        return turn;
+    }
+
+    @Test
+    void turnsRunUnderTheLimitsOfTheSessionsTenant() throws Exception {
+        Session busyFirst = TenantRuntime.createSession(runtime, "busy", "alice");
+        Session busySecond = TenantRuntime.createSession(runtime, "busy", "bob");
+        Session quiet = TenantRuntime.createSession(runtime, "quiet", "carol");
+
+        TestSubscriber<Event> first = send(busyFirst, "First question");
+        Running firstTurn = nextRunning();
+        TestSubscriber<Event> second = send(busySecond, "Second question");
+        TestSubscriber<Event> other = send(quiet, "Another tenant's question");
+
+        // The busy tenant may run one turn at a time; the quiet tenant's turn does not wait for it
+        Running otherTurn = nextRunning();
+        assertEquals(quiet.id(), otherTurn.sessionId());
+        assertNull(delegate.running.poll(200, TimeUnit.MILLISECONDS));
+        otherTurn.reply("Answer");
+        other.awaitDone(5, TimeUnit.SECONDS).assertComplete().assertValueCount(1);
+
+        firstTurn.reply("Answer to the first question");
+        first.awaitDone(5, TimeUnit.SECONDS).assertComplete();
+        Running secondTurn = nextRunning();
+        assertEquals(busySecond.id(), secondTurn.sessionId());
+        secondTurn.reply("Answer to the second question");
+        second.awaitDone(5, TimeUnit.SECONDS).assertComplete();
+
+        Map<String, Object> busy = awaitCompleted("busy", 2);
+        assertEquals(0, busy.get("inFlight"));
+        assertTrue((Long) busy.get("tokensUsed") > 0);
+        awaitCompleted("quiet", 1);
+    }
+
+    @Test
+    void aTurnDroppedWhileQueuedNeverRuns() throws Exception {
+        Session busyFirst = TenantRuntime.createSession(runtime, "busy", "alice");
+        Session busySecond = TenantRuntime.createSession(runtime, "busy", "bob");
+        TestSubscriber<Event> first = send(busyFirst, "First question");
+        Running firstTurn = nextRunning();
+
+        TestSubscriber<Event> dropped = send(busySecond, "Never mind");
+        dropped.cancel();
+        firstTurn.reply("Answer");
+        first.awaitDone(5, TimeUnit.SECONDS).assertComplete();
+
+        assertNull(delegate.running.poll(200, TimeUnit.MILLISECONDS));
+        assertEquals(0, tenantStats("busy").get("queued"));
+    }
+
+    @Test
+    void aFailedTurnReleasesItsSlot() throws Exception {
+        Session session = TenantRuntime.createSession(runtime, "busy", "alice");
+        TestSubscriber<Event> failing = send(session, "Question");
+        nextRunning().events().onError(new IllegalStateException("model unavailable"));
+        failing.awaitDone(5, TimeUnit.SECONDS).assertError(IllegalStateException.class);
+
+        TestSubscriber<Event> next = send(session, "Question again");
+        nextRunning().reply("Answer");
+        next.awaitDone(5, TimeUnit.SECONDS).assertComplete();
+        assertEquals(1L, tenantStats("busy").get("failed"));
+    }
+
+    @Test
+    void aTurnOfAnUnknownSessionFails() {
+        TestSubscriber<Event> turn = runtime.runAsync("alice", "no-such-session", Content.fromParts(Part.fromText("Hi"))).test();
+
+        turn.awaitDone(5, TimeUnit.SECONDS).assertError(IllegalArgumentException.class);
+    }
+
+    // A turn is counted once its events are delivered, so the stats can trail the subscriber briefly
+    private Map<String, Object> awaitCompleted(String tenant, long completed) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        Map<String, Object> stats = tenantStats(tenant);
+        while (!Long.valueOf(completed).equals(stats.get("completed")) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            stats = tenantStats(tenant);
+        }
+        assertEquals(completed, stats.get("completed"));
+        return stats;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> tenantStats(String tenant) {
+        Map<String, Object> scheduler = (Map<String, Object>) runtime.stats().get("tenants");
+        return (Map<String, Object>) ((Map<String, Object>) scheduler.get("tenants")).get(tenant);
+    }
+}
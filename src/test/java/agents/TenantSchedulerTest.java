@@ -0,0 +1,205 @@
+package agents;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class TenantSchedulerTest {
+
+    private static final Tenants.Tenant NOISY = Tenants.Tenant.unlimited("noisy");
+    private static final Tenants.Tenant QUIET = Tenants.Tenant.unlimited("quiet");
+
+    // Turns as they are admitted, started, and rejections as they happen
+    private final BlockingQueue<TenantScheduler.Turn> started = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Throwable> rejected = new LinkedBlockingQueue<>();
+
+    private TenantScheduler.Turn submit(TenantScheduler scheduler, Tenants.Tenant tenant) {
+        return scheduler.submit(tenant, turn -> {
+            if (turn.start()) {
+                started.add(turn);
+            }
+        }, rejected::add);
+    }
+
+    private TenantScheduler.Turn nextStarted() throws InterruptedException {
+        TenantScheduler.Turn turn = started.poll(5, TimeUnit.SECONDS);
+        assertNotNull(turn, "no turn was started");
+        return turn;
+    }
+
+    private static TenantScheduler scheduler(int maxConcurrent, int maxQueued, Duration queueTimeout, boolean fair) {
+        return new TenantScheduler(new TenantScheduler.Limits(maxConcurrent, maxQueued, queueTimeout, fair));
+    }
+
+    // Runs every queued turn one at a time and returns the tenants in the order they ran
+    private List<String> drain(int turns) throws InterruptedException {
+        List<String> order = new ArrayList<>();
+        for (int i = 0; i < turns; i++) {
+            TenantScheduler.Turn turn = nextStarted();
+            order.add(turn.tenant().id());
+            turn.finish(0, 0, null);
+        }
+        return order;
+    }
+
+    @Test
+    void aQuietTenantDoesNotWaitBehindANoisyTenantsBacklog() throws Exception {
+        TenantScheduler scheduler = scheduler(1, 100, Duration.ZERO, true);
+        for (int i = 0; i < 21; i++) {
+            submit(scheduler, NOISY);
+        }
+        submit(scheduler, QUIET);
+
+        List<String> order = drain(22);
+
+        assertEquals("noisy", order.get(0));
+        assertEquals("quiet", order.get(1));
+        assertEquals(21, order.stream().filter("noisy"::equals).count());
+    }
+
+    @Test
+    void withoutFairQueuingTheQuietTenantWaitsForTheWholeBacklog() throws Exception {
+        TenantScheduler scheduler = scheduler(1, 100, Duration.ZERO, false);
+        for (int i = 0; i < 21; i++) {
+            submit(scheduler, NOISY);
+        }
+        submit(scheduler, QUIET);
+
+        List<String> order = drain(22);
+
+        assertEquals("quiet", order.get(21));
+    }
+
+    @Test
+    void backloggedTenantsShareTheDeploymentByWeight() throws Exception {
+        Tenants.Tenant heavy = new Tenants.Tenant("heavy", null, null, 0, 0, 3);
+        Tenants.Tenant light = new Tenants.Tenant("light", null, null, 0, 0, 1);
+        TenantScheduler scheduler = scheduler(1, 100, Duration.ZERO, true);
+        for (int i = 0; i < 40; i++) {
+            submit(scheduler, light);
+            submit(scheduler, heavy);
+        }
+
+        List<String> first = drain(40);
+
+        long heavyTurns = first.stream().filter("heavy"::equals).count();
+        assertTrue(heavyTurns >= 29 && heavyTurns <= 31, first.toString());
+        drain(40);
+    }
+
+    @Test
+    void aTenantAtItsOwnLimitDoesNotHoldBackOthers() throws Exception {
+        Tenants.Tenant limited = new Tenants.Tenant("limited", null, null, 2, 0, 1);
+        TenantScheduler scheduler = scheduler(10, 100, Duration.ZERO, true);
+        for (int i = 0; i < 5; i++) {
+            submit(scheduler, limited);
+        }
+        submit(scheduler, QUIET);
+
+        List<TenantScheduler.Turn> running = List.of(nextStarted(), nextStarted(), nextStarted());
+        assertNull(started.poll(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, running.stream().filter(turn -> turn.tenant() == QUIET).count());
+        assertEquals(3, tenantStats(scheduler, "limited").get("queued"));
+        assertEquals(2, tenantStats(scheduler, "limited").get("inFlight"));
+
+        // Each finished turn of the tenant lets its next one start
+        running.get(0).finish(0, 0, null);
+        running.get(1).finish(0, 0, null);
+        assertEquals("limited", nextStarted().tenant().id());
+        assertEquals("limited", nextStarted().tenant().id());
+        assertNull(started.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void aFullQueueRejectsOnlyThatTenantsTurns() throws Exception {
+        TenantScheduler scheduler = scheduler(1, 2, Duration.ZERO, true);
+        TenantScheduler.Turn running = submit(scheduler, NOISY);
+        assertEquals(running, nextStarted());
+        submit(scheduler, NOISY);
+        submit(scheduler, NOISY);
+
+        submit(scheduler, NOISY);
+
+        Throwable rejection = rejected.poll(5, TimeUnit.SECONDS);
+        assertInstanceOf(TenantScheduler.QuotaExceededException.class, rejection);
+        assertEquals("Turn of tenant noisy was rejected: too many turns waiting.", rejection.getMessage());
+        submit(scheduler, QUIET);
+        assertNull(rejected.poll(100, TimeUnit.MILLISECONDS));
+
+        running.finish(0, 0, null);
+        assertEquals("quiet", nextStarted().tenant().id());
+        assertEquals(1L, tenantStats(scheduler, "noisy").get("rejected"));
+    }
+
+    @Test
+    void turnsThatWaitLongerThanTheQueueTimeoutAreRejected() throws Exception {
+        TenantScheduler scheduler = scheduler(1, 100, Duration.ofMillis(100), true);
+        TenantScheduler.Turn running = submit(scheduler, NOISY);
+        assertEquals(running, nextStarted());
+        submit(scheduler, QUIET);
+
+        Throwable rejection = rejected.poll(5, TimeUnit.SECONDS);
+        assertEquals("Turn of tenant quiet was rejected: no capacity within 100 ms.", rejection.getMessage());
+
+        // The expired turn is gone, so finishing the running one starts nothing
+        running.finish(0, 0, null);
+        assertNull(started.poll(200, TimeUnit.MILLISECONDS));
+        assertEquals(1L, tenantStats(scheduler, "quiet").get("timedOut"));
+        assertEquals(0, tenantStats(scheduler, "quiet").get("queued"));
+    }
+
+    @Test
+    void aTenantOverItsTokenRateWaitsForItsBucketToRefill() throws Exception {
+        // 600 tokens a minute is 10 a second; a turn that used 605 leaves the bucket 5 short
+        Tenants.Tenant metered = new Tenants.Tenant("metered", null, null, 0, 600, 1);
+        TenantScheduler scheduler = scheduler(10, 100, Duration.ZERO, true);
+        submit(scheduler, metered);
+        nextStarted().finish(600, 5, null);
+
+        long queued = System.nanoTime();
+        submit(scheduler, metered);
+        submit(scheduler, QUIET);
+
+        assertEquals("quiet", nextStarted().tenant().id());
+        assertNull(started.poll(300, TimeUnit.MILLISECONDS));
+        assertEquals("metered", nextStarted().tenant().id());
+        assertTrue(System.nanoTime() - queued >= TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(605L, tenantStats(scheduler, "metered").get("tokensUsed"));
+    }
+
+    @Test
+    void cancelledTurnsGiveUpTheirPlace() throws Exception {
+        TenantScheduler scheduler = scheduler(1, 100, Duration.ZERO, true);
+        TenantScheduler.Turn running = submit(scheduler, NOISY);
+        assertEquals(running, nextStarted());
+        TenantScheduler.Turn withdrawn = submit(scheduler, NOISY);
+        submit(scheduler, QUIET);
+
+        withdrawn.cancel();
+        running.cancel();
+        assertNull(started.poll(100, TimeUnit.MILLISECONDS));
+
+        running.finish(0, 0, null);
+        assertEquals("quiet", nextStarted().tenant().id());
+        assertFalse(withdrawn.start());
+        assertTrue(rejected.isEmpty());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> tenantStats(TenantScheduler scheduler, String tenant) {
+        return (Map<String, Object>) ((Map<String, Object>) scheduler.stats().get("tenants")).get(tenant);
+    }
+}
@@ -0,0 +1,111 @@
+package agents;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TenantsTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void parsesTheTenantsFile() throws IOException {
+        Path file = directory.resolve("tenants.tsv");
+        Files.writeString(file, """
+            # id  knowledgeDir  billingStore  maxConcurrent  tokensPerMinute  weight
+            acme    docs/acme  billing/acme.bin  4  60000  2
+
+            globex  -          -                 0  0      1
+            """);
+
+        List<Tenants.Tenant> tenants = Tenants.parse(file);
+
+        assertEquals(List.of(
+            new Tenants.Tenant("acme", Path.of("docs/acme"), Path.of("billing/acme.bin"), 4, 60000, 2),
+            new Tenants.Tenant("globex", null, null, 0, 0, 1)), tenants);
+    }
+
+    @Test
+    void reportsTheLineOfABadEntry() throws IOException {
+        Path file = directory.resolve("tenants.tsv");
+        Files.writeString(file, "acme - - 4 60000 1\nglobex - - 0 0\ninitech - - 0 0 0\n");
+
+        IllegalArgumentException missing = assertThrows(IllegalArgumentException.class, () -> Tenants.parse(file));
+        assertEquals(file + ":2: expected 6 fields, found 5", missing.getMessage());
+
+        Files.writeString(file, "acme - - 4 60000 1\ninitech - - 0 0 0\n");
+        IllegalArgumentException weight = assertThrows(IllegalArgumentException.class, () -> Tenants.parse(file));
+        assertEquals(file + ":2: Tenant initech: weight must be at least 1", weight.getMessage());
+
+        assertThrows(IllegalArgumentException.class,
+            () -> new Tenants(List.of(Tenants.Tenant.unlimited("acme"), Tenants.Tenant.unlimited("acme"))));
+    }
+
+    @Test
+    void aSessionBelongsToTheTenantInItsState() {
+        Tenants tenants = new Tenants(List.of(Tenants.Tenant.unlimited(Tenants.DEFAULT), Tenants.Tenant.unlimited("acme")));
+
+        assertEquals("acme", tenants.of(Tenants.sessionState("acme")).id());
+        assertEquals(Tenants.DEFAULT, tenants.of(Map.of()).id());
+        assertEquals(Tenants.DEFAULT, tenants.of((Map<String, Object>) null).id());
+        assertThrows(IllegalArgumentException.class, () -> tenants.of(Tenants.sessionState("globex")));
+        assertTrue(tenants.configured());
+        assertFalse(tenants.contains("globex"));
+    }
+
+    @Test
+    void billingToolsReadTheStoreOfTheCurrentTenant() throws IOException {
+        Path acmeStore = directory.resolve("acme.bin");
+        BillingDataGenerator.generate(acmeStore, 5, 50, 7);
+        Tenants.Tenant acme = new Tenants.Tenant("acme", null, acmeStore, 0, 0, 1);
+        Tenants.Tenant acmeEurope = new Tenants.Tenant("acme-eu", null, acmeStore, 0, 0, 1);
+        Tenants.Tenant globex = Tenants.Tenant.unlimited("globex");
+
+        // Outside a tenant's tool call, and for a tenant without a store of its own, the deployment's data
+        assertSame(BillingHistory.defaultStore(), BillingHistory.store());
+        assertSame(BillingHistory.defaultStore(), Tenants.callAs(globex, BillingHistory::store));
+        assertEquals("Current", BillingHistory.billingHistory("1001-A", "", "", "", "").get("accountStatus"));
+
+        BillingStore store = Tenants.callAs(acme, BillingHistory::store);
+        assertNotSame(BillingHistory.defaultStore(), store);
+        assertSame(store, Tenants.callAs(acme, BillingHistory::store));
+        assertSame(store, Tenants.callAs(acmeEurope, BillingHistory::store));
+
+        Map<String, Object> tenantUser = Tenants.callAs(acme, () -> BillingHistory.billingHistory("U0000001-B", "", "", "", ""));
+        assertNull(tenantUser.get("message"));
+        assertFalse(((List<?>) tenantUser.get("transactions")).isEmpty());
+        Map<String, Object> deploymentUser = Tenants.callAs(acme, () -> BillingHistory.billingHistory("1001-A", "", "", "", ""));
+        assertEquals("User ID not found in the billing system.", deploymentUser.get("message"));
+        assertTrue(Tenants.current().isEmpty());
+    }
+
+    @Test
+    void callAsRestoresTheTenantItReplaced() {
+        Tenants.Tenant outer = Tenants.Tenant.unlimited("outer");
+        Tenants.Tenant inner = Tenants.Tenant.unlimited("inner");
+
+        String seen = Tenants.callAs(outer, () -> Tenants.callAs(inner, () -> Tenants.current().orElseThrow().id())
+            + "," + Tenants.current().orElseThrow().id());
+
+        assertEquals("inner,outer", seen);
+        assertTrue(Tenants.current().isEmpty());
+        assertThrows(IllegalStateException.class, () -> Tenants.callAs(outer, () -> {
+            throw new IllegalStateException();
+        }));
+        assertTrue(Tenants.current().isEmpty());
+    }
+}
@@ -0,0 +1,248 @@
+package agents;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TicketJournalTest {
+
+    @TempDir
+    Path directory;
+
+    private TicketJournal open() throws IOException {
+        return new TicketJournal(directory, TicketJournal.FsyncPolicy.BATCH, Duration.ofMillis(10), 1024 * 1024);
+    }
+
+    private TicketJournal openWithDedupe() throws IOException {
+        return new TicketJournal(directory, TicketJournal.FsyncPolicy.BATCH, Duration.ofMillis(10), 1024 * 1024,
+            Duration.ofMinutes(10), 1000);
+    }
+
+    private static long await(CompletableFuture<Long> id) throws Exception {
+        return id.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void ticketsAreNumberedInOrderAndReadBack() throws Exception {
+        try (TicketJournal journal = open()) {
+            assertEquals(1, await(journal.submit("1001-A", "Refund for the annual plan")));
+            assertEquals(2, await(journal.submit("2002-B", "Charged twice\nin March")));
+
+            TicketJournal.Ticket ticket = journal.find(2).orElseThrow();
+            assertEquals("2002-B", ticket.userId());
+            assertEquals("Charged twice\nin March", ticket.message());
+        }
+    }
+
+    @Test
+    void ticketsLongerThanOneReadAreReadBackWhole() throws Exception {
+        String message = "Charged twice. ".repeat(10_000);
+        try (TicketJournal journal = open()) {
+            long id = await(journal.submit("1001-A", message));
+            await(journal.submit("1001-A", "Next ticket"));
+
+            assertEquals(message, journal.find(id).orElseThrow().message());
+            assertEquals("Next ticket", journal.find(id + 1).orElseThrow().message());
+        }
+    }
+
+    @Test
+    void ticketsSubmittedWhileClosingAreWrittenOrFailed() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            TicketJournal journal = open();
+            List<CompletableFuture<Long>> ids = new ArrayList<>();
+            Thread submitter = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    ids.add(journal.submit("1001-A", "Ticket " + i));
+                }
+            });
+            submitter.start();
+            journal.close();
+            submitter.join();
+
+            // Every future settles right away, none waits for a writer that has stopped
+            CompletableFuture.allOf(ids.toArray(CompletableFuture[]::new)).handle((result, error) -> null)
+                .get(1, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void reopeningRebuildsTheIndexAndContinuesNumbering() throws Exception {
+        try (TicketJournal journal = open()) {
+            for (int i = 0; i < 5; i++) {
+                await(journal.submit("1001-A", "Ticket " + i));
+            }
+        }
+
+        try (TicketJournal journal = open()) {
+            assertEquals(5, journal.size());
+            assertEquals("Ticket 3", journal.find(4).orElseThrow().message());
+            assertEquals(6, await(journal.submit("1001-A", "After restart")));
+        }
+    }
+
+    @Test
+    void aTornLastLineIsDroppedOnRecovery() throws Exception {
+        try (TicketJournal journal = open()) {
+            await(journal.submit("1001-A", "Complete ticket"));
+        }
+        // A crash in the middle of a write leaves a line without its line break
+        Path segment = onlySegment();
+        Files.writeString(segment, "#2 [1001-A] 2025-01-01T00:00:00Z - Half writ", UTF_8, StandardOpenOption.APPEND);
+
+        try (TicketJournal journal = open()) {
+            assertEquals(1, journal.size());
+            assertEquals(2, await(journal.submit("2002-B", "Next ticket")));
+            assertEquals("Next ticket", journal.find(2).orElseThrow().message());
+        }
+        try (TicketJournal journal = open()) {
+            assertEquals(2, journal.size());
+            assertEquals("2002-B", journal.find(2).orElseThrow().userId());
+        }
+        assertEquals(2, Files.readAllLines(segment, UTF_8).size());
+    }
+
+    @Test
+    void segmentsRotateAtTheConfiguredSize() throws Exception {
+        List<CompletableFuture<Long>> ids = new ArrayList<>();
+        try (TicketJournal journal = new TicketJournal(directory, TicketJournal.FsyncPolicy.NONE, Duration.ZERO, 200)) {
+            for (int i = 0; i < 20; i++) {
+                ids.add(journal.submit("1001-A", "A ticket long enough to fill a small segment quickly, number " + i));
+                await(ids.get(i));
+            }
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            assertTrue(files.count() > 1);
+        }
+        try (TicketJournal journal = open()) {
+            assertEquals(20, journal.size());
+            assertEquals("A ticket long enough to fill a small segment quickly, number 19",
+                journal.find(20).orElseThrow().message());
+        }
+    }
+
+    @Test
+    void aRepeatedTicketGetsTheEarlierIdAndIsNotWrittenAgain() throws Exception {
+        try (TicketJournal journal = openWithDedupe()) {
+            TicketJournal.Receipt first = journal.submitOnce("1001-A", "Refund for the annual plan").get(10, TimeUnit.SECONDS);
+            TicketJournal.Receipt repeat = journal.submitOnce("1001-A", "  refund for the ANNUAL plan!").get(10, TimeUnit.SECONDS);
+            TicketJournal.Receipt otherUser = journal.submitOnce("2002-B", "Refund for the annual plan").get(10, TimeUnit.SECONDS);
+
+            assertEquals(new TicketJournal.Receipt(1, false), first);
+            assertEquals(new TicketJournal.Receipt(1, true), repeat);
+            assertEquals(new TicketJournal.Receipt(2, false), otherUser);
+            assertEquals(2, journal.size());
+            assertEquals(1L, journal.stats().get("duplicates"));
+        }
+    }
+
+    @Test
+    void concurrentRepeatsAreWrittenOnce() throws Exception {
+        try (TicketJournal journal = openWithDedupe()) {
+            List<CompletableFuture<TicketJournal.Receipt>> receipts = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                receipts.add(CompletableFuture.supplyAsync(() -> journal.submitOnce("1001-A", "Charged twice"))
+                    .thenCompose(receipt -> receipt));
+            }
+
+            int written = 0;
+            for (CompletableFuture<TicketJournal.Receipt> receipt : receipts) {
+                TicketJournal.Receipt done = receipt.get(10, TimeUnit.SECONDS);
+                assertEquals(1, done.id());
+                written += done.duplicate() ? 0 : 1;
+            }
+            assertEquals(1, written);
+            assertEquals(1, journal.size());
+        }
+    }
+
+    @Test
+    void repeatsAreRecognizedAfterARestart() throws Exception {
+        try (TicketJournal journal = openWithDedupe()) {
+            journal.submitOnce("1001-A", "Refund for the annual plan").get(10, TimeUnit.SECONDS);
+        }
+
+        try (TicketJournal journal = openWithDedupe()) {
+            assertEquals(new TicketJournal.Receipt(1, true),
+                journal.submitOnce("1001-A", "Refund for the annual plan").get(10, TimeUnit.SECONDS));
+            assertEquals(1, journal.size());
+        }
+    }
+
+    @Test
+    void aZeroWindowWritesEveryTicket() throws Exception {
+        try (TicketJournal journal = open()) {
+            TicketJournal.Receipt first = journal.submitOnce("1001-A", "Refund please").get(10, TimeUnit.SECONDS);
+            TicketJournal.Receipt second = journal.submitOnce("1001-A", "Refund please").get(10, TimeUnit.SECONDS);
+
+            assertFalse(second.duplicate());
+            assertEquals(first.id() + 1, second.id());
+        }
+    }
+
+    @Test
+    void idempotencyKeysIgnoreCasePunctuationAndSpacing() {
+        assertEquals(TicketJournal.idempotencyKey("1001-A", "Charged twice, in March."),
+            TicketJournal.idempotencyKey("1001-a", "charged   twice in march"));
+        assertFalse(TicketJournal.idempotencyKey("1001-A", "Charged twice").equals(
+            TicketJournal.idempotencyKey("1001-A", "Charged three times")));
+    }
+
+    @Test
+    void formatAndParseRoundTrip() {
+        String line = TicketJournal.format(7, "1001-A", 1_700_000_000_000L, "Back\\slash and\r\nbreaks");
+
+        TicketJournal.Ticket ticket = TicketJournal.parse(line.substring(0, line.length() - 1));
+
+        assertEquals(new TicketJournal.Ticket(7, "1001-A", Instant.ofEpochSecond(1_700_000_000L), "Back\\slash and\r\nbreaks"),
+            ticket);
+    }
+
+    @Test
+    void userIdsCannotBreakTheRecord() throws Exception {
+        String userId = "x] 2025-01-01T00:00:00Z - forged\n#99 [y";
+        try (TicketJournal journal = open()) {
+            await(journal.submit(userId, "Real message"));
+        }
+
+        try (TicketJournal journal = open()) {
+            assertEquals(1, journal.size());
+            TicketJournal.Ticket ticket = journal.find(1).orElseThrow();
+            assertEquals(userId, ticket.userId());
+            assertEquals("Real message", ticket.message());
+        }
+        assertEquals(1, Files.readAllLines(onlySegment(), UTF_8).size());
+    }
+
+    @Test
+    void parsesLinesWrittenWithoutTimes() {
+        assertEquals(new TicketJournal.Ticket(3, "1234", null, "Refund please"), TicketJournal.parse("#3 [1234] - Refund please"));
+        assertNull(TicketJournal.parse("not a ticket"));
+        assertNull(TicketJournal.parse("#x [1234] - Refund please"));
+    }
+
+    private Path onlySegment() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> segments = files.toList();
+            assertEquals(1, segments.size());
+            return segments.get(0);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package agents;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TicketOpenerTest {
+
+    @TempDir
+    Path directory;
+
+    private TicketJournal open() throws IOException {
+        return new TicketJournal(directory, TicketJournal.FsyncPolicy.BATCH, Duration.ofMillis(10), 1024 * 1024,
+            Duration.ofMinutes(10), 1000);
+    }
+
+    @Test
+    void aSavedTicketReportsTheRefundEligibility() throws IOException {
+        try (TicketJournal journal = open()) {
+            Map<String, Object> result = TicketOpener.submitTicket(journal, "1001-A", "It arrived broken", 2);
+
+            assertEquals(List.of("status", "ticketId", "refund", "confirmation"), List.copyOf(result.keySet()));
+            assertEquals("SUCCESS", result.get("status"));
+            assertEquals("Full refund", result.get("refund"));
+            assertEquals("Data successfully saved for user 1001-A. " + RefundPolicy.evaluate(2).explanation(), result.get("confirmation"));
+        }
+    }
+
+    @Test
+    void anInterruptedSaveStillReportsTheRefundEligibility() throws IOException {
+        try (TicketJournal journal = open()) {
+            Thread.currentThread().interrupt();
+            Map<String, Object> result;
+            try {
+                result = TicketOpener.submitTicket(journal, "1001-A", "It arrived broken", 12);
+            } finally {
+                assertTrue(Thread.interrupted());
+            }
+
+            assertEquals(List.of("status", "refund", "confirmation"), List.copyOf(result.keySet()));
+            assertEquals("ERROR", result.get("status"));
+            assertEquals("Partial refund", result.get("refund"));
+            assertEquals("Saving the ticket was interrupted. " + RefundPolicy.evaluate(12).explanation(), result.get("confirmation"));
+        }
+    }
+
+    @Test
+    void aFailedSaveStillReportsTheRefundEligibility() throws IOException {
+        TicketJournal journal = open();
+        journal.close();
+
+        Map<String, Object> result = TicketOpener.submitTicket(journal, "1001-A", "It arrived broken", 45);
+
+        assertEquals(List.of("status", "refund", "confirmation"), List.copyOf(result.keySet()));
+        assertEquals("ERROR", result.get("status"));
+        assertEquals("No refund", result.get("refund"));
+        assertEquals("A system error prevented saving the data: Ticket journal is closed. " + RefundPolicy.evaluate(45).explanation(),
+            result.get("confirmation"));
+        assertFalse(result.containsKey("ticketId"));
+    }
+}
@@ -0,0 +1,210 @@
+package agents;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.adk.JsonBaseModel;
+import com.google.genai.types.Part;
+
+import org.junit.jupiter.api.Test;
+
+class ToolResultTest {
+
+    private static final ObjectMapper MAPPER = JsonBaseModel.getMapper();
+
+    private static final String AWKWARD_TEXT = "Café \"Pro\" plan\\annual\nrenewal\t— 東京 🚀 \u0001\r";
+
+    private static final ToolResult.Shape ROW = ToolResult.Shape.builder()
+        .date("date").value("description").money("amount").value("status")
+        .build();
+
+    @Test
+    void aBillingPageIsWrittenAsTheMapsItReplaced() throws Exception {
+        List<BillingStore.Transaction> history = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            history.add(new BillingStore.Transaction(LocalDate.of(2025, 11, 1).minusWeeks(i),
+                i == 3 ? AWKWARD_TEXT : "Subscription Renewal (week " + (25 - i) + ")",
+                i == 0 ? -1250 : 4999 + i * 137L, i == 0 ? BillingStore.Status.REFUNDED : BillingStore.Status.PAID));
+        }
+        BillingStore.Page page = BillingStore.of(Map.of("5005-E", history))
+            .query("5005-E", null, null, null, null, BillingHistory.PAGE_SIZE).orElseThrow();
+        long outstanding = 4999;
+
+        ToolResult result = BillingHistory.pageResult("5005-E", page, outstanding);
+
+        Map<String, Object> ordered = legacyPage(page, outstanding, LinkedHashMap::new);
+        assertEquals(Json.write(ordered), Json.write(result));
+        assertEquals(MAPPER.writeValueAsString(ordered), MAPPER.writeValueAsString(result));
+        assertEquals(ordered, result);
+        assertEquals(result, ordered);
+        assertEquals(ordered.hashCode(), result.hashCode());
+
+        // The rows used to be hash maps, so only the key order differs from what was written before
+        Map<String, Object> hashed = legacyPage(page, outstanding, HashMap::new);
+        assertEquals(MAPPER.readTree(MAPPER.writeValueAsString(hashed)), MAPPER.readTree(MAPPER.writeValueAsString(result)));
+        assertEquals(MAPPER.readTree(Json.write(hashed)), MAPPER.readTree(Json.write(result)));
+    }
+
+    @Test
+    void moneyIsWrittenAsTheCentsStringItReplaced() throws Exception {
+        ToolResult.Shape amount = ToolResult.Shape.builder().money("amount").build();
+        long[] cents = {0, 1, -1, 5, -5, 9, 10, -10, 99, 100, -100, 101, 4999, -4999, 100_000, 123_456_789, Long.MAX_VALUE, Long.MIN_VALUE + 1};
+
+        for (long value : cents) {
+            String expected = legacyCents(value);
+            ToolResult result = amount.of(value);
+
+            assertEquals(expected, ToolResult.formatCents(value));
+            assertEquals(expected, result.get("amount"));
+            assertEquals(Json.write(Map.of("amount", expected)), Json.write(result));
+            assertEquals(MAPPER.writeValueAsString(Map.of("amount", expected)), MAPPER.writeValueAsString(result));
+        }
+    }
+
+    @Test
+    void datesAreWrittenAsTheirIsoStrings() throws Exception {
+        ToolResult.Shape when = ToolResult.Shape.builder().date("date").build();
+        LocalDate[] dates = {LocalDate.of(2025, 1, 9), LocalDate.of(1999, 12, 31), LocalDate.of(5, 2, 3), LocalDate.of(9999, 12, 31),
+            LocalDate.of(10_000, 1, 1), LocalDate.of(-1, 6, 15), LocalDate.of(2024, 2, 29)};
+
+        for (LocalDate date : dates) {
+            ToolResult result = when.of(date);
+
+            assertEquals(date.toString(), result.get("date"));
+            assertEquals(Json.write(Map.of("date", date.toString())), Json.write(result));
+            assertEquals(MAPPER.writeValueAsString(Map.of("date", date.toString())), MAPPER.writeValueAsString(result));
+        }
+    }
+
+    @Test
+    void nullValuesLeaveTheirKeysOut() throws Exception {
+        ToolResult.Shape shape = ToolResult.Shape.builder().value("status").value("ticketId").money("refund").date("date").value("message").build();
+
+        ToolResult result = shape.of("ERROR", null, null, null, "Saving failed.");
+
+        Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("status", "ERROR");
+        expected.put("message", "Saving failed.");
+        assertEquals(2, result.size());
+        assertEquals(List.of("status", "message"), List.copyOf(result.keySet()));
+        assertFalse(result.containsKey("ticketId"));
+        assertFalse(result.containsKey("unknown"));
+        assertNull(result.get("refund"));
+        assertNull(result.get("unknown"));
+        assertEquals(expected, result);
+        assertEquals("{\"status\": \"ERROR\", \"message\": \"Saving failed.\"}", Json.write(result));
+        assertEquals(MAPPER.writeValueAsString(expected), MAPPER.writeValueAsString(result));
+        assertEquals("{}", Json.write(shape.of(null, null, null, null, null)));
+        assertTrue(shape.of(null, null, null, null, null).isEmpty());
+    }
+
+    @Test
+    void nestedResultsAndListsAreWrittenAsNestedMaps() throws Exception {
+        ToolResult.Shape inner = ToolResult.Shape.builder().value("name").money("price").value("tags").build();
+        ToolResult.Shape outer = ToolResult.Shape.builder().value("items").value("first").value("count").value("active").build();
+
+        ToolResult result = outer.of(
+            List.of(inner.of("Basic", 999L, List.of()), inner.of(AWKWARD_TEXT, 12_345L, List.of("a\"b", 1, 2.5, true))),
+            inner.of("Only", null, null),
+            2,
+            false);
+
+        Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("items", List.of(
+            mapOf("name", "Basic", "price", "9.99", "tags", List.of()),
+            mapOf("name", AWKWARD_TEXT, "price", "123.45", "tags", List.of("a\"b", 1, 2.5, true))));
+        expected.put("first", mapOf("name", "Only"));
+        expected.put("count", 2);
+        expected.put("active", false);
+        assertEquals(Json.write(expected), Json.write(result));
+        assertEquals(MAPPER.writeValueAsString(expected), MAPPER.writeValueAsString(result));
+        assertEquals(expected, result);
+    }
+
+    @Test
+    void escapesAndNonAsciiTextMatchTheMapEncoding() throws Exception {
+        ToolResult.Shape shape = ToolResult.Shape.builder().value(AWKWARD_TEXT).value("plain").build();
+        ToolResult result = shape.of(AWKWARD_TEXT, "ascii");
+        Map<String, Object> expected = mapOf(AWKWARD_TEXT, AWKWARD_TEXT, "plain", "ascii");
+
+        String json = Json.write(result);
+        assertEquals(Json.write(expected), json);
+        assertTrue(json.contains("Café \\\"Pro\\\" plan\\\\annual\\nrenewal\\t— 東京 🚀 \\u0001\\r"), json);
+        assertEquals(AWKWARD_TEXT, MAPPER.readTree(json).fieldNames().next());
+        assertEquals(MAPPER.writeValueAsString(expected), MAPPER.writeValueAsString(result));
+
+        assertEquals(json.length(), Json.length(result));
+        assertEquals(json.getBytes(UTF_8).length, Json.utf8Length(result));
+        assertEquals("null", Json.quote(null));
+        assertEquals("\"\\u001f\"", Json.quote("\u001f"));
+    }
+
+    @Test
+    void adkWritesAFunctionResponseAsItWouldTheMap() throws Exception {
+        ToolResult result = ROW.of(LocalDate.of(2025, 3, 4), AWKWARD_TEXT, 4999L, "Paid");
+        Map<String, Object> expected = mapOf("date", "2025-03-04", "description", AWKWARD_TEXT, "amount", "49.99", "status", "Paid");
+
+        assertEquals(Part.fromFunctionResponse("billingHistory", expected).toJson(),
+            Part.fromFunctionResponse("billingHistory", result).toJson());
+    }
+
+    @Test
+    void shapesRejectDuplicateKeysAndTheWrongNumberOfValues() {
+        assertThrows(IllegalArgumentException.class, () -> ToolResult.Shape.builder().value("a").money("a"));
+        assertThrows(IllegalArgumentException.class, () -> ROW.of(LocalDate.of(2025, 3, 4), "Renewal", 4999L));
+    }
+
+    // BillingHistory's page encoding before ToolResult, with the row map type as a parameter
+    private static Map<String, Object> legacyPage(BillingStore.Page page, long outstanding,
+            Supplier<Map<String, Object>> rowMap) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("userId", "5005-E");
+        List<Map<String, Object>> transactionMaps = new ArrayList<>();
+        for (BillingStore.Transaction transaction : page.transactions()) {
+            Map<String, Object> map = rowMap.get();
+            map.put("date", transaction.date().toString());
+            map.put("description", transaction.description());
+            map.put("amount", legacyCents(transaction.amountCents()));
+            map.put("status", transaction.status().label());
+            transactionMaps.add(map);
+        }
+        response.put("transactions", transactionMaps);
+        Map<String, Object> summaryMap = new LinkedHashMap<>();
+        summaryMap.put("matchingTransactions", page.summary().transactionCount());
+        summaryMap.put("totalPaid", legacyCents(page.summary().totalPaidCents()));
+        summaryMap.put("outstandingBalance", legacyCents(page.summary().outstandingCents()));
+        response.put("summary", summaryMap);
+        response.put("accountStatus", outstanding > 0 ? "Balance Due: $" + legacyCents(outstanding) : "Current");
+        if (page.nextCursor() != null) {
+            response.put("nextCursor", page.nextCursor());
+        }
+        return response;
+    }
+
+    private static String legacyCents(long cents) {
+        long abs = Math.abs(cents);
+        long fraction = abs % 100;
+        return (cents < 0 ? "-" : "") + abs / 100 + (fraction < 10 ? ".0" : ".") + fraction;
+    }
+
+    private static Map<String, Object> mapOf(Object... keysAndValues) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            map.put((String) keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return map;
+    }
+}